@@ -0,0 +1,66 @@
+package com.leonard.blockchain.benchmark;
+
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.HashScheme;
+import com.leonard.blockchain.SqliteBlockStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a chain of chainSize blocks with {@link BlockChain#addBlock(Block)}, which checks the link
+ * and recomputes the hash of every block.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppendBenchmark {
+    @Param({"1000", "100000"})
+    private int chainSize;
+
+    @Param({"32", "1024"})
+    private int payloadSize;
+
+    @Param({"LEGACY", "BINARY"})
+    private HashScheme hashScheme;
+
+    private List<Block> blocks;
+    private SqliteBlockStore store;
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.silenceLogging();
+        blocks = BenchmarkSupport.buildChain(chainSize, payloadSize, hashScheme);
+        store = SqliteBlockStore.inMemory();
+    }
+
+    @TearDown
+    public void tearDown() {
+        store.close();
+    }
+
+    @Benchmark
+    public int addBlocks() {
+        BlockChain blockChain = new BlockChain(store);
+        for (Block block : blocks) {
+            blockChain.addBlock(block);
+        }
+        return blockChain.size();
+    }
+}
@@ -0,0 +1,82 @@
+package com.leonard.blockchain.benchmark;
+
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockStore;
+import com.leonard.blockchain.HashScheme;
+import com.leonard.blockchain.SegmentLogStore;
+import com.leonard.blockchain.SqliteBlockStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Builds the chains and stores shared by the benchmarks.
+ */
+final class BenchmarkSupport {
+    static final String TIMESTAMP = "2022-01-01T12:00:00";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Raises the root log level so that per-block INFO messages do not dominate the measurements.
+     */
+    static void silenceLogging() {
+        Logger.getLogger("").setLevel(Level.WARNING);
+    }
+
+    static String payload(int size) {
+        char[] chars = new char[size];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+
+    /**
+     * Builds a linked chain of blocks with indexes 1 to count.
+     */
+    static List<Block> buildChain(int count, int payloadSize, HashScheme hashScheme) {
+        String payload = payload(payloadSize);
+        List<Block> blocks = new ArrayList<>(count);
+        String previousHash = "0";
+        for (int i = 1; i <= count; i++) {
+            Block block = new Block(i, TIMESTAMP, i + ":" + payload, previousHash, hashScheme);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    /**
+     * Opens an empty store of the given type in the directory.
+     *
+     * @param storeType Either {@code sqlite} or {@code segment}.
+     */
+    static BlockStore openStore(String storeType, Path directory) {
+        BlockStore store;
+        if ("sqlite".equals(storeType)) {
+            store = new SqliteBlockStore("jdbc:sqlite:" + directory.resolve("chain.db"));
+        } else if ("segment".equals(storeType)) {
+            store = new SegmentLogStore(directory.resolve("segments"));
+        } else {
+            throw new IllegalArgumentException("Unknown store type: " + storeType);
+        }
+        store.createSchema();
+        return store;
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.leonard.blockchain.benchmark;
+
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.HashScheme;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Block#calculateHash()} for both hash schemes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashingBenchmark {
+    @Param({"32", "1024", "65536"})
+    private int payloadSize;
+
+    @Param({"LEGACY", "BINARY"})
+    private HashScheme hashScheme;
+
+    private Block block;
+
+    @Setup
+    public void setUp() {
+        block = new Block(1, BenchmarkSupport.TIMESTAMP, BenchmarkSupport.payload(payloadSize), "0", hashScheme);
+    }
+
+    @Benchmark
+    public String calculateHash() {
+        return block.calculateHash();
+    }
+}
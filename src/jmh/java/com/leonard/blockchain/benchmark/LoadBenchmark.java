@@ -0,0 +1,64 @@
+package com.leonard.blockchain.benchmark;
+
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.HashScheme;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link BlockChain#loadFromDatabase()} from a store holding chainSize blocks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+    @Param({"1000", "100000"})
+    private int chainSize;
+
+    @Param({"32", "1024"})
+    private int payloadSize;
+
+    @Param({"sqlite", "segment"})
+    private String storeType;
+
+    private Path directory;
+    private BlockChain blockChain;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkSupport.silenceLogging();
+        directory = Files.createTempDirectory("blockchain-benchmark");
+        blockChain = new BlockChain(BenchmarkSupport.openStore(storeType, directory));
+        blockChain.saveAll(BenchmarkSupport.buildChain(chainSize, payloadSize, HashScheme.BINARY));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        blockChain.getStore().close();
+        BenchmarkSupport.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public int loadFromDatabase() {
+        blockChain.loadFromDatabase();
+        return blockChain.size();
+    }
+}
@@ -0,0 +1,56 @@
+package com.leonard.blockchain.benchmark;
+
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.HashScheme;
+import com.leonard.blockchain.Miner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Miner#mine} at a fixed difficulty across thread counts. Each invocation mines a block with
+ * different data, so the number of hashes needed varies as it would on a live chain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MiningBenchmark {
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    @Param({"16"})
+    private int difficulty;
+
+    private Miner miner;
+    private int invocation;
+
+    @Setup
+    public void setUp() {
+        miner = new Miner(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        miner.close();
+    }
+
+    @Benchmark
+    public Block mine() throws InterruptedException {
+        return miner.mine(1, BenchmarkSupport.TIMESTAMP, "Block " + invocation++, "0", HashScheme.BINARY, difficulty)
+                .getBlock();
+    }
+}
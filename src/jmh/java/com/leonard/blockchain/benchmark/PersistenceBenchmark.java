@@ -0,0 +1,80 @@
+package com.leonard.blockchain.benchmark;
+
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.HashScheme;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving a chain of chainSize blocks to an empty store, one block at a time with
+ * {@link BlockChain#saveToDatabase(Block)} and in one batch with {@link BlockChain#saveAll}.
+ * Every invocation starts from a fresh store.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+    @Param({"100", "1000"})
+    private int chainSize;
+
+    @Param({"32", "1024"})
+    private int payloadSize;
+
+    @Param({"sqlite", "segment"})
+    private String storeType;
+
+    private List<Block> blocks;
+    private Path directory;
+    private BlockChain blockChain;
+
+    @Setup(Level.Trial)
+    public void buildChain() {
+        BenchmarkSupport.silenceLogging();
+        blocks = BenchmarkSupport.buildChain(chainSize, payloadSize, HashScheme.BINARY);
+    }
+
+    @Setup(Level.Invocation)
+    public void openStore() throws IOException {
+        directory = Files.createTempDirectory("blockchain-benchmark");
+        blockChain = new BlockChain(BenchmarkSupport.openStore(storeType, directory));
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeStore() throws IOException {
+        blockChain.getStore().close();
+        BenchmarkSupport.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void saveToDatabase() {
+        for (Block block : blocks) {
+            blockChain.saveToDatabase(block);
+        }
+    }
+
+    @Benchmark
+    public int saveAll() {
+        return blockChain.saveAll(blocks);
+    }
+}
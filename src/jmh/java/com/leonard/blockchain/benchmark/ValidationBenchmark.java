@@ -0,0 +1,63 @@
+package com.leonard.blockchain.benchmark;
+
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.ChainVerifier;
+import com.leonard.blockchain.HashScheme;
+import com.leonard.blockchain.SqliteBlockStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link BlockChain#isChainValid()} with verifiers of different parallelism.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+    @Param({"1000", "100000"})
+    private int chainSize;
+
+    @Param({"32", "1024"})
+    private int payloadSize;
+
+    @Param({"1", "4"})
+    private int verifierThreads;
+
+    private BlockChain blockChain;
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.silenceLogging();
+        blockChain = new BlockChain(SqliteBlockStore.inMemory());
+        for (Block block : BenchmarkSupport.buildChain(chainSize, payloadSize, HashScheme.BINARY)) {
+            blockChain.addBlock(block);
+        }
+        blockChain.setChainVerifier(new ChainVerifier(verifierThreads, 4096));
+    }
+
+    @TearDown
+    public void tearDown() {
+        blockChain.getStore().close();
+    }
+
+    @Benchmark
+    public boolean isChainValid() {
+        return blockChain.isChainValid();
+    }
+}
@@ -3,40 +3,49 @@ import com.leonard.blockchain.BlockChain;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
     public static void main(String[] args) {
         // Creating a blockchain
-        BlockChain blockchain = new BlockChain();
-        blockchain.createTableIfNotExists();
+        try (BlockChain blockchain = new BlockChain()) {
+            blockchain.loadJdbcDriver();
+            blockchain.createTableIfNotExists();
+            blockchain.enableWriteBehind(1024, 256, 10, TimeUnit.MILLISECONDS);
+            run(blockchain);
+        }
+    }
 
+    private static void run(BlockChain blockchain) {
         // Adding blocks to the blockchain
         try {
-            blockchain.loadJdbcDriver();
             Block block1 = new Block(1, LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")), "Transaction 1", "0");
-            blockchain.addBlock(block1);
-            blockchain.saveToDatabase(block1);
+            blockchain.addAndSave(block1);
 
             Block block2 = new Block(2, LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")), "Transaction 2", block1.getHash());
-            blockchain.addBlock(block2);
-            blockchain.saveToDatabase(block2);
+            blockchain.addAndSave(block2);
 
             Block block3 = new Block(3, LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")), "Transaction 3", block2.getHash());
-            blockchain.addBlock(block3);
-            blockchain.saveToDatabase(block3);
+            blockchain.addAndSave(block3);
 
-            // Load blockchain from the database
+            // Wait until the blocks are durable, then load blockchain from the database
+            blockchain.flush().join();
             blockchain.loadFromDatabase();
 
             // Display the loaded blockchain
             blockchain.displayBlockchain();
         } catch (IllegalArgumentException e) {
             System.err.println("Error: " + e.getMessage());
+        } catch (CompletionException e) {
+            System.err.println("Error saving blocks: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted while saving blocks");
         }
 
         // Checking if the blockchain is valid
         boolean isChainValid = blockchain.isChainValid();
         System.out.println("Is Blockchain Valid? " + isChainValid);
-
     }
 }
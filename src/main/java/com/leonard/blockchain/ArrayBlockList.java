@@ -0,0 +1,97 @@
+package com.leonard.blockchain;
+
+import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link BlockList} that keeps every block as an object, indexed by hash in a concurrent map and by timestamp in a
+ * {@link TimestampIndex}.
+ * The writer stores a block before publishing the new size, and the backing array is only ever replaced by a
+ * larger copy, so a reader that reads the size and then the array always sees at least that many blocks.
+ */
+final class ArrayBlockList implements BlockList {
+    private volatile Block[] elements = new Block[16];
+    private volatile int size;
+    private final Map<BlockHash, Block> blocksByHash = new ConcurrentHashMap<>();
+    private final TimestampIndex timestampIndex = new TimestampIndex();
+
+    @Override
+    public void add(Block block) {
+        Block[] current = elements;
+        int currentSize = size;
+        if (currentSize == current.length) {
+            current = Arrays.copyOf(current, currentSize + (currentSize >> 1));
+        }
+        current[currentSize] = block;
+        elements = current;
+        size = currentSize + 1;
+        if (block.getBlockHash() != null) {
+            blocksByHash.put(block.getBlockHash(), block);
+        }
+        timestampIndex.add(block.getTimestamp(), block.getIndex());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int indexAt(int position) {
+        return elements[position].getIndex();
+    }
+
+    @Override
+    public Block last() {
+        int currentSize = size;
+        return currentSize == 0 ? null : elements[currentSize - 1];
+    }
+
+    @Override
+    public List<Block> snapshot() {
+        int currentSize = size;
+        return new Snapshot(elements, currentSize);
+    }
+
+    @Override
+    public IntStream positionsBetween(int size, LocalDateTime from, LocalDateTime to, Block after) {
+        return timestampIndex.indexesBetween(from, to, after).map(index -> {
+            int position = positionOf(size, index);
+            return position < size && indexAt(position) == index ? position : -1;
+        }).filter(position -> position >= 0);
+    }
+
+    @Override
+    public Block findByHash(BlockHash hash) {
+        return blocksByHash.get(hash);
+    }
+
+    private static final class Snapshot extends AbstractList<Block> implements RandomAccess {
+        private final Block[] elements;
+        private final int size;
+
+        private Snapshot(Block[] elements, int size) {
+            this.elements = elements;
+            this.size = size;
+        }
+
+        @Override
+        public Block get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return elements[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -2,19 +2,31 @@ package com.leonard.blockchain;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Represents a block in a blockchain
  * Each block contains an index, timestamp, data, previous hash, and its own hash
+ * A transaction block holds many transactions and commits to them by carrying their Merkle root as its data,
+ * so the hash preimage is the same as for any other block.
  */
 public class Block {
     private final int index;
     private final LocalDateTime timestamp;
-    private final String data;
+    /** The data, or a {@link CompressedPayload} until the data is first read. */
+    private volatile Object data;
     private final String previousHash;
-    private final String hash;
+    private final HashScheme hashScheme;
+    private final BlockHash hash;
+    /** The stored hash text when it is not a canonical SHA-256 hex string, otherwise {@code null}. */
+    private final String invalidHash;
+    private final int transactionCount;
+    private final long nonce;
+    private final int difficulty;
+    /** The transactions of a transaction block, or {@code null} when the body has not been loaded. */
+    private final List<String> transactions;
 
     /**
      * Constructs a com.leonard.blockchain.Block with the specified parameters.
@@ -27,39 +39,154 @@ public class Block {
      * @throws IllegalArgumentException If the index is negative or the timestamp has an invalid format.
      */
     public Block(int index, String timestamp, String data, String previousHash) {
-        // Validation checks
-        if (index < 0) {
-            throw new IllegalArgumentException("Index cannot be negative.");
-        }
+        this(index, timestamp, data, previousHash, HashScheme.LEGACY);
+    }
 
-        try {
-            this.timestamp = LocalDateTime.parse(timestamp);
-        } catch (DateTimeParseException e) {
-            throw new IllegalArgumentException("Invalid timestamp format. Expected format: yyyy-MM-ddTHH:mm:ss", e);
-        }
+    /**
+     * Constructs a com.leonard.blockchain.Block whose hash is computed with the given scheme.
+     *
+     * @param index        The index of the block in the blockchain. Must not be negative.
+     * @param timestamp    The timestamp indicating when the block was created.
+     *                    Should be in the format: yyyy-MM-ddTHH:mm:ss.
+     * @param data         The data stored in the block.
+     * @param previousHash The hash of the previous block in the blockchain.
+     * @param hashScheme   The encoding used to compute the block's hash.
+     * @throws IllegalArgumentException If the index is negative or the timestamp has an invalid format.
+     */
+    public Block(int index, String timestamp, String data, String previousHash, HashScheme hashScheme) {
+        this(index, parseTimestamp(timestamp), data, previousHash, hashScheme, null, 0, null, 0, 0);
+    }
+
+    /**
+     * Constructs a proof-of-work com.leonard.blockchain.Block with the given nonce and difficulty.
+     * The nonce is normally found by a {@link Miner}; this constructor does not check that it meets the difficulty.
+     *
+     * @param index        The index of the block in the blockchain. Must not be negative.
+     * @param timestamp    The timestamp indicating when the block was created.
+     *                    Should be in the format: yyyy-MM-ddTHH:mm:ss.
+     * @param data         The data stored in the block.
+     * @param previousHash The hash of the previous block in the blockchain.
+     * @param hashScheme   The encoding used to compute the block's hash.
+     * @param nonce        The proof-of-work nonce.
+     * @param difficulty   The number of leading zero bits the hash must have, between 0 and 256.
+     * @throws IllegalArgumentException If the index is negative, the timestamp has an invalid format or the difficulty is out of range.
+     */
+    public Block(int index, String timestamp, String data, String previousHash, HashScheme hashScheme,
+                 long nonce, int difficulty) {
+        this(index, parseTimestamp(timestamp), data, previousHash, hashScheme, null, 0, null, nonce, difficulty);
+    }
+
+    /**
+     * Constructs a transaction block whose data is the Merkle root of the given transactions.
+     *
+     * @param index        The index of the block in the blockchain. Must not be negative.
+     * @param timestamp    The timestamp indicating when the block was created.
+     *                    Should be in the format: yyyy-MM-ddTHH:mm:ss.
+     * @param transactions The transactions stored in the block. Must not be empty.
+     * @param previousHash The hash of the previous block in the blockchain.
+     * @param hashScheme   The encoding used to compute the block's hash.
+     * @throws IllegalArgumentException If the index is negative, the timestamp has an invalid format or there are no transactions.
+     */
+    public Block(int index, String timestamp, List<String> transactions, String previousHash, HashScheme hashScheme) {
+        this(index, parseTimestamp(timestamp), MerkleTree.computeRoot(transactions).toHex(), previousHash, hashScheme,
+                null, transactions.size(), transactions, 0, 0);
+    }
+
+    /**
+     * Constructs a com.leonard.blockchain.Block with a previously computed hash, e.g. when loading from storage.
+     *
+     * @param index        The index of the block in the blockchain. Must not be negative.
+     * @param timestamp    The timestamp indicating when the block was created.
+     * @param data         The data stored in the block.
+     * @param previousHash The hash of the previous block in the blockchain.
+     * @param hash         The stored hash of the block, computed with {@link HashScheme#LEGACY}.
+     * @throws IllegalArgumentException If the index is negative or the timestamp has an invalid format.
+     */
+    public Block(int index, String timestamp, String data, String previousHash, String hash) {
+        this(index, timestamp, data, previousHash, hash, HashScheme.LEGACY);
+    }
+
+    /**
+     * Constructs a com.leonard.blockchain.Block with a previously computed hash, e.g. when loading from storage.
+     * The hash is kept as given and is not checked against the block's contents.
+     *
+     * @param index        The index of the block in the blockchain. Must not be negative.
+     * @param timestamp    The timestamp indicating when the block was created.
+     * @param data         The data stored in the block.
+     * @param previousHash The hash of the previous block in the blockchain.
+     * @param hash         The stored hash of the block.
+     * @param hashScheme   The encoding the stored hash was computed with.
+     * @throws IllegalArgumentException If the index is negative or the timestamp has an invalid format.
+     */
+    public Block(int index, String timestamp, String data, String previousHash, String hash, HashScheme hashScheme) {
+        this(index, parseTimestamp(timestamp), data, previousHash, hashScheme, hash, 0, null, 0, 0);
+    }
+
+    /**
+     * Constructs a block from all of its fields.
+     *
+     * @param hash             The stored hash, or {@code null} to compute it from the other fields.
+     * @param transactionCount The number of transactions of a transaction block, or zero for a plain block.
+     * @param transactions     The transactions of a transaction block, or {@code null} for a plain block or
+     *                         when only the header is loaded.
+     * @param nonce            The proof-of-work nonce, or zero.
+     * @param difficulty       The number of leading zero bits the hash must have, or zero without proof of work.
+     */
+    Block(int index, LocalDateTime timestamp, String data, String previousHash, HashScheme hashScheme,
+          String hash, int transactionCount, List<String> transactions, long nonce, int difficulty) {
+        this(index, timestamp, (Object) data, previousHash, hashScheme, hash, transactionCount, transactions, nonce, difficulty);
+    }
+
+    /**
+     * Constructs a block read from a store whose data is decompressed when it is first read.
+     *
+     * @param data The compressed data.
+     * @param hash The stored hash.
+     */
+    Block(int index, LocalDateTime timestamp, CompressedPayload data, String previousHash, HashScheme hashScheme,
+          String hash, int transactionCount, long nonce, int difficulty) {
+        this(index, timestamp, (Object) data, previousHash, hashScheme, hash, transactionCount, null, nonce, difficulty);
+    }
 
-        this.index = index;
+    private Block(int index, LocalDateTime timestamp, Object data, String previousHash, HashScheme hashScheme,
+                  String hash, int transactionCount, List<String> transactions, long nonce, int difficulty) {
+        if (difficulty < 0 || difficulty > BlockHash.LENGTH * 8) {
+            throw new IllegalArgumentException("Difficulty must be between 0 and " + BlockHash.LENGTH * 8 + ".");
+        }
+        this.nonce = nonce;
+        this.difficulty = difficulty;
+        this.index = checkIndex(index);
+        this.timestamp = timestamp;
         this.data = data;
         this.previousHash = previousHash;
-        this.hash = calculateHash();
+        this.hashScheme = hashScheme;
+        this.transactionCount = transactionCount;
+        this.transactions = transactions == null ? null : Collections.unmodifiableList(new ArrayList<>(transactions));
+        if (hash == null) {
+            this.hash = calculateBlockHash();
+            this.invalidHash = null;
+        } else if (HexCodec.isHex(hash, BlockHash.LENGTH)) {
+            this.hash = BlockHash.fromHex(hash);
+            this.invalidHash = null;
+        } else {
+            this.hash = null;
+            this.invalidHash = hash;
+        }
     }
 
-    public Block(int index, String timestamp, String data, String previousHash, String hash) {
-        // Validation checks
+    private static int checkIndex(int index) {
         if (index < 0) {
             throw new IllegalArgumentException("Index cannot be negative.");
         }
+        return index;
+    }
 
+    private static LocalDateTime parseTimestamp(String timestamp) {
         try {
-            this.timestamp = LocalDateTime.parse(timestamp);
+            return LocalDateTime.parse(timestamp);
         } catch (DateTimeParseException e) {
             throw new IllegalArgumentException("Invalid timestamp format. Expected format: yyyy-MM-ddTHH:mm:ss", e);
         }
-
-        this.index = index;
-        this.data = data;
-        this.previousHash = previousHash;
-        this.hash = hash;
     }
 
     /**
@@ -81,12 +208,126 @@ public class Block {
     }
 
     /**
-     * Gets the data stored in the block.
+     * Gets the data stored in the block. Data that was stored compressed is decompressed on the first call.
      *
      * @return The data stored in the block.
+     * @throws BlockStoreException If the data was stored compressed and is corrupt.
      */
     public String getData() {
-        return data;
+        Object current = data;
+        if (current instanceof CompressedPayload) {
+            String decompressed = ((CompressedPayload) current).decompress();
+            data = decompressed;
+            return decompressed;
+        }
+        return (String) current;
+    }
+
+    /**
+     * Checks whether the data is still held compressed, as read from a store that compresses payloads.
+     *
+     * @return True if the data has not been read since the block was loaded compressed, false otherwise.
+     */
+    public boolean isDataCompressed() {
+        return data instanceof CompressedPayload;
+    }
+
+    /**
+     * Gets the compressed data, so that it can be stored again without being decompressed.
+     *
+     * @return The compressed data, or {@code null} if the data is not held compressed.
+     */
+    CompressedPayload getCompressedData() {
+        Object current = data;
+        return current instanceof CompressedPayload ? (CompressedPayload) current : null;
+    }
+
+    /**
+     * Checks whether this is a transaction block.
+     *
+     * @return True if the block holds transactions committed to by a Merkle root, false otherwise.
+     */
+    public boolean isTransactionBlock() {
+        return transactionCount > 0;
+    }
+
+    /**
+     * Gets the number of transactions in a transaction block.
+     *
+     * @return The number of transactions, or zero for a plain block.
+     */
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    /**
+     * Gets the transactions of a transaction block.
+     *
+     * @return The transactions, or an empty list for a plain block or when only the header has been loaded.
+     */
+    public List<String> getTransactions() {
+        return transactions == null ? Collections.<String>emptyList() : transactions;
+    }
+
+    /**
+     * Checks whether the transactions of a transaction block are held by this block.
+     *
+     * @return True if the transactions are loaded, false for header-only and plain blocks.
+     */
+    public boolean isBodyLoaded() {
+        return transactions != null;
+    }
+
+    /**
+     * Gets the Merkle root of a transaction block.
+     *
+     * @return The Merkle root, or {@code null} for a plain block or if the data is not a valid root.
+     */
+    public BlockHash getMerkleRoot() {
+        String root = isTransactionBlock() ? getData() : null;
+        if (root == null || !HexCodec.isHex(root, BlockHash.LENGTH)) {
+            return null;
+        }
+        return BlockHash.fromHex(root);
+    }
+
+    /**
+     * Checks whether the loaded transactions hash up to the Merkle root carried by the block.
+     *
+     * @return True if the root matches, or if the block is a plain block or its body is not loaded.
+     */
+    public boolean hasValidMerkleRoot() {
+        if (transactions == null) {
+            return true;
+        }
+        return transactions.size() == transactionCount && MerkleTree.computeRoot(transactions).equals(getMerkleRoot());
+    }
+
+    /**
+     * Gets the proof-of-work nonce of the block.
+     *
+     * @return The nonce, or zero for a block without proof of work.
+     */
+    public long getNonce() {
+        return nonce;
+    }
+
+    /**
+     * Gets the proof-of-work difficulty of the block.
+     *
+     * @return The number of leading zero bits the hash must have, or zero for a block without proof of work.
+     */
+    public int getDifficulty() {
+        return difficulty;
+    }
+
+    /**
+     * Checks whether the stored hash has at least as many leading zero bits as the block's difficulty.
+     *
+     * @return True if the proof of work is sufficient, false otherwise.
+     */
+    public boolean meetsDifficulty() {
+        return hash != null && BlockHasher.meetsDifficulty(hash.toBytes(), difficulty);
     }
 
     /**
@@ -98,15 +339,42 @@ public class Block {
         return previousHash;
     }
 
+    /**
+     * Gets the scheme used to compute the hash of the block.
+     *
+     * @return The hash scheme.
+     */
+    public HashScheme getHashScheme() {
+        return hashScheme;
+    }
+
     /**
      * Gets the hash of the current block.
      *
      * @return The hash of the current block.
      */
     public String getHash() {
+        return hash != null ? hash.toHex() : invalidHash;
+    }
+
+    /**
+     * Gets the hash of the current block in binary form.
+     *
+     * @return The hash of the current block, or {@code null} if the stored hash is not a valid SHA-256 hash.
+     */
+    public BlockHash getBlockHash() {
         return hash;
     }
 
+    /**
+     * Checks whether the stored hash matches the hash computed from the block's contents.
+     *
+     * @return True if the hash is valid, false otherwise.
+     */
+    public boolean hasValidHash() {
+        return hash != null && hash.equals(calculateBlockHash());
+    }
+
     /**
      * Calculates and returns the hash of the block using SHA-256 algorithm.
      *
@@ -114,26 +382,16 @@ public class Block {
      * @throws RuntimeException If the SHA-256 algorithm is not supported.
      */
     public String calculateHash() {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-
-            String combinedData = Integer.toString(index) + timestamp + data + previousHash;
-            byte[] combinedBytes = combinedData.getBytes();
-
-            byte[] hashBytes = digest.digest(combinedBytes);
-
-            StringBuilder hashStringBuilder = new StringBuilder();
-            for (byte hashByte : hashBytes) {
-                String hex = Integer.toHexString(0xff & hashByte);
-                if (hex.length() == 1) {
-                    hashStringBuilder.append("0");
-                }
-                hashStringBuilder.append(hex);
-            }
+        return calculateBlockHash().toHex();
+    }
 
-            return hashStringBuilder.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not supported.", e);
-        }
+    /**
+     * Calculates the hash of the block in binary form using SHA-256 algorithm.
+     *
+     * @return The calculated hash of the block.
+     * @throws RuntimeException If the SHA-256 algorithm is not supported.
+     */
+    public BlockHash calculateBlockHash() {
+        return BlockHash.wrap(BlockHasher.hash(hashScheme, index, timestamp, getData(), previousHash, nonce, difficulty));
     }
 }
@@ -0,0 +1,156 @@
+package com.leonard.blockchain;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded, least-recently-used cache of blocks that are no longer held in a chain's memory window.
+ * Blocks are keyed by index and can also be found by hash. Lookups are counted so that the effectiveness of the
+ * cache can be monitored.
+ *
+ * @see BlockChain#setMemoryWindow(int)
+ * @see BlockChain#setBlockCacheCapacity(int)
+ */
+public final class BlockCache {
+    private final int capacity;
+    private final LinkedHashMap<Integer, Block> blocksByIndex;
+    private final Map<BlockHash, Integer> indexesByHash = new HashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param capacity The maximum number of blocks to hold. Zero disables caching, but lookups are still counted.
+     * @throws IllegalArgumentException If capacity is negative.
+     */
+    BlockCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Cache capacity cannot be negative.");
+        }
+        this.capacity = capacity;
+        this.blocksByIndex = new LinkedHashMap<Integer, Block>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Block> eldest) {
+                if (size() <= BlockCache.this.capacity) {
+                    return false;
+                }
+                BlockHash hash = eldest.getValue().getBlockHash();
+                if (hash != null) {
+                    indexesByHash.remove(hash, eldest.getKey());
+                }
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Looks up a block by index and records a hit or a miss.
+     *
+     * @return The block, or {@code null} on a miss.
+     */
+    synchronized Block get(int index) {
+        return record(blocksByIndex.get(index));
+    }
+
+    /**
+     * Looks up a block by hash and records a hit or a miss.
+     *
+     * @return The block, or {@code null} on a miss.
+     */
+    synchronized Block get(BlockHash hash) {
+        Integer index = indexesByHash.get(hash);
+        return record(index == null ? null : blocksByIndex.get(index));
+    }
+
+    /**
+     * Adds a block, evicting the least recently used block if the cache is full.
+     */
+    synchronized void put(Block block) {
+        if (capacity == 0) {
+            return;
+        }
+        Block replaced = blocksByIndex.put(block.getIndex(), block);
+        if (replaced != null && replaced.getBlockHash() != null) {
+            indexesByHash.remove(replaced.getBlockHash(), replaced.getIndex());
+        }
+        if (block.getBlockHash() != null) {
+            indexesByHash.put(block.getBlockHash(), block.getIndex());
+        }
+    }
+
+    private Block record(Block block) {
+        if (block == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return block;
+    }
+
+    /**
+     * Gets the maximum number of blocks the cache holds.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of blocks currently cached.
+     *
+     * @return The number of blocks.
+     */
+    public synchronized int size() {
+        return blocksByIndex.size();
+    }
+
+    /**
+     * Gets the number of lookups that found a cached block.
+     *
+     * @return The number of hits.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that had to read the block from the store.
+     *
+     * @return The number of misses.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of blocks removed to make room for others.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the fraction of lookups that found a cached block.
+     *
+     * @return The hit rate between 0 and 1, or 0 if there have been no lookups.
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "Block cache: " + size() + "/" + capacity + " blocks, " + getHitCount() + " hits, " +
+                getMissCount() + " misses, " + getEvictionCount() + " evictions";
+    }
+}
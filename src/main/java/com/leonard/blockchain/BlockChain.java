@@ -1,46 +1,162 @@
 package com.leonard.blockchain;
 
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.sql.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.sql.SQLException;
 
 /**
  * Represents a basic blockchain.
  * A blockchain is a decentralized, distributed ledger that records transactions across multiple computers.
- * This implementation uses a simple array list to store blocks.
+ * This implementation stores blocks in an append-only list. Appends are serialized, while reads such as
+ * {@link #isChainValid()} and {@link #displayBlockchain()} work on consistent snapshots without blocking writers.
+ * A chain restored with {@link #loadFromCheckpoint()} holds only the blocks from the last checkpoint onward in
+ * memory, and a chain with a {@link #setMemoryWindow(int) memory window} holds only its most recent blocks; older
+ * blocks are read from the store on demand through a {@link BlockCache}. Blocks can be looked up by index and hash,
+ * and queried by time range and payload with {@link #findBlocks(BlockQuery, Block, int)}. A chain can be backed up to
+ * and bootstrapped from a {@link ChainSnapshot}.
  */
-public class BlockChain {
+public class BlockChain implements AutoCloseable {
     private static final Logger logger = Logger.getLogger(BlockChain.class.getName());
-    private static final String DATABASE_URL = "jdbc:sqlite:blockchain:db";
-    private final ArrayList<Block> chain;
+    private static final String DEFAULT_DATABASE_URL = "jdbc:sqlite:blockchain:db";
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    private static final int DEFAULT_CACHE_CAPACITY = 1024;
+    private static final int HISTORY_BATCH_SIZE = 8192;
+    private final Object appendLock = new Object();
+    private volatile boolean columnar;
+    private volatile Resident resident = new Resident(new ArrayBlockList(), 0);
+    private volatile int trustedTipIndex = -1;
+    private volatile int memoryWindow;
+    private int nextTrimSize = Integer.MAX_VALUE;
+    private volatile BlockCache blockCache = new BlockCache(DEFAULT_CACHE_CAPACITY);
+    private volatile GroupCommitWriter writer;
+    private final BlockStore store;
+    private final boolean ownsStore;
+    private volatile int difficulty;
+    private ChainVerifier verifier = new ChainVerifier();
+    private volatile ChainMetricsListener metricsListener = ChainMetricsListener.NONE;
+    private volatile boolean blockLogging = true;
 
     /**
      * Constructs com.blockchain.blockchain with an empty blockchain.
-     * Initializes the blockchain with an empty array list.
+     * Initializes the blockchain with an empty list of blocks.
      */
     public BlockChain() {
-        this.chain = new ArrayList<>();
+        this(DEFAULT_DATABASE_URL);
     }
 
     /**
-     * Creates the 'blocks' table in the database if it does not exist.
-     * The table schema includes columns for id, block_index, timestamp, data, previous_hash, and hash.
-     * If the table already exists, no action is taken.
+     * Constructs an empty blockchain that persists to the given database.
+     * The blockchain owns the underlying store and closes it in {@link #close()}.
+     *
+     * @param databaseUrl The JDBC URL of the SQLite database, e.g. {@code jdbc:sqlite:/path/to/chain.db}.
      */
-    public void createTableIfNotExists() {
-        try (Connection connection = DriverManager.getConnection(DATABASE_URL); Statement statement = connection.createStatement()) {
-            statement.execute("CREATE TABLE IF NOT EXISTS blocks ( " +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "block_index INT NOT NULL," +
-                    "timestamp TEXT NOT NULL," +
-                    "data TEXT NOT NULL," +
-                    "previous_hash TEXT NOT NULL," +
-                    "hash TEXT NOT NULL)");
+    public BlockChain(String databaseUrl) {
+        this(new SqliteBlockStore(databaseUrl), true);
+    }
 
-            logger.log(Level.INFO, "Table 'blocks' created or already exists.");
+    /**
+     * Constructs an empty blockchain that persists to the given store, e.g. a {@link SqliteBlockStore} or a
+     * {@link SegmentLogStore}.
+     * The store is shared with the caller and is not closed by {@link #close()}.
+     *
+     * @param store The store used to persist blocks.
+     */
+    public BlockChain(BlockStore store) {
+        this(store, false);
+    }
+
+    private BlockChain(BlockStore store, boolean ownsStore) {
+        this.store = store;
+        this.ownsStore = ownsStore;
+    }
+
+    /**
+     * Gets the store used to persist blocks.
+     *
+     * @return The block store.
+     */
+    public BlockStore getStore() {
+        return store;
+    }
 
+    /**
+     * Sets the SQLite journal mode of the underlying store. Has no effect on other stores.
+     *
+     * @param journalMode The journal mode to use.
+     */
+    public void setJournalMode(JournalMode journalMode) {
+        if (!(store instanceof SqliteBlockStore)) {
+            logger.log(Level.WARNING, "Journal mode only applies to SQLite stores.");
+            return;
+        }
+        try {
+            ((SqliteBlockStore) store).setJournalMode(journalMode);
         } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error setting the journal mode", e);
+        }
+    }
+
+    /**
+     * Sets the SQLite synchronous level of the underlying store. Has no effect on other stores.
+     *
+     * @param synchronousMode The synchronous level to use.
+     */
+    public void setSynchronousMode(SynchronousMode synchronousMode) {
+        if (!(store instanceof SqliteBlockStore)) {
+            logger.log(Level.WARNING, "Synchronous level only applies to SQLite stores.");
+            return;
+        }
+        try {
+            ((SqliteBlockStore) store).setSynchronousMode(synchronousMode);
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error setting the synchronous level", e);
+        }
+    }
+
+    /**
+     * Compresses the payloads of blocks saved to the underlying SQLite store from now on. Blocks loaded from the
+     * store decompress their data when it is first read, and hashes are computed over the uncompressed data, so
+     * validation is unaffected. Has no effect on other stores.
+     *
+     * @param codec The codec, or {@code null} to save payloads uncompressed.
+     * @see SqliteBlockStore#setPayloadCodec(PayloadCodec)
+     */
+    public void setPayloadCompression(PayloadCodec codec) {
+        if (!(store instanceof SqliteBlockStore)) {
+            logger.log(Level.WARNING, "Payload compression only applies to SQLite stores.");
+            return;
+        }
+        ((SqliteBlockStore) store).setPayloadCodec(codec);
+    }
+
+    /**
+     * Creates the 'blocks' table in the database if it does not exist.
+     * The table schema includes columns for id, block_index, timestamp, data, previous_hash, hash, and hash_scheme.
+     * Unique indexes on block_index and hash are also created, so duplicate inserts are ignored by the database
+     * and lookups by index or hash do not scan the table.
+     * If the table already exists, it is migrated to the current schema.
+     */
+    public void createTableIfNotExists() {
+        try {
+            store.createSchema();
+            logger.log(Level.INFO, "Table 'blocks' created or already exists.");
+        } catch (BlockStoreException e) {
             logger.log(Level.SEVERE, "Error creating Database Table 'blocks'", e);
         }
     }
@@ -60,154 +176,1128 @@ public class BlockChain {
 
     /**
      * Adds a new block to the blockchain.
+     * This method is thread-safe; concurrent calls are serialized.
      *
      * @param newBlock The block to be added to the blockchain.
      * @throws IllegalArgumentException If the new block is invalid or cannot be added to the chain.
      */
     public void addBlock(Block newBlock) {
-        if (chain.isEmpty()) {
-            chain.add(newBlock);
-        } else {
+        long start = System.nanoTime();
+        synchronized (appendLock) {
+            Block lastBlock = resident.blocks.last();
+            VerificationReport.Reason reason = lastBlock == null ? null : rejectionReason(newBlock, lastBlock);
+            if (reason != null) {
+                metricsListener.onBlockRejected(newBlock, reason);
+                String errorMessage = "Invalid block. Unable to add to the chain. Details:\n +" +
+                        "Index check: " + (lastBlock.getIndex() + 1 != newBlock.getIndex()) + "\n" +
+                        "Hash check: " + !lastBlock.getHash().equals(newBlock.getPreviousHash()) + "\n" +
+                        "Valid hash check: " + !isValidHash(newBlock) + "\n" +
+                        "Merkle root check: " + !newBlock.hasValidMerkleRoot();
+                throw new IllegalArgumentException(errorMessage);
+            }
+
+            append(newBlock);
+        }
+        metricsListener.onBlockAppended(newBlock, System.nanoTime() - start);
+        if (blockLogging) {
+            logger.log(Level.INFO, "A new block has been added to the blockchain");
+        }
+    }
+
+    /**
+     * Finds the first check a new block fails against the current tip.
+     *
+     * @return The reason the block must be rejected, or {@code null} if it may be appended.
+     */
+    private VerificationReport.Reason rejectionReason(Block newBlock, Block lastBlock) {
+        if (lastBlock.getIndex() + 1 != newBlock.getIndex()) {
+            return VerificationReport.Reason.INDEX_MISMATCH;
+        }
+        if (!lastBlock.getHash().equals(newBlock.getPreviousHash())) {
+            return VerificationReport.Reason.PREVIOUS_HASH_MISMATCH;
+        }
+        if (!isValidHash(newBlock)) {
+            return newBlock.hasValidHash() ? VerificationReport.Reason.INSUFFICIENT_WORK : VerificationReport.Reason.HASH_MISMATCH;
+        }
+        if (!newBlock.hasValidMerkleRoot()) {
+            return VerificationReport.Reason.MERKLE_ROOT_MISMATCH;
+        }
+        return null;
+    }
+
+    /**
+     * Adds a new block to the blockchain and saves it to the store.
+     * With {@link #enableWriteBehind write-behind} enabled, the block is queued for a background group commit and
+     * this method returns as soon as it is appended, so append latency does not depend on the store's sync
+     * latency; if the queue is full, it waits for space while holding up other appends. Otherwise the block is
+     * saved before this method returns. Blocks whose index already exists in the store are skipped.
+     *
+     * @param newBlock The block to be added and saved.
+     * @return A future that completes once the block is durable in the store, or completes exceptionally with a
+     *         {@link BlockStoreException} if it cannot be saved.
+     * @throws IllegalArgumentException If the new block is invalid or cannot be added to the chain.
+     * @throws InterruptedException     If the calling thread is interrupted while waiting for space in the queue.
+     */
+    public CompletableFuture<Void> addAndSave(Block newBlock) throws InterruptedException {
+        synchronized (appendLock) {
+            addBlock(newBlock);
+            GroupCommitWriter currentWriter = writer;
+            if (currentWriter != null) {
+                return currentWriter.submit(newBlock);
+            }
+            CompletableFuture<Void> saved = new CompletableFuture<>();
             try {
-                Block lastBlock = chain.get(chain.size() - 1);
-                if (
-                        lastBlock.getIndex() + 1 != newBlock.getIndex() ||
-                                !lastBlock.getHash().equals(newBlock.getPreviousHash()) ||
-                                !isValidHash(newBlock)
-                ) {
-                    String errorMessage = "Invalid block. Unable to add to the chain. Details:\n +" +
-                            "Index check: " + (lastBlock.getIndex() + 1 != newBlock.getIndex()) + "\n" +
-                            "Hash check: " + !lastBlock.getHash().equals(newBlock.getPreviousHash()) + "\n" +
-                            "Valid hash check: " + !isValidHash(newBlock);
-                    throw new IllegalArgumentException(errorMessage);
-                }
+                store.insert(newBlock);
+                saved.complete(null);
+            } catch (BlockStoreException e) {
+                saved.completeExceptionally(e);
+            }
+            return saved;
+        }
+    }
 
-                chain.add(newBlock);
-                logger.log(Level.INFO, "A new block has been added to the blockchain");
+    /**
+     * Adds consecutive blocks to the blockchain and saves them to the store, e.g. a batch received from a peer.
+     * Every block is checked before any is appended, so a rejected block leaves the chain unchanged. With
+     * {@link #enableWriteBehind write-behind} enabled, the blocks are queued for a background group commit like
+     * {@link #addAndSave(Block)} does. Otherwise they are saved in a single transaction before they are appended, so
+     * a failed write leaves the chain unchanged as well. Blocks whose index already exists in the store are skipped.
+     *
+     * @param blocks The blocks to be added and saved, in chain order.
+     * @throws IllegalArgumentException If one of the blocks is invalid or cannot be added to the chain.
+     * @throws BlockStoreException      If write-behind is not enabled and the blocks cannot be saved.
+     * @throws InterruptedException     If the calling thread is interrupted while waiting for space in the queue.
+     */
+    void addAllAndSave(List<Block> blocks) throws InterruptedException {
+        long start = System.nanoTime();
+        synchronized (appendLock) {
+            Block previous = resident.blocks.last();
+            for (Block block : blocks) {
+                VerificationReport.Reason reason = previous == null ? null : rejectionReason(block, previous);
+                if (reason != null) {
+                    metricsListener.onBlockRejected(block, reason);
+                    throw new IllegalArgumentException("Invalid block " + block.getIndex() + ". Unable to add to the chain: " + reason + ".");
+                }
+                previous = block;
+            }
+            GroupCommitWriter currentWriter = writer;
+            if (currentWriter == null) {
+                store.insertAll(blocks);
+            }
+            for (Block block : blocks) {
+                append(block);
+                if (currentWriter != null) {
+                    currentWriter.submit(block);
+                }
+            }
+        }
+        long elapsedNanos = (System.nanoTime() - start) / Math.max(1, blocks.size());
+        for (Block block : blocks) {
+            metricsListener.onBlockAppended(block, elapsedNanos);
+        }
+        if (blockLogging) {
+            logger.log(Level.INFO, blocks.size() + " new blocks have been added to the blockchain");
+        }
+    }
 
-            } catch (IndexOutOfBoundsException e) {
-                logger.log(Level.SEVERE, "Error: Chain is empty. Unable to get the last block", e);
+    /**
+     * Saves blocks added with {@link #addAndSave(Block)} on a background thread, committing them in groups of up
+     * to maxBatchSize blocks or whatever has arrived within maxDelay of a group's first block.
+     * An earlier write-behind writer is flushed and closed first.
+     *
+     * @param queueCapacity The number of blocks that may wait to be saved before appends block.
+     * @param maxBatchSize  The largest number of blocks committed together.
+     * @param maxDelay      The longest time a block waits for others to join its group.
+     * @param unit          The unit of maxDelay.
+     * @throws IllegalArgumentException If queueCapacity or maxBatchSize is not positive, or maxDelay is negative.
+     * @see GroupCommitWriter
+     */
+    public void enableWriteBehind(int queueCapacity, int maxBatchSize, long maxDelay, TimeUnit unit) {
+        synchronized (appendLock) {
+            GroupCommitWriter newWriter = new GroupCommitWriter(store, queueCapacity, maxBatchSize, maxDelay, unit);
+            if (writer != null) {
+                writer.close();
             }
+            writer = newWriter;
         }
     }
 
+    /**
+     * Gets the writer that saves blocks in the background.
+     *
+     * @return The write-behind writer, or {@code null} if write-behind is not enabled.
+     */
+    public GroupCommitWriter getWriteBehindWriter() {
+        return writer;
+    }
+
+    /**
+     * Commits the blocks queued for write-behind without waiting for the rest of their group.
+     *
+     * @return A future that completes once every block added so far with {@link #addAndSave(Block)} is durable.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for space in the queue.
+     */
+    public CompletableFuture<Void> flush() throws InterruptedException {
+        GroupCommitWriter currentWriter = writer;
+        return currentWriter == null ? CompletableFuture.completedFuture(null) : currentWriter.flush();
+    }
+
     /**
      * Saves the provided block to the 'blocks' table in the database.
+     * Blocks whose index already exists in the database are skipped.
      *
      * @param block The block to be saved to the database.
      */
     public void saveToDatabase(Block block) {
-
-        try (Connection connection = DriverManager.getConnection(DATABASE_URL)) {
-            if (blockExistsInDatabase(connection, block.getIndex())) {
+        try {
+            if (!store.insert(block)) {
                 logger.log(Level.WARNING, "Block with index " + block.getIndex() + " already exists in the database. Skipped insertion");
                 return;
             }
 
+            if (blockLogging) {
+                logger.log(Level.INFO, "New block has been saved to the database.");
+            }
+        } catch (BlockStoreException e) {
+            logger.log(Level.SEVERE, "Error inserting values into the database", e);
+        }
+    }
 
-             try (PreparedStatement statement = connection.prepareStatement(
-                     "INSERT INTO blocks (block_index, timestamp, data, previous_hash, hash) VALUES (?, ?, ?, ?, ?)")) {
-                 statement.setInt(1, block.getIndex());
-                 statement.setString(2, block.getTimestamp().toString());
-                 statement.setString(3, block.getData());
-                 statement.setString(4, block.getPreviousHash());
-                 statement.setString(5, block.getHash());
-                 statement.executeUpdate();
-
-                 logger.log(Level.INFO, "New block has been saved to the database.");
-             }
-        } catch (SQLException e) {
+    /**
+     * Saves the provided blocks to the 'blocks' table in a single transaction.
+     * All blocks are written over one connection using JDBC batch inserts; blocks whose index
+     * already exists in the database are skipped. If any insert fails the whole transaction is rolled back.
+     *
+     * @param blocks The blocks to be saved to the database.
+     * @return The number of blocks that were inserted.
+     */
+    public int saveAll(Collection<Block> blocks) {
+        try {
+            int inserted = store.insertAll(blocks);
+            logger.log(Level.INFO, inserted + " of " + blocks.size() + " blocks have been saved to the database.");
+            return inserted;
+        } catch (BlockStoreException e) {
             logger.log(Level.SEVERE, "Error inserting values into the database", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Saves the blocks of this chain whose index lies in the given range in a single transaction.
+     *
+     * @param fromIndex The lowest block index to save, inclusive.
+     * @param toIndex   The highest block index to save, exclusive.
+     * @return The number of blocks that were inserted.
+     * @throws IllegalArgumentException If fromIndex is greater than toIndex.
+     * @see #saveAll(Collection)
+     */
+    public int saveRange(int fromIndex, int toIndex) {
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException("fromIndex (" + fromIndex + ") must not be greater than toIndex (" + toIndex + ").");
+        }
+
+        ArrayList<Block> blocks = new ArrayList<>();
+        for (Block block : resident.blocks.snapshot()) {
+            if (block.getIndex() >= fromIndex && block.getIndex() < toIndex) {
+                blocks.add(block);
+            }
         }
+        return saveAll(blocks);
     }
 
     /**
      * Checks whether a block with a given index already exists in the database.
      *
-     * @param connection The database connection.
-     * @param blockIndex blockIndex The index of the block to check.
+     * @param blockIndex The index of the block to check.
      * @return {@code true} if a block with the same index exists in the database, {@code false} otherwise.
-     * @throws SQLException SQLException if a database error occurs.
      */
-    private boolean blockExistsInDatabase(Connection connection, int blockIndex) throws SQLException {
-        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM blocks WHERE block_index = ?")) {
-            statement.setInt(1, blockIndex);
-            try (ResultSet resultSet = statement.executeQuery()) {
-                return resultSet.next();
-            }
+    public boolean blockExistsInDatabase(int blockIndex) {
+        try {
+            return store.contains(blockIndex);
+        } catch (BlockStoreException e) {
+            logger.log(Level.SEVERE, "Error checking the database for block " + blockIndex, e);
+            return false;
         }
     }
 
     /**
-     * Loads blocks from the 'blocks' table in the database and populates the chain.
+     * Loads blocks from the 'blocks' table in the database and populates the chain in index order.
      * The chain is cleared before loading to avoid duplication.
      */
     public void loadFromDatabase() {
-        chain.clear();
+        synchronized (appendLock) {
+            reset();
+            appendFromDatabase(0);
+        }
+    }
 
-        try (Connection connection = DriverManager.getConnection(DATABASE_URL);
-             Statement statement = connection.createStatement();
-             ResultSet resultSet = statement.executeQuery("SELECT * FROM blocks")) {
+    /**
+     * Restores the chain from the latest checkpoint in the store.
+     * Only the checkpoint's tip and the blocks stored after it are loaded into memory and verified; the blocks
+     * before the tip are trusted and read from the store on demand by {@link #getBlockByIndex(int)} and
+     * {@link #getBlockByHash(BlockHash)}. If there is no checkpoint, its seal is broken or the stored tip no
+     * longer matches it, the whole chain is loaded and verified as by {@link #loadFromDatabase()}.
+     *
+     * @return The verification report of the blocks that were loaded.
+     */
+    public VerificationReport loadFromCheckpoint() {
+        synchronized (appendLock) {
+            Checkpoint checkpoint;
+            try {
+                checkpoint = store.loadLatestCheckpoint();
+            } catch (BlockStoreException e) {
+                logger.log(Level.SEVERE, "Error loading the latest checkpoint", e);
+                checkpoint = null;
+            }
+            if (checkpoint != null && !checkpoint.isSealValid()) {
+                logger.log(Level.WARNING, checkpoint + " has an invalid seal, verifying the whole chain");
+                checkpoint = null;
+            }
 
-            while (resultSet.next()) {
-                int index = resultSet.getInt("block_index");
-                String timestamp = resultSet.getString("timestamp");
-                String data = resultSet.getString("data");
-                String previousHash = resultSet.getString("previous_hash");
-                String hash = resultSet.getString("hash");
+            if (checkpoint != null) {
+                Block tip;
+                try {
+                    tip = store.findByIndex(checkpoint.getTipIndex());
+                } catch (BlockStoreException e) {
+                    logger.log(Level.SEVERE, "Error loading block " + checkpoint.getTipIndex(), e);
+                    tip = null;
+                }
+                if (tip != null && tip.getHash().equals(checkpoint.getTipHash())) {
+                    reset();
+                    resident = new Resident(newBlockList(), Math.toIntExact(checkpoint.getBlockCount() - 1));
+                    trustedTipIndex = checkpoint.getTipIndex();
+                    appendFromDatabase(checkpoint.getTipIndex());
+                    return verifyChain();
+                }
+                logger.log(Level.WARNING, checkpoint + " does not match the stored chain, verifying the whole chain");
+            }
+            loadFromDatabase();
+            return verifyChain();
+        }
+    }
 
-                chain.add(new Block(index, timestamp, data, previousHash, hash));
+    /**
+     * Verifies the blocks added since the latest checkpoint and records a new checkpoint at the current tip.
+     * The new checkpoint's prefix digest extends the previous one, so history before the previous checkpoint is
+     * neither verified nor read again. If the chain does not contain the previous checkpoint's tip, the whole
+     * chain is verified instead. The tip must already be saved to the store.
+     *
+     * @return The new checkpoint.
+     * @throws IllegalStateException If the chain is empty, fails verification or its tip has not been saved.
+     * @throws BlockStoreException   If the checkpoint or history outside the memory window cannot be read, or the
+     *                               checkpoint cannot be stored.
+     */
+    public Checkpoint checkpoint() {
+        synchronized (appendLock) {
+            if (resident.blocks.isEmpty()) {
+                throw new IllegalStateException("Cannot checkpoint an empty chain.");
             }
 
-        } catch (SQLException e) {
+            Checkpoint previous = store.loadLatestCheckpoint();
+            if (previous != null) {
+                Block previousTip = getBlockByIndex(previous.getTipIndex());
+                if (previousTip == null || !previousTip.getHash().equals(previous.getTipHash())) {
+                    previous = null;
+                }
+            }
+
+            Checkpoint.Builder builder = new Checkpoint.Builder(previous);
+            VerificationReport report = verifyFrom(previous == null ? 0 : previous.getTipIndex(), builder);
+            metricsListener.onChainVerified(report);
+            if (!report.isValid()) {
+                throw new IllegalStateException("Cannot checkpoint an invalid chain: " + report);
+            }
+            Block tip = builder.getTip();
+            if (!store.contains(tip.getIndex())) {
+                throw new IllegalStateException("Block " + tip.getIndex() + " must be saved before it is checkpointed.");
+            }
+
+            Checkpoint checkpoint = builder.build();
+            store.saveCheckpoint(checkpoint);
+            logger.log(Level.INFO, "Saved " + checkpoint);
+            return checkpoint;
+        }
+    }
+
+    /**
+     * Writes the chain to a {@link ChainSnapshot}, e.g. a backup file or a socket to a node that is bootstrapping.
+     * Blocks that are no longer held in memory are streamed from the store, and the transactions of blocks whose
+     * body is not loaded are read from the store as well.
+     *
+     * @param channel The channel the snapshot is written to. It is not closed.
+     * @return The number of blocks written.
+     * @throws BlockStoreException If the store cannot be read or the channel cannot be written.
+     */
+    public long exportSnapshot(WritableByteChannel channel) {
+        Resident current = resident;
+        List<Block> recent = current.blocks.snapshot();
+        ChainSnapshot snapshot = new ChainSnapshot(verifier);
+        if (current.prefixSize == 0 || recent.isEmpty()) {
+            return snapshot.export(recent.iterator(), this::getTransactions, channel);
+        }
+        int firstResident = recent.get(0).getIndex();
+        try (Stream<Block> history = store.stream(0, DEFAULT_FETCH_SIZE)) {
+            Stream<Block> blocks = Stream.concat(history.filter(block -> block.getIndex() < firstResident), recent.stream());
+            return snapshot.export(blocks.iterator(), this::getTransactions, channel);
+        }
+    }
+
+    /**
+     * Bootstraps the chain from a snapshot written by {@link #exportSnapshot(WritableByteChannel)}.
+     * The snapshot is verified and written to the store in batches as described in
+     * {@link ChainSnapshot#importInto(ReadableByteChannel, BlockStore)}, and the chain is then reloaded from the
+     * store as by {@link #loadFromDatabase()}. Set a {@link #setMemoryWindow(int) memory window} first to bootstrap
+     * from a snapshot larger than memory.
+     *
+     * @param channel The channel the snapshot is read from. It is not closed.
+     * @return The verification report of the snapshot's blocks.
+     * @throws BlockStoreException If the snapshot is corrupt, truncated or of an unsupported version, the channel
+     *                             cannot be read or the blocks cannot be stored.
+     */
+    public VerificationReport importSnapshot(ReadableByteChannel channel) {
+        synchronized (appendLock) {
+            VerificationReport report = new ChainSnapshot(verifier).importInto(channel, store);
+            metricsListener.onChainVerified(report);
+            reset();
+            appendFromDatabase(0);
+            return report;
+        }
+    }
+
+    /**
+     * Clears the chain. Callers must hold the append lock.
+     */
+    private void reset() {
+        resident = new Resident(newBlockList(), 0);
+        trustedTipIndex = -1;
+        nextTrimSize = trimThreshold(memoryWindow);
+    }
+
+    /**
+     * Limits the number of recent blocks held in memory. Once the chain holds twice as many blocks as the window,
+     * the blocks before the window are dropped from memory, provided the store already holds them: the last block
+     * to be dropped must be stored, and with {@link #enableWriteBehind write-behind} every block submitted up to it
+     * must have been written, so a failed group never leaves blocks that exist nowhere. Dropped blocks are read
+     * back from the store when requested, through a cache of {@link #setBlockCacheCapacity(int) bounded size}.
+     * Appends only need the tip, so they are not slowed down, and memory stays flat as the chain grows.
+     *
+     * @param windowSize The number of recent blocks to keep, or zero to keep every block in memory.
+     * @throws IllegalArgumentException If windowSize is negative.
+     */
+    public void setMemoryWindow(int windowSize) {
+        if (windowSize < 0) {
+            throw new IllegalArgumentException("Memory window cannot be negative.");
+        }
+        synchronized (appendLock) {
+            memoryWindow = windowSize;
+            nextTrimSize = trimThreshold(windowSize);
+            if (windowSize > 0 && resident.blocks.size() > windowSize) {
+                trimToWindow();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of recent blocks held in memory.
+     *
+     * @return The window size, or zero if every block is kept in memory.
+     */
+    public int getMemoryWindow() {
+        return memoryWindow;
+    }
+
+    /**
+     * Replaces the cache of blocks read from the store with an empty cache of the given capacity.
+     *
+     * @param capacity The maximum number of blocks to cache. Zero disables caching.
+     * @throws IllegalArgumentException If capacity is negative.
+     */
+    public void setBlockCacheCapacity(int capacity) {
+        blockCache = new BlockCache(capacity);
+    }
+
+    /**
+     * Gets the cache of blocks that are no longer held in memory, including its hit and miss statistics.
+     *
+     * @return The block cache.
+     */
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    private static int trimThreshold(int windowSize) {
+        return windowSize == 0 ? Integer.MAX_VALUE : (int) Math.min(2L * windowSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Drops the blocks before the memory window once the store holds them. Callers must hold the append lock.
+     */
+    private void trimToWindow() {
+        Resident current = resident;
+        List<Block> blocks = current.blocks.snapshot();
+        int dropped = blocks.size() - memoryWindow;
+        Block boundary = blocks.get(dropped - 1);
+        GroupCommitWriter currentWriter = writer;
+        boolean stored;
+        try {
+            stored = (currentWriter == null || currentWriter.isPersistedThrough(boundary.getIndex()))
+                    && store.contains(boundary.getIndex());
+        } catch (BlockStoreException e) {
+            logger.log(Level.SEVERE, "Error checking the database for block " + boundary.getIndex(), e);
+            stored = false;
+        }
+        if (!stored) {
+            nextTrimSize = (int) Math.min((long) blocks.size() + memoryWindow, Integer.MAX_VALUE);
+            return;
+        }
+
+        BlockList window = newBlockList();
+        for (Block block : blocks.subList(dropped, blocks.size())) {
+            window.add(block);
+        }
+        resident = new Resident(window, current.prefixSize + dropped);
+        nextTrimSize = trimThreshold(memoryWindow);
+    }
+
+    private BlockList newBlockList() {
+        return columnar ? new ColumnarBlockList() : new ArrayBlockList();
+    }
+
+    /**
+     * Chooses how blocks are held in memory. The blocks already in the chain are copied to the new representation.
+     * In columnar storage, block fields are kept in primitive arrays, hashes are packed as bytes and payloads are
+     * written to a shared arena, which needs a fraction of the memory of block objects and keeps the number of
+     * objects on the heap constant. Blocks returned by the chain are then built on demand, so repeated reads of
+     * the same block return equal but distinct objects.
+     *
+     * @param columnar True to store blocks in columns, false to keep them as objects.
+     */
+    public void setColumnarStorage(boolean columnar) {
+        synchronized (appendLock) {
+            if (this.columnar == columnar) {
+                return;
+            }
+            this.columnar = columnar;
+            Resident current = resident;
+            BlockList blocks = newBlockList();
+            for (Block block : current.blocks.snapshot()) {
+                blocks.add(block);
+            }
+            resident = new Resident(blocks, current.prefixSize);
+        }
+    }
+
+    /**
+     * Checks whether blocks are held in memory in columnar storage.
+     *
+     * @return True if blocks are stored in columns, false if they are kept as objects.
+     */
+    public boolean isColumnarStorage() {
+        return columnar;
+    }
+
+    /**
+     * Loads only the blocks stored after the current tip of the chain and appends them.
+     * The cost of a refresh is proportional to the number of new blocks rather than the length of the chain.
+     *
+     * @return The number of blocks appended to the chain.
+     */
+    public int syncFromDatabase() {
+        synchronized (appendLock) {
+            Block lastBlock = resident.blocks.last();
+            return appendFromDatabase(lastBlock == null ? 0 : lastBlock.getIndex() + 1);
+        }
+    }
+
+    /**
+     * Streams the blocks stored in the database with an index of at least fromIndex, in index order.
+     * Blocks are read through a cursor as the stream is consumed and are not added to the chain.
+     * The stream holds a database connection and must be closed, e.g. with try-with-resources.
+     *
+     * @param fromIndex The lowest block index to return.
+     * @param fetchSize The number of rows to fetch per round trip.
+     * @return An ordered stream of blocks.
+     * @throws BlockStoreException If the query fails.
+     */
+    public Stream<Block> streamFromDatabase(int fromIndex, int fetchSize) {
+        return store.stream(fromIndex, fetchSize);
+    }
+
+    private int appendFromDatabase(int fromIndex) {
+        int sizeBefore = size();
+        try (Stream<Block> blocks = store.stream(fromIndex, DEFAULT_FETCH_SIZE)) {
+            blocks.forEach(this::append);
+        } catch (BlockStoreException e) {
             logger.log(Level.SEVERE, "Error loading values from the database", e);
         }
+        int loaded = size() - sizeBefore;
+        metricsListener.onBlocksLoaded(loaded);
+        return loaded;
+    }
+
+    /**
+     * Appends a block to the chain, which indexes it by hash and timestamp. Callers must hold the append lock.
+     */
+    private void append(Block block) {
+        BlockList blocks = resident.blocks;
+        blocks.add(block);
+        if (blocks.size() >= nextTrimSize) {
+            trimToWindow();
+        }
+    }
+
+    /**
+     * Gets the block with the given index.
+     * Blocks are located by their offset from the first block, falling back to a binary search when the
+     * loaded chain has gaps. Only block indexes are read while searching, so in columnar storage only the block
+     * returned is built. Blocks that are no longer held in memory, because they precede a checkpoint or the
+     * memory window, are read from the block cache or the store.
+     *
+     * @param index The index of the block.
+     * @return The block, or {@code null} if no block with the index is held in memory or precedes it in the store.
+     */
+    public Block getBlockByIndex(int index) {
+        Resident current = resident;
+        List<Block> blocks = current.blocks.snapshot();
+        if (blocks.isEmpty()) {
+            return null;
+        }
+        if (current.prefixSize > 0 && index < current.blocks.indexAt(0)) {
+            return findInHistory(index);
+        }
+        int position = current.blocks.positionOf(blocks.size(), index);
+        return position < blocks.size() && current.blocks.indexAt(position) == index ? blocks.get(position) : null;
+    }
+
+    /**
+     * Gets consecutive blocks starting at the given index, e.g. to serve them to a peer. Blocks that are no longer
+     * held in memory are streamed from the store rather than looked up one by one.
+     *
+     * @param fromIndex The lowest block index to return.
+     * @param count     The largest number of blocks to return.
+     * @return The blocks with an index of at least fromIndex in chain order, at most count of them.
+     * @throws BlockStoreException If blocks outside the memory window cannot be read.
+     */
+    List<Block> getBlocks(int fromIndex, int count) {
+        Resident current = resident;
+        List<Block> recent = current.blocks.snapshot();
+        List<Block> blocks = new ArrayList<>(Math.min(count, HISTORY_BATCH_SIZE));
+        int firstResident = recent.isEmpty() ? Integer.MAX_VALUE : current.blocks.indexAt(0);
+        if (current.prefixSize > 0 && fromIndex < firstResident) {
+            try (Stream<Block> history = store.stream(fromIndex, Math.min(count, DEFAULT_FETCH_SIZE))) {
+                Iterator<Block> iterator = history.iterator();
+                while (blocks.size() < count && iterator.hasNext()) {
+                    Block block = iterator.next();
+                    if (block.getIndex() >= firstResident) {
+                        break;
+                    }
+                    blocks.add(block);
+                }
+            }
+        }
+        int position = current.blocks.positionOf(recent.size(), Math.max(fromIndex, firstResident));
+        while (blocks.size() < count && position < recent.size()) {
+            blocks.add(recent.get(position++));
+        }
+        return blocks;
+    }
+
+    /**
+     * Gets the block with the given hash.
+     * Blocks that are no longer held in memory, because they precede a checkpoint or the memory window, are read
+     * from the block cache or the store.
+     *
+     * @param hash The hash of the block.
+     * @return The block, or {@code null} if no block with the hash is held in memory or precedes it in the store.
+     */
+    public Block getBlockByHash(BlockHash hash) {
+        Resident current = resident;
+        Block block = current.blocks.findByHash(hash);
+        if (block != null || current.prefixSize == 0) {
+            return block;
+        }
+        BlockCache cache = blockCache;
+        block = cache.get(hash);
+        metricsListener.onBlockCacheLookup(block != null);
+        if (block != null) {
+            return block;
+        }
+        try {
+            block = store.findByHash(hash.toHex());
+        } catch (BlockStoreException e) {
+            logger.log(Level.SEVERE, "Error loading block " + hash + " from the database", e);
+            return null;
+        }
+        if (block != null) {
+            cache.put(block);
+        }
+        return block;
+    }
+
+    private Block findInHistory(int index) {
+        BlockCache cache = blockCache;
+        Block block = cache.get(index);
+        metricsListener.onBlockCacheLookup(block != null);
+        if (block != null) {
+            return block;
+        }
+        try {
+            block = store.findByIndex(index);
+        } catch (BlockStoreException e) {
+            logger.log(Level.SEVERE, "Error loading block " + index + " from the database", e);
+            return null;
+        }
+        if (block != null) {
+            cache.put(block);
+        }
+        return block;
+    }
+
+    /**
+     * Gets the block with the given hexadecimal hash.
+     *
+     * @param hash The 64-character hexadecimal hash of the block.
+     * @return The block, or {@code null} if the hash is malformed or no block with the hash can be found.
+     * @see #getBlockByHash(BlockHash)
+     */
+    public Block getBlockByHash(String hash) {
+        if (!HexCodec.isHex(hash, BlockHash.LENGTH)) {
+            return null;
+        }
+        return getBlockByHash(BlockHash.fromHex(hash));
+    }
+
+    /**
+     * Finds a page of the blocks that match a query, in the query's order.
+     * Time range queries over the blocks held in memory are answered from an index of block timestamps in object
+     * storage and from the timestamp column in {@link #setColumnarStorage(boolean) columnar storage}, while payload
+     * queries scan the blocks held in memory. Matching blocks that are no longer held in memory,
+     * because they precede a checkpoint or the memory window, are found through the store's indexes and merged in.
+     *
+     * @param query The query to run.
+     * @param after The last block of the previous page, or {@code null} for the first page.
+     * @param limit The largest number of blocks to return.
+     * @return The matching blocks that follow after, at most limit of them.
+     * @throws IllegalArgumentException If limit is not positive.
+     * @throws BlockStoreException      If blocks that are not held in memory cannot be read.
+     */
+    public List<Block> findBlocks(BlockQuery query, Block after, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive.");
+        }
+        Resident current = resident;
+        List<Block> blocks = current.blocks.snapshot();
+        List<Block> recent = findRecent(query, current.blocks, blocks, after, limit);
+        if (current.prefixSize == 0 || blocks.isEmpty()) {
+            return recent;
+        }
+        List<Block> history = store.find(query.before(current.blocks.indexAt(0)), after, limit);
+        List<Block> page = new ArrayList<>(Math.min(limit, history.size() + recent.size()));
+        Iterator<Block> merged = merge(history.iterator(), recent.iterator(), query);
+        while (page.size() < limit && merged.hasNext()) {
+            page.add(merged.next());
+        }
+        return page;
+    }
+
+    /**
+     * Streams every block that matches a query, in the query's order.
+     * Matching blocks held in memory are collected up front, while those that are no longer held in memory are
+     * read through a store cursor as the stream is consumed. The stream may hold a database connection and must
+     * be closed, e.g. with try-with-resources.
+     *
+     * @param query The query to run.
+     * @return An ordered stream of the matching blocks.
+     * @throws BlockStoreException If the query fails.
+     * @see #findBlocks(BlockQuery, Block, int)
+     */
+    public Stream<Block> streamBlocks(BlockQuery query) {
+        Resident current = resident;
+        List<Block> blocks = current.blocks.snapshot();
+        List<Block> recent = findRecent(query, current.blocks, blocks, null, Integer.MAX_VALUE);
+        if (current.prefixSize == 0 || blocks.isEmpty()) {
+            return recent.stream();
+        }
+        Stream<Block> history = store.stream(query.before(current.blocks.indexAt(0)), DEFAULT_FETCH_SIZE);
+        Iterator<Block> merged = merge(history.iterator(), recent.iterator(), query);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(history::close);
+    }
+
+    /**
+     * Finds the blocks of a snapshot that match a query and follow after, in the query's order.
+     *
+     * @param list   The list the snapshot was taken from, used to find blocks by index or time without building them.
+     * @param blocks The snapshot.
+     */
+    private List<Block> findRecent(BlockQuery query, BlockList list, List<Block> blocks, Block after, int limit) {
+        if (blocks.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (query.getKind() != BlockQuery.Kind.TIME_RANGE) {
+            return blocks.stream()
+                    .filter(block -> query.matches(block) && (after == null || query.compare(block, after) > 0))
+                    .sorted(query::compare)
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        }
+        return list.positionsBetween(blocks.size(), query.getFrom(), query.getTo(), after)
+                .mapToObj(blocks::get)
+                .filter(block -> query.matches(block) && (after == null || query.compare(block, after) > 0))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Merges two iterators that are each in the query's order into one in the query's order.
+     */
+    private static Iterator<Block> merge(Iterator<Block> first, Iterator<Block> second, BlockQuery query) {
+        return new Iterator<Block>() {
+            private Block nextFirst;
+            private Block nextSecond;
+
+            @Override
+            public boolean hasNext() {
+                if (nextFirst == null && first.hasNext()) {
+                    nextFirst = first.next();
+                }
+                if (nextSecond == null && second.hasNext()) {
+                    nextSecond = second.next();
+                }
+                return nextFirst != null || nextSecond != null;
+            }
+
+            @Override
+            public Block next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Block block;
+                if (nextSecond == null || nextFirst != null && query.compare(nextFirst, nextSecond) <= 0) {
+                    block = nextFirst;
+                    nextFirst = null;
+                } else {
+                    block = nextSecond;
+                    nextSecond = null;
+                }
+                return block;
+            }
+        };
+    }
+
+    /**
+     * Gets the transactions of a transaction block, loading them from the database if only the block's header
+     * is held in memory.
+     *
+     * @param blockIndex The index of the block.
+     * @return The transactions, or an empty list if the block is not a transaction block or cannot be found.
+     */
+    public List<String> getTransactions(int blockIndex) {
+        Block block = getBlockByIndex(blockIndex);
+        if (block != null && (block.isBodyLoaded() || !block.isTransactionBlock())) {
+            return block.getTransactions();
+        }
+        try {
+            return store.loadTransactions(blockIndex);
+        } catch (BlockStoreException e) {
+            logger.log(Level.SEVERE, "Error loading the transactions of block " + blockIndex, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Builds a proof that a transaction is included in a transaction block.
+     * The proof can be checked with {@link MerkleProof#verify(String, Block)} against the block header alone.
+     *
+     * @param blockIndex       The index of the block.
+     * @param transactionIndex The position of the transaction in the block.
+     * @return The inclusion proof.
+     * @throws IllegalArgumentException If the block is not a transaction block held by this chain or its database.
+     * @throws IndexOutOfBoundsException If the transaction index is out of range.
+     */
+    public MerkleProof getInclusionProof(int blockIndex, int transactionIndex) {
+        List<String> transactions = getTransactions(blockIndex);
+        if (transactions.isEmpty()) {
+            throw new IllegalArgumentException("Block " + blockIndex + " is not a known transaction block.");
+        }
+        return new MerkleTree(transactions).getProof(transactionIndex);
+    }
+
+    /**
+     * Gets the most recently added block.
+     *
+     * @return The tip of the chain, or {@code null} if the chain is empty.
+     */
+    public Block getLatestBlock() {
+        return resident.blocks.last();
+    }
+
+    /**
+     * Takes a consistent, immutable view of the blocks held in memory.
+     * After {@link #loadFromCheckpoint()} or with a {@link #setMemoryWindow(int) memory window}, the view starts at
+     * the oldest block still held in memory rather than the genesis block.
+     * Blocks added afterwards are not visible through the view, and taking it never blocks writers.
+     *
+     * @return The blocks in chain order.
+     */
+    public List<Block> snapshot() {
+        return resident.blocks.snapshot();
+    }
+
+    /**
+     * Gets the number of blocks in the chain, including those that are no longer held in memory.
+     *
+     * @return The number of blocks in the chain.
+     */
+    public int size() {
+        Resident current = resident;
+        return current.prefixSize + current.blocks.size();
+    }
+
+    /**
+     * Sets the listener that receives measurements of appends, rejections, verifications and loads, and of the
+     * store's connections and statements.
+     *
+     * @param listener The listener, e.g. a {@link ChainMetrics}, or {@link ChainMetricsListener#NONE}.
+     */
+    public void setMetricsListener(ChainMetricsListener listener) {
+        this.metricsListener = listener;
+        store.setMetricsListener(listener);
+    }
+
+    /**
+     * Gets the listener that receives measurements.
+     *
+     * @return The metrics listener.
+     */
+    public ChainMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Enables or disables the INFO message logged for every added or saved block. Disable it for high-rate
+     * ingest and use a {@link ChainMetricsListener} to observe appends instead.
+     *
+     * @param blockLogging True to log every block, false to log only batches and errors.
+     */
+    public void setBlockLogging(boolean blockLogging) {
+        this.blockLogging = blockLogging;
+    }
+
+    /**
+     * Sets the proof-of-work difficulty that new blocks must meet. Blocks already in the chain are not rechecked.
+     *
+     * @param difficulty The minimum number of leading zero bits of a block hash, or zero to accept blocks without
+     *                   proof of work.
+     * @throws IllegalArgumentException If the difficulty is negative or above 256.
+     */
+    public void setDifficulty(int difficulty) {
+        if (difficulty < 0 || difficulty > BlockHash.LENGTH * 8) {
+            throw new IllegalArgumentException("Difficulty must be between 0 and " + BlockHash.LENGTH * 8 + ".");
+        }
+        this.difficulty = difficulty;
+    }
+
+    /**
+     * Gets the proof-of-work difficulty that new blocks must meet.
+     *
+     * @return The minimum number of leading zero bits of a block hash.
+     */
+    public int getDifficulty() {
+        return difficulty;
     }
 
     /**
      * Checks if the hash of a given block is valid.
+     * The hash must match the block's contents, and the block must carry proof of work of at least the chain's
+     * difficulty.
      *
      * @param block The block to check.
      * @return True if the hash is valid, false otherwise.
      */
     public boolean isValidHash(Block block) {
         try {
-            String calculatedHash = block.calculateHash();
-            return calculatedHash.equals(block.getHash());
+            return block.hasValidHash() && block.getDifficulty() >= difficulty && block.meetsDifficulty();
         } catch (RuntimeException e) {
             logger.log(Level.SEVERE, "Error calculating hash for block.", e);
             return false;
         }
     }
 
+    /**
+     * Sets the verifier used by {@link #verifyChain()} and {@link #isChainValid()}.
+     *
+     * @param verifier The verifier to use, e.g. one with a custom parallelism.
+     */
+    public void setChainVerifier(ChainVerifier verifier) {
+        this.verifier = verifier;
+    }
+
+    /**
+     * Verifies the integrity of the blockchain.
+     * Every block's hash is recomputed and every block is checked to link to its predecessor by index and
+     * previous hash. Large chains are verified in parallel. Blocks that are no longer held in memory are streamed
+     * from the store in batches, except those before the checkpoint the chain was restored from, which are trusted.
+     *
+     * @return A report identifying the first invalid block and the reason, if any.
+     * @throws BlockStoreException If blocks outside the memory window cannot be read.
+     */
+    public VerificationReport verifyChain() {
+        VerificationReport report = verifyFrom(trustedTipIndex < 0 ? 0 : trustedTipIndex, null);
+        metricsListener.onChainVerified(report);
+        if (!report.isValid()) {
+            logger.log(Level.WARNING, report.toString());
+        }
+        return report;
+    }
+
+    /**
+     * Verifies the blocks from the given index to the tip and passes each verified batch to the consumer.
+     * Blocks that are no longer held in memory are streamed from the store, one batch at a time.
+     *
+     * @param consumer Receives the verified blocks in chain order, or {@code null}.
+     */
+    private VerificationReport verifyFrom(int fromIndex, Consumer<List<Block>> consumer) {
+        ChainVerifier.Run run = verifier.start();
+        verifyFrom(run, fromIndex, consumer);
+        return run.finish();
+    }
+
+    /**
+     * Starts a verification run that {@link #continueVerification(ChainVerifier.Run)} brings up to date as blocks
+     * are appended, so that each block is verified once however often the chain is checked.
+     *
+     * @return The verification run.
+     */
+    ChainVerifier.Run startVerification() {
+        return verifier.start();
+    }
+
+    /**
+     * Verifies the blocks appended since the run last saw the chain. A new run verifies the chain from the
+     * checkpoint it was restored from, like {@link #verifyChain()}.
+     *
+     * @param run The run to continue. Its last block must still be part of the chain.
+     * @throws BlockStoreException If blocks outside the memory window cannot be read.
+     */
+    void continueVerification(ChainVerifier.Run run) {
+        Block last = run.last();
+        verifyFrom(run, last == null ? Math.max(trustedTipIndex, 0) : last.getIndex() + 1, null);
+    }
+
+    private void verifyFrom(ChainVerifier.Run run, int fromIndex, Consumer<List<Block>> consumer) {
+        Resident current = resident;
+        List<Block> recent = current.blocks.snapshot();
+        int firstResident = recent.isEmpty() ? Integer.MAX_VALUE : current.blocks.indexAt(0);
+        if (current.prefixSize > 0 && fromIndex < firstResident) {
+            try (Stream<Block> history = store.stream(fromIndex, DEFAULT_FETCH_SIZE)) {
+                Iterator<Block> blocks = history.iterator();
+                List<Block> batch = new ArrayList<>();
+                while (run.isValid()) {
+                    Block block = blocks.hasNext() ? blocks.next() : null;
+                    if (block == null || block.getIndex() >= firstResident) {
+                        verifyBatch(run, batch, consumer);
+                        break;
+                    }
+                    batch.add(block);
+                    if (batch.size() == HISTORY_BATCH_SIZE) {
+                        verifyBatch(run, batch, consumer);
+                        batch = new ArrayList<>();
+                    }
+                }
+            }
+        }
+        if (run.isValid()) {
+            verifyBatch(run, recent.subList(current.blocks.positionOf(recent.size(), fromIndex), recent.size()), consumer);
+        }
+    }
+
+    private static void verifyBatch(ChainVerifier.Run run, List<Block> batch, Consumer<List<Block>> consumer) {
+        if (run.add(batch) && consumer != null) {
+            consumer.accept(batch);
+        }
+    }
+
     /**
      * Checks if the blockchain is valid.
-     * Iterates through the blocks to ensure that each block's previous hash matches the hash of the preceding block.
+     * Recomputes the hash of each block and ensures that each block's previous hash matches the hash of the preceding block.
      *
      * @return True if the blockchain is valid, false otherwise.
+     * @see #verifyChain()
      */
     public boolean isChainValid() {
-        for (int i = 1; i < chain.size(); i++) {
-            Block currentBlock = chain.get(i);
-            Block previousBlock = chain.get(i - 1);
+        return verifyChain().isValid();
+    }
 
-            if(!currentBlock.getPreviousHash().equals(previousBlock.getHash())) {
-                return false;
+    /**
+     * Displays the blockchain by printing the details of each block in a formatted manner.
+     * Blocks that are no longer held in memory are streamed from the store.
+     */
+    public void displayBlockchain() {
+        Resident current = resident;
+        List<Block> recent = current.blocks.snapshot();
+        if (current.prefixSize > 0 && !recent.isEmpty()) {
+            int firstResident = recent.get(0).getIndex();
+            try (Stream<Block> history = store.stream(0, DEFAULT_FETCH_SIZE)) {
+                Iterator<Block> blocks = history.iterator();
+                while (blocks.hasNext()) {
+                    Block block = blocks.next();
+                    if (block.getIndex() >= firstResident) {
+                        break;
+                    }
+                    display(block);
+                }
+            } catch (BlockStoreException e) {
+                logger.log(Level.SEVERE, "Error loading values from the database", e);
             }
         }
-        return true;
+        for (Block block : recent) {
+            display(block);
+        }
+    }
+
+    private static void display(Block block) {
+        String formattedBlock = String.format(
+                "Index: %d%nTimestamp: %s%nData: %s%nPrevious Hash: %s%nHash: %s%n-------------------------------------",
+                block.getIndex(), block.getTimestamp(), block.getData(), block.getPreviousHash(), block.getHash()
+        );
+        System.out.println(formattedBlock);
     }
 
     /**
-     * Displays the blockchain by printing the details of each block in a formatted manner.
+     * Saves the blocks queued for write-behind, then closes the underlying store if it was created by this
+     * blockchain.
      */
-    public void displayBlockchain() {
-        for (Block block : chain) {
-            String formattedBlock = String.format(
-                    "Index: %d%nTimestamp: %s%nData: %s%nPrevious Hash: %s%nHash: %s%n-------------------------------------",
-                    block.getIndex(), block.getTimestamp(), block.getData(), block.getPreviousHash(), block.getHash()
-            );
-            System.out.println(formattedBlock);
+    @Override
+    public void close() {
+        GroupCommitWriter currentWriter = writer;
+        if (currentWriter != null) {
+            currentWriter.close();
+        }
+        if (!ownsStore) {
+            return;
+        }
+        try {
+            store.close();
+        } catch (BlockStoreException e) {
+            logger.log(Level.SEVERE, "Error closing the block store", e);
+        }
+    }
+
+    /**
+     * The blocks held in memory together with the number of blocks before them. Both are published as one value,
+     * so that readers that do not take the append lock never pair a trimmed list with the old prefix size.
+     */
+    private static final class Resident {
+        /** The blocks held in memory. Appends go to the list of the current value only. */
+        private final BlockList blocks;
+        /** The number of blocks before the first one held in memory. */
+        private final int prefixSize;
+
+        private Resident(BlockList blocks, int prefixSize) {
+            this.blocks = blocks;
+            this.prefixSize = prefixSize;
         }
     }
 }
@@ -0,0 +1,124 @@
+package com.leonard.blockchain;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes blocks into the binary form shared by {@link ChainSnapshot} and the peer protocol of {@link PeerServer}
+ * and {@link PeerSync}: the index, the timestamp as epoch seconds and nanoseconds, the hash scheme, nonce,
+ * difficulty and transaction count, the hash, data and previous hash as length-prefixed UTF-8 strings, and a flag
+ * followed by the transactions of transaction blocks whose body is included.
+ */
+final class BlockCodec {
+    private static final byte TRANSACTIONS_NOT_STORED = 0;
+    private static final byte TRANSACTIONS_STORED = 1;
+
+    private BlockCodec() {
+    }
+
+    /**
+     * Appends a block to a heap buffer, growing it if needed.
+     *
+     * @param transactions The transactions of a transaction block, or {@code null} to leave them out.
+     * @return The buffer holding the block, which is a new buffer if the given one was too small.
+     */
+    static ByteBuffer encode(ByteBuffer buffer, Block block, List<String> transactions) {
+        buffer = ensureCapacity(buffer, 33);
+        buffer.putInt(block.getIndex());
+        buffer.putLong(block.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(block.getTimestamp().getNano());
+        buffer.put((byte) block.getHashScheme().getId());
+        buffer.putLong(block.getNonce());
+        buffer.putInt(block.getDifficulty());
+        buffer.putInt(block.getTransactionCount());
+        buffer = putString(buffer, block.getHash());
+        buffer = putString(buffer, block.getData());
+        buffer = putString(buffer, block.getPreviousHash());
+        buffer = ensureCapacity(buffer, 1);
+        if (block.isTransactionBlock() && transactions != null && transactions.size() == block.getTransactionCount()) {
+            buffer.put(TRANSACTIONS_STORED);
+            for (String transaction : transactions) {
+                buffer = putString(buffer, transaction);
+            }
+        } else {
+            buffer.put(TRANSACTIONS_NOT_STORED);
+        }
+        return buffer;
+    }
+
+    /**
+     * Reads a block from a heap buffer.
+     *
+     * @throws BufferUnderflowException If the buffer ends in the middle of the block.
+     * @throws IllegalArgumentException If the block has an unknown hash scheme or an invalid index or difficulty.
+     */
+    static Block decode(ByteBuffer buffer) {
+        int index = buffer.getInt();
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+        HashScheme hashScheme = HashScheme.fromId(buffer.get());
+        long nonce = buffer.getLong();
+        int difficulty = buffer.getInt();
+        int transactionCount = buffer.getInt();
+        String hash = getString(buffer);
+        String data = getString(buffer);
+        String previousHash = getString(buffer);
+        List<String> transactions = null;
+        if (buffer.get() == TRANSACTIONS_STORED) {
+            transactions = new ArrayList<>(Math.min(transactionCount, buffer.remaining() / 4));
+            for (int i = 0; i < transactionCount; i++) {
+                transactions.add(getString(buffer));
+            }
+        }
+        return new Block(index, timestamp, data, previousHash, hashScheme, hash, transactionCount, transactions,
+                nonce, difficulty);
+    }
+
+    /**
+     * Writes text as a four-byte length followed by its UTF-8 bytes; {@code null} is written as length -1.
+     */
+    static ByteBuffer putString(ByteBuffer buffer, String text) {
+        if (text == null) {
+            buffer = ensureCapacity(buffer, 4);
+            buffer.putInt(-1);
+            return buffer;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        buffer = ensureCapacity(buffer, 4 + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        return buffer;
+    }
+
+    /**
+     * Reads text written by {@link #putString(ByteBuffer, String)} from a heap buffer.
+     *
+     * @throws BufferUnderflowException If the buffer ends in the middle of the text.
+     */
+    static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String text = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return text;
+    }
+
+    static ByteBuffer ensureCapacity(ByteBuffer buffer, int additional) {
+        if (buffer.remaining() >= additional) {
+            return buffer;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + additional));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+}
@@ -0,0 +1,109 @@
+package com.leonard.blockchain;
+
+import java.util.Arrays;
+
+/**
+ * An immutable 32-byte SHA-256 block hash.
+ * The hexadecimal form is only built when it is first requested.
+ */
+public final class BlockHash {
+    /** The number of bytes in a hash. */
+    public static final int LENGTH = 32;
+
+    private final byte[] bytes;
+    private final int hashCode;
+    private String hex;
+
+    private BlockHash(byte[] bytes) {
+        this.bytes = bytes;
+        this.hashCode = Arrays.hashCode(bytes);
+    }
+
+    /**
+     * Wraps a copy of the given hash bytes.
+     *
+     * @param bytes The 32 hash bytes.
+     * @return The hash.
+     * @throws IllegalArgumentException If the array is not 32 bytes long.
+     */
+    public static BlockHash of(byte[] bytes) {
+        if (bytes.length != LENGTH) {
+            throw new IllegalArgumentException("A block hash must be " + LENGTH + " bytes long.");
+        }
+        return new BlockHash(bytes.clone());
+    }
+
+    /**
+     * Parses a hash from its lowercase hexadecimal form.
+     *
+     * @param hex The 64-character hexadecimal text.
+     * @return The hash.
+     * @throws IllegalArgumentException If the text is not a 64-character lowercase hexadecimal string.
+     */
+    public static BlockHash fromHex(String hex) {
+        if (!HexCodec.isHex(hex, LENGTH)) {
+            throw new IllegalArgumentException("Invalid block hash: " + hex);
+        }
+        BlockHash hash = new BlockHash(HexCodec.decode(hex));
+        hash.hex = hex;
+        return hash;
+    }
+
+    /**
+     * Wraps the given array without copying. The caller must not modify it afterwards.
+     */
+    static BlockHash wrap(byte[] bytes) {
+        return new BlockHash(bytes);
+    }
+
+    /**
+     * Gets a copy of the hash bytes.
+     *
+     * @return The 32 hash bytes.
+     */
+    public byte[] toBytes() {
+        return bytes.clone();
+    }
+
+    /**
+     * Copies the hash bytes into the given array.
+     *
+     * @param target The array to copy into.
+     * @param offset The position in the array of the first byte.
+     */
+    public void copyTo(byte[] target, int offset) {
+        System.arraycopy(bytes, 0, target, offset, LENGTH);
+    }
+
+    /**
+     * Gets the lowercase hexadecimal form of the hash.
+     *
+     * @return The 64-character hexadecimal text.
+     */
+    public String toHex() {
+        String result = hex;
+        if (result == null) {
+            result = HexCodec.encode(bytes);
+            hex = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        return other instanceof BlockHash && Arrays.equals(bytes, ((BlockHash) other).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+}
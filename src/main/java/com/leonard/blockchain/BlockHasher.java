@@ -0,0 +1,297 @@
+package com.leonard.blockchain;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Computes block hashes with a per-thread SHA-256 digest and a reusable preimage buffer,
+ * so hashing a block allocates nothing but the resulting 32-byte array.
+ * Proof-of-work blocks append a fixed-width trailer of the eight-byte nonce and four-byte difficulty to the
+ * preimage of either scheme; blocks with a difficulty of zero have no trailer.
+ */
+final class BlockHasher {
+    /** The length of the proof-of-work trailer appended to the preimage. */
+    static final int WORK_TRAILER_LENGTH = 12;
+
+    private static final byte BINARY_VERSION = 1;
+    private static final byte TEXT_FIELD = 0;
+    private static final byte HASH_FIELD = BlockHash.LENGTH;
+
+    private static final ThreadLocal<BlockHasher> HASHERS = ThreadLocal.withInitial(BlockHasher::new);
+    private static final LongAdder HASH_COUNT = new LongAdder();
+
+    private final MessageDigest digest;
+    private byte[] buffer = new byte[256];
+    private int length;
+
+    private BlockHasher() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not supported.", e);
+        }
+    }
+
+    /**
+     * Computes the hash of the given block fields.
+     *
+     * @return The 32 hash bytes.
+     */
+    static byte[] hash(HashScheme scheme, int index, LocalDateTime timestamp, String data, String previousHash,
+                       long nonce, int difficulty) {
+        BlockHasher hasher = HASHERS.get();
+        hasher.writeHeader(scheme, index, timestamp, data, previousHash);
+        if (difficulty > 0) {
+            hasher.putLong(nonce);
+            hasher.putInt(difficulty);
+        }
+        hasher.digest.update(hasher.buffer, 0, hasher.length);
+        HASH_COUNT.increment();
+        return hasher.digest.digest();
+    }
+
+    /**
+     * Gets the number of block hashes computed by {@link #hash} in this JVM.
+     */
+    static long hashCount() {
+        return HASH_COUNT.sum();
+    }
+
+    /**
+     * Encodes the preimage of the given block fields without the proof-of-work trailer, followed by
+     * {@link #WORK_TRAILER_LENGTH} bytes of space for it.
+     *
+     * @return A new array holding the preimage.
+     */
+    static byte[] encodeForWork(HashScheme scheme, int index, LocalDateTime timestamp, String data, String previousHash) {
+        BlockHasher hasher = HASHERS.get();
+        hasher.writeHeader(scheme, index, timestamp, data, previousHash);
+        return Arrays.copyOf(hasher.buffer, hasher.length + WORK_TRAILER_LENGTH);
+    }
+
+    /**
+     * Writes the proof-of-work trailer into the last {@link #WORK_TRAILER_LENGTH} bytes of a preimage.
+     */
+    static void writeWorkTrailer(byte[] preimage, long nonce, int difficulty) {
+        int position = preimage.length - WORK_TRAILER_LENGTH;
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            preimage[position++] = (byte) (nonce >>> shift);
+        }
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            preimage[position++] = (byte) (difficulty >>> shift);
+        }
+    }
+
+    /**
+     * Checks whether a hash starts with at least the given number of zero bits.
+     */
+    static boolean meetsDifficulty(byte[] hash, int difficulty) {
+        int fullBytes = difficulty >>> 3;
+        for (int i = 0; i < fullBytes; i++) {
+            if (hash[i] != 0) {
+                return false;
+            }
+        }
+        int remainingBits = difficulty & 7;
+        return remainingBits == 0 || (hash[fullBytes] & 0xff) >>> (8 - remainingBits) == 0;
+    }
+
+    private void writeHeader(HashScheme scheme, int index, LocalDateTime timestamp, String data, String previousHash) {
+        length = 0;
+        if (scheme == HashScheme.LEGACY) {
+            writeLegacy(index, timestamp, data, previousHash);
+        } else {
+            writeBinary(index, timestamp, data, previousHash);
+        }
+    }
+
+    private void writeLegacy(int index, LocalDateTime timestamp, String data, String previousHash) {
+        putDecimal(index);
+        putTimestamp(timestamp);
+        putUtf8(String.valueOf(data));
+        putUtf8(String.valueOf(previousHash));
+    }
+
+    private void writeBinary(int index, LocalDateTime timestamp, String data, String previousHash) {
+        putByte(BINARY_VERSION);
+        putInt(index);
+        putLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+        putInt(timestamp.getNano());
+        putLengthPrefixedUtf8(data);
+        if (HexCodec.isHex(previousHash, BlockHash.LENGTH)) {
+            putByte(HASH_FIELD);
+            putHex(previousHash);
+        } else {
+            putByte(TEXT_FIELD);
+            putLengthPrefixedUtf8(previousHash);
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        if (length + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + additional));
+        }
+    }
+
+    private void putByte(int value) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) value;
+    }
+
+    private void putInt(int value) {
+        ensureCapacity(4);
+        buffer[length++] = (byte) (value >>> 24);
+        buffer[length++] = (byte) (value >>> 16);
+        buffer[length++] = (byte) (value >>> 8);
+        buffer[length++] = (byte) value;
+    }
+
+    private void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    private void putHex(String hex) {
+        ensureCapacity(hex.length() / 2);
+        for (int i = 0; i < hex.length(); i += 2) {
+            buffer[length++] = (byte) (Character.digit(hex.charAt(i), 16) << 4 | Character.digit(hex.charAt(i + 1), 16));
+        }
+    }
+
+    /**
+     * Writes the decimal form of a value, matching {@link Integer#toString(int)}.
+     */
+    private void putDecimal(int value) {
+        if (value < 0) {
+            putByte('-');
+            if (value == Integer.MIN_VALUE) {
+                putAscii("2147483648");
+                return;
+            }
+            value = -value;
+        }
+        int digits = 1;
+        for (int bound = 10; digits < 10 && value >= bound; bound *= 10) {
+            digits++;
+        }
+        putDigits(value, digits);
+    }
+
+    /**
+     * Writes a non-negative value zero-padded to the given number of digits.
+     */
+    private void putDigits(int value, int digits) {
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    /**
+     * Writes a timestamp in the form produced by {@link LocalDateTime#toString()}.
+     */
+    private void putTimestamp(LocalDateTime timestamp) {
+        int year = timestamp.getYear();
+        if (Math.abs(year) < 1000) {
+            if (year < 0) {
+                putByte('-');
+            }
+            putDigits(Math.abs(year), 4);
+        } else {
+            if (year > 9999) {
+                putByte('+');
+            }
+            putDecimal(year);
+        }
+        putByte('-');
+        putDigits(timestamp.getMonthValue(), 2);
+        putByte('-');
+        putDigits(timestamp.getDayOfMonth(), 2);
+        putByte('T');
+        putDigits(timestamp.getHour(), 2);
+        putByte(':');
+        putDigits(timestamp.getMinute(), 2);
+
+        int second = timestamp.getSecond();
+        int nano = timestamp.getNano();
+        if (second > 0 || nano > 0) {
+            putByte(':');
+            putDigits(second, 2);
+            if (nano > 0) {
+                putByte('.');
+                if (nano % 1_000_000 == 0) {
+                    putDigits(nano / 1_000_000, 3);
+                } else if (nano % 1000 == 0) {
+                    putDigits(nano / 1000, 6);
+                } else {
+                    putDigits(nano, 9);
+                }
+            }
+        }
+    }
+
+    private void putAscii(String text) {
+        ensureCapacity(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[length++] = (byte) text.charAt(i);
+        }
+    }
+
+    /**
+     * Writes text as a four-byte length followed by its UTF-8 bytes; {@code null} is written as length -1.
+     */
+    private void putLengthPrefixedUtf8(String text) {
+        if (text == null) {
+            putInt(-1);
+            return;
+        }
+        int lengthPosition = length;
+        putInt(0);
+        int start = length;
+        putUtf8(text);
+        int written = length - start;
+        buffer[lengthPosition] = (byte) (written >>> 24);
+        buffer[lengthPosition + 1] = (byte) (written >>> 16);
+        buffer[lengthPosition + 2] = (byte) (written >>> 8);
+        buffer[lengthPosition + 3] = (byte) written;
+    }
+
+    /**
+     * Writes text as UTF-8, replacing unpaired surrogates with '?' as {@link String#getBytes} does.
+     */
+    private void putUtf8(String text) {
+        ensureCapacity(text.length() * 3);
+        byte[] out = buffer;
+        int position = length;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                out[position++] = (byte) c;
+            } else if (c < 0x800) {
+                out[position++] = (byte) (0xc0 | c >> 6);
+                out[position++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    out[position++] = (byte) (0xf0 | codePoint >> 18);
+                    out[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                    out[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                    out[position++] = (byte) (0x80 | codePoint & 0x3f);
+                } else {
+                    out[position++] = '?';
+                }
+            } else {
+                out[position++] = (byte) (0xe0 | c >> 12);
+                out[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                out[position++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        length = position;
+    }
+}
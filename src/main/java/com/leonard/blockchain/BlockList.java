@@ -0,0 +1,113 @@
+package com.leonard.blockchain;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * An append-only sequence of blocks with a single writer and any number of lock-free readers.
+ * Callers must serialize calls to {@link #add(Block)}; all other methods may be called concurrently with it.
+ *
+ * @see ArrayBlockList
+ * @see ColumnarBlockList
+ */
+interface BlockList {
+    /**
+     * Appends a block and indexes it by hash if it has a well-formed hash.
+     *
+     * @param block The block to append.
+     */
+    void add(Block block);
+
+    /**
+     * Gets the number of blocks appended so far.
+     *
+     * @return The number of blocks.
+     */
+    int size();
+
+    /**
+     * Checks whether no block has been appended.
+     *
+     * @return True if the list is empty, false otherwise.
+     */
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Gets the index of the block at the given position without building the block.
+     *
+     * @param position The position of the block, which must be below a size read earlier.
+     * @return The block index.
+     */
+    int indexAt(int position);
+
+    /**
+     * Finds the position of the first of the first size blocks whose index is at least the given index.
+     * Blocks are located by their offset from the first block, falling back to a binary search when the list has
+     * gaps. Only block indexes are read, so no block is built.
+     *
+     * @param size  The number of blocks to search, e.g. the size of a snapshot.
+     * @param index The block index.
+     * @return The position, or size if every block has a lower index.
+     */
+    default int positionOf(int size, int index) {
+        if (size == 0) {
+            return 0;
+        }
+        int position = index - indexAt(0);
+        if (position >= 0 && position < size && indexAt(position) == index) {
+            return position;
+        }
+
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleIndex = indexAt(middle);
+            if (middleIndex < index) {
+                low = middle + 1;
+            } else if (middleIndex > index) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the last block.
+     *
+     * @return The last block, or {@code null} if the list is empty.
+     */
+    Block last();
+
+    /**
+     * Takes an immutable view of the blocks appended so far. Later appends are not visible through the view.
+     *
+     * @return The snapshot.
+     */
+    List<Block> snapshot();
+
+    /**
+     * Finds the positions of the blocks, among the first size, with a timestamp of at least from and before to, in
+     * timestamp order and then index order.
+     *
+     * @param size  The number of blocks to search, e.g. the size of a snapshot.
+     * @param from  The earliest timestamp, inclusive.
+     * @param to    The latest timestamp, exclusive.
+     * @param after The block to start after in that order, or {@code null} to start at from.
+     * @return The positions of the matching blocks.
+     */
+    IntStream positionsBetween(int size, LocalDateTime from, LocalDateTime to, Block after);
+
+    /**
+     * Finds an appended block by hash. If several blocks share the hash, the most recent one is returned.
+     *
+     * @param hash The hash of the block.
+     * @return The block, or {@code null} if no block with the hash has been appended.
+     */
+    Block findByHash(BlockHash hash);
+}
@@ -0,0 +1,214 @@
+package com.leonard.blockchain;
+
+import java.time.LocalDateTime;
+
+/**
+ * A query for blocks by timestamp or by payload, answered through secondary indexes rather than a full scan.
+ * A time range query matches the blocks whose timestamp lies in a half-open range and returns them in timestamp
+ * order. A payload query matches the blocks whose data equals a value or starts with a prefix and returns them in
+ * payload order, comparing payloads by code point. Blocks with equal keys are returned in index order.
+ * <p>
+ * Results are paged by keyset: the last block of a page is passed as the starting point of the next page, so a
+ * page costs the same however deep into the results it lies, and blocks appended between pages are neither
+ * skipped nor returned twice unless they sort before the starting point.
+ *
+ * @see BlockChain#findBlocks(BlockQuery, Block, int)
+ * @see BlockStore#find(BlockQuery, Block, int)
+ */
+public final class BlockQuery {
+    /**
+     * The number of leading code points of a payload held by payload indexes. Payloads that share this many
+     * leading code points share an index key and are told apart by reading the block.
+     */
+    static final int PAYLOAD_KEY_LENGTH = 64;
+
+    enum Kind {
+        TIME_RANGE,
+        PAYLOAD_EQUALS,
+        PAYLOAD_PREFIX
+    }
+
+    private final Kind kind;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final String payload;
+    private final int beforeIndex;
+
+    private BlockQuery(Kind kind, LocalDateTime from, LocalDateTime to, String payload, int beforeIndex) {
+        this.kind = kind;
+        this.from = from;
+        this.to = to;
+        this.payload = payload;
+        this.beforeIndex = beforeIndex;
+    }
+
+    /**
+     * Creates a query for the blocks with a timestamp of at least from and before to.
+     *
+     * @param from The earliest timestamp to match.
+     * @param to   The timestamp after the latest one to match.
+     * @return The query.
+     * @throws IllegalArgumentException If either bound is null or to is before from.
+     */
+    public static BlockQuery between(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Time range bounds cannot be null.");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Time range cannot end before it starts.");
+        }
+        return new BlockQuery(Kind.TIME_RANGE, from, to, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a query for the blocks whose data equals the given payload.
+     *
+     * @param payload The payload to match.
+     * @return The query.
+     * @throws IllegalArgumentException If payload is null.
+     */
+    public static BlockQuery payloadEquals(String payload) {
+        if (payload == null) {
+            throw new IllegalArgumentException("Payload cannot be null.");
+        }
+        return new BlockQuery(Kind.PAYLOAD_EQUALS, null, null, payload, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a query for the blocks whose data starts with the given prefix.
+     *
+     * @param prefix The prefix to match.
+     * @return The query.
+     * @throws IllegalArgumentException If prefix is null.
+     */
+    public static BlockQuery payloadStartsWith(String prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Payload prefix cannot be null.");
+        }
+        return new BlockQuery(Kind.PAYLOAD_PREFIX, null, null, prefix, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Restricts the query to blocks with an index below the given index, e.g. to the history that precedes the
+     * blocks a chain holds in memory.
+     */
+    BlockQuery before(int index) {
+        return new BlockQuery(kind, from, to, payload, Math.min(index, beforeIndex));
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    LocalDateTime getFrom() {
+        return from;
+    }
+
+    LocalDateTime getTo() {
+        return to;
+    }
+
+    String getPayload() {
+        return payload;
+    }
+
+    int getBeforeIndex() {
+        return beforeIndex;
+    }
+
+    /**
+     * Checks whether a block matches the query.
+     *
+     * @param block The block to check.
+     * @return True if the block matches, false otherwise.
+     */
+    public boolean matches(Block block) {
+        if (block.getIndex() >= beforeIndex) {
+            return false;
+        }
+        switch (kind) {
+            case TIME_RANGE:
+                return !block.getTimestamp().isBefore(from) && block.getTimestamp().isBefore(to);
+            case PAYLOAD_EQUALS:
+                return payload.equals(block.getData());
+            default:
+                return block.getData() != null && block.getData().startsWith(payload);
+        }
+    }
+
+    /**
+     * Compares two blocks in the order the query returns them: by key, then by index.
+     */
+    int compare(Block first, Block second) {
+        int order = kind == Kind.TIME_RANGE
+                ? first.getTimestamp().compareTo(second.getTimestamp())
+                : comparePayloadKeys(payloadKey(first.getData()), payloadKey(second.getData()));
+        return order != 0 ? order : Integer.compare(first.getIndex(), second.getIndex());
+    }
+
+    /**
+     * Truncates a payload to the key held by payload indexes.
+     *
+     * @return The first {@link #PAYLOAD_KEY_LENGTH} code points of the payload, or an empty string if it is null.
+     */
+    static String payloadKey(String payload) {
+        if (payload == null) {
+            return "";
+        }
+        if (payload.length() <= PAYLOAD_KEY_LENGTH || payload.codePointCount(0, payload.length()) <= PAYLOAD_KEY_LENGTH) {
+            return payload;
+        }
+        return payload.substring(0, payload.offsetByCodePoints(0, PAYLOAD_KEY_LENGTH));
+    }
+
+    /**
+     * Finds the smallest key greater than every key that starts with the given prefix, by incrementing its last
+     * code point that can be incremented.
+     *
+     * @return The successor, or {@code null} if every code point of the prefix is the largest one.
+     */
+    static String successor(String prefix) {
+        int end = prefix.length();
+        while (end > 0) {
+            int codePoint = prefix.codePointBefore(end);
+            end -= Character.charCount(codePoint);
+            if (codePoint < Character.MAX_CODE_POINT) {
+                int next = codePoint + 1 == Character.MIN_SURROGATE ? Character.MAX_SURROGATE + 1 : codePoint + 1;
+                return new StringBuilder(end + 2).append(prefix, 0, end).appendCodePoint(next).toString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares two strings by code point, which is the order SQLite uses for UTF-8 text. String.compareTo
+     * compares UTF-16 units instead and sorts supplementary characters before U+E000 to U+FFFF.
+     */
+    static int comparePayloadKeys(String first, String second) {
+        int i = 0;
+        int j = 0;
+        while (i < first.length() && j < second.length()) {
+            int a = first.codePointAt(i);
+            int b = second.codePointAt(j);
+            if (a != b) {
+                return Integer.compare(a, b);
+            }
+            i += Character.charCount(a);
+            j += Character.charCount(b);
+        }
+        return Integer.compare(first.length() - i, second.length() - j);
+    }
+
+    @Override
+    public String toString() {
+        String bound = beforeIndex == Integer.MAX_VALUE ? "" : " before block " + beforeIndex;
+        switch (kind) {
+            case TIME_RANGE:
+                return "Blocks from " + from + " to " + to + bound;
+            case PAYLOAD_EQUALS:
+                return "Blocks with payload '" + payload + "'" + bound;
+            default:
+                return "Blocks with payload prefix '" + payload + "'" + bound;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.leonard.blockchain;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Turns payloads submitted by many concurrent producers into blocks appended to a {@link BlockChain}.
+ * Producers, including virtual threads, add payloads to a pending pool with {@link #submit(String)}. A single
+ * sequencer thread drains the pool, assigns the index, timestamp and previous hash, computes the hash and
+ * appends the block. A block is cut as soon as it holds the maximum number of payloads, or once the oldest
+ * pending payload has waited for the maximum latency.
+ * Each block is a transaction block holding its payloads as transactions, in submission order.
+ */
+public class BlockSequencer implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(BlockSequencer.class.getName());
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final BlockChain blockChain;
+    private final int maxPayloadsPerBlock;
+    private final long maxLatencyNanos;
+    private final HashScheme hashScheme;
+    private final BlockingQueue<PendingPayload> pending = new LinkedBlockingQueue<>();
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private final Thread sequencerThread;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a sequencer that hashes blocks with {@link HashScheme#LEGACY}.
+     *
+     * @param blockChain          The chain that blocks are appended to.
+     * @param maxPayloadsPerBlock The maximum number of payloads in a block. Must be positive.
+     * @param maxLatencyMillis    The longest a payload waits before its block is cut. Must not be negative.
+     * @throws IllegalArgumentException If a threshold is out of range.
+     */
+    public BlockSequencer(BlockChain blockChain, int maxPayloadsPerBlock, long maxLatencyMillis) {
+        this(blockChain, maxPayloadsPerBlock, maxLatencyMillis, HashScheme.LEGACY);
+    }
+
+    /**
+     * Constructs a sequencer.
+     *
+     * @param blockChain          The chain that blocks are appended to.
+     * @param maxPayloadsPerBlock The maximum number of payloads in a block. Must be positive.
+     * @param maxLatencyMillis    The longest a payload waits before its block is cut. Must not be negative.
+     * @param hashScheme          The scheme used to hash new blocks.
+     * @throws IllegalArgumentException If a threshold is out of range.
+     */
+    public BlockSequencer(BlockChain blockChain, int maxPayloadsPerBlock, long maxLatencyMillis, HashScheme hashScheme) {
+        if (maxPayloadsPerBlock <= 0) {
+            throw new IllegalArgumentException("Maximum payloads per block must be positive.");
+        }
+        if (maxLatencyMillis < 0) {
+            throw new IllegalArgumentException("Maximum latency cannot be negative.");
+        }
+        this.blockChain = blockChain;
+        this.maxPayloadsPerBlock = maxPayloadsPerBlock;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        this.hashScheme = hashScheme;
+        this.sequencerThread = new Thread(this::run, "block-sequencer");
+        this.sequencerThread.setDaemon(true);
+    }
+
+    /**
+     * Starts the sequencer thread.
+     *
+     * @return This sequencer.
+     */
+    public BlockSequencer start() {
+        sequencerThread.start();
+        return this;
+    }
+
+    /**
+     * Submits a payload to be included in a future block. This method is thread-safe and never blocks on the
+     * sequencer.
+     *
+     * @param payload The payload.
+     * @return A future completed with the block that contains the payload once it has been appended, or
+     * completed exceptionally if the block could not be appended.
+     * @throws IllegalStateException If the sequencer has been closed.
+     */
+    public CompletableFuture<Block> submit(String payload) {
+        PendingPayload entry = new PendingPayload(payload);
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Block sequencer has been closed.");
+            }
+            pending.add(entry);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return entry.future;
+    }
+
+    /**
+     * Gets the number of payloads waiting to be sequenced.
+     *
+     * @return The number of pending payloads.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stops accepting payloads, sequences every payload that is still pending and stops the sequencer thread.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+
+        try {
+            if (sequencerThread.isAlive()) {
+                sequencerThread.join();
+            } else {
+                List<PendingPayload> remaining = new ArrayList<>();
+                pending.drainTo(remaining);
+                for (PendingPayload entry : remaining) {
+                    entry.future.completeExceptionally(new IllegalStateException("Block sequencer was never started."));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<PendingPayload> batch = new ArrayList<>(maxPayloadsPerBlock);
+        try {
+            while (!closed || !pending.isEmpty()) {
+                PendingPayload first = pending.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = first.submittedNanos + maxLatencyNanos;
+
+                while (batch.size() < maxPayloadsPerBlock) {
+                    if (pending.drainTo(batch, maxPayloadsPerBlock - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || closed) {
+                        break;
+                    }
+                    PendingPayload next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                cut(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (PendingPayload entry : batch) {
+                entry.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void cut(List<PendingPayload> batch) {
+        List<String> transactions = new ArrayList<>(batch.size());
+        for (PendingPayload entry : batch) {
+            transactions.add(entry.payload);
+        }
+
+        Block block;
+        try {
+            Block lastBlock = blockChain.getLatestBlock();
+            int index = lastBlock == null ? 1 : lastBlock.getIndex() + 1;
+            String previousHash = lastBlock == null ? "0" : lastBlock.getHash();
+            block = new Block(index, LocalDateTime.now().toString(), transactions, previousHash, hashScheme);
+            blockChain.addBlock(block);
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Error appending a block of " + batch.size() + " payloads", e);
+            for (PendingPayload entry : batch) {
+                entry.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (PendingPayload entry : batch) {
+            entry.future.complete(block);
+        }
+    }
+
+    private static final class PendingPayload {
+        private final String payload;
+        private final long submittedNanos = System.nanoTime();
+        private final CompletableFuture<Block> future = new CompletableFuture<>();
+
+        private PendingPayload(String payload) {
+            this.payload = payload;
+        }
+    }
+}
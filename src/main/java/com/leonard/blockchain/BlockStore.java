@@ -0,0 +1,169 @@
+package com.leonard.blockchain;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persists the blocks of a {@link BlockChain}.
+ * Blocks are keyed by index; a block whose index or hash is already stored is not stored again. Blocks read
+ * back from a store carry their stored hash, and the transactions of transaction blocks are loaded separately
+ * with {@link #loadTransactions(int)}. Implementations must be thread-safe, and report failures as
+ * {@link BlockStoreException}.
+ *
+ * @see SqliteBlockStore
+ * @see SegmentLogStore
+ */
+public interface BlockStore extends AutoCloseable {
+    /**
+     * Creates the storage structures if they do not exist, and upgrades structures created by earlier versions.
+     *
+     * @throws BlockStoreException If the storage cannot be prepared.
+     */
+    void createSchema();
+
+    /**
+     * Stores a block unless a block with the same index is already stored.
+     *
+     * @param block The block to store.
+     * @return {@code true} if the block was stored, {@code false} if its index already exists.
+     * @throws BlockStoreException If the block cannot be stored.
+     */
+    boolean insert(Block block);
+
+    /**
+     * Stores the given blocks, together with the transactions of transaction blocks, as a single unit.
+     * Blocks whose index already exists are skipped.
+     *
+     * @param blocks The blocks to store.
+     * @return The number of blocks that were stored.
+     * @throws BlockStoreException If the blocks cannot be stored.
+     */
+    int insertAll(Collection<Block> blocks);
+
+    /**
+     * Checks whether a block with the given index is stored.
+     *
+     * @param blockIndex The index of the block to check.
+     * @return {@code true} if a block with the index exists, {@code false} otherwise.
+     * @throws BlockStoreException If the store cannot be read.
+     */
+    boolean contains(int blockIndex);
+
+    /**
+     * Finds the stored block with the given index.
+     *
+     * @param blockIndex The index of the block.
+     * @return The block, or {@code null} if it is not stored.
+     * @throws BlockStoreException If the store cannot be read.
+     */
+    Block findByIndex(int blockIndex);
+
+    /**
+     * Finds the stored block with the given hash.
+     *
+     * @param hash The hexadecimal hash of the block.
+     * @return The block, or {@code null} if it is not stored.
+     * @throws BlockStoreException If the store cannot be read.
+     */
+    Block findByHash(String hash);
+
+    /**
+     * Loads the transactions of a transaction block in block order.
+     *
+     * @param blockIndex The index of the block.
+     * @return The transactions, or an empty list if the block has none stored.
+     * @throws BlockStoreException If the store cannot be read.
+     */
+    List<String> loadTransactions(int blockIndex);
+
+    /**
+     * Loads every stored block in index order.
+     *
+     * @return The stored blocks.
+     * @throws BlockStoreException If the store cannot be read.
+     */
+    List<Block> loadAll();
+
+    /**
+     * Streams the stored blocks with an index of at least fromIndex, in index order, holding only the blocks
+     * in flight in memory. The stream may hold resources and must be closed, e.g. with try-with-resources.
+     *
+     * @param fromIndex The lowest block index to return.
+     * @param fetchSize A hint for the number of blocks to read ahead.
+     * @return An ordered stream of blocks.
+     * @throws BlockStoreException If the stream cannot be opened.
+     */
+    Stream<Block> stream(int fromIndex, int fetchSize);
+
+    /**
+     * Finds a page of the stored blocks that match a query, in the query's order.
+     * The default implementation scans the store with {@link #stream(BlockQuery, int)}; implementations should
+     * answer queries from an index.
+     *
+     * @param query The query to run.
+     * @param after The last block of the previous page, or {@code null} for the first page.
+     * @param limit The largest number of blocks to return.
+     * @return The matching blocks that follow after, at most limit of them.
+     * @throws IllegalArgumentException If limit is not positive.
+     * @throws BlockStoreException      If the store cannot be read.
+     */
+    default List<Block> find(BlockQuery query, Block after, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive.");
+        }
+        try (Stream<Block> blocks = stream(query, limit)) {
+            return blocks.filter(block -> after == null || query.compare(block, after) > 0)
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Streams every stored block that matches a query, in the query's order. The stream may hold resources and
+     * must be closed, e.g. with try-with-resources. The default implementation scans every stored block and sorts
+     * the matches in memory; implementations should answer queries from an index.
+     *
+     * @param query     The query to run.
+     * @param fetchSize A hint for the number of blocks to read ahead.
+     * @return An ordered stream of the matching blocks.
+     * @throws BlockStoreException If the stream cannot be opened.
+     */
+    default Stream<Block> stream(BlockQuery query, int fetchSize) {
+        return stream(0, fetchSize).filter(query::matches).sorted(query::compare);
+    }
+
+    /**
+     * Persists a checkpoint, replacing any earlier checkpoint at the same tip index.
+     *
+     * @param checkpoint The checkpoint to store.
+     * @throws BlockStoreException If the checkpoint cannot be stored.
+     */
+    void saveCheckpoint(Checkpoint checkpoint);
+
+    /**
+     * Loads the checkpoint with the highest tip index.
+     *
+     * @return The latest checkpoint, or {@code null} if none has been stored.
+     * @throws BlockStoreException If the store cannot be read.
+     */
+    Checkpoint loadLatestCheckpoint();
+
+    /**
+     * Sets the listener that receives connection and statement latencies. The default implementation ignores
+     * the listener.
+     *
+     * @param listener The listener, or {@link ChainMetricsListener#NONE}.
+     */
+    default void setMetricsListener(ChainMetricsListener listener) {
+    }
+
+    /**
+     * Releases every resource held by the store.
+     *
+     * @throws BlockStoreException If a resource cannot be released.
+     */
+    @Override
+    void close();
+}
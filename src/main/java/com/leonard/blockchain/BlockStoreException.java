@@ -0,0 +1,28 @@
+package com.leonard.blockchain;
+
+/**
+ * Thrown when a {@link BlockStore} operation fails, including while a lazily evaluated result, such as a block
+ * stream, is being consumed.
+ */
+public class BlockStoreException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs an exception with the given message.
+     *
+     * @param message The detail message.
+     */
+    public BlockStoreException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructs an exception with the given message and cause.
+     *
+     * @param message The detail message.
+     * @param cause   The underlying failure.
+     */
+    public BlockStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
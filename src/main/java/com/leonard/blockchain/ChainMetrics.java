@@ -0,0 +1,237 @@
+package com.leonard.blockchain;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ChainMetricsListener} that keeps counters and latency histograms, and can be published as a JMX
+ * MXBean. Attach it with {@link BlockChain#setMetricsListener(ChainMetricsListener)}.
+ */
+public class ChainMetrics implements ChainMetricsListener, ChainMetricsMXBean {
+    private static final String DOMAIN = "com.leonard.blockchain";
+
+    private final LongAdder blocksAppended = new LongAdder();
+    private final Map<VerificationReport.Reason, LongAdder> rejections;
+    private final LongAdder chainVerifications = new LongAdder();
+    private final LongAdder blocksLoaded = new LongAdder();
+    private final LongAdder blockCacheHits = new LongAdder();
+    private final LongAdder blockCacheMisses = new LongAdder();
+    private final LongAdder blocksSynced = new LongAdder();
+    private final LongAdder bytesSynced = new LongAdder();
+    private volatile int syncLag;
+    private final LatencyHistogram appendLatency = new LatencyHistogram();
+    private final LatencyHistogram verificationLatency = new LatencyHistogram();
+    private final LatencyHistogram connectionLatency = new LatencyHistogram();
+    private final LatencyHistogram statementLatency = new LatencyHistogram();
+    private final LatencyHistogram syncLatency = new LatencyHistogram();
+    private ObjectName objectName;
+
+    /**
+     * Constructs metrics with every counter at zero.
+     */
+    public ChainMetrics() {
+        Map<VerificationReport.Reason, LongAdder> counters = new EnumMap<>(VerificationReport.Reason.class);
+        for (VerificationReport.Reason reason : VerificationReport.Reason.values()) {
+            counters.put(reason, new LongAdder());
+        }
+        this.rejections = Collections.unmodifiableMap(counters);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server under
+     * {@code com.leonard.blockchain:type=ChainMetrics,name=<name>}.
+     *
+     * @param name The name distinguishing these metrics from those of other chains in the JVM.
+     * @return The object name the metrics were registered under.
+     * @throws JMException If the name is invalid or already registered.
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        ObjectName registeredName = new ObjectName(DOMAIN + ":type=ChainMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, registeredName);
+        objectName = registeredName;
+        return registeredName;
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server if they are registered.
+     *
+     * @throws JMException If the metrics cannot be unregistered.
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        objectName = null;
+    }
+
+    @Override
+    public void onBlockAppended(Block block, long elapsedNanos) {
+        blocksAppended.increment();
+        appendLatency.record(elapsedNanos);
+    }
+
+    @Override
+    public void onBlockRejected(Block block, VerificationReport.Reason reason) {
+        rejections.get(reason).increment();
+    }
+
+    @Override
+    public void onChainVerified(VerificationReport report) {
+        chainVerifications.increment();
+        verificationLatency.record(report.getElapsedNanos());
+    }
+
+    @Override
+    public void onBlocksLoaded(int count) {
+        blocksLoaded.add(count);
+    }
+
+    @Override
+    public void onBlocksSynced(int count, long bytes, long elapsedNanos) {
+        blocksSynced.add(count);
+        bytesSynced.add(bytes);
+        syncLatency.record(elapsedNanos);
+    }
+
+    @Override
+    public void onSyncLag(int blocks) {
+        syncLag = blocks;
+    }
+
+    @Override
+    public void onBlockCacheLookup(boolean hit) {
+        (hit ? blockCacheHits : blockCacheMisses).increment();
+    }
+
+    @Override
+    public void onConnectionOpened(long elapsedNanos) {
+        connectionLatency.record(elapsedNanos);
+    }
+
+    @Override
+    public void onStatementExecuted(long elapsedNanos) {
+        statementLatency.record(elapsedNanos);
+    }
+
+    @Override
+    public long getBlocksAppended() {
+        return blocksAppended.sum();
+    }
+
+    @Override
+    public long getBlocksRejected() {
+        long total = 0;
+        for (LongAdder counter : rejections.values()) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getRejectionsByReason() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<VerificationReport.Reason, LongAdder> entry : rejections.entrySet()) {
+            counts.put(entry.getKey().name(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the number of blocks rejected for the given reason.
+     *
+     * @param reason The rejection reason.
+     * @return The number of rejected blocks.
+     */
+    public long getRejections(VerificationReport.Reason reason) {
+        return rejections.get(reason).sum();
+    }
+
+    @Override
+    public long getHashesComputed() {
+        return BlockHasher.hashCount();
+    }
+
+    @Override
+    public long getChainVerifications() {
+        return chainVerifications.sum();
+    }
+
+    @Override
+    public long getBlocksLoaded() {
+        return blocksLoaded.sum();
+    }
+
+    @Override
+    public long getBlockCacheHits() {
+        return blockCacheHits.sum();
+    }
+
+    @Override
+    public long getBlockCacheMisses() {
+        return blockCacheMisses.sum();
+    }
+
+    @Override
+    public long getBlocksSynced() {
+        return blocksSynced.sum();
+    }
+
+    @Override
+    public long getBytesSynced() {
+        return bytesSynced.sum();
+    }
+
+    @Override
+    public int getSyncLag() {
+        return syncLag;
+    }
+
+    @Override
+    public LatencyHistogram getAppendLatency() {
+        return appendLatency;
+    }
+
+    @Override
+    public LatencyHistogram getVerificationLatency() {
+        return verificationLatency;
+    }
+
+    @Override
+    public LatencyHistogram getConnectionLatency() {
+        return connectionLatency;
+    }
+
+    @Override
+    public LatencyHistogram getStatementLatency() {
+        return statementLatency;
+    }
+
+    @Override
+    public LatencyHistogram getSyncLatency() {
+        return syncLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "Blocks appended: " + getBlocksAppended() + ", rejected: " + getRejectionsByReason() +
+                ", loaded: " + getBlocksLoaded() + ", hashes: " + getHashesComputed() +
+                ", cache hits: " + getBlockCacheHits() + ", misses: " + getBlockCacheMisses() +
+                ", synced: " + getBlocksSynced() + " (" + getBytesSynced() + " bytes), lag: " + getSyncLag() + "\n" +
+                "Append latency: " + appendLatency + "\n" +
+                "Verification latency: " + verificationLatency + "\n" +
+                "Connection latency: " + connectionLatency + "\n" +
+                "Statement latency: " + statementLatency + "\n" +
+                "Sync latency: " + syncLatency;
+    }
+}
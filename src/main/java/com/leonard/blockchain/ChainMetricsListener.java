@@ -0,0 +1,90 @@
+package com.leonard.blockchain;
+
+/**
+ * Receives measurements from a {@link BlockChain} and its {@link BlockStore}.
+ * Callbacks run synchronously on the thread performing the operation, in some cases while the chain's append
+ * lock is held, so implementations must be thread-safe and cheap. Every callback has an empty default.
+ *
+ * @see ChainMetrics
+ */
+public interface ChainMetricsListener {
+    /** A listener that ignores every measurement. */
+    ChainMetricsListener NONE = new ChainMetricsListener() {
+    };
+
+    /**
+     * Called after a block has been appended by {@link BlockChain#addBlock(Block)}.
+     *
+     * @param block        The appended block.
+     * @param elapsedNanos The time taken to validate and append the block, including waiting for the append lock.
+     */
+    default void onBlockAppended(Block block, long elapsedNanos) {
+    }
+
+    /**
+     * Called when {@link BlockChain#addBlock(Block)} rejects a block.
+     *
+     * @param block  The rejected block.
+     * @param reason The first check the block failed.
+     */
+    default void onBlockRejected(Block block, VerificationReport.Reason reason) {
+    }
+
+    /**
+     * Called after the whole chain has been verified.
+     *
+     * @param report The verification report, including the time taken.
+     */
+    default void onChainVerified(VerificationReport report) {
+    }
+
+    /**
+     * Called after blocks have been loaded from the store into the chain.
+     *
+     * @param count The number of blocks loaded.
+     */
+    default void onBlocksLoaded(int count) {
+    }
+
+    /**
+     * Called after {@link PeerSync} has appended a batch of blocks received from a peer.
+     *
+     * @param count        The number of blocks appended.
+     * @param bytes        The size of the batch on the wire.
+     * @param elapsedNanos The time from requesting the batch to receiving all of it.
+     */
+    default void onBlocksSynced(int count, long bytes, long elapsedNanos) {
+    }
+
+    /**
+     * Called whenever {@link PeerSync} learns how far the chain is behind a peer.
+     *
+     * @param blocks The number of blocks the peer's tip is ahead of the chain's tip, or zero.
+     */
+    default void onSyncLag(int blocks) {
+    }
+
+    /**
+     * Called when a block that is no longer held in memory is looked up in the chain's {@link BlockCache}.
+     *
+     * @param hit True if the block was cached, false if it had to be read from the store.
+     */
+    default void onBlockCacheLookup(boolean hit) {
+    }
+
+    /**
+     * Called after the store has opened a connection, or for stores without connections, its files.
+     *
+     * @param elapsedNanos The time taken to open.
+     */
+    default void onConnectionOpened(long elapsedNanos) {
+    }
+
+    /**
+     * Called after the store has executed a statement, or for stores without SQL, a read or write operation.
+     *
+     * @param elapsedNanos The time taken by the statement.
+     */
+    default void onStatementExecuted(long elapsedNanos) {
+    }
+}
@@ -0,0 +1,120 @@
+package com.leonard.blockchain;
+
+import java.util.Map;
+
+/**
+ * The JMX management interface of {@link ChainMetrics}.
+ */
+public interface ChainMetricsMXBean {
+    /**
+     * Gets the number of blocks appended with {@link BlockChain#addBlock(Block)}.
+     *
+     * @return The number of appended blocks.
+     */
+    long getBlocksAppended();
+
+    /**
+     * Gets the number of blocks rejected by {@link BlockChain#addBlock(Block)}.
+     *
+     * @return The number of rejected blocks.
+     */
+    long getBlocksRejected();
+
+    /**
+     * Gets the number of rejected blocks per rejection reason.
+     *
+     * @return The rejection counts keyed by {@link VerificationReport.Reason} name.
+     */
+    Map<String, Long> getRejectionsByReason();
+
+    /**
+     * Gets the number of block hashes computed in this JVM, by any chain.
+     *
+     * @return The number of hashes.
+     */
+    long getHashesComputed();
+
+    /**
+     * Gets the number of full chain verifications.
+     *
+     * @return The number of verifications.
+     */
+    long getChainVerifications();
+
+    /**
+     * Gets the number of blocks loaded from the store.
+     *
+     * @return The number of loaded blocks.
+     */
+    long getBlocksLoaded();
+
+    /**
+     * Gets the number of lookups of blocks outside the memory window that were served by the block cache.
+     *
+     * @return The number of cache hits.
+     */
+    long getBlockCacheHits();
+
+    /**
+     * Gets the number of lookups of blocks outside the memory window that had to read the store.
+     *
+     * @return The number of cache misses.
+     */
+    long getBlockCacheMisses();
+
+    /**
+     * Gets the number of blocks received from peers and appended by {@link PeerSync}.
+     *
+     * @return The number of synced blocks.
+     */
+    long getBlocksSynced();
+
+    /**
+     * Gets the size on the wire of the blocks received from peers.
+     *
+     * @return The number of bytes.
+     */
+    long getBytesSynced();
+
+    /**
+     * Gets the number of blocks the chain was last known to be behind a peer.
+     *
+     * @return The sync lag in blocks.
+     */
+    int getSyncLag();
+
+    /**
+     * Gets the latency of block appends.
+     *
+     * @return The append latency histogram.
+     */
+    LatencyHistogram getAppendLatency();
+
+    /**
+     * Gets the duration of full chain verifications.
+     *
+     * @return The verification latency histogram.
+     */
+    LatencyHistogram getVerificationLatency();
+
+    /**
+     * Gets the time taken to open store connections.
+     *
+     * @return The connection latency histogram.
+     */
+    LatencyHistogram getConnectionLatency();
+
+    /**
+     * Gets the latency of store statements.
+     *
+     * @return The statement latency histogram.
+     */
+    LatencyHistogram getStatementLatency();
+
+    /**
+     * Gets the time taken to fetch batches of blocks from peers.
+     *
+     * @return The sync latency histogram.
+     */
+    LatencyHistogram getSyncLatency();
+}
@@ -0,0 +1,382 @@
+package com.leonard.blockchain;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Writes and reads chain snapshots, a versioned binary format for backing up a chain and bootstrapping a new node.
+ * A snapshot starts with a magic number, the format version and a flags word, followed by chunks of the form
+ * {@code length, blockCount, crc32, payload}. Each chunk holds as many length-prefixed blocks as fit into the
+ * chunk size. A final chunk without blocks holds the number of blocks in the snapshot and the hash of the last
+ * one, so that a truncated snapshot is detected. Blocks are written with their stored hash, and transaction
+ * blocks with their transactions.
+ * <p>
+ * Export and import stream through NIO channels, so a snapshot can be written to or read from a file, a socket
+ * or a pipe while only one chunk or one batch of blocks is held in memory. Import checks the checksum of every
+ * chunk and verifies the hashes and links of each batch with a {@link ChainVerifier}, in parallel for batches
+ * larger than the verifier's chunk size. Verified batches are written with {@link BlockStore#insertAll(Collection)}
+ * on a background thread while the next batch is read and verified, so reading, hashing and writing overlap.
+ */
+public final class ChainSnapshot {
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final Logger logger = Logger.getLogger(ChainSnapshot.class.getName());
+    private static final int MAGIC = 0x424c4b53;
+    private static final int HEADER_LENGTH = 12;
+    private static final int CHUNK_HEADER_LENGTH = 12;
+    private static final int MAX_CHUNK_LENGTH = 1 << 30;
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    private static final int DEFAULT_BATCH_SIZE = 16384;
+    private static final int FETCH_SIZE = 1000;
+
+    private final int chunkSize;
+    private final int batchSize;
+    private final ChainVerifier verifier;
+
+    /**
+     * Constructs a snapshot codec with 1 MiB chunks that imports batches of 16384 blocks and verifies them with
+     * one thread per available processor.
+     */
+    public ChainSnapshot() {
+        this(new ChainVerifier());
+    }
+
+    /**
+     * Constructs a snapshot codec with the default chunk and batch sizes.
+     *
+     * @param verifier The verifier used on import.
+     */
+    ChainSnapshot(ChainVerifier verifier) {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_BATCH_SIZE, verifier);
+    }
+
+    /**
+     * Constructs a snapshot codec with the given chunk and batch sizes.
+     *
+     * @param chunkSize The number of bytes of blocks after which export closes a chunk. Must be positive.
+     * @param batchSize The number of blocks import verifies and writes at a time. Must be positive.
+     * @param verifier  The verifier used on import.
+     * @throws IllegalArgumentException If chunkSize or batchSize is not positive, or verifier is null.
+     */
+    public ChainSnapshot(int chunkSize, int batchSize, ChainVerifier verifier) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        if (verifier == null) {
+            throw new IllegalArgumentException("Verifier cannot be null.");
+        }
+        this.chunkSize = chunkSize;
+        this.batchSize = batchSize;
+        this.verifier = verifier;
+    }
+
+    /**
+     * Writes every block of a store to a snapshot, streaming the blocks from the store in index order.
+     *
+     * @param store   The store to export.
+     * @param channel The channel the snapshot is written to. It is not closed.
+     * @return The number of blocks written.
+     * @throws BlockStoreException If the store cannot be read or the channel cannot be written.
+     */
+    public long export(BlockStore store, WritableByteChannel channel) {
+        try (Stream<Block> blocks = store.stream(0, FETCH_SIZE)) {
+            return export(blocks.iterator(), store::loadTransactions, channel);
+        }
+    }
+
+    /**
+     * Writes blocks to a snapshot.
+     *
+     * @param blocks       The blocks to write, in chain order.
+     * @param transactions Loads the transactions of transaction blocks whose body is not loaded.
+     * @param channel      The channel the snapshot is written to. It is not closed.
+     * @return The number of blocks written.
+     * @throws BlockStoreException If the blocks cannot be read or the channel cannot be written.
+     */
+    long export(Iterator<Block> blocks, IntFunction<List<String>> transactions, WritableByteChannel channel) {
+        long start = System.nanoTime();
+        SnapshotWriter writer = new SnapshotWriter(channel);
+        try {
+            writer.writeHeader();
+            while (blocks.hasNext()) {
+                writer.add(blocks.next(), transactions);
+            }
+            writer.finish();
+        } catch (IOException e) {
+            throw new BlockStoreException("Error writing the snapshot", e);
+        }
+        logger.log(Level.INFO, "Exported " + writer.blockCount + " blocks (" + writer.bytesWritten + " bytes) in " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        return writer.blockCount;
+    }
+
+    /**
+     * Reads a snapshot into a store. Each batch of blocks is verified against the batch before it and written only
+     * if it is valid, so when verification fails the blocks before the failing batch are kept and the rest of the
+     * snapshot is not read. Blocks whose index the store already holds are skipped.
+     *
+     * @param channel The channel the snapshot is read from. It is not closed.
+     * @param store   The store the blocks are written to.
+     * @return The verification report of the blocks read.
+     * @throws BlockStoreException If the snapshot is corrupt, truncated or of an unsupported version, the channel
+     *                             cannot be read or the blocks cannot be stored.
+     */
+    public VerificationReport importInto(ReadableByteChannel channel, BlockStore store) {
+        long start = System.nanoTime();
+        SnapshotReader reader = new SnapshotReader(channel);
+        ChainVerifier.Run run = verifier.start();
+        ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "snapshot-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long written = 0;
+        try {
+            reader.readHeader();
+            Future<Integer> pending = null;
+            List<Block> batch = new ArrayList<>();
+            boolean more = true;
+            while (more && run.isValid()) {
+                more = reader.readChunk(batch);
+                if (batch.size() >= batchSize || !more && !batch.isEmpty()) {
+                    if (run.add(batch)) {
+                        written += await(pending);
+                        List<Block> verified = batch;
+                        pending = writer.submit(() -> store.insertAll(verified));
+                    }
+                    batch = new ArrayList<>();
+                }
+            }
+            written += await(pending);
+        } catch (IOException e) {
+            throw new BlockStoreException("Error reading the snapshot", e);
+        } finally {
+            writer.shutdown();
+            awaitTermination(writer);
+        }
+
+        VerificationReport report = run.finish();
+        logger.log(report.isValid() ? Level.INFO : Level.WARNING, "Imported " + written + " of " + reader.blockCount +
+                " blocks (" + reader.bytesRead + " bytes) in " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms: " + report);
+        return report;
+    }
+
+    private static int await(Future<Integer> write) {
+        if (write == null) {
+            return 0;
+        }
+        try {
+            return write.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BlockStoreException("Interrupted while importing the snapshot", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BlockStoreException) {
+                throw (BlockStoreException) e.getCause();
+            }
+            throw new BlockStoreException("Error storing the snapshot", e.getCause());
+        }
+    }
+
+    /**
+     * Waits for a write still in flight after a failure, so that the store is not written to after import returns.
+     */
+    private static void awaitTermination(ExecutorService writer) {
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Encodes blocks into chunks and writes each chunk once it reaches the chunk size.
+     */
+    private final class SnapshotWriter {
+        private final WritableByteChannel channel;
+        private final CRC32 checksum = new CRC32();
+        private ByteBuffer chunk = ByteBuffer.allocate(CHUNK_HEADER_LENGTH + chunkSize + chunkSize / 8);
+        private int chunkBlocks;
+        private long blockCount;
+        private long bytesWritten;
+        private String lastHash;
+
+        private SnapshotWriter(WritableByteChannel channel) {
+            this.channel = channel;
+            chunk.position(CHUNK_HEADER_LENGTH);
+        }
+
+        private void writeHeader() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(0);
+            header.flip();
+            write(header);
+        }
+
+        private void add(Block block, IntFunction<List<String>> transactions) throws IOException {
+            List<String> body = block.isTransactionBlock() && !block.isBodyLoaded()
+                    ? transactions.apply(block.getIndex()) : block.getTransactions();
+            chunk = BlockCodec.encode(chunk, block, body);
+            chunkBlocks++;
+            blockCount++;
+            lastHash = block.getHash();
+            if (chunk.position() - CHUNK_HEADER_LENGTH >= chunkSize) {
+                writeChunk();
+            }
+        }
+
+        private void finish() throws IOException {
+            if (chunkBlocks > 0) {
+                writeChunk();
+            }
+            chunk = BlockCodec.ensureCapacity(chunk, 8);
+            chunk.putLong(blockCount);
+            chunk = BlockCodec.putString(chunk, lastHash);
+            writeChunk();
+        }
+
+        /**
+         * Fills in the header of the current chunk, writes it and starts the next one.
+         */
+        private void writeChunk() throws IOException {
+            int length = chunk.position() - CHUNK_HEADER_LENGTH;
+            checksum.reset();
+            checksum.update(chunk.array(), CHUNK_HEADER_LENGTH, length);
+            chunk.putInt(0, length);
+            chunk.putInt(4, chunkBlocks);
+            chunk.putInt(8, (int) checksum.getValue());
+            chunk.flip();
+            write(chunk);
+            chunk.clear();
+            chunk.position(CHUNK_HEADER_LENGTH);
+            chunkBlocks = 0;
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            bytesWritten += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads chunks, checks their checksums and decodes their blocks.
+     */
+    private static final class SnapshotReader {
+        private final ReadableByteChannel channel;
+        private final CRC32 checksum = new CRC32();
+        private final ByteBuffer header = ByteBuffer.allocate(Math.max(HEADER_LENGTH, CHUNK_HEADER_LENGTH));
+        private ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+        private long chunkCount;
+        private long blockCount;
+        private long bytesRead;
+        private String lastHash;
+
+        private SnapshotReader(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        private void readHeader() throws IOException {
+            readFully(header, HEADER_LENGTH);
+            if (header.getInt() != MAGIC) {
+                throw new BlockStoreException("Not a chain snapshot.");
+            }
+            int version = header.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new BlockStoreException("Unsupported snapshot version " + version + ", expected " + FORMAT_VERSION + ".");
+            }
+            int flags = header.getInt();
+            if (flags != 0) {
+                throw new BlockStoreException("Unsupported snapshot flags " + flags + ".");
+            }
+        }
+
+        /**
+         * Reads the next chunk and appends its blocks.
+         *
+         * @return True if blocks were read, false if the final chunk was read and matches the blocks read.
+         */
+        private boolean readChunk(List<Block> blocks) throws IOException {
+            readFully(header, CHUNK_HEADER_LENGTH);
+            int length = header.getInt();
+            int count = header.getInt();
+            int expectedChecksum = header.getInt();
+            chunkCount++;
+            if (length <= 0 || length > MAX_CHUNK_LENGTH || count < 0) {
+                throw new BlockStoreException("Chunk " + chunkCount + " of the snapshot has an invalid header.");
+            }
+            if (chunk.capacity() < length) {
+                chunk = ByteBuffer.allocate(Math.max(chunk.capacity() * 2, length));
+            }
+            readFully(chunk, length);
+            checksum.reset();
+            checksum.update(chunk.array(), 0, length);
+            if ((int) checksum.getValue() != expectedChecksum) {
+                throw new BlockStoreException("Chunk " + chunkCount + " of the snapshot is corrupt.");
+            }
+
+            try {
+                if (count == 0) {
+                    long expectedCount = chunk.getLong();
+                    String expectedHash = BlockCodec.getString(chunk);
+                    if (expectedCount != blockCount || (expectedHash == null ? lastHash != null : !expectedHash.equals(lastHash))) {
+                        throw new BlockStoreException("Snapshot holds " + blockCount + " blocks ending at " + lastHash +
+                                ", but its trailer records " + expectedCount + " blocks ending at " + expectedHash + ".");
+                    }
+                    return false;
+                }
+                for (int i = 0; i < count; i++) {
+                    blocks.add(BlockCodec.decode(chunk));
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new BlockStoreException("Chunk " + chunkCount + " of the snapshot is malformed.", e);
+            }
+            if (chunk.hasRemaining()) {
+                throw new BlockStoreException("Chunk " + chunkCount + " of the snapshot is malformed.");
+            }
+            blockCount += count;
+            lastHash = blocks.get(blocks.size() - 1).getHash();
+            return true;
+        }
+
+        /**
+         * Reads exactly length bytes into the buffer and flips it for reading.
+         */
+        private void readFully(ByteBuffer buffer, int length) throws IOException {
+            buffer.clear();
+            buffer.limit(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new BlockStoreException("Snapshot is truncated after " + blockCount + " blocks.");
+                }
+            }
+            buffer.flip();
+            bytesRead += length;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.leonard.blockchain;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies the integrity of a chain by recomputing the hash of every block and checking that each block
+ * links to its predecessor by index and previous hash. The Merkle roots of transaction blocks whose bodies
+ * are loaded are recomputed as well, and proof-of-work blocks must meet their own difficulty.
+ * Chains longer than the chunk size are split into chunks that are verified in parallel on a
+ * {@link ForkJoinPool}; once a failure is found, chunks after it are skipped. The pool is created on first use and
+ * shared by every verification of the verifier, or is the common pool when the parallelism matches it, so
+ * verifying a chain batch by batch does not start new threads for each batch. Idle workers exit on their own.
+ */
+public class ChainVerifier {
+    private static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final int parallelism;
+    private final int chunkSize;
+    private volatile ForkJoinPool pool;
+
+    /**
+     * Constructs a verifier that uses one thread per available processor.
+     */
+    public ChainVerifier() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs a verifier with the given parallelism and chunk size.
+     *
+     * @param parallelism The number of threads used to verify large chains. Must be positive.
+     * @param chunkSize   The number of blocks verified by a single task. Must be positive.
+     * @throws IllegalArgumentException If parallelism or chunkSize is not positive.
+     */
+    public ChainVerifier(int parallelism, int chunkSize) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        }
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Verifies the given blocks in chain order.
+     *
+     * @param blocks The blocks to verify. The list must support fast random access.
+     * @return A report describing the first invalid block, if any.
+     */
+    public VerificationReport verify(List<Block> blocks) {
+        long start = System.nanoTime();
+        AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+        VerificationReport.Reason[] reasons = new VerificationReport.Reason[1];
+        ChunkTask task = new ChunkTask(blocks, 0, blocks.size(), firstFailure, reasons);
+
+        if (blocks.size() <= chunkSize || parallelism == 1) {
+            task.verifyRange();
+        } else {
+            pool().invoke(task);
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        int position = firstFailure.get();
+        if (position == Integer.MAX_VALUE) {
+            return new VerificationReport(blocks.size(), -1, null, elapsedNanos);
+        }
+        return new VerificationReport(blocks.size(), blocks.get(position).getIndex(), reasons[0], elapsedNanos);
+    }
+
+    private ForkJoinPool pool() {
+        ForkJoinPool current = pool;
+        if (current == null) {
+            synchronized (this) {
+                current = pool;
+                if (current == null) {
+                    current = parallelism == ForkJoinPool.getCommonPoolParallelism()
+                            ? ForkJoinPool.commonPool() : new ForkJoinPool(parallelism);
+                    pool = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Checks a single block against its predecessor.
+     *
+     * @param block    The block to check.
+     * @param previous The preceding block, or {@code null} for the first block.
+     * @return The reason the block is invalid, or {@code null} if it is valid.
+     */
+    static VerificationReport.Reason check(Block block, Block previous) {
+        if (previous != null) {
+            if (previous.getIndex() + 1 != block.getIndex()) {
+                return VerificationReport.Reason.INDEX_MISMATCH;
+            }
+            if (!previous.getHash().equals(block.getPreviousHash())) {
+                return VerificationReport.Reason.PREVIOUS_HASH_MISMATCH;
+            }
+        }
+        if (!block.hasValidHash()) {
+            return VerificationReport.Reason.HASH_MISMATCH;
+        }
+        if (!block.meetsDifficulty()) {
+            return VerificationReport.Reason.INSUFFICIENT_WORK;
+        }
+        if (!block.hasValidMerkleRoot()) {
+            return VerificationReport.Reason.MERKLE_ROOT_MISMATCH;
+        }
+        return null;
+    }
+
+    /**
+     * Starts verifying a chain that is passed in consecutive batches, e.g. while streaming it from a store.
+     *
+     * @return The verification run.
+     */
+    Run start() {
+        return new Run();
+    }
+
+    /**
+     * Verifies a chain batch by batch. Each batch is verified with {@link #verify(List)} and its first block is
+     * checked against the last block of the batch before it, so only one batch needs to be held at a time.
+     */
+    final class Run {
+        private final long start = System.nanoTime();
+        private Block previous;
+        private int blocksVerified;
+        private int firstInvalidIndex = -1;
+        private VerificationReport.Reason reason;
+
+        private Run() {
+        }
+
+        /**
+         * Verifies the next batch unless an earlier batch has failed.
+         *
+         * @param batch The blocks that follow the previous batch, in chain order.
+         * @return True if every block so far is valid, false otherwise.
+         */
+        boolean add(List<Block> batch) {
+            if (reason != null || batch.isEmpty()) {
+                return reason == null;
+            }
+            blocksVerified += batch.size();
+            VerificationReport.Reason linkReason = previous == null ? null : check(batch.get(0), previous);
+            if (linkReason != null) {
+                firstInvalidIndex = batch.get(0).getIndex();
+                reason = linkReason;
+                return false;
+            }
+            VerificationReport report = verify(batch);
+            if (!report.isValid()) {
+                firstInvalidIndex = report.getFirstInvalidIndex();
+                reason = report.getReason();
+                return false;
+            }
+            previous = batch.get(batch.size() - 1);
+            return true;
+        }
+
+        /**
+         * Checks whether every block verified so far is valid.
+         *
+         * @return True if no batch has failed, false otherwise.
+         */
+        boolean isValid() {
+            return reason == null;
+        }
+
+        /**
+         * Gets the last block of the last batch that was verified successfully.
+         *
+         * @return The last valid block, or {@code null} if no batch has been verified.
+         */
+        Block last() {
+            return previous;
+        }
+
+        /**
+         * Builds the report of the run so far.
+         *
+         * @return The verification report.
+         */
+        VerificationReport finish() {
+            return new VerificationReport(blocksVerified, firstInvalidIndex, reason, System.nanoTime() - start);
+        }
+    }
+
+    private final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Block> blocks;
+        private final int from;
+        private final int to;
+        private final AtomicInteger firstFailure;
+        private final VerificationReport.Reason[] reasons;
+
+        private ChunkTask(List<Block> blocks, int from, int to, AtomicInteger firstFailure, VerificationReport.Reason[] reasons) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.firstFailure = firstFailure;
+            this.reasons = reasons;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                verifyRange();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(blocks, from, middle, firstFailure, reasons),
+                    new ChunkTask(blocks, middle, to, firstFailure, reasons));
+        }
+
+        private void verifyRange() {
+            Block previous = from == 0 ? null : blocks.get(from - 1);
+            for (int i = from; i < to && i < firstFailure.get(); i++) {
+                Block block = blocks.get(i);
+                VerificationReport.Reason reason = check(block, previous);
+                if (reason != null) {
+                    recordFailure(i, reason);
+                    return;
+                }
+                previous = block;
+            }
+        }
+
+        private void recordFailure(int position, VerificationReport.Reason reason) {
+            synchronized (reasons) {
+                if (position < firstFailure.get()) {
+                    firstFailure.set(position);
+                    reasons[0] = reason;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.leonard.blockchain;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A verified point in a chain's history: the index and hash of the tip at the time, the number of blocks up to
+ * and including it, and a digest of the whole prefix.
+ * The prefix digest is a running SHA-256 over the hashes of every block in order, so a new checkpoint extends
+ * the digest of the previous one without reading older history. The seal is a SHA-256 over all other fields
+ * and detects a checkpoint record that was altered or damaged in the store.
+ *
+ * @see BlockChain#checkpoint()
+ * @see BlockChain#loadFromCheckpoint()
+ */
+public final class Checkpoint {
+    private static final byte[] SEAL_PREFIX = "javachain-checkpoint-v1".getBytes(StandardCharsets.US_ASCII);
+    private static final BlockHash EMPTY_DIGEST = BlockHash.wrap(new byte[BlockHash.LENGTH]);
+
+    private final int tipIndex;
+    private final String tipHash;
+    private final long blockCount;
+    private final BlockHash prefixDigest;
+    private final BlockHash seal;
+
+    Checkpoint(int tipIndex, String tipHash, long blockCount, BlockHash prefixDigest, BlockHash seal) {
+        this.tipIndex = tipIndex;
+        this.tipHash = tipHash;
+        this.blockCount = blockCount;
+        this.prefixDigest = prefixDigest;
+        this.seal = seal;
+    }
+
+    /**
+     * Creates a sealed checkpoint for the given tip.
+     */
+    static Checkpoint create(int tipIndex, String tipHash, long blockCount, BlockHash prefixDigest) {
+        return new Checkpoint(tipIndex, tipHash, blockCount, prefixDigest,
+                computeSeal(tipIndex, tipHash, blockCount, prefixDigest));
+    }
+
+    /**
+     * Extends a prefix digest with the hashes of the given blocks, in order.
+     *
+     * @param previous The digest of the blocks before these, or {@code null} at the start of the chain.
+     * @param blocks   The blocks to add. Every block must have a well-formed hash.
+     * @return The extended digest.
+     */
+    static BlockHash extendDigest(BlockHash previous, List<Block> blocks) {
+        MessageDigest digest = newDigest();
+        byte[] current = (previous == null ? EMPTY_DIGEST : previous).toBytes();
+        byte[] hash = new byte[BlockHash.LENGTH];
+        for (Block block : blocks) {
+            block.getBlockHash().copyTo(hash, 0);
+            digest.update(current);
+            current = digest.digest(hash);
+        }
+        return BlockHash.wrap(current);
+    }
+
+    /**
+     * Accumulates the prefix digest and block count of blocks passed in consecutive batches, starting either at
+     * the genesis block or at the tip of a previous checkpoint.
+     */
+    static final class Builder implements Consumer<List<Block>> {
+        private BlockHash prefixDigest;
+        private long blockCount;
+        private boolean skipPreviousTip;
+        private Block tip;
+
+        /**
+         * @param previous The checkpoint whose tip starts the first batch, or {@code null} to start at genesis.
+         */
+        Builder(Checkpoint previous) {
+            if (previous != null) {
+                prefixDigest = previous.getPrefixDigest();
+                blockCount = previous.getBlockCount();
+                skipPreviousTip = true;
+            }
+        }
+
+        @Override
+        public void accept(List<Block> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<Block> added = batch;
+            if (skipPreviousTip) {
+                added = batch.subList(1, batch.size());
+                skipPreviousTip = false;
+            }
+            prefixDigest = extendDigest(prefixDigest, added);
+            blockCount += added.size();
+            tip = batch.get(batch.size() - 1);
+        }
+
+        /**
+         * Gets the last block accepted so far.
+         *
+         * @return The tip, or {@code null} if no block has been accepted.
+         */
+        Block getTip() {
+            return tip;
+        }
+
+        /**
+         * Creates a sealed checkpoint at the last accepted block.
+         *
+         * @return The checkpoint.
+         */
+        Checkpoint build() {
+            return create(tip.getIndex(), tip.getHash(), blockCount, prefixDigest);
+        }
+    }
+
+    private static BlockHash computeSeal(int tipIndex, String tipHash, long blockCount, BlockHash prefixDigest) {
+        byte[] hashBytes = tipHash.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer fields = ByteBuffer.allocate(4 + 4 + hashBytes.length + 8 + BlockHash.LENGTH);
+        fields.putInt(tipIndex);
+        fields.putInt(hashBytes.length);
+        fields.put(hashBytes);
+        fields.putLong(blockCount);
+        fields.put(prefixDigest.toBytes());
+
+        MessageDigest digest = newDigest();
+        digest.update(SEAL_PREFIX);
+        return BlockHash.wrap(digest.digest(fields.array()));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not supported.", e);
+        }
+    }
+
+    /**
+     * Gets the index of the tip block at the checkpoint.
+     *
+     * @return The tip index.
+     */
+    public int getTipIndex() {
+        return tipIndex;
+    }
+
+    /**
+     * Gets the hash of the tip block at the checkpoint.
+     *
+     * @return The hexadecimal tip hash.
+     */
+    public String getTipHash() {
+        return tipHash;
+    }
+
+    /**
+     * Gets the number of blocks up to and including the tip.
+     *
+     * @return The number of blocks.
+     */
+    public long getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Gets the running digest of the hashes of every block up to and including the tip.
+     *
+     * @return The prefix digest.
+     */
+    public BlockHash getPrefixDigest() {
+        return prefixDigest;
+    }
+
+    /**
+     * Gets the seal over the other fields.
+     *
+     * @return The seal.
+     */
+    public BlockHash getSeal() {
+        return seal;
+    }
+
+    /**
+     * Checks that the seal matches the other fields.
+     *
+     * @return True if the checkpoint is intact, false otherwise.
+     */
+    public boolean isSealValid() {
+        return seal.equals(computeSeal(tipIndex, tipHash, blockCount, prefixDigest));
+    }
+
+    @Override
+    public String toString() {
+        return "Checkpoint at block " + tipIndex + " (" + blockCount + " blocks, tip " + tipHash + ")";
+    }
+}
@@ -0,0 +1,482 @@
+package com.leonard.blockchain;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link BlockList} that stores block fields in columns of primitive arrays instead of keeping block objects.
+ * Indexes, epoch-second timestamps, nonces and the other header fields each live in their own array, hashes are
+ * packed 32 bytes per block into one byte array, and data, transactions and any hash that is not a canonical
+ * SHA-256 value are written to an arena of large byte chunks. The previous hash is not stored at all when it is
+ * the hash of the preceding block, which is the case for every block of a valid chain.
+ * A header costs about 90 bytes plus its payload, and the number of objects does not grow with the chain, so
+ * tens of millions of blocks fit in a modest heap without adding to garbage collection work.
+ * {@link Block} objects are built on demand when a block is read and are not retained, apart from the last one.
+ * Time ranges are found in the timestamp columns, by binary search while blocks arrive in timestamp order and by a
+ * scan otherwise, so no per-block index is kept.
+ * <p>
+ * The writer fills every column before publishing the new size, and columns are only ever replaced by larger
+ * copies, so a reader that reads the size and then the columns always sees at least that many blocks.
+ */
+final class ColumnarBlockList implements BlockList {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / BlockHash.LENGTH;
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final byte HASH_PACKED = 1;
+    private static final byte PREVIOUS_LINKED = 2;
+    private static final byte BODY_LOADED = 4;
+
+    private volatile Columns columns = new Columns(INITIAL_CAPACITY, new byte[4][]);
+    private volatile int size;
+    private volatile Tail tail;
+    /** Whether every block so far follows its predecessor in timestamp order, then index order. */
+    private volatile boolean ordered = true;
+    private int chunkCount;
+    private int chunkPosition = CHUNK_SIZE;
+
+    @Override
+    public void add(Block block) {
+        Columns current = columns;
+        int position = size;
+        if (position == current.capacity) {
+            current = current.grow(position);
+        }
+
+        byte flags = 0;
+        BlockHash hash = block.getBlockHash();
+        if (hash != null) {
+            hash.copyTo(current.hashes, position * BlockHash.LENGTH);
+            flags |= HASH_PACKED;
+        }
+        Block previous = position == 0 ? null : tail.block;
+        if (previous != null && previous.getBlockHash() != null && previous.getHash().equals(block.getPreviousHash())) {
+            flags |= PREVIOUS_LINKED;
+        }
+        if (block.isBodyLoaded()) {
+            flags |= BODY_LOADED;
+        }
+
+        current.indexes[position] = block.getIndex();
+        current.epochSeconds[position] = block.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+        current.nanos[position] = block.getTimestamp().getNano();
+        current.schemes[position] = (byte) block.getHashScheme().getId();
+        current.flags[position] = flags;
+        current.nonces[position] = block.getNonce();
+        current.difficulties[position] = block.getDifficulty();
+        current.transactionCounts[position] = block.getTransactionCount();
+        current = writePayload(current, position, encodePayload(block, flags));
+        if (hash != null) {
+            current.index(position, hash.hashCode());
+        }
+        if (ordered && position > 0 && current.compare(position - 1, current.epochSeconds[position],
+                current.nanos[position], current.indexes[position]) >= 0) {
+            ordered = false;
+        }
+
+        columns = current;
+        tail = new Tail(position, block);
+        size = position + 1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int indexAt(int position) {
+        return columns.indexes[position];
+    }
+
+    @Override
+    public Block last() {
+        int currentSize = size;
+        if (currentSize == 0) {
+            return null;
+        }
+        Tail currentTail = tail;
+        if (currentTail.position == currentSize - 1) {
+            return currentTail.block;
+        }
+        return columns.materialize(currentSize - 1);
+    }
+
+    @Override
+    public List<Block> snapshot() {
+        int currentSize = size;
+        return new Snapshot(columns, currentSize);
+    }
+
+    @Override
+    public IntStream positionsBetween(int size, LocalDateTime from, LocalDateTime to, Block after) {
+        Columns current = columns;
+        LocalDateTime lower = from;
+        int lowerIndex = Integer.MIN_VALUE;
+        if (after != null && !after.getTimestamp().isBefore(from)) {
+            lower = after.getTimestamp();
+            lowerIndex = after.getIndex();
+        }
+        long lowerSeconds = lower.toEpochSecond(ZoneOffset.UTC);
+        int lowerNanos = lower.getNano();
+        long upperSeconds = to.toEpochSecond(ZoneOffset.UTC);
+        int upperNanos = to.getNano();
+        if (ordered) {
+            int start = current.firstAbove(size, lowerSeconds, lowerNanos, lowerIndex);
+            int end = current.firstAbove(size, upperSeconds, upperNanos, Integer.MIN_VALUE);
+            return start < end ? IntStream.range(start, end) : IntStream.empty();
+        }
+        int finalLowerIndex = lowerIndex;
+        return IntStream.range(0, size)
+                .filter(position -> current.compare(position, lowerSeconds, lowerNanos, finalLowerIndex) > 0
+                        && current.compare(position, upperSeconds, upperNanos, Integer.MIN_VALUE) < 0)
+                .boxed()
+                .sorted((first, second) -> current.compare(first, current.epochSeconds[second],
+                        current.nanos[second], current.indexes[second]))
+                .mapToInt(Integer::intValue);
+    }
+
+    @Override
+    public Block findByHash(BlockHash hash) {
+        int currentSize = size;
+        Columns current = columns;
+        int position = current.find(hash, currentSize);
+        return position < 0 ? null : current.materialize(position);
+    }
+
+    /**
+     * Encodes the fields of a block that are not held in columns: the hash if it is not packed, the previous hash
+     * if it is not linked, the data and the loaded transactions.
+     */
+    private static byte[] encodePayload(Block block, byte flags) {
+        List<byte[]> fields = new ArrayList<>(3);
+        if ((flags & HASH_PACKED) == 0) {
+            fields.add(encodeString(block.getHash()));
+        }
+        if ((flags & PREVIOUS_LINKED) == 0) {
+            fields.add(encodeString(block.getPreviousHash()));
+        }
+        fields.add(encodeString(block.getData()));
+        List<byte[]> body = new ArrayList<>();
+        if ((flags & BODY_LOADED) != 0) {
+            for (String transaction : block.getTransactions()) {
+                body.add(encodeString(transaction));
+            }
+        }
+
+        int length = encodedLength(fields) + ((flags & BODY_LOADED) != 0 ? 4 + encodedLength(body) : 0);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        putStrings(buffer, fields);
+        if ((flags & BODY_LOADED) != 0) {
+            buffer.putInt(body.size());
+            putStrings(buffer, body);
+        }
+        return buffer.array();
+    }
+
+    private static int encodedLength(List<byte[]> strings) {
+        int length = 0;
+        for (byte[] string : strings) {
+            length += 4 + (string == null ? 0 : string.length);
+        }
+        return length;
+    }
+
+    private static void putStrings(ByteBuffer buffer, List<byte[]> strings) {
+        for (byte[] string : strings) {
+            buffer.putInt(string == null ? -1 : string.length);
+            if (string != null) {
+                buffer.put(string);
+            }
+        }
+    }
+
+    private static byte[] encodeString(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies an encoded payload into the arena, starting a new chunk when it does not fit in the current one.
+     *
+     * @return The columns to publish, which hold a larger chunk table if one was needed.
+     */
+    private Columns writePayload(Columns current, int position, byte[] payload) {
+        if (payload.length > CHUNK_SIZE - chunkPosition) {
+            if (chunkCount == current.chunks.length) {
+                current = current.withChunks(Arrays.copyOf(current.chunks, chunkCount * 2));
+            }
+            current.chunks[chunkCount++] = new byte[Math.max(CHUNK_SIZE, payload.length)];
+            chunkPosition = 0;
+        }
+        System.arraycopy(payload, 0, current.chunks[chunkCount - 1], chunkPosition, payload.length);
+        current.payloadOffsets[position] = (long) (chunkCount - 1) << 32 | chunkPosition;
+        chunkPosition += payload.length;
+        return current;
+    }
+
+    private static final class Tail {
+        private final int position;
+        private final Block block;
+
+        private Tail(int position, Block block) {
+            this.position = position;
+            this.block = block;
+        }
+    }
+
+    /**
+     * The column arrays and the hash table. A new instance is published whenever an array is replaced.
+     */
+    private static final class Columns {
+        private final int capacity;
+        private final int[] indexes;
+        private final long[] epochSeconds;
+        private final int[] nanos;
+        private final byte[] schemes;
+        private final byte[] flags;
+        private final long[] nonces;
+        private final int[] difficulties;
+        private final int[] transactionCounts;
+        private final byte[] hashes;
+        private final long[] payloadOffsets;
+        private final byte[][] chunks;
+        /** Open-addressing table of block positions plus one, keyed by block hash; zero marks a free slot. */
+        private final int[] hashTable;
+
+        private Columns(int capacity, byte[][] chunks) {
+            this.capacity = capacity;
+            this.indexes = new int[capacity];
+            this.epochSeconds = new long[capacity];
+            this.nanos = new int[capacity];
+            this.schemes = new byte[capacity];
+            this.flags = new byte[capacity];
+            this.nonces = new long[capacity];
+            this.difficulties = new int[capacity];
+            this.transactionCounts = new int[capacity];
+            this.hashes = new byte[capacity * BlockHash.LENGTH];
+            this.payloadOffsets = new long[capacity];
+            this.chunks = chunks;
+            this.hashTable = new int[Integer.highestOneBit(capacity) * 4];
+        }
+
+        private Columns(Columns other, byte[][] chunks) {
+            this.capacity = other.capacity;
+            this.indexes = other.indexes;
+            this.epochSeconds = other.epochSeconds;
+            this.nanos = other.nanos;
+            this.schemes = other.schemes;
+            this.flags = other.flags;
+            this.nonces = other.nonces;
+            this.difficulties = other.difficulties;
+            this.transactionCounts = other.transactionCounts;
+            this.hashes = other.hashes;
+            this.payloadOffsets = other.payloadOffsets;
+            this.chunks = chunks;
+            this.hashTable = other.hashTable;
+        }
+
+        private Columns withChunks(byte[][] newChunks) {
+            return new Columns(this, newChunks);
+        }
+
+        /**
+         * Copies the first size entries into columns with half as much capacity again and rebuilds the hash table.
+         */
+        private Columns grow(int size) {
+            int grownCapacity = (int) Math.min((long) capacity + (capacity >> 1), MAX_CAPACITY);
+            if (grownCapacity == capacity) {
+                throw new IllegalStateException("A columnar chain cannot hold more than " + MAX_CAPACITY + " blocks.");
+            }
+            Columns grown = new Columns(grownCapacity, chunks);
+            System.arraycopy(indexes, 0, grown.indexes, 0, size);
+            System.arraycopy(epochSeconds, 0, grown.epochSeconds, 0, size);
+            System.arraycopy(nanos, 0, grown.nanos, 0, size);
+            System.arraycopy(schemes, 0, grown.schemes, 0, size);
+            System.arraycopy(flags, 0, grown.flags, 0, size);
+            System.arraycopy(nonces, 0, grown.nonces, 0, size);
+            System.arraycopy(difficulties, 0, grown.difficulties, 0, size);
+            System.arraycopy(transactionCounts, 0, grown.transactionCounts, 0, size);
+            System.arraycopy(hashes, 0, grown.hashes, 0, size * BlockHash.LENGTH);
+            System.arraycopy(payloadOffsets, 0, grown.payloadOffsets, 0, size);
+            for (int position = 0; position < size; position++) {
+                if ((flags[position] & HASH_PACKED) != 0) {
+                    grown.index(position, hashCode(hashes, position * BlockHash.LENGTH));
+                }
+            }
+            return grown;
+        }
+
+        /**
+         * Adds a position to the hash table, replacing an earlier block with the same hash.
+         *
+         * @param hashCode The hash code of the block hash, as returned by {@link BlockHash#hashCode()}.
+         */
+        private void index(int position, int hashCode) {
+            int mask = hashTable.length - 1;
+            for (int slot = spread(hashCode) & mask; ; slot = (slot + 1) & mask) {
+                int entry = hashTable[slot];
+                if (entry == 0 || sameHash(entry - 1, position)) {
+                    hashTable[slot] = position + 1;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Looks up the position of the block with the given hash among the first size blocks.
+         *
+         * @return The position, or -1 if no such block exists.
+         */
+        private int find(BlockHash hash, int size) {
+            byte[] key = hash.toBytes();
+            int mask = hashTable.length - 1;
+            for (int slot = spread(hash.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+                int entry = hashTable[slot];
+                if (entry == 0) {
+                    return -1;
+                }
+                int position = entry - 1;
+                if (position < size && matches(position, key)) {
+                    return position;
+                }
+            }
+        }
+
+        private boolean sameHash(int first, int second) {
+            int firstOffset = first * BlockHash.LENGTH;
+            int secondOffset = second * BlockHash.LENGTH;
+            for (int i = 0; i < BlockHash.LENGTH; i++) {
+                if (hashes[firstOffset + i] != hashes[secondOffset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean matches(int position, byte[] key) {
+            int offset = position * BlockHash.LENGTH;
+            for (int i = 0; i < BlockHash.LENGTH; i++) {
+                if (hashes[offset + i] != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Compares the block at a position with a timestamp and block index, in timestamp order and then index order.
+         */
+        private int compare(int position, long seconds, int nanosOfSecond, int blockIndex) {
+            int order = Long.compare(epochSeconds[position], seconds);
+            if (order == 0) {
+                order = Integer.compare(nanos[position], nanosOfSecond);
+            }
+            return order != 0 ? order : Integer.compare(indexes[position], blockIndex);
+        }
+
+        /**
+         * Finds the first of the first size positions that sorts after the given timestamp and block index, which
+         * requires the positions to be in that order.
+         *
+         * @return The position, or size if there is none.
+         */
+        private int firstAbove(int size, long seconds, int nanosOfSecond, int blockIndex) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(middle, seconds, nanosOfSecond, blockIndex) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Builds the block stored at the given position.
+         */
+        private Block materialize(int position) {
+            byte blockFlags = flags[position];
+            long offset = payloadOffsets[position];
+            ByteBuffer payload = ByteBuffer.wrap(chunks[(int) (offset >>> 32)]);
+            payload.position((int) offset);
+
+            String hash = (blockFlags & HASH_PACKED) != 0 ? hexAt(position) : readString(payload);
+            String previousHash = (blockFlags & PREVIOUS_LINKED) != 0 ? hexAt(position - 1) : readString(payload);
+            String data = readString(payload);
+            List<String> transactions = null;
+            if ((blockFlags & BODY_LOADED) != 0) {
+                int count = payload.getInt();
+                transactions = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    transactions.add(readString(payload));
+                }
+            }
+            LocalDateTime timestamp = LocalDateTime.ofEpochSecond(epochSeconds[position], nanos[position], ZoneOffset.UTC);
+            return new Block(indexes[position], timestamp, data, previousHash, HashScheme.fromId(schemes[position]),
+                    hash, transactionCounts[position], transactions, nonces[position], difficulties[position]);
+        }
+
+        private String hexAt(int position) {
+            int offset = position * BlockHash.LENGTH;
+            return HexCodec.encode(Arrays.copyOfRange(hashes, offset, offset + BlockHash.LENGTH));
+        }
+
+        private static String readString(ByteBuffer payload) {
+            int length = payload.getInt();
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(payload.array(), payload.position(), length, StandardCharsets.UTF_8);
+            payload.position(payload.position() + length);
+            return value;
+        }
+
+        /**
+         * Computes the same hash code as {@link BlockHash#hashCode()} for packed hash bytes.
+         */
+        private static int hashCode(byte[] hashes, int offset) {
+            int result = 1;
+            for (int i = 0; i < BlockHash.LENGTH; i++) {
+                result = 31 * result + hashes[offset + i];
+            }
+            return result;
+        }
+
+        private static int spread(int hashCode) {
+            return hashCode ^ (hashCode >>> 16);
+        }
+    }
+
+    private static final class Snapshot extends AbstractList<Block> implements RandomAccess {
+        private final Columns columns;
+        private final int size;
+
+        private Snapshot(Columns columns, int size) {
+            this.columns = columns;
+            this.size = size;
+        }
+
+        @Override
+        public Block get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return columns.materialize(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
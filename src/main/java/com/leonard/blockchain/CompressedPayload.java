@@ -0,0 +1,40 @@
+package com.leonard.blockchain;
+
+/**
+ * The compressed data of a block as read from a store, decompressed when the data is first read.
+ */
+final class CompressedPayload {
+    private final byte[] bytes;
+    private final String key;
+    private final PayloadCodec codec;
+
+    /**
+     * @param bytes The compressed payload.
+     * @param key   The payload's first {@link BlockQuery#PAYLOAD_KEY_LENGTH} code points.
+     * @param codec The codec the payload was compressed with.
+     */
+    CompressedPayload(byte[] bytes, String key, PayloadCodec codec) {
+        this.bytes = bytes;
+        this.key = key;
+        this.codec = codec;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    PayloadCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @throws BlockStoreException If the payload is corrupt.
+     */
+    String decompress() {
+        return codec.decompress(bytes);
+    }
+}
@@ -0,0 +1,320 @@
+package com.leonard.blockchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Saves blocks to a {@link BlockStore} on a background thread, committing them in groups.
+ * Submitted blocks are queued and written by a single flusher thread with
+ * {@link BlockStore#insertAll(java.util.Collection)}, so that a whole group shares one transaction and one sync to
+ * disk. A group is written once it reaches the maximum batch size or once its oldest block has waited for the
+ * maximum delay, whichever comes first. Each submission returns a future that completes once the block is
+ * durable, or completes exceptionally if the write fails. When the queue is full, submissions block until the
+ * flusher has made room. Blocks are written in the order they were submitted.
+ * <p>
+ * Once a group fails to be written, every later write and flush fails as well, so the store never holds a block
+ * without the blocks submitted before it. The blocks that could not be written are kept in order and can be
+ * written again with {@link #retry()}, which resumes normal operation once it succeeds.
+ */
+public class GroupCommitWriter implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(GroupCommitWriter.class.getName());
+
+    private final BlockStore store;
+    private final BlockingQueue<PendingWrite> queue;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Thread flusher;
+    private final LongAdder blocksWritten = new LongAdder();
+    private final LongAdder batchesWritten = new LongAdder();
+    private final Object writeLock = new Object();
+    /** The blocks of the failed group and of every group rejected since, in submission order. */
+    private final List<Block> unwritten = new ArrayList<>();
+    private volatile RuntimeException failure;
+    private volatile int submittedIndex = -1;
+    private volatile int persistedIndex = -1;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a writer and starts its flusher thread.
+     *
+     * @param store         The store to write to.
+     * @param queueCapacity The number of blocks that may wait to be written before submissions block.
+     * @param maxBatchSize  The largest number of blocks committed together.
+     * @param maxDelay      The longest time a block waits for others to join its group.
+     * @param unit          The unit of maxDelay.
+     * @throws IllegalArgumentException If queueCapacity or maxBatchSize is not positive, or maxDelay is negative.
+     */
+    public GroupCommitWriter(BlockStore store, int queueCapacity, int maxBatchSize, long maxDelay, TimeUnit unit) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive.");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("Maximum delay cannot be negative.");
+        }
+        this.store = store;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.flusher = new Thread(this::run, "block-group-commit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues a block to be saved, waiting for space if the queue is full.
+     *
+     * Blocks are expected to be submitted in index order, as {@link BlockChain#addAndSave(Block)} does.
+     *
+     * @param block The block to save.
+     * @return A future that completes once the block is durable in the store, or completes exceptionally if it
+     *         or an earlier block could not be written.
+     * @throws IllegalStateException If the writer has been closed.
+     * @throws InterruptedException  If the calling thread is interrupted while waiting for space.
+     */
+    public CompletableFuture<Void> submit(Block block) throws InterruptedException {
+        // The mark moves before the block is queued, so that the flusher never reports it as persisted too early,
+        // and moves back if the block is not queued after all.
+        int previousIndex = submittedIndex;
+        submittedIndex = block.getIndex();
+        try {
+            return enqueue(new PendingWrite(block));
+        } catch (IllegalStateException | InterruptedException e) {
+            submittedIndex = previousIndex;
+            throw e;
+        }
+    }
+
+    /**
+     * Writes every block submitted so far without waiting for the rest of its group.
+     *
+     * @return A future that completes once every block submitted before this call has been written, or
+     *         completes exceptionally if any of them could not be written.
+     * @throws IllegalStateException If the writer has been closed.
+     * @throws InterruptedException  If the calling thread is interrupted while waiting for space in the queue.
+     */
+    public CompletableFuture<Void> flush() throws InterruptedException {
+        return enqueue(new PendingWrite(null));
+    }
+
+    private CompletableFuture<Void> enqueue(PendingWrite write) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("The writer is closed.");
+        }
+        queue.put(write);
+        if (closed && queue.remove(write)) {
+            throw new IllegalStateException("The writer is closed.");
+        }
+        return write.future;
+    }
+
+    /**
+     * Gets the number of blocks waiting to be written.
+     *
+     * @return The queue length.
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of blocks written to the store.
+     *
+     * @return The number of blocks.
+     */
+    public long getBlocksWritten() {
+        return blocksWritten.sum();
+    }
+
+    /**
+     * Gets the number of groups committed to the store.
+     *
+     * @return The number of batches.
+     */
+    public long getBatchesWritten() {
+        return batchesWritten.sum();
+    }
+
+    /**
+     * Checks whether a write has failed since the writer was started or last {@link #retry() retried}.
+     *
+     * @return True if writes are being rejected, false otherwise.
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Gets the persisted high-water mark: the index of the last block written, every block submitted before which
+     * has been written as well.
+     *
+     * @return The block index, or -1 if no block has been written.
+     */
+    public int getPersistedIndex() {
+        return persistedIndex;
+    }
+
+    /**
+     * Checks whether every block submitted up to the given index is durable in the store. Blocks that were never
+     * submitted to this writer are not covered, so callers must check the store for those themselves.
+     *
+     * @param index The block index.
+     * @return True if no block with an index up to the given one is queued, being written or has failed.
+     */
+    public boolean isPersistedThrough(int index) {
+        if (failure != null) {
+            return false;
+        }
+        int persisted = persistedIndex;
+        return index <= persisted || persisted == submittedIndex;
+    }
+
+    /**
+     * Writes the blocks of the failed group and of every group rejected since, in order, and resumes normal
+     * operation once they are written. Blocks queued in the meantime are written after them.
+     *
+     * @return The number of blocks written.
+     * @throws BlockStoreException If the blocks still cannot be written; the writer then keeps rejecting writes.
+     */
+    public int retry() {
+        synchronized (writeLock) {
+            if (failure == null) {
+                return 0;
+            }
+            int written = unwritten.size();
+            if (written > 0) {
+                store.insertAll(unwritten);
+                blocksWritten.add(written);
+                batchesWritten.increment();
+                persistedIndex = unwritten.get(written - 1).getIndex();
+                unwritten.clear();
+            }
+            failure = null;
+            logger.log(Level.INFO, "Resumed writing after saving " + written + " blocks that had failed");
+            return written;
+        }
+    }
+
+    /**
+     * Writes the queued blocks, then stops the flusher thread. Blocks submitted concurrently with closing are
+     * either written or rejected with an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.offer(new PendingWrite(null));
+        boolean interrupted = false;
+        while (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        writeQueued();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>();
+        while (!closed) {
+            try {
+                PendingWrite first = queue.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (first.block != null && batch.size() < maxBatchSize && !closed) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    if (next.block == null) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            write(batch);
+            batch = new ArrayList<>();
+        }
+        write(batch);
+    }
+
+    /**
+     * Writes whatever is left in the queue once the flusher has stopped.
+     */
+    private void writeQueued() {
+        List<PendingWrite> batch = new ArrayList<>();
+        while (queue.drainTo(batch, maxBatchSize) > 0) {
+            write(batch);
+            batch = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Commits the blocks of a batch in one call and completes their futures, and those of any flush markers.
+     * After a failure, batches are rejected without being written until the writer is retried.
+     */
+    private void write(List<PendingWrite> batch) {
+        List<Block> blocks = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            if (write.block != null) {
+                blocks.add(write.block);
+            }
+        }
+        RuntimeException error;
+        synchronized (writeLock) {
+            error = failure == null ? null : new BlockStoreException("Rejected " + blocks.size()
+                    + " blocks because an earlier group could not be written.", failure);
+            if (error == null && !blocks.isEmpty()) {
+                try {
+                    store.insertAll(blocks);
+                    blocksWritten.add(blocks.size());
+                    batchesWritten.increment();
+                    persistedIndex = blocks.get(blocks.size() - 1).getIndex();
+                } catch (RuntimeException e) {
+                    logger.log(Level.SEVERE, "Error saving " + blocks.size() + " blocks to the database", e);
+                    failure = e;
+                    error = e;
+                }
+            }
+            if (error != null) {
+                unwritten.addAll(blocks);
+            }
+        }
+        for (PendingWrite write : batch) {
+            if (error == null) {
+                write.future.complete(null);
+            } else {
+                write.future.completeExceptionally(error);
+            }
+        }
+    }
+
+    private static final class PendingWrite {
+        /** The block to write, or {@code null} for a marker that only asks for the queue to be flushed. */
+        private final Block block;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingWrite(Block block) {
+            this.block = block;
+        }
+    }
+}
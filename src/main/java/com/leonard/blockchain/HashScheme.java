@@ -0,0 +1,49 @@
+package com.leonard.blockchain;
+
+/**
+ * The encodings used to build the preimage that a block hash is computed from.
+ */
+public enum HashScheme {
+    /**
+     * The original encoding: the decimal index, the ISO-8601 timestamp, the data and the previous hash
+     * concatenated as text and encoded as UTF-8. Keeps the hash values of existing chains.
+     */
+    LEGACY(0),
+
+    /**
+     * A canonical binary encoding with fixed-width integers, an epoch-second timestamp and
+     * length-prefixed UTF-8 strings, so that no two different blocks share a preimage.
+     */
+    BINARY(1);
+
+    private final int id;
+
+    HashScheme(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Gets the stable identifier used to persist the scheme.
+     *
+     * @return The scheme identifier.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the scheme with the given identifier.
+     *
+     * @param id The scheme identifier.
+     * @return The scheme.
+     * @throws IllegalArgumentException If no scheme has the identifier.
+     */
+    public static HashScheme fromId(int id) {
+        for (HashScheme scheme : values()) {
+            if (scheme.id == id) {
+                return scheme;
+            }
+        }
+        throw new IllegalArgumentException("Unknown hash scheme: " + id);
+    }
+}
@@ -0,0 +1,72 @@
+package com.leonard.blockchain;
+
+/**
+ * Table-driven conversion between bytes and lowercase hexadecimal text.
+ */
+public final class HexCodec {
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        java.util.Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < DIGITS.length; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+        }
+    }
+
+    private HexCodec() {
+    }
+
+    /**
+     * Encodes bytes as lowercase hexadecimal text.
+     *
+     * @param bytes The bytes to encode.
+     * @return The hexadecimal text, two characters per byte.
+     */
+    public static String encode(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = DIGITS[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decodes lowercase hexadecimal text into bytes.
+     *
+     * @param text The hexadecimal text to decode.
+     * @return The decoded bytes.
+     * @throws IllegalArgumentException If the text has an odd length or contains a character that is not a lowercase hex digit.
+     */
+    public static byte[] decode(String text) {
+        if (!isHex(text, text.length() / 2)) {
+            throw new IllegalArgumentException("Invalid hexadecimal text: " + text);
+        }
+        byte[] bytes = new byte[text.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (VALUES[text.charAt(i * 2)] << 4 | VALUES[text.charAt(i * 2 + 1)]);
+        }
+        return bytes;
+    }
+
+    /**
+     * Checks whether text is the lowercase hexadecimal encoding of exactly the given number of bytes.
+     *
+     * @param text   The text to check.
+     * @param length The expected number of encoded bytes.
+     * @return True if the text is canonical hex of the given length, false otherwise.
+     */
+    public static boolean isHex(String text, int length) {
+        if (text == null || text.length() != length * 2) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= VALUES.length || VALUES[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,15 @@
+package com.leonard.blockchain;
+
+/**
+ * SQLite journal modes that can be applied to the blockchain database.
+ * {@link #WAL} lets readers run alongside a writer and turns each commit into a sequential append,
+ * which is the recommended mode for high-rate ingest.
+ */
+public enum JournalMode {
+    DELETE,
+    TRUNCATE,
+    PERSIST,
+    MEMORY,
+    WAL,
+    OFF
+}
@@ -0,0 +1,89 @@
+package com.leonard.blockchain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Proves that a transaction is included in a block without the rest of the block body.
+ * A proof holds one sibling hash per tree level, so checking it takes time logarithmic in the number of
+ * transactions in the block.
+ */
+public class MerkleProof {
+    private final int transactionIndex;
+    private final List<BlockHash> siblings;
+    private final List<Boolean> siblingOnLeft;
+
+    /**
+     * Constructs a proof.
+     *
+     * @param transactionIndex The position of the transaction in the block.
+     * @param siblings         The sibling hashes from the leaf level upwards.
+     * @param siblingOnLeft    For each sibling, whether it is the left child of the shared parent.
+     * @throws IllegalArgumentException If the two lists differ in length.
+     */
+    public MerkleProof(int transactionIndex, List<BlockHash> siblings, List<Boolean> siblingOnLeft) {
+        if (siblings.size() != siblingOnLeft.size()) {
+            throw new IllegalArgumentException("Every sibling needs a side.");
+        }
+        this.transactionIndex = transactionIndex;
+        this.siblings = Collections.unmodifiableList(new ArrayList<>(siblings));
+        this.siblingOnLeft = Collections.unmodifiableList(new ArrayList<>(siblingOnLeft));
+    }
+
+    /**
+     * Gets the position of the proven transaction in the block.
+     *
+     * @return The transaction index.
+     */
+    public int getTransactionIndex() {
+        return transactionIndex;
+    }
+
+    /**
+     * Gets the sibling hashes from the leaf level upwards.
+     *
+     * @return The sibling hashes.
+     */
+    public List<BlockHash> getSiblings() {
+        return siblings;
+    }
+
+    /**
+     * Gets, for each sibling, whether it is the left child of the shared parent.
+     *
+     * @return The sibling sides.
+     */
+    public List<Boolean> getSiblingOnLeft() {
+        return siblingOnLeft;
+    }
+
+    /**
+     * Checks that the transaction hashes up to the given Merkle root through this proof.
+     *
+     * @param transaction The transaction to check.
+     * @param merkleRoot  The expected Merkle root.
+     * @return True if the transaction is included under the root, false otherwise.
+     */
+    public boolean verify(String transaction, BlockHash merkleRoot) {
+        byte[] current = MerkleTree.hashLeaf(transaction);
+        for (int i = 0; i < siblings.size(); i++) {
+            byte[] sibling = siblings.get(i).toBytes();
+            current = siblingOnLeft.get(i) ? MerkleTree.hashNode(sibling, current) : MerkleTree.hashNode(current, sibling);
+        }
+        return BlockHash.wrap(current).equals(merkleRoot);
+    }
+
+    /**
+     * Checks that the transaction is included in the given block. Only the block header is needed; the
+     * block's transactions do not have to be loaded.
+     *
+     * @param transaction The transaction to check.
+     * @param block       The block the transaction should be included in.
+     * @return True if the block is a transaction block whose Merkle root covers the transaction, false otherwise.
+     */
+    public boolean verify(String transaction, Block block) {
+        BlockHash merkleRoot = block.getMerkleRoot();
+        return merkleRoot != null && verify(transaction, merkleRoot);
+    }
+}
@@ -0,0 +1,124 @@
+package com.leonard.blockchain;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A binary SHA-256 Merkle tree over the transactions of a block.
+ * Leaves are hashed as {@code SHA-256(0x00 || transaction)} and inner nodes as {@code SHA-256(0x01 || left || right)},
+ * so a leaf can never be passed off as an inner node. A node without a sibling is promoted to the next level
+ * unchanged rather than paired with a copy of itself.
+ */
+public class MerkleTree {
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(MerkleTree::newDigest);
+
+    /** The tree levels from the leaves up to the single root. */
+    private final List<byte[][]> levels = new ArrayList<>();
+
+    /**
+     * Builds the tree over the given transactions.
+     *
+     * @param transactions The transactions, in block order. Must not be empty.
+     * @throws IllegalArgumentException If there are no transactions.
+     */
+    public MerkleTree(List<String> transactions) {
+        if (transactions.isEmpty()) {
+            throw new IllegalArgumentException("A Merkle tree needs at least one transaction.");
+        }
+        byte[][] level = new byte[transactions.size()][];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = hashLeaf(transactions.get(i));
+        }
+        levels.add(level);
+        while (level.length > 1) {
+            byte[][] parent = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < parent.length; i++) {
+                int left = i * 2;
+                parent[i] = left + 1 < level.length ? hashNode(level[left], level[left + 1]) : level[left];
+            }
+            levels.add(parent);
+            level = parent;
+        }
+    }
+
+    /**
+     * Computes the Merkle root of the given transactions.
+     *
+     * @param transactions The transactions, in block order. Must not be empty.
+     * @return The Merkle root.
+     * @throws IllegalArgumentException If there are no transactions.
+     */
+    public static BlockHash computeRoot(List<String> transactions) {
+        return new MerkleTree(transactions).getRoot();
+    }
+
+    /**
+     * Gets the root of the tree.
+     *
+     * @return The Merkle root.
+     */
+    public BlockHash getRoot() {
+        return BlockHash.of(levels.get(levels.size() - 1)[0]);
+    }
+
+    /**
+     * Gets the number of transactions in the tree.
+     *
+     * @return The number of leaves.
+     */
+    public int getTransactionCount() {
+        return levels.get(0).length;
+    }
+
+    /**
+     * Builds the proof that the transaction at the given position is included in the tree.
+     *
+     * @param transactionIndex The position of the transaction in the block.
+     * @return The inclusion proof.
+     * @throws IndexOutOfBoundsException If the position is out of range.
+     */
+    public MerkleProof getProof(int transactionIndex) {
+        if (transactionIndex < 0 || transactionIndex >= getTransactionCount()) {
+            throw new IndexOutOfBoundsException("Transaction index: " + transactionIndex + ", Count: " + getTransactionCount());
+        }
+        List<BlockHash> siblings = new ArrayList<>();
+        List<Boolean> siblingOnLeft = new ArrayList<>();
+        int position = transactionIndex;
+        for (int depth = 0; depth < levels.size() - 1; depth++) {
+            byte[][] level = levels.get(depth);
+            int sibling = position ^ 1;
+            if (sibling < level.length) {
+                siblings.add(BlockHash.of(level[sibling]));
+                siblingOnLeft.add(sibling < position);
+            }
+            position >>>= 1;
+        }
+        return new MerkleProof(transactionIndex, siblings, siblingOnLeft);
+    }
+
+    static byte[] hashLeaf(String transaction) {
+        MessageDigest digest = DIGESTS.get();
+        digest.update(LEAF_PREFIX);
+        return digest.digest(transaction.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static byte[] hashNode(byte[] left, byte[] right) {
+        MessageDigest digest = DIGESTS.get();
+        digest.update(NODE_PREFIX);
+        digest.update(left);
+        return digest.digest(right);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not supported.", e);
+        }
+    }
+}
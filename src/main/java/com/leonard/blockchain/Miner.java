@@ -0,0 +1,178 @@
+package com.leonard.blockchain;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Searches for proof-of-work nonces on a fixed pool of worker threads.
+ * The nonce space is split by striding: worker {@code i} of {@code n} tries nonces {@code i, i + n, i + 2n, ...},
+ * so no two workers hash the same candidate. Each worker encodes the block preimage once and only rewrites the
+ * nonce trailer between attempts. All workers stop as soon as one of them finds a nonce that meets the difficulty.
+ */
+public class Miner implements AutoCloseable {
+    private final int threads;
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a miner that uses one thread per available processor.
+     */
+    public Miner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a miner with the given number of worker threads.
+     *
+     * @param threads The number of threads that search for a nonce. Must be positive.
+     * @throws IllegalArgumentException If threads is not positive.
+     */
+    public Miner(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive.");
+        }
+        this.threads = threads;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "block-miner-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the number of worker threads.
+     *
+     * @return The number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Mines a block with the given contents.
+     *
+     * @param index        The index of the block in the blockchain. Must not be negative.
+     * @param timestamp    The timestamp indicating when the block was created.
+     * @param data         The data stored in the block.
+     * @param previousHash The hash of the previous block in the blockchain.
+     * @param hashScheme   The encoding used to compute the block's hash.
+     * @param difficulty   The number of leading zero bits the hash must have, between 0 and 256.
+     * @return The mined block together with statistics about the search.
+     * @throws IllegalArgumentException If a block with these fields cannot be constructed.
+     * @throws InterruptedException     If the calling thread is interrupted while waiting for the workers.
+     */
+    public MiningResult mine(int index, String timestamp, String data, String previousHash, HashScheme hashScheme,
+                             int difficulty) throws InterruptedException {
+        Block template = new Block(index, timestamp, data, previousHash, hashScheme, 0, difficulty);
+        long start = System.nanoTime();
+        if (difficulty == 0) {
+            return new MiningResult(template, 1, System.nanoTime() - start, 1);
+        }
+
+        byte[] preimage = BlockHasher.encodeForWork(hashScheme, index, template.getTimestamp(), data, previousHash);
+        AtomicBoolean found = new AtomicBoolean();
+        AtomicLong winningNonce = new AtomicLong();
+        List<Callable<Long>> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Worker(preimage.clone(), difficulty, i, threads, found, winningNonce));
+        }
+
+        long hashes = 0;
+        try {
+            for (Future<Long> future : executor.invokeAll(workers)) {
+                hashes += future.get();
+            }
+        } catch (InterruptedException e) {
+            found.set(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error mining block " + index + ".", e.getCause());
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        Block block = new Block(index, template.getTimestamp(), data, previousHash, hashScheme,
+                null, 0, null, winningNonce.get(), difficulty);
+        return new MiningResult(block, hashes, elapsedNanos, threads);
+    }
+
+    /**
+     * Mines the block that follows the latest block of a chain, at the chain's difficulty.
+     * The block is not added to the chain.
+     *
+     * @param blockChain The chain to extend.
+     * @param data       The data stored in the block.
+     * @param hashScheme The encoding used to compute the block's hash.
+     * @return The mined block together with statistics about the search.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the workers.
+     */
+    public MiningResult mineNext(BlockChain blockChain, String data, HashScheme hashScheme) throws InterruptedException {
+        Block lastBlock = blockChain.getLatestBlock();
+        int index = lastBlock == null ? 1 : lastBlock.getIndex() + 1;
+        String previousHash = lastBlock == null ? "0" : lastBlock.getHash();
+        return mine(index, LocalDateTime.now().toString(), data, previousHash, hashScheme, blockChain.getDifficulty());
+    }
+
+    /**
+     * Stops the worker threads. A search in progress is not interrupted.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private static final class Worker implements Callable<Long> {
+        private final byte[] preimage;
+        private final int difficulty;
+        private final long firstNonce;
+        private final long stride;
+        private final AtomicBoolean found;
+        private final AtomicLong winningNonce;
+
+        private Worker(byte[] preimage, int difficulty, long firstNonce, long stride,
+                       AtomicBoolean found, AtomicLong winningNonce) {
+            this.preimage = preimage;
+            this.difficulty = difficulty;
+            this.firstNonce = firstNonce;
+            this.stride = stride;
+            this.found = found;
+            this.winningNonce = winningNonce;
+        }
+
+        /**
+         * Tries nonces until this or another worker finds one that meets the difficulty.
+         *
+         * @return The number of hashes computed.
+         */
+        @Override
+        public Long call() throws NoSuchAlgorithmException, DigestException {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = new byte[BlockHash.LENGTH];
+            long hashes = 0;
+            for (long nonce = firstNonce; !found.get(); nonce += stride) {
+                BlockHasher.writeWorkTrailer(preimage, nonce, difficulty);
+                digest.update(preimage);
+                digest.digest(hash, 0, hash.length);
+                hashes++;
+                if (BlockHasher.meetsDifficulty(hash, difficulty)) {
+                    if (found.compareAndSet(false, true)) {
+                        winningNonce.set(nonce);
+                    }
+                    break;
+                }
+            }
+            return hashes;
+        }
+    }
+}
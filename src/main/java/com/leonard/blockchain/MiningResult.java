@@ -0,0 +1,73 @@
+package com.leonard.blockchain;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of mining a block with {@link Miner}.
+ */
+public class MiningResult {
+    private final Block block;
+    private final long hashesComputed;
+    private final long elapsedNanos;
+    private final int threads;
+
+    MiningResult(Block block, long hashesComputed, long elapsedNanos, int threads) {
+        this.block = block;
+        this.hashesComputed = hashesComputed;
+        this.elapsedNanos = elapsedNanos;
+        this.threads = threads;
+    }
+
+    /**
+     * Gets the mined block.
+     *
+     * @return The block, whose hash meets its difficulty.
+     */
+    public Block getBlock() {
+        return block;
+    }
+
+    /**
+     * Gets the number of hashes computed by all workers, including those computed after the nonce was found.
+     *
+     * @return The number of hashes.
+     */
+    public long getHashesComputed() {
+        return hashesComputed;
+    }
+
+    /**
+     * Gets the time taken to find the nonce.
+     *
+     * @return The elapsed time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the number of worker threads that searched for the nonce.
+     *
+     * @return The number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Gets the combined hash rate of all workers.
+     *
+     * @return The number of hashes computed per second.
+     */
+    public double getHashRate() {
+        return elapsedNanos == 0 ? 0 : hashesComputed * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "Mined block " + block.getIndex() + " with nonce " + block.getNonce() +
+                " (difficulty " + block.getDifficulty() + "): " + hashesComputed + " hashes in " +
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms on " + threads + " threads, " +
+                Math.round(getHashRate()) + " hashes/s";
+    }
+}
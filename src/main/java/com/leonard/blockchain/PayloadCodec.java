@@ -0,0 +1,296 @@
+package com.leonard.blockchain;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses block payloads with Deflate before they are stored, optionally primed with a preset dictionary.
+ * Payloads shorter than a threshold, and payloads that do not get smaller, are stored as they are. A dictionary
+ * holds strings that are common across payloads, such as the keys of JSON documents, so that even payloads too
+ * small to repeat themselves compress well; one can be built from sample payloads with
+ * {@link #trainDictionary(Collection, int)}. The codec counts the bytes it is given and the bytes it stores, so
+ * that the effect of compression can be monitored.
+ * <p>
+ * Compression only changes how a payload is stored: blocks read back decompress their data when it is first read,
+ * and hashes are always computed over the uncompressed data.
+ *
+ * @see SqliteBlockStore#setPayloadCodec(PayloadCodec)
+ */
+public final class PayloadCodec {
+    private static final String TOKEN_DELIMITERS = "{}[],:\" \n";
+
+    private final int threshold;
+    private final byte[] dictionary;
+    private final int dictionaryId;
+    /** Created on first use, since codecs that only decompress never need one. Guarded by this. */
+    private Deflater deflater;
+    private final LongAdder payloadsCompressed = new LongAdder();
+    private final LongAdder payloadsUncompressed = new LongAdder();
+    private final LongAdder payloadBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+
+    /**
+     * Constructs a codec without a dictionary.
+     *
+     * @param threshold The smallest payload, in UTF-8 bytes, to compress.
+     * @throws IllegalArgumentException If threshold is negative.
+     */
+    public PayloadCodec(int threshold) {
+        this(threshold, null);
+    }
+
+    /**
+     * Constructs a codec that primes Deflate with a preset dictionary. Payloads compressed with a dictionary can
+     * only be decompressed with the same dictionary, so stores keep the dictionaries they have written with.
+     *
+     * @param threshold  The smallest payload, in UTF-8 bytes, to compress.
+     * @param dictionary The preset dictionary, or {@code null} for none. The most common strings should come last.
+     * @throws IllegalArgumentException If threshold is negative or the dictionary is empty.
+     */
+    public PayloadCodec(int threshold, byte[] dictionary) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Compression threshold cannot be negative.");
+        }
+        if (dictionary != null && dictionary.length == 0) {
+            throw new IllegalArgumentException("Dictionary cannot be empty.");
+        }
+        this.threshold = threshold;
+        this.dictionary = dictionary == null ? null : dictionary.clone();
+        this.dictionaryId = dictionary == null ? 0 : dictionaryId(dictionary);
+    }
+
+    /**
+     * Computes the identifier of a dictionary, which is its Adler-32 checksum as recorded by Deflate.
+     */
+    static int dictionaryId(byte[] dictionary) {
+        Adler32 checksum = new Adler32();
+        checksum.update(dictionary, 0, dictionary.length);
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Builds a preset dictionary from sample payloads. The samples are split into tokens at JSON punctuation and
+     * whitespace, and the tokens that occur more than once are kept, the ones that save the most bytes last, where
+     * Deflate can reach them with the shortest distances.
+     *
+     * @param samples The sample payloads, e.g. recent blocks' data.
+     * @param maxSize The largest dictionary to build, in bytes. Deflate uses at most 32 KiB.
+     * @return The dictionary, or {@code null} if the samples have no repeated tokens.
+     * @throws IllegalArgumentException If maxSize is not positive.
+     */
+    public static byte[] trainDictionary(Collection<String> samples, int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Dictionary size must be positive.");
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        for (String sample : samples) {
+            int start = 0;
+            for (int i = 0; i < sample.length(); i++) {
+                if (TOKEN_DELIMITERS.indexOf(sample.charAt(i)) >= 0) {
+                    if (i + 1 - start >= 3) {
+                        counts.merge(sample.substring(start, i + 1), 1, Integer::sum);
+                    }
+                    start = i + 1;
+                }
+            }
+        }
+
+        List<Map.Entry<String, Integer>> tokens = new ArrayList<>();
+        for (Map.Entry<String, Integer> token : counts.entrySet()) {
+            if (token.getValue() > 1) {
+                tokens.add(token);
+            }
+        }
+        tokens.sort((first, second) -> Long.compare(
+                (long) second.getValue() * second.getKey().length(), (long) first.getValue() * first.getKey().length()));
+
+        List<byte[]> selected = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> token : tokens) {
+            byte[] bytes = token.getKey().getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length <= maxSize) {
+                selected.add(bytes);
+                size += bytes.length;
+            }
+        }
+        if (size == 0) {
+            return null;
+        }
+        byte[] dictionary = new byte[size];
+        int position = size;
+        for (byte[] bytes : selected) {
+            position -= bytes.length;
+            System.arraycopy(bytes, 0, dictionary, position, bytes.length);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Compresses a payload if it is at least as long as the threshold and gets smaller, and counts it.
+     *
+     * @return The compressed payload, or {@code null} to store the payload as it is.
+     */
+    CompressedPayload compress(String payload) {
+        if (payload == null) {
+            return null;
+        }
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        payloadBytes.add(bytes.length);
+        byte[] compressed = bytes.length < threshold ? null : deflate(bytes);
+        if (compressed == null || compressed.length >= bytes.length) {
+            payloadsUncompressed.increment();
+            storedBytes.add(bytes.length);
+            return null;
+        }
+        payloadsCompressed.increment();
+        storedBytes.add(compressed.length);
+        return new CompressedPayload(compressed, BlockQuery.payloadKey(payload), this);
+    }
+
+    private synchronized byte[] deflate(byte[] bytes) {
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        }
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(bytes);
+        deflater.finish();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 2 + 16);
+        byte[] buffer = new byte[Math.min(bytes.length + 64, 64 * 1024)];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            output.write(buffer, 0, length);
+            if (output.size() >= bytes.length) {
+                return null;
+            }
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Decompresses a payload compressed by a codec with the same dictionary.
+     *
+     * @throws BlockStoreException If the payload is corrupt or was compressed with another dictionary.
+     */
+    String decompress(byte[] compressed) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[Math.min(compressed.length * 4 + 64, 64 * 1024)];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null || inflater.getAdler() != dictionaryId) {
+                            throw new BlockStoreException("Payload was compressed with unknown dictionary " + inflater.getAdler());
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new BlockStoreException("Compressed payload is truncated.");
+                    }
+                }
+                output.write(buffer, 0, length);
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new BlockStoreException("Compressed payload is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Gets the smallest payload that is compressed.
+     *
+     * @return The threshold in UTF-8 bytes.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Gets the preset dictionary.
+     *
+     * @return A copy of the dictionary, or {@code null} if the codec has none.
+     */
+    public byte[] getDictionary() {
+        return dictionary == null ? null : dictionary.clone();
+    }
+
+    /**
+     * Gets the identifier stores record with each payload compressed by this codec.
+     *
+     * @return The Adler-32 checksum of the dictionary, or zero if the codec has none.
+     */
+    public int getDictionaryId() {
+        return dictionaryId;
+    }
+
+    /**
+     * Gets the number of payloads that were stored compressed.
+     *
+     * @return The number of compressed payloads.
+     */
+    public long getCompressedCount() {
+        return payloadsCompressed.sum();
+    }
+
+    /**
+     * Gets the number of payloads that were stored as they are, because they were below the threshold or did not
+     * get smaller.
+     *
+     * @return The number of uncompressed payloads.
+     */
+    public long getUncompressedCount() {
+        return payloadsUncompressed.sum();
+    }
+
+    /**
+     * Gets the total size of the payloads given to the codec.
+     *
+     * @return The number of UTF-8 bytes.
+     */
+    public long getPayloadBytes() {
+        return payloadBytes.sum();
+    }
+
+    /**
+     * Gets the total size of the payloads as stored, compressed or not.
+     *
+     * @return The number of bytes.
+     */
+    public long getStoredBytes() {
+        return storedBytes.sum();
+    }
+
+    /**
+     * Gets the ratio of the size of the payloads given to the codec to their size as stored.
+     *
+     * @return The compression ratio, or 1 if no payload has been stored.
+     */
+    public double getCompressionRatio() {
+        long stored = storedBytes.sum();
+        return stored == 0 ? 1 : (double) payloadBytes.sum() / stored;
+    }
+
+    @Override
+    public String toString() {
+        return "Payload codec: threshold " + threshold + " bytes, " +
+                (dictionary == null ? "no dictionary" : dictionary.length + " byte dictionary " + dictionaryId) + ", " +
+                getCompressedCount() + " compressed, " + getUncompressedCount() + " uncompressed, ratio " +
+                String.format("%.2f", getCompressionRatio());
+    }
+}
@@ -0,0 +1,147 @@
+package com.leonard.blockchain;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * One end of a connection of the peer protocol spoken by {@link PeerServer} and {@link PeerSync}.
+ * Every message is a frame of the form {@code length, type, payload}, where the length covers the type and the
+ * payload. Requests are answered in the order they were sent, so a client may send several requests before
+ * reading the first response.
+ * <ul>
+ *     <li>{@link #GET_TIP} has no payload and is answered with the index and hash of the tip, or -1 and no hash
+ *     for an empty chain.</li>
+ *     <li>{@link #GET_HEADERS} carries a start index and a count and is answered with the number of headers
+ *     followed by the index, hash and previous hash of each block.</li>
+ *     <li>{@link #GET_BLOCKS} carries a start index and a count and is answered with the number of blocks followed
+ *     by the blocks as encoded by {@link BlockCodec}, transactions included.</li>
+ *     <li>{@link #ERROR} answers a request that failed and carries a message.</li>
+ * </ul>
+ * A connection is used by one thread at a time.
+ */
+final class PeerConnection implements Closeable {
+    static final byte ERROR = 0;
+    static final byte GET_TIP = 1;
+    static final byte GET_HEADERS = 2;
+    static final byte GET_BLOCKS = 3;
+
+    private static final int LENGTH_PREFIX = 4;
+    private static final int MAX_FRAME_LENGTH = 1 << 30;
+
+    private final SocketChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(LENGTH_PREFIX + 1);
+    private ByteBuffer frame = ByteBuffer.allocate(64 * 1024);
+    private long bytesRead;
+
+    PeerConnection(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        channel.configureBlocking(true);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    static PeerConnection open(InetSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        try {
+            return new PeerConnection(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a message.
+     *
+     * @param payload The payload, flipped for reading, or {@code null} for none.
+     */
+    void send(byte type, ByteBuffer payload) throws IOException {
+        int length = payload == null ? 0 : payload.remaining();
+        header.clear();
+        header.putInt(1 + length).put(type);
+        header.flip();
+        ByteBuffer[] buffers = payload == null ? new ByteBuffer[]{header} : new ByteBuffer[]{header, payload};
+        while (header.hasRemaining() || payload != null && payload.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    /**
+     * Sends an {@link #ERROR} message.
+     */
+    void sendError(String message) throws IOException {
+        ByteBuffer payload = BlockCodec.putString(ByteBuffer.allocate(256), message);
+        payload.flip();
+        send(ERROR, payload);
+    }
+
+    /**
+     * Receives the next message.
+     *
+     * @return The message's payload, positioned at the type byte. The buffer is reused by the next receive.
+     * @throws EOFException If the peer closed the connection before a message started.
+     * @throws IOException  If the connection fails or the peer sent a malformed frame.
+     */
+    ByteBuffer receive() throws IOException {
+        readFully(header, LENGTH_PREFIX, true);
+        int length = header.getInt();
+        if (length <= 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Peer sent a frame of invalid length " + length + ".");
+        }
+        if (frame.capacity() < length) {
+            frame = ByteBuffer.allocate(Math.max(frame.capacity() * 2, length));
+        }
+        readFully(frame, length, false);
+        return frame;
+    }
+
+    /**
+     * Receives the response to a request, failing if the peer answered with an error or another message.
+     *
+     * @return The response's payload, positioned after the type byte.
+     */
+    ByteBuffer receive(byte expectedType) throws IOException {
+        ByteBuffer payload = receive();
+        byte type = payload.get();
+        if (type == ERROR) {
+            throw new IOException("Peer failed: " + BlockCodec.getString(payload));
+        }
+        if (type != expectedType) {
+            throw new IOException("Peer sent message type " + type + " instead of " + expectedType + ".");
+        }
+        return payload;
+    }
+
+    private void readFully(ByteBuffer buffer, int length, boolean messageStart) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (messageStart && buffer.position() == 0) {
+                    throw new EOFException("Peer closed the connection.");
+                }
+                throw new IOException("Peer closed the connection in the middle of a message.");
+            }
+        }
+        buffer.flip();
+        bytesRead += length;
+    }
+
+    /**
+     * Gets the number of bytes received over this connection.
+     *
+     * @return The number of bytes, including frame headers.
+     */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,222 @@
+package com.leonard.blockchain;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves the blocks of a {@link BlockChain} to {@link PeerSync} clients over TCP.
+ * Each connection is served by its own thread, which answers requests in order as they arrive, so clients can
+ * pipeline requests and open several connections to fetch ranges in parallel. Blocks are read from consistent
+ * snapshots of the chain, and from the store for blocks outside the memory window, so serving peers never holds
+ * up appends. A request asks for at most {@link #MAX_BATCH_SIZE} blocks; larger requests get that many.
+ *
+ * @see PeerConnection
+ */
+public class PeerServer implements AutoCloseable {
+    /**
+     * The largest number of headers or blocks sent in reply to a single request.
+     */
+    public static final int MAX_BATCH_SIZE = 4096;
+
+    private static final Logger logger = Logger.getLogger(PeerServer.class.getName());
+
+    private final BlockChain blockChain;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService connectionThreads;
+    private final Set<PeerConnection> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    /**
+     * Starts serving a chain on the given address.
+     *
+     * @param blockChain The chain to serve.
+     * @param address    The address to listen on, e.g. {@code new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)}
+     *                   for an ephemeral port on loopback.
+     * @throws IOException If the address cannot be bound.
+     */
+    public PeerServer(BlockChain blockChain, InetSocketAddress address) throws IOException {
+        this.blockChain = blockChain;
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address);
+        } catch (IOException e) {
+            serverChannel.close();
+            throw e;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.connectionThreads = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "peer-connection-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.acceptor = new Thread(this::accept, "peer-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /**
+     * Gets the address the server listens on, including the port chosen for an ephemeral port.
+     *
+     * @return The local address.
+     * @throws IOException If the address cannot be read.
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Gets the number of connections currently being served.
+     *
+     * @return The number of open connections.
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    private void accept() {
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error accepting a peer connection", e);
+                continue;
+            }
+            try {
+                PeerConnection connection = new PeerConnection(channel);
+                connections.add(connection);
+                connectionThreads.execute(() -> serve(connection));
+            } catch (IOException | RuntimeException e) {
+                if (!closed) {
+                    logger.log(Level.WARNING, "Error setting up a peer connection", e);
+                }
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private void serve(PeerConnection connection) {
+        ByteBuffer response = ByteBuffer.allocate(64 * 1024);
+        try {
+            while (!closed) {
+                ByteBuffer request = connection.receive();
+                byte type = request.get();
+                response.clear();
+                try {
+                    response = answer(type, request, response);
+                } catch (BlockStoreException | BufferUnderflowException | IllegalArgumentException e) {
+                    logger.log(Level.WARNING, "Error answering a peer request of type " + type, e);
+                    connection.sendError(String.valueOf(e.getMessage()));
+                    continue;
+                }
+                response.flip();
+                connection.send(type, response);
+            }
+        } catch (EOFException e) {
+            // The peer is done.
+        } catch (IOException e) {
+            if (!closed) {
+                logger.log(Level.FINE, "Peer connection failed", e);
+            }
+        } finally {
+            connections.remove(connection);
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Encodes the answer to a request.
+     *
+     * @return The buffer holding the answer, which is a new buffer if the given one was too small.
+     * @throws IllegalArgumentException If the request is of an unknown type or has invalid arguments.
+     */
+    private ByteBuffer answer(byte type, ByteBuffer request, ByteBuffer response) {
+        if (type == PeerConnection.GET_TIP) {
+            Block tip = blockChain.getLatestBlock();
+            response.putInt(tip == null ? -1 : tip.getIndex());
+            return BlockCodec.putString(response, tip == null ? null : tip.getHash());
+        }
+        if (type != PeerConnection.GET_HEADERS && type != PeerConnection.GET_BLOCKS) {
+            throw new IllegalArgumentException("Unknown request type " + type + ".");
+        }
+        int fromIndex = request.getInt();
+        int count = request.getInt();
+        if (fromIndex < 0 || count <= 0) {
+            throw new IllegalArgumentException("Invalid range of " + count + " blocks from " + fromIndex + ".");
+        }
+        List<Block> blocks = blockChain.getBlocks(fromIndex, Math.min(count, MAX_BATCH_SIZE));
+        response.putInt(blocks.size());
+        for (Block block : blocks) {
+            if (type == PeerConnection.GET_HEADERS) {
+                response = BlockCodec.ensureCapacity(response, 4);
+                response.putInt(block.getIndex());
+                response = BlockCodec.putString(response, block.getHash());
+                response = BlockCodec.putString(response, block.getPreviousHash());
+            } else {
+                response = BlockCodec.encode(response, block, transactionsOf(block));
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Gets the transactions of a block, loading them from the store if the body is not held in memory.
+     *
+     * @throws BlockStoreException If the transactions cannot be read or some of them are missing from the store.
+     */
+    private List<String> transactionsOf(Block block) {
+        if (!block.isTransactionBlock()) {
+            return block.getTransactions();
+        }
+        List<String> transactions = block.isBodyLoaded()
+                ? block.getTransactions() : blockChain.getStore().loadTransactions(block.getIndex());
+        if (transactions.size() != block.getTransactionCount()) {
+            throw new BlockStoreException("Block " + block.getIndex() + " has " + transactions.size() + " of its "
+                    + block.getTransactionCount() + " transactions in the store.");
+        }
+        return transactions;
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            logger.log(Level.FINE, "Error closing a peer connection", e);
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        closeQuietly(serverChannel);
+        for (PeerConnection connection : connections) {
+            closeQuietly(connection);
+        }
+        connectionThreads.shutdown();
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
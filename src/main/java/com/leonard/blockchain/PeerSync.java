@@ -0,0 +1,466 @@
+package com.leonard.blockchain;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Brings a {@link BlockChain} up to date with a peer served by a {@link PeerServer}.
+ * A sync first exchanges tips with the peer, then works through the missing range one window at a time. The
+ * headers of a window are checked to link up with each other and with the local tip before any of its block bodies
+ * is requested. The bodies are then fetched in batches over several connections at once, each keeping several
+ * requests in flight, and each batch is appended and saved as a unit through
+ * {@link BlockChain#addAllAndSave(List)}, which validates every block, while later batches are still in transit.
+ * A rejected block or a failed write therefore leaves no part of its batch in the chain, and a chain with
+ * write-behind enabled saves synced blocks through its writer. A chain that has no blocks yet takes its first block
+ * from the peer only if the block's hash, proof of work and Merkle root check out and, when a
+ * {@link #setGenesisHash(String) genesis hash} is configured, its hash is that one. A window holds the headers of
+ * as many batches as may be fetched ahead of the append, so memory stays flat however far the chain is behind.
+ * <p>
+ * Progress is reported to the chain's {@link ChainMetricsListener} as synced batches and the lag behind the peer.
+ */
+public class PeerSync {
+    private static final Logger logger = Logger.getLogger(PeerSync.class.getName());
+    private static final int DEFAULT_CONNECTIONS = 4;
+    private static final int DEFAULT_BATCH_SIZE = 512;
+    private static final int DEFAULT_PIPELINE_DEPTH = 4;
+
+    private final BlockChain blockChain;
+    private final int connections;
+    private final int batchSize;
+    private final int pipelineDepth;
+    private final LongAdder blocksSynced = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private volatile int lag;
+    private volatile String genesisHash;
+
+    /**
+     * Constructs a sync that fetches batches of 512 blocks over four connections with four requests in flight on
+     * each.
+     *
+     * @param blockChain The chain to bring up to date.
+     */
+    public PeerSync(BlockChain blockChain) {
+        this(blockChain, DEFAULT_CONNECTIONS, DEFAULT_BATCH_SIZE, DEFAULT_PIPELINE_DEPTH);
+    }
+
+    /**
+     * Constructs a sync with the given parallelism.
+     *
+     * @param blockChain    The chain to bring up to date.
+     * @param connections   The number of connections block bodies are fetched over. Must be positive.
+     * @param batchSize     The number of blocks fetched by a single request. Must be between 1 and
+     *                      {@link PeerServer#MAX_BATCH_SIZE}.
+     * @param pipelineDepth The number of requests in flight on each connection. Must be positive.
+     * @throws IllegalArgumentException If a parameter is out of range.
+     */
+    public PeerSync(BlockChain blockChain, int connections, int batchSize, int pipelineDepth) {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("Number of connections must be positive.");
+        }
+        if (batchSize <= 0 || batchSize > PeerServer.MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch size must be between 1 and " + PeerServer.MAX_BATCH_SIZE + ".");
+        }
+        if (pipelineDepth <= 0) {
+            throw new IllegalArgumentException("Pipeline depth must be positive.");
+        }
+        this.blockChain = blockChain;
+        this.connections = connections;
+        this.batchSize = batchSize;
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    /**
+     * Sets the hash the first block must have when syncing a chain that has no blocks yet, so that a peer cannot
+     * seed it with a different chain.
+     *
+     * @param genesisHash The hash of the expected first block, or {@code null} to accept any valid first block.
+     */
+    public void setGenesisHash(String genesisHash) {
+        this.genesisHash = genesisHash;
+    }
+
+    /**
+     * Appends the blocks the peer has beyond the chain's tip, until the chain has caught up with the peer's tip.
+     * Batches appended before a failure are kept. With write-behind enabled, returns once the blocks are durable.
+     *
+     * @param peer The address of the peer's {@link PeerServer}.
+     * @return The number of blocks appended.
+     * @throws IOException         If the peer cannot be reached or fails, sends blocks that do not match their
+     *                             headers or that {@link BlockChain#addAllAndSave(List)} rejects, or has a chain
+     *                             that has diverged from this one.
+     * @throws BlockStoreException If the blocks cannot be saved.
+     */
+    public int sync(InetSocketAddress peer) throws IOException {
+        long start = System.nanoTime();
+        int appended = 0;
+        try (PeerConnection connection = PeerConnection.open(peer)) {
+            while (true) {
+                connection.send(PeerConnection.GET_TIP, null);
+                ByteBuffer tip = connection.receive(PeerConnection.GET_TIP);
+                int remoteTipIndex = tip.getInt();
+                Block localTip = blockChain.getLatestBlock();
+                updateLag(remoteTipIndex, localTip == null ? -1 : localTip.getIndex());
+                if (remoteTipIndex < 0 || localTip != null && remoteTipIndex <= localTip.getIndex()) {
+                    break;
+                }
+
+                int fromIndex = localTip == null ? firstIndex(connection) : localTip.getIndex() + 1;
+                int toIndex = (int) Math.min(remoteTipIndex, (long) fromIndex + windowSize() - 1);
+                String[] hashes = fetchHeaders(connection, fromIndex, toIndex, localTip);
+                appended += fetchBodies(peer, fromIndex, hashes, remoteTipIndex);
+            }
+        }
+        if (appended > 0) {
+            awaitSaved();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.log(Level.INFO, "Synced " + appended + " blocks from " + peer + " in " + elapsedMillis + " ms" +
+                (elapsedMillis > 0 ? " (" + appended * 1000L / elapsedMillis + " blocks/s)" : ""));
+        return appended;
+    }
+
+    /**
+     * Gets the number of blocks synced per window, which is the number of blocks that may be fetched ahead of the
+     * append.
+     */
+    private int windowSize() {
+        return (int) Math.min(Integer.MAX_VALUE, (long) batchSize * connections * pipelineDepth * 2);
+    }
+
+    /**
+     * Finds the index of the peer's first block, for a chain that has no blocks yet.
+     */
+    private static int firstIndex(PeerConnection connection) throws IOException {
+        List<Header> headers = requestHeaders(connection, 0, 1);
+        if (headers.isEmpty()) {
+            throw new IOException("Peer has a tip but no blocks.");
+        }
+        return headers.get(0).index;
+    }
+
+    /**
+     * Fetches the headers from fromIndex to toIndex, keeping several requests in flight, and checks that they
+     * form a chain that extends the local tip.
+     *
+     * @return The hashes of the blocks, starting with the block at fromIndex.
+     */
+    private String[] fetchHeaders(PeerConnection connection, int fromIndex, int toIndex, Block localTip) throws IOException {
+        int total = toIndex - fromIndex + 1;
+        String[] hashes = new String[total];
+        String previousHash = localTip == null ? null : localTip.getHash();
+        int requested = 0;
+        int received = 0;
+        Deque<Integer> inFlight = new ArrayDeque<>();
+        while (received < total) {
+            while (requested < total && inFlight.size() < pipelineDepth) {
+                int count = Math.min(PeerServer.MAX_BATCH_SIZE, total - requested);
+                sendRange(connection, PeerConnection.GET_HEADERS, fromIndex + requested, count);
+                inFlight.add(count);
+                requested += count;
+            }
+            int count = inFlight.remove();
+            List<Header> headers = readHeaders(connection.receive(PeerConnection.GET_HEADERS));
+            if (headers.size() != count) {
+                throw new IOException("Peer sent " + headers.size() + " headers instead of " + count + ".");
+            }
+            for (Header header : headers) {
+                int expectedIndex = fromIndex + received;
+                if (header.index != expectedIndex) {
+                    throw new IOException("Peer sent header " + header.index + " instead of " + expectedIndex + ".");
+                }
+                if (previousHash != null && !previousHash.equals(header.previousHash)) {
+                    throw new IOException(received == 0 && localTip != null
+                            ? "Chain has diverged from the peer at block " + expectedIndex + "."
+                            : "Peer sent header " + expectedIndex + " that does not link to its predecessor.");
+                }
+                hashes[received++] = header.hash;
+                previousHash = header.hash;
+            }
+        }
+        return hashes;
+    }
+
+    private static List<Header> requestHeaders(PeerConnection connection, int fromIndex, int count) throws IOException {
+        sendRange(connection, PeerConnection.GET_HEADERS, fromIndex, count);
+        return readHeaders(connection.receive(PeerConnection.GET_HEADERS));
+    }
+
+    private static List<Header> readHeaders(ByteBuffer response) throws IOException {
+        try {
+            int count = response.getInt();
+            List<Header> headers = new ArrayList<>(Math.min(count, PeerServer.MAX_BATCH_SIZE));
+            for (int i = 0; i < count; i++) {
+                headers.add(new Header(response.getInt(), BlockCodec.getString(response), BlockCodec.getString(response)));
+            }
+            return headers;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Peer sent malformed headers.", e);
+        }
+    }
+
+    private static void sendRange(PeerConnection connection, byte type, int fromIndex, int count) throws IOException {
+        ByteBuffer request = ByteBuffer.allocate(8);
+        request.putInt(fromIndex).putInt(count);
+        request.flip();
+        connection.send(type, request);
+    }
+
+    /**
+     * Fetches the bodies of the blocks whose headers were fetched, over several pipelined connections, and
+     * appends them in order as they arrive.
+     *
+     * @return The number of blocks appended.
+     */
+    private int fetchBodies(InetSocketAddress peer, int fromIndex, String[] hashes, int remoteTipIndex) throws IOException {
+        int batchCount = (hashes.length + batchSize - 1) / batchSize;
+        BodyFetch fetch = new BodyFetch(fromIndex, hashes, batchCount);
+        int fetcherCount = Math.min(connections, batchCount);
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService fetchers = Executors.newFixedThreadPool(fetcherCount, task -> {
+            Thread thread = new Thread(task, "peer-sync-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ChainMetricsListener listener = blockChain.getMetricsListener();
+        int appended = 0;
+        try {
+            for (int i = 0; i < fetcherCount; i++) {
+                fetchers.execute(() -> fetch.run(peer));
+            }
+            for (int batchNumber = 0; batchNumber < batchCount; batchNumber++) {
+                Batch batch = await(fetch.results.get(batchNumber));
+                if (blockChain.getLatestBlock() == null) {
+                    checkFirstBlock(batch.blocks.get(0));
+                }
+                try {
+                    blockChain.addAllAndSave(batch.blocks);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Peer sent a block that was rejected: " + e.getMessage(), e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while saving synced blocks.");
+                }
+                fetch.window.release();
+                appended += batch.blocks.size();
+                blocksSynced.add(batch.blocks.size());
+                bytesReceived.add(batch.bytes);
+                listener.onBlocksSynced(batch.blocks.size(), batch.bytes, batch.elapsedNanos);
+                updateLag(remoteTipIndex, batch.blocks.get(batch.blocks.size() - 1).getIndex());
+            }
+        } finally {
+            fetchers.shutdownNow();
+        }
+        return appended;
+    }
+
+    /**
+     * Checks the block that starts an empty chain, which {@link BlockChain#addAllAndSave(List)} appends unchecked.
+     */
+    private void checkFirstBlock(Block block) throws IOException {
+        VerificationReport.Reason reason = ChainVerifier.check(block, null);
+        if (reason == null && !blockChain.isValidHash(block)) {
+            reason = VerificationReport.Reason.INSUFFICIENT_WORK;
+        }
+        if (reason != null) {
+            blockChain.getMetricsListener().onBlockRejected(block, reason);
+            throw new IOException("Peer sent first block " + block.getIndex() + " that was rejected: " + reason + ".");
+        }
+        String expectedHash = genesisHash;
+        if (expectedHash != null && !expectedHash.equals(block.getHash())) {
+            throw new IOException("Peer sent first block " + block.getIndex() + " with hash " + block.getHash() +
+                    " instead of the genesis block " + expectedHash + ".");
+        }
+    }
+
+    /**
+     * Waits until the blocks queued for write-behind, if enabled, are durable in the store.
+     */
+    private void awaitSaved() throws IOException {
+        try {
+            blockChain.flush().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while saving synced blocks.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BlockStoreException) {
+                throw (BlockStoreException) e.getCause();
+            }
+            throw new BlockStoreException("Error saving synced blocks.", e.getCause());
+        }
+    }
+
+    private static Batch await(CompletableFuture<Batch> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while syncing.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error fetching blocks from the peer.", e.getCause());
+        }
+    }
+
+    private void updateLag(int remoteTipIndex, int localTipIndex) {
+        lag = Math.max(0, remoteTipIndex - localTipIndex);
+        blockChain.getMetricsListener().onSyncLag(lag);
+    }
+
+    /**
+     * Gets the number of blocks appended by this sync.
+     *
+     * @return The number of blocks received from peers and appended.
+     */
+    public long getBlocksSynced() {
+        return blocksSynced.sum();
+    }
+
+    /**
+     * Gets the size on the wire of the blocks appended by this sync.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * Gets the number of blocks the chain was last known to be behind the peer.
+     *
+     * @return The lag in blocks, which is zero once a sync has completed.
+     */
+    public int getLag() {
+        return lag;
+    }
+
+    private static final class Header {
+        private final int index;
+        private final String hash;
+        private final String previousHash;
+
+        private Header(int index, String hash, String previousHash) {
+            this.index = index;
+            this.hash = hash;
+            this.previousHash = previousHash;
+        }
+    }
+
+    private static final class Batch {
+        private final List<Block> blocks;
+        private final long bytes;
+        private final long elapsedNanos;
+
+        private Batch(List<Block> blocks, long bytes, long elapsedNanos) {
+            this.blocks = blocks;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+
+    /**
+     * The state shared by the connections fetching the bodies of one range. Connections claim batches in order,
+     * and may only claim a batch while fewer than the window's permits have been fetched but not yet appended.
+     */
+    private final class BodyFetch {
+        private final int fromIndex;
+        private final String[] hashes;
+        private final int batchCount;
+        private final List<CompletableFuture<Batch>> results;
+        private final AtomicInteger nextBatch = new AtomicInteger();
+        private final Semaphore window = new Semaphore(windowSize() / batchSize);
+
+        private BodyFetch(int fromIndex, String[] hashes, int batchCount) {
+            this.fromIndex = fromIndex;
+            this.hashes = hashes;
+            this.batchCount = batchCount;
+            this.results = new ArrayList<>(batchCount);
+            for (int i = 0; i < batchCount; i++) {
+                results.add(new CompletableFuture<>());
+            }
+        }
+
+        private void run(InetSocketAddress peer) {
+            try (PeerConnection connection = PeerConnection.open(peer)) {
+                Deque<Integer> inFlight = new ArrayDeque<>();
+                Deque<Long> sentAt = new ArrayDeque<>();
+                while (true) {
+                    while (inFlight.size() < pipelineDepth && nextBatch.get() < batchCount) {
+                        if (inFlight.isEmpty()) {
+                            window.acquire();
+                        } else if (!window.tryAcquire()) {
+                            break;
+                        }
+                        int batchNumber = nextBatch.getAndIncrement();
+                        if (batchNumber >= batchCount) {
+                            window.release();
+                            break;
+                        }
+                        int offset = batchNumber * batchSize;
+                        sendRange(connection, PeerConnection.GET_BLOCKS, fromIndex + offset,
+                                Math.min(batchSize, hashes.length - offset));
+                        inFlight.add(batchNumber);
+                        sentAt.add(System.nanoTime());
+                    }
+                    if (inFlight.isEmpty()) {
+                        return;
+                    }
+                    int batchNumber = inFlight.remove();
+                    long bytesBefore = connection.getBytesRead();
+                    ByteBuffer response = connection.receive(PeerConnection.GET_BLOCKS);
+                    List<Block> blocks = readBlocks(response, batchNumber * batchSize);
+                    results.get(batchNumber).complete(new Batch(blocks, connection.getBytesRead() - bytesBefore,
+                            System.nanoTime() - sentAt.remove()));
+                }
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                for (CompletableFuture<Batch> result : results) {
+                    result.completeExceptionally(e);
+                }
+            }
+        }
+
+        /**
+         * Decodes a batch of blocks and checks them against their headers.
+         */
+        private List<Block> readBlocks(ByteBuffer response, int offset) throws IOException {
+            int expected = Math.min(batchSize, hashes.length - offset);
+            try {
+                int count = response.getInt();
+                if (count != expected) {
+                    throw new IOException("Peer sent " + count + " blocks instead of " + expected + ".");
+                }
+                List<Block> blocks = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    Block block = BlockCodec.decode(response);
+                    int expectedIndex = fromIndex + offset + i;
+                    if (block.getIndex() != expectedIndex || !block.getHash().equals(hashes[offset + i])) {
+                        throw new IOException("Peer sent block " + block.getIndex() + " that does not match header " +
+                                expectedIndex + ".");
+                    }
+                    blocks.add(block);
+                }
+                return blocks;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Peer sent malformed blocks.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package com.leonard.blockchain;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves read-only JSON queries against a {@link BlockChain} over HTTP, using the JDK's built-in server.
+ * <ul>
+ *     <li>{@code GET /tip} returns the latest block.</li>
+ *     <li>{@code GET /blocks/<index>} returns the block with the given index.</li>
+ *     <li>{@code GET /blocks/hash/<hash>} returns the block with the given hexadecimal hash.</li>
+ *     <li>{@code GET /blocks?from=<index>&limit=<n>} returns up to n consecutive blocks starting at an index.</li>
+ *     <li>{@code GET /blocks?start=<timestamp>&end=<timestamp>&limit=<n>&after=<index>} returns up to n blocks
+ *     whose timestamp lies in the half-open range, in timestamp order; pass the index of the last block of a page
+ *     as after to get the next page.</li>
+ *     <li>{@code GET /status} returns the height and tip of the chain and whether it is valid.</li>
+ * </ul>
+ * Requests are handled on virtual threads when the runtime supports them, and on a fixed pool of platform threads
+ * otherwise. Reads work on snapshots of the chain, so they never wait for the append lock. Blocks never change
+ * once appended, so the JSON of each block is serialized once and kept, keyed by hash, in a cache of bounded
+ * size; responses for cached blocks are written from these bytes. The validity status is brought up to date only
+ * when the tip has changed since the last request, by verifying the blocks appended since then.
+ */
+public class QueryServer implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(QueryServer.class.getName());
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final int BACKLOG = 1024;
+    private static final int DEFAULT_CACHE_CAPACITY = 100_000;
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+    private static final byte[] EMPTY_ARRAY = "[]".getBytes(StandardCharsets.UTF_8);
+
+    private final BlockChain blockChain;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int cacheCapacity;
+    private final Map<String, byte[]> responseCache = new ConcurrentHashMap<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final Object statusLock = new Object();
+    private volatile Status status;
+    private ChainVerifier.Run statusRun;
+
+    /**
+     * Starts serving a chain on the given address with a cache of up to 100000 blocks.
+     *
+     * @param blockChain The chain to serve.
+     * @param address    The address to listen on, e.g. port 0 for an ephemeral port.
+     * @throws IOException If the address cannot be bound.
+     */
+    public QueryServer(BlockChain blockChain, InetSocketAddress address) throws IOException {
+        this(blockChain, address, DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * Starts serving a chain on the given address.
+     *
+     * @param blockChain    The chain to serve.
+     * @param address       The address to listen on, e.g. port 0 for an ephemeral port.
+     * @param cacheCapacity The largest number of serialized blocks to keep. Zero disables the cache.
+     * @throws IOException              If the address cannot be bound.
+     * @throws IllegalArgumentException If cacheCapacity is negative.
+     */
+    public QueryServer(BlockChain blockChain, InetSocketAddress address, int cacheCapacity) throws IOException {
+        if (cacheCapacity < 0) {
+            throw new IllegalArgumentException("Cache capacity cannot be negative.");
+        }
+        this.blockChain = blockChain;
+        this.cacheCapacity = cacheCapacity;
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per request, looked up reflectively so that the server
+     * still runs on runtimes without virtual threads, where a fixed pool of platform threads is used instead.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threadCount = new AtomicInteger();
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 4, task -> {
+                Thread thread = new Thread(task, "query-server-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Gets the address the server listens on, including the port chosen for an ephemeral port.
+     *
+     * @return The local address.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Gets the number of block responses served from the cache.
+     *
+     * @return The number of hits.
+     */
+    public long getCacheHitCount() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Gets the number of block responses that had to be serialized.
+     *
+     * @return The number of misses.
+     */
+    public long getCacheMissCount() {
+        return cacheMisses.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendError(exchange, 405, "Method " + method + " is not allowed.");
+                return;
+            }
+            route(exchange);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (BlockStoreException e) {
+            logger.log(Level.SEVERE, "Error answering " + exchange.getRequestURI(), e);
+            sendError(exchange, 500, "The block store cannot be read.");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        if ("/tip".equals(path)) {
+            sendBlock(exchange, blockChain.getLatestBlock(), false);
+        } else if ("/status".equals(path)) {
+            send(exchange, 200, currentStatus().json, false);
+        } else if ("/blocks".equals(path)) {
+            sendRange(exchange, parameters);
+        } else if (path.startsWith("/blocks/hash/")) {
+            String hash = path.substring("/blocks/hash/".length());
+            if (!HexCodec.isHex(hash, BlockHash.LENGTH)) {
+                throw new IllegalArgumentException("Invalid block hash " + hash + ".");
+            }
+            sendBlock(exchange, blockChain.getBlockByHash(hash), true);
+        } else if (path.startsWith("/blocks/")) {
+            sendBlock(exchange, blockChain.getBlockByIndex(parseInt(path.substring("/blocks/".length()), "index")), false);
+        } else {
+            sendError(exchange, 404, "Unknown resource " + path + ".");
+        }
+    }
+
+    private void sendBlock(HttpExchange exchange, Block block, boolean immutable) throws IOException {
+        if (block == null) {
+            sendError(exchange, 404, "No such block.");
+            return;
+        }
+        send(exchange, 200, serialize(block), immutable);
+    }
+
+    private void sendRange(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+        int limit = parameters.containsKey("limit") ? parseInt(parameters.get("limit"), "limit") : DEFAULT_LIMIT;
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_LIMIT + ".");
+        }
+        List<Block> blocks;
+        if (parameters.containsKey("start") || parameters.containsKey("end")) {
+            BlockQuery query = BlockQuery.between(parseTimestamp(parameters.get("start"), "start"),
+                    parseTimestamp(parameters.get("end"), "end"));
+            Block after = null;
+            if (parameters.containsKey("after")) {
+                after = blockChain.getBlockByIndex(parseInt(parameters.get("after"), "after"));
+                if (after == null) {
+                    throw new IllegalArgumentException("No block with index " + parameters.get("after") + ".");
+                }
+            }
+            blocks = blockChain.findBlocks(query, after, limit);
+        } else {
+            int from = parameters.containsKey("from") ? parseInt(parameters.get("from"), "from") : 0;
+            blocks = blockChain.getBlocks(from, limit);
+        }
+        if (blocks.isEmpty()) {
+            send(exchange, 200, EMPTY_ARRAY, false);
+            return;
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(blocks.size() * 256);
+        body.write('[');
+        for (int i = 0; i < blocks.size(); i++) {
+            if (i > 0) {
+                body.write(',');
+            }
+            body.write(serialize(blocks.get(i)));
+        }
+        body.write(']');
+        send(exchange, 200, body.toByteArray(), false);
+    }
+
+    /**
+     * Gets the JSON of a block from the cache, serializing and caching it on a miss.
+     *
+     * @throws BlockStoreException If the block's transactions cannot be read in full, in which case nothing is cached.
+     */
+    private byte[] serialize(Block block) {
+        String key = block.getHash();
+        byte[] json = responseCache.get(key);
+        if (json != null) {
+            cacheHits.increment();
+            return json;
+        }
+        cacheMisses.increment();
+        json = toJson(block).getBytes(StandardCharsets.UTF_8);
+        if (cacheCapacity > 0) {
+            if (responseCache.size() >= cacheCapacity) {
+                evict();
+            }
+            responseCache.put(key, json);
+        }
+        return json;
+    }
+
+    /**
+     * Removes arbitrary entries until the cache has room for a tenth of its capacity, so that readers never wait
+     * for eviction and eviction runs rarely.
+     */
+    private void evict() {
+        int target = cacheCapacity - Math.max(1, cacheCapacity / 10);
+        Iterator<String> keys = responseCache.keySet().iterator();
+        while (responseCache.size() > target && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private String toJson(Block block) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"index\":").append(block.getIndex());
+        json.append(",\"timestamp\":");
+        appendString(json, block.getTimestamp().toString());
+        json.append(",\"data\":");
+        appendString(json, block.getData());
+        json.append(",\"previousHash\":");
+        appendString(json, block.getPreviousHash());
+        json.append(",\"hash\":");
+        appendString(json, block.getHash());
+        json.append(",\"hashScheme\":");
+        appendString(json, block.getHashScheme().name());
+        json.append(",\"nonce\":").append(block.getNonce());
+        json.append(",\"difficulty\":").append(block.getDifficulty());
+        if (block.isTransactionBlock()) {
+            List<String> transactions = block.isBodyLoaded()
+                    ? block.getTransactions() : blockChain.getStore().loadTransactions(block.getIndex());
+            if (transactions.size() != block.getTransactionCount()) {
+                throw new BlockStoreException("Block " + block.getIndex() + " has " + transactions.size() + " of its "
+                        + block.getTransactionCount() + " transactions in the store.");
+            }
+            json.append(",\"transactionCount\":").append(block.getTransactionCount());
+            json.append(",\"transactions\":[");
+            for (int i = 0; i < transactions.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendString(json, transactions.get(i));
+            }
+            json.append(']');
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder json, String text) {
+        if (text == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Gets the validity status of the chain, verifying only the blocks appended since the tip was last verified.
+     * Concurrent requests after a change wait for a single verification. The whole chain is verified again only
+     * if it was invalid or has been replaced, e.g. by loading a snapshot.
+     */
+    private Status currentStatus() {
+        Block tip = blockChain.getLatestBlock();
+        String tipHash = tip == null ? null : tip.getHash();
+        Status current = status;
+        if (current != null && sameTip(current, tipHash)) {
+            return current;
+        }
+        synchronized (statusLock) {
+            current = status;
+            if (current != null && sameTip(current, tipHash)) {
+                return current;
+            }
+            long start = System.nanoTime();
+            if (statusRun == null || !statusRun.isValid() || !inChain(statusRun.last())) {
+                statusRun = blockChain.startVerification();
+            }
+            blockChain.continueVerification(statusRun);
+            VerificationReport report = statusRun.finish();
+            StringBuilder json = new StringBuilder(256);
+            json.append("{\"height\":").append(blockChain.size());
+            json.append(",\"tipIndex\":").append(tip == null ? -1 : tip.getIndex());
+            json.append(",\"tipHash\":");
+            appendString(json, tipHash);
+            json.append(",\"valid\":").append(report.isValid());
+            json.append(",\"blocksVerified\":").append(report.getBlocksVerified());
+            if (!report.isValid()) {
+                json.append(",\"firstInvalidIndex\":").append(report.getFirstInvalidIndex());
+                json.append(",\"reason\":");
+                appendString(json, report.getReason().name());
+            }
+            json.append(",\"verificationMillis\":").append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            current = new Status(tipHash, json.append('}').toString().getBytes(StandardCharsets.UTF_8));
+            status = current;
+            return current;
+        }
+    }
+
+    private boolean inChain(Block block) {
+        if (block == null) {
+            return true;
+        }
+        Block current = blockChain.getBlockByIndex(block.getIndex());
+        return current != null && current.getHash().equals(block.getHash());
+    }
+
+    private static boolean sameTip(Status status, String tipHash) {
+        return tipHash == null ? status.tipHash == null : tipHash.equals(status.tipHash);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            String name = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            try {
+                parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return parameters;
+    }
+
+    private static int parseInt(String text, String name) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " " + text + ".", e);
+        }
+    }
+
+    private static LocalDateTime parseTimestamp(String text, String name) {
+        if (text == null) {
+            throw new IllegalArgumentException("Missing " + name + " timestamp.");
+        }
+        try {
+            return LocalDateTime.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid " + name + " timestamp " + text + ".", e);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        send(exchange, status, json.append('}').toString().getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body, boolean immutable) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        if (immutable) {
+            exchange.getResponseHeaders().set("Cache-Control", "public, max-age=31536000, immutable");
+        }
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    /**
+     * Stops accepting requests, waits up to a second for requests in progress, and stops the request threads.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private static final class Status {
+        private final String tipHash;
+        private final byte[] json;
+
+        private Status(String tipHash, byte[] json) {
+            this.tipHash = tipHash;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,1016 @@
+package com.leonard.blockchain;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link BlockStore} that appends blocks to fixed-size segment files in a directory.
+ * Each segment is pre-allocated and memory-mapped in full, so appends and scans are plain memory copies rather
+ * than per-row database calls. A segment starts with a magic number and format version, followed by records of
+ * the form {@code length, crc32, payload}; a zero length marks the end of the written records.
+ * <p>
+ * Every segment keeps a sparse index holding the position of every n-th record, so a lookup by block index
+ * binary-searches the segments and the sparse index and then scans at most n records. Lookups by hash go
+ * through an in-memory map from hash to block index, and time range queries through an in-memory index of block
+ * timestamps; both are rebuilt when the store is opened. Payload queries scan the log.
+ * <p>
+ * The store is opened lazily on first use. Opening scans every record and verifies its checksum; the first
+ * record that is torn or corrupt, and everything after it, is truncated, which recovers the store after a crash
+ * in the middle of an append. Writes are forced to disk before {@link #insert(Block)} and
+ * {@link #insertAll(Collection)} return. Metrics listeners see opening the segments as a connection, and each
+ * batch of appends and each lookup as a statement.
+ * <p>
+ * Blocks must be appended in increasing index order. Blocks whose index or hash is already stored are skipped;
+ * a block whose index is lower than the last stored index but not stored itself is rejected.
+ */
+public class SegmentLogStore implements BlockStore {
+    private static final Logger logger = Logger.getLogger(SegmentLogStore.class.getName());
+    private static final int MAGIC = 0x424c4b4c;
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_LENGTH = 8;
+    private static final int RECORD_HEADER_LENGTH = 8;
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int CHECKPOINT_MAGIC = 0x424c4b43;
+    private static final int MIN_SEGMENT_SIZE = 4096;
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_INDEX_INTERVAL = 64;
+    private static final byte TRANSACTIONS_NOT_STORED = 0;
+    private static final byte TRANSACTIONS_STORED = 1;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int indexInterval;
+    private final Map<String, Integer> indexesByHash = new ConcurrentHashMap<>();
+    private final TimestampIndex timestampIndex = new TimestampIndex();
+    private final CRC32 writeChecksum = new CRC32();
+    private volatile List<Segment> segments = Collections.emptyList();
+    private ByteBuffer recordBuffer = ByteBuffer.allocate(1024);
+    private int lastIndex = -1;
+    private boolean opened;
+    private volatile boolean closed;
+    private volatile ChainMetricsListener metricsListener = ChainMetricsListener.NONE;
+
+    /**
+     * Constructs a store in the given directory with 64 MiB segments.
+     *
+     * @param directory The directory holding the segment files. It is created if it does not exist.
+     */
+    public SegmentLogStore(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_INDEX_INTERVAL);
+    }
+
+    /**
+     * Constructs a store in the given directory.
+     *
+     * @param directory     The directory holding the segment files. It is created if it does not exist.
+     * @param segmentSize   The size of a segment file in bytes. A block larger than a segment gets a segment
+     *                      of its own. Must be at least 4096.
+     * @param indexInterval The number of records between two sparse index entries. Must be positive.
+     * @throws IllegalArgumentException If segmentSize or indexInterval is out of range.
+     */
+    public SegmentLogStore(Path directory, int segmentSize, int indexInterval) {
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Segment size must be at least " + MIN_SEGMENT_SIZE + " bytes.");
+        }
+        if (indexInterval <= 0) {
+            throw new IllegalArgumentException("Index interval must be positive.");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * Gets the directory holding the segment files.
+     *
+     * @return The directory.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gets the number of segment files.
+     *
+     * @return The number of segments.
+     */
+    public synchronized int getSegmentCount() {
+        open();
+        return segments.size();
+    }
+
+    /**
+     * Creates the directory if it does not exist, and opens and recovers the existing segments.
+     *
+     * @throws BlockStoreException If the directory or a segment cannot be opened.
+     */
+    @Override
+    public synchronized void createSchema() {
+        open();
+    }
+
+    /**
+     * Appends a block unless a block with the same index or hash is already stored, and forces it to disk.
+     *
+     * @param block The block to append.
+     * @return {@code true} if the block was appended, {@code false} if its index or hash already exists.
+     * @throws IllegalArgumentException If the block's index is lower than the last stored index but not stored.
+     * @throws BlockStoreException      If the block cannot be written.
+     */
+    @Override
+    public synchronized boolean insert(Block block) {
+        return insertAll(Collections.singletonList(block)) > 0;
+    }
+
+    /**
+     * Appends the given blocks and forces them to disk once. All blocks are checked before any is written, and
+     * the blocks become visible to readers only once all of them are on disk. If writing fails, the records of
+     * the batch are zeroed and the segments created for it are deleted, so none of the blocks is stored.
+     *
+     * @param blocks The blocks to append, in increasing index order.
+     * @return The number of blocks that were appended.
+     * @throws IllegalArgumentException If a block's index is lower than the last stored index but not stored.
+     * @throws BlockStoreException      If the blocks cannot be written.
+     */
+    @Override
+    public synchronized int insertAll(Collection<Block> blocks) {
+        open();
+        List<Block> accepted = accept(blocks);
+        if (accepted.isEmpty()) {
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        List<Segment> before = segments;
+        Segment last = before.get(before.size() - 1);
+        int recordCount = last.recordCount;
+        int indexCount = last.indexCount;
+        Map<Segment, Integer> ends = new LinkedHashMap<>();
+        try {
+            for (Block block : accepted) {
+                append(block, ends);
+            }
+            for (Segment segment : ends.keySet()) {
+                segment.buffer.force();
+            }
+        } catch (RuntimeException e) {
+            try {
+                rollBack(before, recordCount, indexCount, ends);
+            } catch (RuntimeException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        }
+
+        for (Map.Entry<Segment, Integer> end : ends.entrySet()) {
+            end.getKey().end = end.getValue();
+        }
+        for (Block block : accepted) {
+            indexesByHash.put(block.getHash(), block.getIndex());
+            timestampIndex.add(block.getTimestamp(), block.getIndex());
+        }
+        lastIndex = accepted.get(accepted.size() - 1).getIndex();
+        metricsListener.onStatementExecuted(System.nanoTime() - start);
+        return accepted.size();
+    }
+
+    /**
+     * Filters out blocks that are already stored and checks that the remaining ones extend the log in order.
+     */
+    private List<Block> accept(Collection<Block> blocks) {
+        List<Block> accepted = new ArrayList<>(blocks.size());
+        int[] acceptedIndexes = new int[blocks.size()];
+        Set<String> acceptedHashes = new HashSet<>();
+        int last = lastIndex;
+        for (Block block : blocks) {
+            int index = block.getIndex();
+            if (index <= last) {
+                if (Arrays.binarySearch(acceptedIndexes, 0, accepted.size(), index) >= 0 || locate(index) != null) {
+                    continue;
+                }
+                throw new IllegalArgumentException("Block " + index + " cannot be appended after block " + last + ".");
+            }
+            if (indexesByHash.containsKey(block.getHash()) || !acceptedHashes.add(block.getHash())) {
+                continue;
+            }
+            acceptedIndexes[accepted.size()] = index;
+            accepted.add(block);
+            last = index;
+        }
+        return accepted;
+    }
+
+    /**
+     * Writes a block to the current segment, rolling over to a new segment if it does not fit. The record is
+     * added to the segment's sparse index, but the segment's end is only advanced in ends, for the caller to
+     * publish once the whole batch is written.
+     *
+     * @param ends The end of the records written so far by the batch, for each segment it has written to.
+     */
+    private void append(Block block, Map<Segment, Integer> ends) {
+        ByteBuffer record = encode(block);
+        int length = record.remaining();
+        Segment segment = segments.get(segments.size() - 1);
+        int position = ends.getOrDefault(segment, segment.end);
+        if (position + RECORD_HEADER_LENGTH + length > segment.capacity) {
+            int capacity = Math.max(segmentSize, SEGMENT_HEADER_LENGTH + RECORD_HEADER_LENGTH + length);
+            segment = segment.recordCount == 0 ? growEmptySegment(segment, capacity) : createSegment(segment.sequence + 1, capacity);
+            position = segment.end;
+        }
+
+        writeChecksum.reset();
+        writeChecksum.update(record.array(), 0, length);
+        ByteBuffer target = segment.buffer.duplicate();
+        target.position(position);
+        target.putInt(length);
+        target.putInt((int) writeChecksum.getValue());
+        target.put(record);
+
+        segment.addRecord(block.getIndex(), position, indexInterval);
+        ends.put(segment, target.position());
+    }
+
+    /**
+     * Undoes the writes of a batch that failed: the records written to the segment that was last before the batch
+     * are zeroed and dropped from its sparse index, and the segments created by the batch are closed and deleted.
+     *
+     * @param before      The segments before the batch.
+     * @param recordCount The number of records of the last segment before the batch.
+     * @param indexCount  The number of sparse index entries of the last segment before the batch.
+     * @param ends        The end of the records written by the batch, for each segment it has written to.
+     */
+    private void rollBack(List<Segment> before, int recordCount, int indexCount, Map<Segment, Integer> ends) {
+        Segment last = before.get(before.size() - 1);
+        List<Segment> restored = new ArrayList<>(before.subList(0, before.size() - 1));
+        for (Segment segment : segments) {
+            if (before.contains(segment)) {
+                continue;
+            }
+            if (segment.sequence == last.sequence) {
+                // The last segment was empty and has been replaced by a larger mapping of the same file.
+                last = segment;
+                recordCount = 0;
+                indexCount = 0;
+            } else {
+                try {
+                    segment.channel.close();
+                    Files.deleteIfExists(segment.path);
+                } catch (IOException e) {
+                    throw new BlockStoreException("Error deleting segment " + segment.path, e);
+                }
+            }
+        }
+        Integer end = ends.get(last);
+        if (end != null) {
+            zero(last, last.end, end);
+            last.buffer.force();
+        }
+        last.recordCount = recordCount;
+        last.indexCount = indexCount;
+        restored.add(last);
+        segments = Collections.unmodifiableList(restored);
+    }
+
+    /**
+     * Overwrites the bytes of a segment from one position up to another with zeros.
+     */
+    private static void zero(Segment segment, int from, int to) {
+        ByteBuffer zeros = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer target = segment.buffer.duplicate();
+        target.position(from);
+        target.limit(to);
+        while (target.hasRemaining()) {
+            zeros.clear();
+            zeros.limit(Math.min(zeros.capacity(), target.remaining()));
+            target.put(zeros);
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(int blockIndex) {
+        open();
+        return locate(blockIndex) != null;
+    }
+
+    @Override
+    public Block findByIndex(int blockIndex) {
+        long start = System.nanoTime();
+        RecordPosition position;
+        synchronized (this) {
+            open();
+            position = locate(blockIndex);
+        }
+        Block block = position == null ? null : new RecordReader(position.segment.buffer).readBlock(position.position);
+        metricsListener.onStatementExecuted(System.nanoTime() - start);
+        return block;
+    }
+
+    @Override
+    public Block findByHash(String hash) {
+        synchronized (this) {
+            open();
+        }
+        Integer blockIndex = indexesByHash.get(hash);
+        return blockIndex == null ? null : findByIndex(blockIndex);
+    }
+
+    @Override
+    public List<String> loadTransactions(int blockIndex) {
+        RecordPosition position;
+        synchronized (this) {
+            open();
+            position = locate(blockIndex);
+        }
+        return position == null ? Collections.<String>emptyList()
+                : new RecordReader(position.segment.buffer).readTransactions(position.position);
+    }
+
+    @Override
+    public List<Block> loadAll() {
+        try (Stream<Block> blocks = stream(0, 0)) {
+            List<Block> loaded = new ArrayList<>();
+            blocks.forEach(loaded::add);
+            return loaded;
+        }
+    }
+
+    /**
+     * Streams the stored blocks with an index of at least fromIndex, in index order, decoding them directly from
+     * the mapped segments. Blocks appended while the stream is consumed may or may not be returned.
+     *
+     * @param fromIndex The lowest block index to return.
+     * @param fetchSize Ignored; records are read straight from the mapped segments.
+     * @return An ordered stream of blocks.
+     * @throws BlockStoreException If the store has been closed.
+     */
+    @Override
+    public Stream<Block> stream(int fromIndex, int fetchSize) {
+        SegmentCursor cursor;
+        synchronized (this) {
+            open();
+            cursor = new SegmentCursor(fromIndex);
+        }
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Finds a page of the stored blocks that match a query. Time range queries are answered from the in-memory
+     * timestamp index, reading only the blocks they return; payload queries scan the log.
+     *
+     * @param query The query to run.
+     * @param after The last block of the previous page, or {@code null} for the first page.
+     * @param limit The largest number of blocks to return.
+     * @return The matching blocks that follow after, at most limit of them.
+     * @throws IllegalArgumentException If limit is not positive.
+     * @throws BlockStoreException      If the store has been closed.
+     */
+    @Override
+    public List<Block> find(BlockQuery query, Block after, int limit) {
+        if (query.getKind() != BlockQuery.Kind.TIME_RANGE) {
+            return BlockStore.super.find(query, after, limit);
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive.");
+        }
+        return findByTimestamp(query, after).limit(limit).collect(Collectors.toList());
+    }
+
+    /**
+     * Streams every stored block that matches a query, in the query's order.
+     *
+     * @param query     The query to run.
+     * @param fetchSize Ignored; records are read straight from the mapped segments.
+     * @return An ordered stream of the matching blocks.
+     * @throws BlockStoreException If the store has been closed.
+     * @see #find(BlockQuery, Block, int)
+     */
+    @Override
+    public Stream<Block> stream(BlockQuery query, int fetchSize) {
+        if (query.getKind() != BlockQuery.Kind.TIME_RANGE) {
+            return BlockStore.super.stream(query, fetchSize);
+        }
+        return findByTimestamp(query, null);
+    }
+
+    private Stream<Block> findByTimestamp(BlockQuery query, Block after) {
+        synchronized (this) {
+            open();
+        }
+        return timestampIndex.indexesBetween(query.getFrom(), query.getTo(), after)
+                .filter(blockIndex -> blockIndex < query.getBeforeIndex())
+                .mapToObj(this::findByIndex)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Writes a checkpoint to the 'checkpoint' file in the store's directory, replacing the previous one.
+     * The file is written to a temporary file first and moved into place, so a crash leaves either the old or
+     * the new checkpoint.
+     *
+     * @param checkpoint The checkpoint to store.
+     * @throws BlockStoreException If the file cannot be written.
+     */
+    @Override
+    public synchronized void saveCheckpoint(Checkpoint checkpoint) {
+        open();
+        byte[] tipHash = checkpoint.getTipHash().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(20 + tipHash.length + 2 * BlockHash.LENGTH);
+        buffer.putInt(CHECKPOINT_MAGIC);
+        buffer.putInt(checkpoint.getTipIndex());
+        buffer.putLong(checkpoint.getBlockCount());
+        buffer.putInt(tipHash.length);
+        buffer.put(tipHash);
+        buffer.put(checkpoint.getPrefixDigest().toBytes());
+        buffer.put(checkpoint.getSeal().toBytes());
+        buffer.flip();
+
+        Path target = directory.resolve(CHECKPOINT_FILE);
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new BlockStoreException("Error saving the checkpoint at block " + checkpoint.getTipIndex(), e);
+        }
+    }
+
+    /**
+     * Reads the checkpoint from the 'checkpoint' file in the store's directory.
+     *
+     * @return The checkpoint, or {@code null} if none has been stored.
+     * @throws BlockStoreException If the file cannot be read or is malformed.
+     */
+    @Override
+    public synchronized Checkpoint loadLatestCheckpoint() {
+        open();
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (buffer.getInt() != CHECKPOINT_MAGIC) {
+                throw new BlockStoreException("Not a checkpoint file: " + path);
+            }
+            int tipIndex = buffer.getInt();
+            long blockCount = buffer.getLong();
+            byte[] tipHash = new byte[buffer.getInt()];
+            buffer.get(tipHash);
+            byte[] prefixDigest = new byte[BlockHash.LENGTH];
+            buffer.get(prefixDigest);
+            byte[] seal = new byte[BlockHash.LENGTH];
+            buffer.get(seal);
+            return new Checkpoint(tipIndex, new String(tipHash, StandardCharsets.UTF_8), blockCount,
+                    BlockHash.wrap(prefixDigest), BlockHash.wrap(seal));
+        } catch (IOException | RuntimeException e) {
+            if (e instanceof BlockStoreException) {
+                throw (BlockStoreException) e;
+            }
+            throw new BlockStoreException("Error reading the checkpoint file " + path, e);
+        }
+    }
+
+    @Override
+    public void setMetricsListener(ChainMetricsListener listener) {
+        this.metricsListener = listener;
+    }
+
+    /**
+     * Closes every segment file. Data already forced to disk is unaffected.
+     *
+     * @throws BlockStoreException If a segment cannot be closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOException failure = null;
+        for (Segment segment : segments) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        segments = Collections.emptyList();
+        indexesByHash.clear();
+        timestampIndex.clear();
+        if (failure != null) {
+            throw new BlockStoreException("Error closing the segment files", failure);
+        }
+    }
+
+    /**
+     * Opens the existing segments on first use, recovering from a torn tail. Callers must hold the monitor.
+     */
+    private void open() {
+        if (closed) {
+            throw new BlockStoreException("Block store has been closed.");
+        }
+        if (opened) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+            List<Path> paths = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+                for (Path path : files) {
+                    paths.add(path);
+                }
+            }
+            Collections.sort(paths);
+
+            List<Segment> recovered = new ArrayList<>();
+            for (int i = 0; i < paths.size(); i++) {
+                boolean last = i == paths.size() - 1;
+                if (last && Files.size(paths.get(i)) < SEGMENT_HEADER_LENGTH) {
+                    // A crash between creating the file and mapping it leaves a segment that holds no records.
+                    logger.log(Level.WARNING, "Deleting segment " + paths.get(i) + " that was cut short while being created.");
+                    Files.delete(paths.get(i));
+                    break;
+                }
+                Segment segment = openSegment(paths.get(i), last);
+                recovered.add(segment);
+                if (!recover(segment)) {
+                    for (Path path : paths.subList(i + 1, paths.size())) {
+                        logger.log(Level.WARNING, "Deleting segment " + path + " after a corrupt record.");
+                        Files.delete(path);
+                    }
+                    break;
+                }
+            }
+            segments = Collections.unmodifiableList(new ArrayList<>(recovered));
+            opened = true;
+            if (recovered.isEmpty()) {
+                createSegment(0, segmentSize);
+            }
+            metricsListener.onConnectionOpened(System.nanoTime() - start);
+        } catch (IOException e) {
+            throw new BlockStoreException("Error opening the segment log in " + directory, e);
+        }
+    }
+
+    private Segment openSegment(Path path, boolean last) throws IOException {
+        String name = path.getFileName().toString();
+        int sequence;
+        try {
+            sequence = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new BlockStoreException("Invalid segment file name: " + path, e);
+        }
+        FileChannel channel = new RandomAccessFile(path.toFile(), "rw").getChannel();
+        try {
+            long size = channel.size();
+            if (size < SEGMENT_HEADER_LENGTH || size > Integer.MAX_VALUE) {
+                throw new BlockStoreException("Invalid segment size " + size + ": " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            int magic = buffer.getInt(0);
+            if (magic == 0 && last) {
+                writeHeader(buffer);
+            } else if (magic != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                throw new BlockStoreException("Not a block segment of version " + FORMAT_VERSION + ": " + path);
+            }
+            return new Segment(sequence, path, channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Scans a segment, rebuilding its sparse index and the hash index. A torn or corrupt record is zeroed
+     * together with everything after it.
+     *
+     * @return True if the segment ended cleanly, false if it was truncated.
+     */
+    private boolean recover(Segment segment) {
+        RecordReader reader = new RecordReader(segment.buffer);
+        CRC32 checksum = new CRC32();
+        int position = SEGMENT_HEADER_LENGTH;
+        while (position + RECORD_HEADER_LENGTH <= segment.capacity) {
+            int length = segment.buffer.getInt(position);
+            if (length == 0) {
+                segment.end = position;
+                return true;
+            }
+            if (length < 0 || length > segment.capacity - position - RECORD_HEADER_LENGTH
+                    || !reader.checksumMatches(position, length, checksum)) {
+                break;
+            }
+            int index = reader.readIndex(position);
+            String hash = reader.readHash(position);
+            if (index <= lastIndex || indexesByHash.containsKey(hash)) {
+                break;
+            }
+            segment.addRecord(index, position, indexInterval);
+            indexesByHash.put(hash, index);
+            timestampIndex.add(reader.readTimestamp(position), index);
+            lastIndex = index;
+            position += RECORD_HEADER_LENGTH + length;
+        }
+
+        segment.end = position;
+        if (position + RECORD_HEADER_LENGTH > segment.capacity) {
+            return true;
+        }
+        logger.log(Level.WARNING, "Truncating segment " + segment.path + " at offset " + position + " after a torn or corrupt record.");
+        zero(segment, position, segment.capacity);
+        segment.buffer.force();
+        return false;
+    }
+
+    private Segment createSegment(int sequence, int capacity) {
+        Path path = directory.resolve(String.format("%010d%s", sequence, SEGMENT_SUFFIX));
+        try {
+            FileChannel channel = new RandomAccessFile(path.toFile(), "rw").getChannel();
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                writeHeader(buffer);
+                Segment segment = new Segment(sequence, path, channel, buffer);
+                segment.end = SEGMENT_HEADER_LENGTH;
+                List<Segment> updated = new ArrayList<>(segments);
+                updated.add(segment);
+                segments = Collections.unmodifiableList(updated);
+                return segment;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new BlockStoreException("Error creating segment " + path, e);
+        }
+    }
+
+    /**
+     * Replaces an empty segment that is too small for the next record with a larger mapping of the same file.
+     */
+    private Segment growEmptySegment(Segment segment, int capacity) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            throw new BlockStoreException("Error closing segment " + segment.path, e);
+        }
+        List<Segment> remaining = new ArrayList<>(segments);
+        remaining.remove(remaining.size() - 1);
+        segments = Collections.unmodifiableList(remaining);
+        return createSegment(segment.sequence, capacity);
+    }
+
+    private static void writeHeader(MappedByteBuffer buffer) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.force();
+    }
+
+    /**
+     * Finds the record of the block with the given index. Callers must hold the monitor.
+     *
+     * @return The position of the record, or {@code null} if the block is not stored.
+     */
+    private RecordPosition locate(int blockIndex) {
+        List<Segment> current = segments;
+        int low = 0;
+        int high = current.size() - 1;
+        Segment segment = null;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Segment candidate = current.get(middle);
+            if (candidate.indexCount == 0 || candidate.sparseIndexes[0] > blockIndex) {
+                high = middle - 1;
+            } else {
+                segment = candidate;
+                low = middle + 1;
+            }
+        }
+        if (segment == null) {
+            return null;
+        }
+
+        int entry = Arrays.binarySearch(segment.sparseIndexes, 0, segment.indexCount, blockIndex);
+        if (entry >= 0) {
+            return new RecordPosition(segment, segment.sparsePositions[entry]);
+        }
+        int position = segment.sparsePositions[-entry - 2];
+        while (position < segment.end) {
+            int index = segment.buffer.getInt(position + RECORD_HEADER_LENGTH);
+            if (index == blockIndex) {
+                return new RecordPosition(segment, position);
+            }
+            if (index > blockIndex) {
+                return null;
+            }
+            position += RECORD_HEADER_LENGTH + segment.buffer.getInt(position);
+        }
+        return null;
+    }
+
+    /**
+     * Encodes a block into the reusable record buffer, flipped for reading.
+     */
+    private ByteBuffer encode(Block block) {
+        ByteBuffer buffer = recordBuffer;
+        buffer.clear();
+        buffer = ensureCapacity(buffer, 33);
+        buffer.putInt(block.getIndex());
+        buffer.putLong(block.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(block.getTimestamp().getNano());
+        buffer.put((byte) block.getHashScheme().getId());
+        buffer.putLong(block.getNonce());
+        buffer.putInt(block.getDifficulty());
+        buffer.putInt(block.getTransactionCount());
+        buffer = putString(buffer, block.getHash());
+        buffer = putString(buffer, block.getData());
+        buffer = putString(buffer, block.getPreviousHash());
+        if (block.isTransactionBlock() && block.isBodyLoaded()) {
+            List<String> transactions = block.getTransactions();
+            buffer = ensureCapacity(buffer, 1);
+            buffer.put(TRANSACTIONS_STORED);
+            for (String transaction : transactions) {
+                buffer = putString(buffer, transaction);
+            }
+        } else {
+            buffer = ensureCapacity(buffer, 1);
+            buffer.put(TRANSACTIONS_NOT_STORED);
+        }
+        recordBuffer = buffer;
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Writes text as a four-byte length followed by its UTF-8 bytes; {@code null} is written as length -1.
+     */
+    private static ByteBuffer putString(ByteBuffer buffer, String text) {
+        if (text == null) {
+            buffer = ensureCapacity(buffer, 4);
+            buffer.putInt(-1);
+            return buffer;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        buffer = ensureCapacity(buffer, 4 + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        return buffer;
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int additional) {
+        if (buffer.remaining() >= additional) {
+            return buffer;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + additional));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    /**
+     * A mapped segment file. Records are only appended under the store's monitor; {@link #end} is published
+     * last so that readers holding the segment see fully written records.
+     */
+    private static final class Segment {
+        private final int sequence;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private volatile int end = SEGMENT_HEADER_LENGTH;
+        private int recordCount;
+        private int[] sparseIndexes = new int[16];
+        private int[] sparsePositions = new int[16];
+        private int indexCount;
+
+        private Segment(int sequence, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        private void addRecord(int blockIndex, int position, int indexInterval) {
+            if (recordCount++ % indexInterval != 0) {
+                return;
+            }
+            if (indexCount == sparseIndexes.length) {
+                sparseIndexes = Arrays.copyOf(sparseIndexes, indexCount * 2);
+                sparsePositions = Arrays.copyOf(sparsePositions, indexCount * 2);
+            }
+            sparseIndexes[indexCount] = blockIndex;
+            sparsePositions[indexCount] = position;
+            indexCount++;
+        }
+    }
+
+    private static final class RecordPosition {
+        private final Segment segment;
+        private final int position;
+
+        private RecordPosition(Segment segment, int position) {
+            this.segment = segment;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Decodes records from a segment through a private view of its mapping.
+     */
+    private static final class RecordReader {
+        private static final int INDEX_OFFSET = RECORD_HEADER_LENGTH;
+        private static final int STRINGS_OFFSET = RECORD_HEADER_LENGTH + 33;
+
+        private final ByteBuffer buffer;
+        private byte[] scratch = new byte[256];
+
+        private RecordReader(MappedByteBuffer buffer) {
+            this.buffer = buffer.duplicate();
+        }
+
+        private boolean checksumMatches(int position, int length, CRC32 checksum) {
+            ByteBuffer payload = buffer.duplicate();
+            payload.limit(position + RECORD_HEADER_LENGTH + length);
+            payload.position(position + RECORD_HEADER_LENGTH);
+            byte[] bytes = scratch(length);
+            payload.get(bytes, 0, length);
+            checksum.reset();
+            checksum.update(bytes, 0, length);
+            return (int) checksum.getValue() == buffer.getInt(position + 4);
+        }
+
+        private int readIndex(int position) {
+            return buffer.getInt(position + INDEX_OFFSET);
+        }
+
+        private LocalDateTime readTimestamp(int position) {
+            return LocalDateTime.ofEpochSecond(buffer.getLong(position + INDEX_OFFSET + 4),
+                    buffer.getInt(position + INDEX_OFFSET + 12), ZoneOffset.UTC);
+        }
+
+        private String readHash(int position) {
+            buffer.position(position + STRINGS_OFFSET);
+            return getString();
+        }
+
+        private Block readBlock(int position) {
+            buffer.position(position + INDEX_OFFSET);
+            int index = buffer.getInt();
+            LocalDateTime timestamp = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+            HashScheme hashScheme = HashScheme.fromId(buffer.get());
+            long nonce = buffer.getLong();
+            int difficulty = buffer.getInt();
+            int transactionCount = buffer.getInt();
+            String hash = getString();
+            String data = getString();
+            String previousHash = getString();
+            return new Block(index, timestamp, data, previousHash, hashScheme, hash, transactionCount, null, nonce, difficulty);
+        }
+
+        private List<String> readTransactions(int position) {
+            int transactionCount = buffer.getInt(position + STRINGS_OFFSET - 4);
+            buffer.position(position + STRINGS_OFFSET);
+            for (int i = 0; i < 3; i++) {
+                skipString();
+            }
+            if (buffer.get() != TRANSACTIONS_STORED) {
+                return Collections.emptyList();
+            }
+            List<String> transactions = new ArrayList<>(transactionCount);
+            for (int i = 0; i < transactionCount; i++) {
+                transactions.add(getString());
+            }
+            return transactions;
+        }
+
+        private String getString() {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = scratch(length);
+            buffer.get(bytes, 0, length);
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private void skipString() {
+            int length = buffer.getInt();
+            if (length > 0) {
+                buffer.position(buffer.position() + length);
+            }
+        }
+
+        private byte[] scratch(int length) {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(scratch.length * 2, length)];
+            }
+            return scratch;
+        }
+    }
+
+    /**
+     * Iterates over the records of the segments in order, starting at the first block with at least the
+     * requested index.
+     */
+    private final class SegmentCursor implements Iterator<Block> {
+        private int segmentNumber;
+        private int position;
+        private RecordReader reader;
+
+        private SegmentCursor(int fromIndex) {
+            List<Segment> current = segments;
+            while (segmentNumber < current.size()) {
+                Segment segment = current.get(segmentNumber);
+                int entry = Arrays.binarySearch(segment.sparseIndexes, 0, segment.indexCount, fromIndex);
+                if (entry >= 0) {
+                    position = segment.sparsePositions[entry];
+                } else {
+                    position = entry < -1 ? segment.sparsePositions[-entry - 2] : SEGMENT_HEADER_LENGTH;
+                }
+                while (position < segment.end && segment.buffer.getInt(position + RECORD_HEADER_LENGTH) < fromIndex) {
+                    position += RECORD_HEADER_LENGTH + segment.buffer.getInt(position);
+                }
+                if (position < segment.end) {
+                    break;
+                }
+                segmentNumber++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            List<Segment> current = segments;
+            while (segmentNumber < current.size()) {
+                if (position < current.get(segmentNumber).end) {
+                    return true;
+                }
+                if (segmentNumber + 1 >= current.size()) {
+                    return false;
+                }
+                segmentNumber++;
+                position = SEGMENT_HEADER_LENGTH;
+                reader = null;
+            }
+            return false;
+        }
+
+        @Override
+        public Block next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Segment segment = segments.get(segmentNumber);
+            if (reader == null) {
+                reader = new RecordReader(segment.buffer);
+            }
+            Block block = reader.readBlock(position);
+            position += RECORD_HEADER_LENGTH + segment.buffer.getInt(position);
+            return block;
+        }
+    }
+}
@@ -0,0 +1,1098 @@
+package com.leonard.blockchain;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link BlockStore} that persists blocks to an SQLite database.
+ * The store keeps one long-lived writer connection and a small pool of reader connections, each of which
+ * caches the prepared statements it has used, so repeated calls do not pay for connection setup or
+ * statement parsing. Connections are opened lazily on first use and released by {@link #close()}.
+ * All methods are thread-safe.
+ */
+public class SqliteBlockStore implements BlockStore {
+    private static final String BLOCK_COLUMNS =
+            "block_index, timestamp, data, previous_hash, hash, hash_scheme, transaction_count, nonce, difficulty, " +
+                    "data_compressed, data_dictionary";
+    private static final String INSERT_BLOCK_SQL =
+            "INSERT OR IGNORE INTO blocks (" + BLOCK_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_DICTIONARY_SQL =
+            "INSERT OR IGNORE INTO payload_dictionaries (id, dictionary) VALUES (?, ?)";
+    private static final String SELECT_DICTIONARIES_SQL = "SELECT id, dictionary FROM payload_dictionaries";
+    private static final String INSERT_CHECKPOINT_SQL =
+            "INSERT OR REPLACE INTO checkpoints (tip_index, tip_hash, block_count, prefix_digest, seal) VALUES (?, ?, ?, ?, ?)";
+    private static final String SELECT_LATEST_CHECKPOINT_SQL =
+            "SELECT tip_index, tip_hash, block_count, prefix_digest, seal FROM checkpoints ORDER BY tip_index DESC LIMIT 1";
+    /**
+     * Inserts a transaction only if the stored block at its index is the block it belongs to, so the transactions of
+     * a conflicting block whose insert was ignored are never added to the body of the stored one.
+     */
+    private static final String INSERT_TRANSACTION_SQL =
+            "INSERT OR IGNORE INTO transactions (block_index, tx_index, payload) SELECT ?, ?, ? " +
+                    "WHERE EXISTS (SELECT 1 FROM blocks WHERE block_index = ? AND hash = ?)";
+    private static final String BLOCK_EXISTS_SQL = "SELECT 1 FROM blocks WHERE block_index = ?";
+    private static final String SELECT_BLOCKS_SQL = "SELECT " + BLOCK_COLUMNS + " FROM blocks ORDER BY block_index";
+    private static final String SELECT_BLOCK_BY_INDEX_SQL = "SELECT " + BLOCK_COLUMNS + " FROM blocks WHERE block_index = ?";
+    private static final String SELECT_BLOCK_BY_HASH_SQL = "SELECT " + BLOCK_COLUMNS + " FROM blocks WHERE hash = ?";
+    private static final String SELECT_BLOCKS_FROM_SQL =
+            "SELECT " + BLOCK_COLUMNS + " FROM blocks WHERE block_index >= ? ORDER BY block_index";
+    private static final String SELECT_TRANSACTIONS_SQL =
+            "SELECT payload FROM transactions WHERE block_index = ? ORDER BY tx_index";
+    /**
+     * The key of the payload index: the first {@link BlockQuery#PAYLOAD_KEY_LENGTH} characters of the data.
+     * Queries must use the same expression for SQLite to use the index.
+     */
+    private static final String PAYLOAD_KEY = "substr(data, 1, 64)";
+    private static final String SELECT_BLOCKS_BY_TIMESTAMP_SQL =
+            "SELECT " + BLOCK_COLUMNS + " FROM blocks WHERE timestamp >= ? AND timestamp < ? " +
+                    "AND (timestamp, block_index) > (?, ?) AND block_index < ? ORDER BY timestamp, block_index LIMIT ?";
+    private static final String SELECT_BLOCKS_BY_PAYLOAD_SQL =
+            "SELECT " + BLOCK_COLUMNS + " FROM blocks WHERE " + PAYLOAD_KEY + " = ? " +
+                    "AND block_index > ? AND block_index < ? AND (data = ? OR data_compressed IS NOT NULL) ORDER BY block_index LIMIT ?";
+    private static final String SELECT_BLOCKS_BY_PAYLOAD_PREFIX_SQL =
+            "SELECT " + BLOCK_COLUMNS + " FROM blocks WHERE " + PAYLOAD_KEY + " >= ? AND " + PAYLOAD_KEY + " < ? " +
+                    "AND (" + PAYLOAD_KEY + ", block_index) > (?, ?) AND (substr(data, 1, ?) = ? OR data_compressed IS NOT NULL) " +
+                    "AND block_index < ? " +
+                    "ORDER BY " + PAYLOAD_KEY + ", block_index LIMIT ?";
+
+    /**
+     * Schema migrations, applied in order. The number of applied migrations is tracked in SQLite's user_version.
+     * Migrations must never be edited once released; add a new entry instead.
+     */
+    private static final String[][] MIGRATIONS = {
+            {
+                    "CREATE TABLE IF NOT EXISTS blocks ( " +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "block_index INT NOT NULL," +
+                            "timestamp TEXT NOT NULL," +
+                            "data TEXT NOT NULL," +
+                            "previous_hash TEXT NOT NULL," +
+                            "hash TEXT NOT NULL)",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS idx_blocks_block_index ON blocks (block_index)"
+            },
+            {
+                    "ALTER TABLE blocks ADD COLUMN hash_scheme INT NOT NULL DEFAULT 0"
+            },
+            {
+                    "CREATE UNIQUE INDEX IF NOT EXISTS idx_blocks_hash ON blocks (hash)"
+            },
+            {
+                    "ALTER TABLE blocks ADD COLUMN transaction_count INT NOT NULL DEFAULT 0",
+                    "CREATE TABLE IF NOT EXISTS transactions ( " +
+                            "block_index INT NOT NULL," +
+                            "tx_index INT NOT NULL," +
+                            "payload TEXT NOT NULL," +
+                            "PRIMARY KEY (block_index, tx_index)) WITHOUT ROWID"
+            },
+            {
+                    "ALTER TABLE blocks ADD COLUMN nonce INTEGER NOT NULL DEFAULT 0",
+                    "ALTER TABLE blocks ADD COLUMN difficulty INT NOT NULL DEFAULT 0"
+            },
+            {
+                    "CREATE TABLE IF NOT EXISTS checkpoints ( " +
+                            "tip_index INT PRIMARY KEY," +
+                            "tip_hash TEXT NOT NULL," +
+                            "block_count INTEGER NOT NULL," +
+                            "prefix_digest TEXT NOT NULL," +
+                            "seal TEXT NOT NULL)"
+            },
+            {
+                    "CREATE INDEX IF NOT EXISTS idx_blocks_timestamp ON blocks (timestamp, block_index)",
+                    "CREATE INDEX IF NOT EXISTS idx_blocks_payload ON blocks (substr(data, 1, 64), block_index)"
+            },
+            {
+                    "ALTER TABLE blocks ADD COLUMN data_compressed BLOB",
+                    "ALTER TABLE blocks ADD COLUMN data_dictionary INT NOT NULL DEFAULT 0",
+                    "CREATE TABLE IF NOT EXISTS payload_dictionaries ( " +
+                            "id INT PRIMARY KEY," +
+                            "dictionary BLOB NOT NULL)"
+            }
+    };
+    /** Decompresses payloads that were compressed without a dictionary. */
+    private static final PayloadCodec NO_DICTIONARY = new PayloadCodec(Integer.MAX_VALUE);
+    private static final int BATCH_SIZE = 500;
+    private static final int DEFAULT_READER_CONNECTIONS = 2;
+
+    private final String databaseUrl;
+    private final int readerConnections;
+    private final BlockingQueue<PooledConnection> idleReaders;
+    private final List<PooledConnection> allReaders = new ArrayList<>();
+    private PooledConnection writer;
+    private JournalMode journalMode = JournalMode.DELETE;
+    private SynchronousMode synchronousMode = SynchronousMode.FULL;
+    private volatile boolean closed;
+    private volatile ChainMetricsListener metricsListener = ChainMetricsListener.NONE;
+    private volatile PayloadCodec payloadCodec;
+    private boolean dictionaryStored = true;
+    private final Map<Integer, PayloadCodec> decoders = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a store for the given database with the default number of reader connections.
+     *
+     * @param databaseUrl The JDBC URL of the SQLite database.
+     */
+    public SqliteBlockStore(String databaseUrl) {
+        this(databaseUrl, isInMemory(databaseUrl) ? 0 : DEFAULT_READER_CONNECTIONS);
+    }
+
+    /**
+     * Constructs a store for the given database.
+     *
+     * @param databaseUrl       The JDBC URL of the SQLite database.
+     * @param readerConnections The maximum number of reader connections. When zero, reads share the writer
+     *                          connection, which is required for private in-memory databases.
+     * @throws IllegalArgumentException If readerConnections is negative.
+     */
+    public SqliteBlockStore(String databaseUrl, int readerConnections) {
+        if (readerConnections < 0) {
+            throw new IllegalArgumentException("Reader connections cannot be negative.");
+        }
+        this.databaseUrl = databaseUrl;
+        this.readerConnections = readerConnections;
+        this.idleReaders = new ArrayBlockingQueue<>(Math.max(1, readerConnections));
+        this.decoders.put(0, NO_DICTIONARY);
+    }
+
+    /**
+     * Creates a store backed by a private in-memory database that is discarded when the store is closed.
+     *
+     * @return A new in-memory store.
+     */
+    public static SqliteBlockStore inMemory() {
+        return new SqliteBlockStore("jdbc:sqlite::memory:", 0);
+    }
+
+    private static boolean isInMemory(String databaseUrl) {
+        return databaseUrl.contains(":memory:") || databaseUrl.contains("mode=memory");
+    }
+
+    /**
+     * Gets the JDBC URL of the database.
+     *
+     * @return The database URL.
+     */
+    public String getDatabaseUrl() {
+        return databaseUrl;
+    }
+
+    /**
+     * Sets the SQLite journal mode. Applies to the writer immediately if it is open, and to every
+     * connection opened afterwards.
+     *
+     * @param journalMode The journal mode to use.
+     * @throws SQLException If the mode cannot be applied to the open writer connection.
+     */
+    public synchronized void setJournalMode(JournalMode journalMode) throws SQLException {
+        this.journalMode = journalMode;
+        if (writer != null) {
+            writer.execute("PRAGMA journal_mode=" + journalMode.name());
+        }
+    }
+
+    /**
+     * Sets the SQLite synchronous level. Applies to the writer immediately if it is open, and to every
+     * connection opened afterwards.
+     *
+     * @param synchronousMode The synchronous level to use.
+     * @throws SQLException If the level cannot be applied to the open writer connection.
+     */
+    public synchronized void setSynchronousMode(SynchronousMode synchronousMode) throws SQLException {
+        this.synchronousMode = synchronousMode;
+        if (writer != null) {
+            writer.execute("PRAGMA synchronous=" + synchronousMode.name());
+        }
+    }
+
+    /**
+     * Creates the 'blocks' table and its unique indexes on block_index and hash if they do not exist, and migrates tables created by
+     * earlier versions to the current schema.
+     *
+     * @throws BlockStoreException If a database error occurs.
+     */
+    @Override
+    public synchronized void createSchema() {
+        try {
+            migrate();
+            loadDictionaries();
+        } catch (SQLException e) {
+            throw new BlockStoreException("Error creating the database schema", e);
+        }
+    }
+
+    private void migrate() throws SQLException {
+        PooledConnection connection = writer();
+        int version;
+        try (Statement statement = connection.connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA user_version")) {
+            version = resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+        if (version >= MIGRATIONS.length) {
+            return;
+        }
+
+        connection.connection.setAutoCommit(false);
+        try {
+            for (int i = version; i < MIGRATIONS.length; i++) {
+                for (String sql : MIGRATIONS[i]) {
+                    connection.execute(sql);
+                }
+            }
+            connection.execute("PRAGMA user_version=" + MIGRATIONS.length);
+            connection.connection.commit();
+        } catch (SQLException e) {
+            connection.connection.rollback();
+            throw e;
+        } finally {
+            connection.connection.setAutoCommit(true);
+        }
+    }
+
+    private void loadDictionaries() throws SQLException {
+        try (ResultSet resultSet = writer().prepare(SELECT_DICTIONARIES_SQL).executeQuery()) {
+            while (resultSet.next()) {
+                decoders.putIfAbsent(resultSet.getInt(1), new PayloadCodec(Integer.MAX_VALUE, resultSet.getBytes(2)));
+            }
+        }
+    }
+
+    /**
+     * Compresses the payloads of blocks inserted from now on with the given codec. Payloads already stored are
+     * left as they are; stored payloads are decompressed with the dictionary they were written with, whichever
+     * codec is set. The codec's dictionary is stored in the 'payload_dictionaries' table with the first block it
+     * compresses, and the dictionaries of a store are loaded by {@link #createSchema()}.
+     * Compressed payloads are stored in the data_compressed column, while the data column keeps their first 64
+     * characters for the payload index.
+     *
+     * @param codec The codec, or {@code null} to store payloads uncompressed.
+     */
+    public synchronized void setPayloadCodec(PayloadCodec codec) {
+        if (codec != null && codec.getDictionaryId() != 0) {
+            decoders.put(codec.getDictionaryId(), codec);
+        }
+        dictionaryStored = codec == null || codec.getDictionaryId() == 0;
+        payloadCodec = codec;
+    }
+
+    /**
+     * Gets the codec that compresses the payloads of inserted blocks, including its compression statistics.
+     *
+     * @return The codec, or {@code null} if payloads are stored uncompressed.
+     */
+    public PayloadCodec getPayloadCodec() {
+        return payloadCodec;
+    }
+
+    /**
+     * Stores the dictionary of the current codec before the first payload it compresses. Callers must hold the
+     * store's monitor.
+     */
+    private void storeDictionary(PooledConnection connection) throws SQLException {
+        if (dictionaryStored) {
+            return;
+        }
+        PreparedStatement statement = connection.prepare(INSERT_DICTIONARY_SQL);
+        statement.setInt(1, payloadCodec.getDictionaryId());
+        statement.setBytes(2, payloadCodec.getDictionary());
+        statement.executeUpdate();
+        dictionaryStored = true;
+    }
+
+    /**
+     * Inserts a block unless a block with the same index is already stored.
+     *
+     * @param block The block to insert.
+     * @return {@code true} if the block was inserted, {@code false} if its index already exists.
+     * @throws BlockStoreException If a database error occurs.
+     */
+    @Override
+    public synchronized boolean insert(Block block) {
+        if (block.isBodyLoaded()) {
+            return insertAll(Collections.singletonList(block)) > 0;
+        }
+        try {
+            storeDictionary(writer());
+            PreparedStatement statement = writer().prepare(INSERT_BLOCK_SQL);
+            bindBlock(statement, block);
+            long start = System.nanoTime();
+            boolean inserted = statement.executeUpdate() > 0;
+            metricsListener.onStatementExecuted(System.nanoTime() - start);
+            return inserted;
+        } catch (SQLException e) {
+            throw new BlockStoreException("Error inserting block " + block.getIndex() + " into the database", e);
+        }
+    }
+
+    /**
+     * Inserts the given blocks, together with the transactions of transaction blocks, in a single transaction
+     * using JDBC batches. Blocks whose index already exists are skipped, and so are their transactions. If any
+     * insert fails the transaction is rolled back.
+     *
+     * @param blocks The blocks to insert.
+     * @return The number of blocks that were inserted.
+     * @throws BlockStoreException If a database error occurs.
+     */
+    @Override
+    public synchronized int insertAll(Collection<Block> blocks) {
+        if (blocks.isEmpty()) {
+            return 0;
+        }
+        try {
+            long start = System.nanoTime();
+            int inserted = insertBatches(blocks);
+            metricsListener.onStatementExecuted(System.nanoTime() - start);
+            return inserted;
+        } catch (SQLException e) {
+            throw new BlockStoreException("Error inserting blocks into the database", e);
+        }
+    }
+
+    private int insertBatches(Collection<Block> blocks) throws SQLException {
+        PooledConnection connection = writer();
+        storeDictionary(connection);
+        PreparedStatement statement = connection.prepare(INSERT_BLOCK_SQL);
+        PreparedStatement transactionStatement = connection.prepare(INSERT_TRANSACTION_SQL);
+        connection.connection.setAutoCommit(false);
+        try {
+            int inserted = 0;
+            int pending = 0;
+            int pendingTransactions = 0;
+            for (Block block : blocks) {
+                bindBlock(statement, block);
+                statement.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    inserted += countInserted(statement.executeBatch());
+                    pending = 0;
+                }
+
+                List<String> transactions = block.getTransactions();
+                for (int i = 0; i < transactions.size(); i++) {
+                    transactionStatement.setInt(1, block.getIndex());
+                    transactionStatement.setInt(2, i);
+                    transactionStatement.setString(3, transactions.get(i));
+                    transactionStatement.setInt(4, block.getIndex());
+                    transactionStatement.setString(5, block.getHash());
+                    transactionStatement.addBatch();
+                    if (++pendingTransactions == BATCH_SIZE) {
+                        if (pending > 0) {
+                            inserted += countInserted(statement.executeBatch());
+                            pending = 0;
+                        }
+                        transactionStatement.executeBatch();
+                        pendingTransactions = 0;
+                    }
+                }
+            }
+            if (pending > 0) {
+                inserted += countInserted(statement.executeBatch());
+            }
+            if (pendingTransactions > 0) {
+                transactionStatement.executeBatch();
+            }
+            connection.connection.commit();
+            return inserted;
+        } catch (SQLException e) {
+            statement.clearBatch();
+            transactionStatement.clearBatch();
+            connection.connection.rollback();
+            throw e;
+        } finally {
+            connection.connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Checks whether a block with the given index is stored.
+     *
+     * @param blockIndex The index of the block to check.
+     * @return {@code true} if a block with the index exists, {@code false} otherwise.
+     * @throws BlockStoreException If a database error occurs.
+     */
+    @Override
+    public boolean contains(int blockIndex) {
+        return read(connection -> {
+            PreparedStatement statement = connection.prepare(BLOCK_EXISTS_SQL);
+            statement.setInt(1, blockIndex);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        });
+    }
+
+    /**
+     * Finds the stored block with the given index using the unique index on block_index.
+     *
+     * @param blockIndex The index of the block.
+     * @return The block, or {@code null} if it is not stored.
+     * @throws BlockStoreException If a database error occurs.
+     */
+    @Override
+    public Block findByIndex(int blockIndex) {
+        return read(connection -> {
+            PreparedStatement statement = connection.prepare(SELECT_BLOCK_BY_INDEX_SQL);
+            statement.setInt(1, blockIndex);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? readBlock(resultSet) : null;
+            }
+        });
+    }
+
+    /**
+     * Finds the stored block with the given hash using the unique index on hash.
+     *
+     * @param hash The hexadecimal hash of the block.
+     * @return The block, or {@code null} if it is not stored.
+     * @throws BlockStoreException If a database error occurs.
+     */
+    @Override
+    public Block findByHash(String hash) {
+        return read(connection -> {
+            PreparedStatement statement = connection.prepare(SELECT_BLOCK_BY_HASH_SQL);
+            statement.setString(1, hash);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? readBlock(resultSet) : null;
+            }
+        });
+    }
+
+    /**
+     * Loads the transactions of a transaction block in block order.
+     *
+     * @param blockIndex The index of the block.
+     * @return The transactions, or an empty list if the block has none stored.
+     * @throws BlockStoreException If a database error occurs.
+     */
+    @Override
+    public List<String> loadTransactions(int blockIndex) {
+        return read(connection -> {
+            PreparedStatement statement = connection.prepare(SELECT_TRANSACTIONS_SQL);
+            statement.setInt(1, blockIndex);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                List<String> transactions = new ArrayList<>();
+                while (resultSet.next()) {
+                    transactions.add(resultSet.getString(1));
+                }
+                return transactions;
+            }
+        });
+    }
+
+    /**
+     * Loads every stored block in index order.
+     *
+     * @return The stored blocks.
+     * @throws BlockStoreException If a database error occurs.
+     */
+    @Override
+    public List<Block> loadAll() {
+        return read(connection -> {
+            try (ResultSet resultSet = connection.prepare(SELECT_BLOCKS_SQL).executeQuery()) {
+                List<Block> blocks = new ArrayList<>();
+                while (resultSet.next()) {
+                    blocks.add(readBlock(resultSet));
+                }
+                return blocks;
+            }
+        });
+    }
+
+    /**
+     * Streams the stored blocks with an index of at least fromIndex, in index order.
+     * Rows are read through a database cursor as the stream is consumed, so only the blocks in flight are held
+     * in memory. The stream holds a database connection and must be closed, e.g. with try-with-resources.
+     * Database errors raised while the stream is consumed are rethrown as {@link BlockStoreException}.
+     *
+     * @param fromIndex The lowest block index to return.
+     * @param fetchSize The number of rows the driver should fetch per round trip.
+     * @return An ordered stream of blocks.
+     * @throws BlockStoreException If the query cannot be started.
+     */
+    @Override
+    public Stream<Block> stream(int fromIndex, int fetchSize) {
+        return openCursor(SELECT_BLOCKS_FROM_SQL, statement -> statement.setInt(1, fromIndex), fetchSize);
+    }
+
+    /**
+     * Finds a page of the stored blocks that match a query. Time range queries walk the index on timestamp and
+     * block_index, and payload queries the index on the first 64 characters of the data and block_index, so a
+     * page reads only the rows it returns however deep it lies. Timestamps are stored as ISO-8601 text, which
+     * sorts in chronological order.
+     *
+     * @param query The query to run.
+     * @param after The last block of the previous page, or {@code null} for the first page.
+     * @param limit The largest number of blocks to return.
+     * @return The matching blocks that follow after, at most limit of them.
+     * @throws IllegalArgumentException If limit is not positive.
+     * @throws BlockStoreException      If a database error occurs.
+     */
+    @Override
+    public List<Block> find(BlockQuery query, Block after, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive.");
+        }
+        // Compressed payloads only have their index key in the data column, so rows are confirmed here.
+        List<Block> blocks = new ArrayList<>();
+        Block start = after;
+        while (true) {
+            Block from = start;
+            List<Block> rows = read(connection -> {
+                PreparedStatement statement = connection.prepare(queryFor(query));
+                bindQuery(statement, query, from, limit);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    List<Block> candidates = new ArrayList<>();
+                    while (resultSet.next()) {
+                        candidates.add(readBlock(resultSet));
+                    }
+                    return candidates;
+                }
+            });
+            for (Block row : rows) {
+                if (query.matches(row)) {
+                    blocks.add(row);
+                    if (blocks.size() == limit) {
+                        return blocks;
+                    }
+                }
+            }
+            if (rows.size() < limit) {
+                return blocks;
+            }
+            start = rows.get(rows.size() - 1);
+        }
+    }
+
+    /**
+     * Streams every stored block that matches a query through a database cursor, in the query's order.
+     * The stream holds a database connection and must be closed, e.g. with try-with-resources.
+     *
+     * @param query     The query to run.
+     * @param fetchSize The number of rows the driver should fetch per round trip.
+     * @return An ordered stream of the matching blocks.
+     * @throws BlockStoreException If the query cannot be started.
+     * @see #find(BlockQuery, Block, int)
+     */
+    @Override
+    public Stream<Block> stream(BlockQuery query, int fetchSize) {
+        return openCursor(queryFor(query), statement -> bindQuery(statement, query, null, -1), fetchSize)
+                .filter(query::matches);
+    }
+
+    private Stream<Block> openCursor(String sql, ParameterBinder binder, int fetchSize) {
+        BlockCursor cursor;
+        try {
+            cursor = new BlockCursor(sql, binder, fetchSize);
+        } catch (SQLException e) {
+            throw new BlockStoreException("Error loading values from the database", e);
+        }
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(cursor::close);
+    }
+
+    private static String queryFor(BlockQuery query) {
+        switch (query.getKind()) {
+            case TIME_RANGE:
+                return SELECT_BLOCKS_BY_TIMESTAMP_SQL;
+            case PAYLOAD_EQUALS:
+                return SELECT_BLOCKS_BY_PAYLOAD_SQL;
+            default:
+                return SELECT_BLOCKS_BY_PAYLOAD_PREFIX_SQL;
+        }
+    }
+
+    /**
+     * Binds the parameters of a query's statement. Rows must sort after the given block, or after every block
+     * with the lower key if it is null; a negative limit returns every row.
+     */
+    private static void bindQuery(PreparedStatement statement, BlockQuery query, Block after, int limit) throws SQLException {
+        int afterIndex = after == null ? -1 : after.getIndex();
+        String payload = query.getPayload();
+        switch (query.getKind()) {
+            case TIME_RANGE:
+                statement.setString(1, query.getFrom().toString());
+                statement.setString(2, query.getTo().toString());
+                statement.setString(3, (after == null ? query.getFrom() : after.getTimestamp()).toString());
+                statement.setInt(4, afterIndex);
+                statement.setInt(5, query.getBeforeIndex());
+                statement.setInt(6, limit);
+                break;
+            case PAYLOAD_EQUALS:
+                // Every match has the same key, so only the index of the block to start after matters.
+                String key = BlockQuery.payloadKey(payload);
+                int order = after == null ? 0 : BlockQuery.comparePayloadKeys(BlockQuery.payloadKey(after.getData()), key);
+                statement.setString(1, key);
+                statement.setInt(2, order < 0 ? -1 : order > 0 ? Integer.MAX_VALUE : afterIndex);
+                statement.setInt(3, query.getBeforeIndex());
+                statement.setString(4, payload);
+                statement.setInt(5, limit);
+                break;
+            default:
+                String prefixKey = BlockQuery.payloadKey(payload);
+                String successor = BlockQuery.successor(prefixKey);
+                statement.setString(1, prefixKey);
+                if (successor == null) {
+                    // SQLite sorts every text value before every blob.
+                    statement.setBytes(2, new byte[0]);
+                } else {
+                    statement.setString(2, successor);
+                }
+                statement.setString(3, after == null ? prefixKey : BlockQuery.payloadKey(after.getData()));
+                statement.setInt(4, afterIndex);
+                statement.setInt(5, payload.codePointCount(0, payload.length()));
+                statement.setString(6, payload);
+                statement.setInt(7, query.getBeforeIndex());
+                statement.setInt(8, limit);
+                break;
+        }
+    }
+
+    /**
+     * Stores a checkpoint in the 'checkpoints' table.
+     *
+     * @param checkpoint The checkpoint to store.
+     * @throws BlockStoreException If a database error occurs.
+     */
+    @Override
+    public synchronized void saveCheckpoint(Checkpoint checkpoint) {
+        try {
+            PreparedStatement statement = writer().prepare(INSERT_CHECKPOINT_SQL);
+            statement.setInt(1, checkpoint.getTipIndex());
+            statement.setString(2, checkpoint.getTipHash());
+            statement.setLong(3, checkpoint.getBlockCount());
+            statement.setString(4, checkpoint.getPrefixDigest().toHex());
+            statement.setString(5, checkpoint.getSeal().toHex());
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new BlockStoreException("Error saving the checkpoint at block " + checkpoint.getTipIndex(), e);
+        }
+    }
+
+    /**
+     * Loads the checkpoint with the highest tip index from the 'checkpoints' table.
+     *
+     * @return The latest checkpoint, or {@code null} if none has been stored.
+     * @throws BlockStoreException If a database error occurs or the stored digests are malformed.
+     */
+    @Override
+    public Checkpoint loadLatestCheckpoint() {
+        return read(connection -> {
+            try (ResultSet resultSet = connection.prepare(SELECT_LATEST_CHECKPOINT_SQL).executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                try {
+                    return new Checkpoint(
+                            resultSet.getInt("tip_index"),
+                            resultSet.getString("tip_hash"),
+                            resultSet.getLong("block_count"),
+                            BlockHash.fromHex(resultSet.getString("prefix_digest")),
+                            BlockHash.fromHex(resultSet.getString("seal")));
+                } catch (IllegalArgumentException e) {
+                    throw new SQLException("Invalid checkpoint stored in the database", e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void setMetricsListener(ChainMetricsListener listener) {
+        this.metricsListener = listener;
+    }
+
+    /**
+     * Closes every connection held by the store together with its cached statements.
+     *
+     * @throws BlockStoreException If a connection cannot be closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            closeConnections();
+        } catch (SQLException e) {
+            throw new BlockStoreException("Error closing the database connections", e);
+        }
+    }
+
+    private void closeConnections() throws SQLException {
+
+        SQLException failure = null;
+        List<PooledConnection> connections = new ArrayList<>();
+        synchronized (allReaders) {
+            connections.addAll(allReaders);
+            allReaders.clear();
+        }
+        if (writer != null) {
+            connections.add(writer);
+            writer = null;
+        }
+        for (PooledConnection connection : connections) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Reads a block header from the current row. The transactions of transaction blocks are not loaded.
+     */
+    private Block readBlock(ResultSet resultSet) throws SQLException {
+        String timestamp = resultSet.getString("timestamp");
+        try {
+            byte[] compressed = resultSet.getBytes("data_compressed");
+            if (compressed != null) {
+                int dictionaryId = resultSet.getInt("data_dictionary");
+                PayloadCodec codec = decoders.get(dictionaryId);
+                if (codec == null) {
+                    throw new SQLException("Unknown payload dictionary " + dictionaryId + "; createSchema() loads the stored dictionaries");
+                }
+                return new Block(
+                        resultSet.getInt("block_index"),
+                        LocalDateTime.parse(timestamp),
+                        new CompressedPayload(compressed, resultSet.getString("data"), codec),
+                        resultSet.getString("previous_hash"),
+                        HashScheme.fromId(resultSet.getInt("hash_scheme")),
+                        resultSet.getString("hash"),
+                        resultSet.getInt("transaction_count"),
+                        resultSet.getLong("nonce"),
+                        resultSet.getInt("difficulty"));
+            }
+            return new Block(
+                    resultSet.getInt("block_index"),
+                    LocalDateTime.parse(timestamp),
+                    resultSet.getString("data"),
+                    resultSet.getString("previous_hash"),
+                    HashScheme.fromId(resultSet.getInt("hash_scheme")),
+                    resultSet.getString("hash"),
+                    resultSet.getInt("transaction_count"),
+                    null,
+                    resultSet.getLong("nonce"),
+                    resultSet.getInt("difficulty"));
+        } catch (DateTimeParseException e) {
+            throw new SQLException("Invalid timestamp stored in the database: " + timestamp, e);
+        }
+    }
+
+    private void bindBlock(PreparedStatement statement, Block block) throws SQLException {
+        CompressedPayload compressed = compress(block);
+        statement.setInt(1, block.getIndex());
+        statement.setString(2, block.getTimestamp().toString());
+        statement.setString(3, compressed == null ? block.getData() : compressed.getKey());
+        statement.setString(4, block.getPreviousHash());
+        statement.setString(5, block.getHash());
+        statement.setInt(6, block.getHashScheme().getId());
+        statement.setInt(7, block.getTransactionCount());
+        statement.setLong(8, block.getNonce());
+        statement.setInt(9, block.getDifficulty());
+        if (compressed == null) {
+            statement.setNull(10, Types.BLOB);
+            statement.setInt(11, 0);
+        } else {
+            statement.setBytes(10, compressed.getBytes());
+            statement.setInt(11, compressed.getCodec().getDictionaryId());
+        }
+    }
+
+    /**
+     * Compresses a block's payload with the current codec. A payload that was read compressed with the same
+     * dictionary is stored again without being decompressed.
+     *
+     * @return The compressed payload, or {@code null} to store the payload as it is.
+     */
+    private CompressedPayload compress(Block block) {
+        PayloadCodec codec = payloadCodec;
+        if (codec == null) {
+            return null;
+        }
+        CompressedPayload compressed = block.getCompressedData();
+        if (compressed != null && compressed.getCodec().getDictionaryId() == codec.getDictionaryId()) {
+            return compressed;
+        }
+        return codec.compress(block.getData());
+    }
+
+    /**
+     * Sums the update counts returned by a batch, treating unknown counts as a single inserted row.
+     */
+    private static int countInserted(int[] updateCounts) {
+        int inserted = 0;
+        for (int count : updateCounts) {
+            if (count == Statement.SUCCESS_NO_INFO) {
+                inserted++;
+            } else if (count > 0) {
+                inserted += count;
+            }
+        }
+        return inserted;
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Block store has been closed.");
+        }
+    }
+
+    /**
+     * Gets the writer connection, opening it on first use. Callers must hold the store's monitor.
+     */
+    private PooledConnection writer() throws SQLException {
+        ensureOpen();
+        if (writer == null) {
+            writer = open();
+        }
+        return writer;
+    }
+
+    /**
+     * Runs a read operation on a pooled reader connection, opening a new one while the pool is below
+     * capacity. When the store has no reader connections, the operation runs on the writer instead.
+     */
+    private <T> T read(ReadOperation<T> operation) {
+        try {
+            if (readerConnections == 0) {
+                synchronized (this) {
+                    return timed(operation, writer());
+                }
+            }
+
+            PooledConnection connection = borrowReader();
+            try {
+                return timed(operation, connection);
+            } finally {
+                idleReaders.offer(connection);
+            }
+        } catch (SQLException e) {
+            throw new BlockStoreException("Error reading from the database", e);
+        }
+    }
+
+    private PooledConnection borrowReader() throws SQLException {
+        ensureOpen();
+        PooledConnection connection = idleReaders.poll();
+        if (connection != null) {
+            return connection;
+        }
+        synchronized (allReaders) {
+            if (allReaders.size() < readerConnections) {
+                connection = open();
+                allReaders.add(connection);
+                return connection;
+            }
+        }
+        try {
+            return idleReaders.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a reader connection.", e);
+        }
+    }
+
+    private <T> T timed(ReadOperation<T> operation, PooledConnection connection) throws SQLException {
+        long start = System.nanoTime();
+        T result = operation.run(connection);
+        metricsListener.onStatementExecuted(System.nanoTime() - start);
+        return result;
+    }
+
+    private PooledConnection open() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = DriverManager.getConnection(databaseUrl);
+        PooledConnection pooled = new PooledConnection(connection);
+        try {
+            pooled.execute("PRAGMA journal_mode=" + journalMode.name());
+            pooled.execute("PRAGMA synchronous=" + synchronousMode.name());
+        } catch (SQLException e) {
+            pooled.close();
+            throw e;
+        }
+        metricsListener.onConnectionOpened(System.nanoTime() - start);
+        return pooled;
+    }
+
+    /**
+     * Iterates over the result set of a query on a dedicated statement. A pooled reader is held until the cursor is closed;
+     * when reads share the writer, each step runs under the store's monitor instead.
+     */
+    private final class BlockCursor implements Iterator<Block> {
+        private final PooledConnection connection;
+        private final PreparedStatement statement;
+        private final ResultSet resultSet;
+        private Boolean hasNext;
+        private boolean closed;
+
+        private BlockCursor(String sql, ParameterBinder binder, int fetchSize) throws SQLException {
+            if (readerConnections == 0) {
+                synchronized (SqliteBlockStore.this) {
+                    connection = writer();
+                    statement = connection.connection.prepareStatement(sql);
+                    resultSet = open(statement, binder, fetchSize);
+                }
+            } else {
+                connection = borrowReader();
+                try {
+                    statement = connection.connection.prepareStatement(sql);
+                    resultSet = open(statement, binder, fetchSize);
+                } catch (SQLException e) {
+                    idleReaders.offer(connection);
+                    throw e;
+                }
+            }
+        }
+
+        private ResultSet open(PreparedStatement statement, ParameterBinder binder, int fetchSize) throws SQLException {
+            try {
+                statement.setFetchSize(fetchSize);
+                binder.bind(statement);
+                long start = System.nanoTime();
+                ResultSet resultSet = statement.executeQuery();
+                metricsListener.onStatementExecuted(System.nanoTime() - start);
+                return resultSet;
+            } catch (SQLException e) {
+                statement.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (hasNext == null) {
+                if (readerConnections == 0) {
+                    synchronized (SqliteBlockStore.this) {
+                        hasNext = advance();
+                    }
+                } else {
+                    hasNext = advance();
+                }
+            }
+            return hasNext;
+        }
+
+        private boolean advance() {
+            try {
+                return !closed && resultSet.next();
+            } catch (SQLException e) {
+                throw new BlockStoreException("Error reading blocks from the database", e);
+            }
+        }
+
+        @Override
+        public Block next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = null;
+            try {
+                return readBlock(resultSet);
+            } catch (SQLException e) {
+                throw new BlockStoreException("Error reading blocks from the database", e);
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (readerConnections == 0) {
+                synchronized (SqliteBlockStore.this) {
+                    closeStatement();
+                }
+            } else {
+                try {
+                    closeStatement();
+                } finally {
+                    idleReaders.offer(connection);
+                }
+            }
+        }
+
+        private void closeStatement() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                throw new BlockStoreException("Error closing the block cursor", e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReadOperation<T> {
+        T run(PooledConnection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ParameterBinder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    /**
+     * A connection together with the prepared statements that have been created on it.
+     */
+    private static final class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        private PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        private void execute(String sql) throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(sql);
+            }
+        }
+
+        private void close() throws SQLException {
+            try {
+                for (PreparedStatement statement : statements.values()) {
+                    statement.close();
+                }
+                statements.clear();
+            } finally {
+                connection.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.leonard.blockchain;
+
+/**
+ * SQLite synchronous levels that control how often the database is flushed to disk.
+ * {@link #NORMAL} combined with {@link JournalMode#WAL} only syncs at checkpoints, trading
+ * durability of the last few commits on power loss for much faster writes.
+ */
+public enum SynchronousMode {
+    OFF,
+    NORMAL,
+    FULL,
+    EXTRA
+}
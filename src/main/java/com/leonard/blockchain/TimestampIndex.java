@@ -0,0 +1,77 @@
+package com.leonard.blockchain;
+
+import java.time.LocalDateTime;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.IntStream;
+
+/**
+ * An in-memory index of block indexes ordered by block timestamp, then by block index.
+ * The index is a concurrent skip list, so a range of timestamps is found in logarithmic time and can be read
+ * while blocks are being added or removed.
+ */
+final class TimestampIndex {
+    private final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>();
+
+    /**
+     * Adds a block to the index.
+     */
+    void add(LocalDateTime timestamp, int blockIndex) {
+        entries.add(new Entry(timestamp, blockIndex));
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the indexes of the blocks with a timestamp of at least from and before to, in timestamp order.
+     *
+     * @param after The block to start after, or {@code null} to start at from.
+     * @return The block indexes.
+     */
+    IntStream indexesBetween(LocalDateTime from, LocalDateTime to, Block after) {
+        Entry lower = new Entry(from, Integer.MIN_VALUE);
+        if (after != null) {
+            Entry start = new Entry(after.getTimestamp(), after.getIndex());
+            if (start.compareTo(lower) > 0) {
+                lower = start;
+            }
+        }
+        Entry upper = new Entry(to, Integer.MIN_VALUE);
+        if (lower.compareTo(upper) >= 0) {
+            return IntStream.empty();
+        }
+        return entries.subSet(lower, false, upper, false).stream().mapToInt(entry -> entry.blockIndex);
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final LocalDateTime timestamp;
+        private final int blockIndex;
+
+        private Entry(LocalDateTime timestamp, int blockIndex) {
+            this.timestamp = timestamp;
+            this.blockIndex = blockIndex;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int order = timestamp.compareTo(other.timestamp);
+            return order != 0 ? order : Integer.compare(blockIndex, other.blockIndex);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry && compareTo((Entry) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * timestamp.hashCode() + blockIndex;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.leonard.blockchain;
+
+/**
+ * The outcome of verifying a chain with {@link ChainVerifier}.
+ * A failed report identifies the first invalid block in chain order and the reason it was rejected.
+ */
+public class VerificationReport {
+    /**
+     * The reasons a block can fail verification.
+     */
+    public enum Reason {
+        /** The stored hash does not match the hash recomputed from the block's contents. */
+        HASH_MISMATCH,
+        /** The previous hash does not match the hash of the preceding block. */
+        PREVIOUS_HASH_MISMATCH,
+        /** The index does not directly follow the index of the preceding block. */
+        INDEX_MISMATCH,
+        /** The loaded transactions do not hash up to the Merkle root carried by the block. */
+        MERKLE_ROOT_MISMATCH,
+        /** The hash does not have as many leading zero bits as the block's proof-of-work difficulty. */
+        INSUFFICIENT_WORK
+    }
+
+    private final int blocksVerified;
+    private final int firstInvalidIndex;
+    private final Reason reason;
+    private final long elapsedNanos;
+
+    VerificationReport(int blocksVerified, int firstInvalidIndex, Reason reason, long elapsedNanos) {
+        this.blocksVerified = blocksVerified;
+        this.firstInvalidIndex = firstInvalidIndex;
+        this.reason = reason;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Checks whether every block passed verification.
+     *
+     * @return True if the chain is valid, false otherwise.
+     */
+    public boolean isValid() {
+        return reason == null;
+    }
+
+    /**
+     * Gets the number of blocks in the verified chain.
+     *
+     * @return The number of blocks.
+     */
+    public int getBlocksVerified() {
+        return blocksVerified;
+    }
+
+    /**
+     * Gets the index of the first block that failed verification.
+     *
+     * @return The block index, or -1 if the chain is valid.
+     */
+    public int getFirstInvalidIndex() {
+        return firstInvalidIndex;
+    }
+
+    /**
+     * Gets the reason the first invalid block was rejected.
+     *
+     * @return The reason, or {@code null} if the chain is valid.
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Gets the time spent verifying the chain.
+     *
+     * @return The elapsed time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        if (isValid()) {
+            return "Chain valid (" + blocksVerified + " blocks verified)";
+        }
+        return "Chain invalid at block " + firstInvalidIndex + ": " + reason;
+    }
+}
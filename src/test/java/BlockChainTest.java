@@ -1,9 +1,37 @@
 import com.leonard.blockchain.Block;
 import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.BlockHash;
+import com.leonard.blockchain.JournalMode;
+import com.leonard.blockchain.SynchronousMode;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class BlockChainTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private String databaseUrl() throws IOException {
+        return "jdbc:sqlite:" + temporaryFolder.newFile("blockchain.db").getAbsolutePath();
+    }
+
+    private static List<Block> buildBlocks(int count) {
+        List<Block> blocks = new ArrayList<>();
+        String previousHash = "0";
+        for (int i = 1; i <= count; i++) {
+            Block block = new Block(i, "2022-01-01T12:00:00", "Transaction " + i, previousHash);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
     @Test
     public void TestAddValidBlock() {
         BlockChain blockChain = new BlockChain();
@@ -55,8 +83,8 @@ public class BlockChainTest {
     }
 
     @Test
-    public void testCreateTableIfNotExists() {
-        BlockChain blockChain = new BlockChain();
+    public void testCreateTableIfNotExists() throws IOException {
+        BlockChain blockChain = new BlockChain(databaseUrl());
         blockChain.createTableIfNotExists();
         Block block = new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0");
         blockChain.addBlock(block);
@@ -72,8 +100,9 @@ public class BlockChainTest {
     }
 
     @Test
-    public void testSaveAndLoadFromDatabase() {
-        BlockChain blockChain = new BlockChain();
+    public void testSaveAndLoadFromDatabase() throws IOException {
+        BlockChain blockChain = new BlockChain(databaseUrl());
+        blockChain.createTableIfNotExists();
         Block block1 = new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0");
         Block block2 = new Block(2, "2022-01-02T14:30:00", "Transaction 2", block1.getHash());
         blockChain.addBlock(block1);
@@ -84,4 +113,100 @@ public class BlockChainTest {
         assertTrue(blockChain.isChainValid());
     }
 
+    @Test
+    public void testSaveToDatabaseSkipsExistingIndex() throws IOException {
+        BlockChain blockChain = new BlockChain(databaseUrl());
+        blockChain.createTableIfNotExists();
+        Block block = new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0");
+        blockChain.saveToDatabase(block);
+        blockChain.saveToDatabase(block);
+        blockChain.loadFromDatabase();
+        assertEquals(1, blockChain.size());
+    }
+
+    @Test
+    public void testSaveAll() throws IOException {
+        BlockChain blockChain = new BlockChain(databaseUrl());
+        blockChain.setJournalMode(JournalMode.WAL);
+        blockChain.setSynchronousMode(SynchronousMode.NORMAL);
+        blockChain.createTableIfNotExists();
+        List<Block> blocks = buildBlocks(1200);
+
+        assertEquals(1200, blockChain.saveAll(blocks));
+        assertEquals(0, blockChain.saveAll(blocks.subList(0, 10)));
+
+        blockChain.loadFromDatabase();
+        assertEquals(1200, blockChain.size());
+        assertTrue(blockChain.isChainValid());
+    }
+
+    @Test
+    public void testSaveRange() throws IOException {
+        BlockChain blockChain = new BlockChain(databaseUrl());
+        blockChain.createTableIfNotExists();
+        for (Block block : buildBlocks(10)) {
+            blockChain.addBlock(block);
+        }
+
+        assertEquals(4, blockChain.saveRange(3, 7));
+        assertEquals(6, blockChain.saveRange(1, 11));
+
+        blockChain.loadFromDatabase();
+        assertEquals(10, blockChain.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSaveRangeWithInvertedBounds() {
+        new BlockChain().saveRange(5, 1);
+    }
+
+    @Test
+    public void testSyncFromDatabaseLoadsOnlyNewBlocks() throws IOException {
+        try (BlockChain writer = new BlockChain(databaseUrl());
+             BlockChain reader = new BlockChain(writer.getStore())) {
+            writer.createTableIfNotExists();
+            List<Block> blocks = buildBlocks(20);
+            writer.saveAll(blocks.subList(0, 12));
+
+            assertEquals(12, reader.syncFromDatabase());
+            assertEquals(0, reader.syncFromDatabase());
+
+            writer.saveAll(blocks.subList(12, 20));
+            assertEquals(8, reader.syncFromDatabase());
+            assertEquals(20, reader.size());
+            assertTrue(reader.isChainValid());
+        }
+    }
+
+    @Test
+    public void testGetBlockByIndexAndHash() {
+        BlockChain blockChain = new BlockChain();
+        List<Block> blocks = buildBlocks(100);
+        for (Block block : blocks) {
+            blockChain.addBlock(block);
+        }
+
+        assertSame(blocks.get(41), blockChain.getBlockByIndex(42));
+        assertNull(blockChain.getBlockByIndex(0));
+        assertNull(blockChain.getBlockByIndex(101));
+        assertSame(blocks.get(9), blockChain.getBlockByHash(blocks.get(9).getHash()));
+        assertSame(blocks.get(9), blockChain.getBlockByHash(BlockHash.fromHex(blocks.get(9).getHash())));
+        assertNull(blockChain.getBlockByHash("0"));
+        assertNull(blockChain.getBlockByHash(new Block(1, "2023-01-01T00:00:00", "Other", "0").getHash()));
+    }
+
+    @Test
+    public void testGetBlockByIndexWithGaps() throws IOException {
+        try (BlockChain blockChain = new BlockChain(databaseUrl())) {
+            blockChain.createTableIfNotExists();
+            List<Block> blocks = buildBlocks(10);
+            blockChain.saveAll(blocks.subList(0, 3));
+            blockChain.saveAll(blocks.subList(6, 10));
+            blockChain.loadFromDatabase();
+
+            assertNull(blockChain.getBlockByIndex(5));
+            assertEquals(blocks.get(7).getHash(), blockChain.getBlockByIndex(8).getHash());
+            assertEquals(8, blockChain.getBlockByHash(blocks.get(7).getHash()).getIndex());
+        }
+    }
 }
@@ -0,0 +1,82 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.JournalMode;
+import com.leonard.blockchain.SegmentLogStore;
+import com.leonard.blockchain.SynchronousMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BlockChainThroughputTest {
+    private static final int SINGLE_BLOCKS = 200;
+    private static final int BATCHED_BLOCKS = 20000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private BlockChain newBlockChain(String name) throws IOException {
+        BlockChain blockChain = new BlockChain("jdbc:sqlite:" + temporaryFolder.newFile(name).getAbsolutePath());
+        blockChain.setJournalMode(JournalMode.WAL);
+        blockChain.setSynchronousMode(SynchronousMode.NORMAL);
+        blockChain.createTableIfNotExists();
+        return blockChain;
+    }
+
+    private static List<Block> buildBlocks(int count) {
+        List<Block> blocks = new ArrayList<>(count);
+        String previousHash = "0";
+        for (int i = 1; i <= count; i++) {
+            Block block = new Block(i, "2022-01-01T12:00:00", "Transaction " + i, previousHash);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    @Test
+    public void testSingleAndBatchedSavesStoreEveryBlock() throws IOException {
+        BlockChain single = newBlockChain("single.db");
+        for (Block block : buildBlocks(SINGLE_BLOCKS)) {
+            single.saveToDatabase(block);
+        }
+
+        BlockChain batched = newBlockChain("batched.db");
+        List<Block> batchedBlocks = buildBlocks(BATCHED_BLOCKS);
+        assertEquals(BATCHED_BLOCKS, batched.saveAll(batchedBlocks));
+        assertEquals(0, batched.saveAll(batchedBlocks.subList(0, 100)));
+
+        single.loadFromDatabase();
+        batched.loadFromDatabase();
+        assertEquals(SINGLE_BLOCKS, single.size());
+        assertEquals(BATCHED_BLOCKS, batched.size());
+        assertEquals(batchedBlocks.get(BATCHED_BLOCKS - 1).getHash(), batched.getLatestBlock().getHash());
+        assertTrue(batched.isChainValid());
+    }
+
+    @Test
+    public void testSqliteAndSegmentLogStoreTheSameBlocks() throws IOException {
+        List<Block> blocks = buildBlocks(BATCHED_BLOCKS);
+
+        BlockChain sqlite = newBlockChain("scan.db");
+        assertEquals(BATCHED_BLOCKS, sqlite.saveAll(blocks));
+        sqlite.loadFromDatabase();
+
+        try (SegmentLogStore store = new SegmentLogStore(temporaryFolder.newFolder("segments").toPath());
+             BlockChain segmentLog = new BlockChain(store)) {
+            assertEquals(BATCHED_BLOCKS, segmentLog.saveAll(blocks));
+            segmentLog.loadFromDatabase();
+
+            assertEquals(BATCHED_BLOCKS, sqlite.size());
+            assertEquals(BATCHED_BLOCKS, segmentLog.size());
+            assertEquals(sqlite.getLatestBlock().getHash(), segmentLog.getLatestBlock().getHash());
+            assertTrue(segmentLog.isChainValid());
+        }
+        sqlite.close();
+    }
+}
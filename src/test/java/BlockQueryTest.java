@@ -0,0 +1,241 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.BlockQuery;
+import com.leonard.blockchain.BlockStore;
+import com.leonard.blockchain.SegmentLogStore;
+import com.leonard.blockchain.SqliteBlockStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BlockQueryTest {
+    private static final LocalDateTime START = LocalDateTime.parse("2022-01-01T00:00:00");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Builds blocks whose timestamps jump back and forth and whose payloads share long prefixes.
+     */
+    private static List<Block> buildBlocks(int from, int to, String previousHash) {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            LocalDateTime timestamp = START.plusSeconds((i * 37L) % 500).plusNanos(i % 3 * 1000);
+            String data = (i % 4 == 0 ? "audit:" : "payment:") + (i % 10) + "/" + repeat('x', i % 80) + i;
+            Block block = new Block(i, timestamp.toString(), data, previousHash);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static List<Integer> expected(List<Block> blocks, BlockQuery query) {
+        return blocks.stream()
+                .filter(query::matches)
+                .sorted((first, second) -> {
+                    int order = first.getTimestamp().compareTo(second.getTimestamp());
+                    return order != 0 ? order : Integer.compare(first.getIndex(), second.getIndex());
+                })
+                .map(Block::getIndex)
+                .collect(Collectors.toList());
+    }
+
+    private static List<Integer> indexes(List<Block> blocks) {
+        return blocks.stream().map(Block::getIndex).collect(Collectors.toList());
+    }
+
+    private static List<Integer> readPages(BlockStore store, BlockQuery query, int limit) {
+        List<Integer> indexes = new ArrayList<>();
+        Block after = null;
+        while (true) {
+            List<Block> page = store.find(query, after, limit);
+            assertTrue(page.size() <= limit);
+            if (page.isEmpty()) {
+                return indexes;
+            }
+            indexes.addAll(indexes(page));
+            after = page.get(page.size() - 1);
+        }
+    }
+
+    private static List<Integer> readPages(BlockChain blockChain, BlockQuery query, int limit) {
+        List<Integer> indexes = new ArrayList<>();
+        Block after = null;
+        while (true) {
+            List<Block> page = blockChain.findBlocks(query, after, limit);
+            if (page.isEmpty()) {
+                return indexes;
+            }
+            indexes.addAll(indexes(page));
+            after = page.get(page.size() - 1);
+        }
+    }
+
+    @Test
+    public void testTimeRangeInMemory() {
+        BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory());
+        blockChain.setBlockLogging(false);
+        List<Block> blocks = buildBlocks(1, 1000, "0");
+        for (Block block : blocks) {
+            blockChain.addBlock(block);
+        }
+
+        BlockQuery query = BlockQuery.between(START.plusSeconds(100), START.plusSeconds(200));
+        List<Integer> expected = expected(blocks, query);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, indexes(blockChain.findBlocks(query, null, 10000)));
+        assertEquals(expected, readPages(blockChain, query, 7));
+        try (Stream<Block> stream = blockChain.streamBlocks(query)) {
+            assertEquals(expected, stream.map(Block::getIndex).collect(Collectors.toList()));
+        }
+        assertTrue(blockChain.findBlocks(BlockQuery.between(START.minusDays(1), START), null, 10).isEmpty());
+    }
+
+    @Test
+    public void testTimeRangeInColumnarStorage() {
+        List<Block> ordered = new ArrayList<>();
+        String previousHash = "0";
+        for (int i = 1; i <= 1000; i++) {
+            Block block = new Block(i, START.plusSeconds(i / 3).toString(), "Block " + i, previousHash);
+            ordered.add(block);
+            previousHash = block.getHash();
+        }
+        for (List<Block> blocks : Arrays.asList(buildBlocks(1, 1000, "0"), ordered)) {
+            BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory());
+            blockChain.setBlockLogging(false);
+            blockChain.setColumnarStorage(true);
+            for (Block block : blocks) {
+                blockChain.addBlock(block);
+            }
+
+            BlockQuery query = BlockQuery.between(START.plusSeconds(100), START.plusSeconds(200));
+            List<Integer> expected = expected(blocks, query);
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, indexes(blockChain.findBlocks(query, null, 10000)));
+            assertEquals(expected, readPages(blockChain, query, 7));
+            assertTrue(blockChain.findBlocks(BlockQuery.between(START.minusDays(1), START), null, 10).isEmpty());
+        }
+    }
+
+    @Test
+    public void testStoreTimeRangePages() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            store.createSchema();
+            List<Block> blocks = buildBlocks(1, 2000, "0");
+            store.insertAll(blocks);
+
+            BlockQuery query = BlockQuery.between(START.plusSeconds(30), START.plusSeconds(300));
+            List<Integer> expected = expected(blocks, query);
+            assertEquals(expected, readPages(store, query, 50));
+            try (Stream<Block> stream = store.stream(query, 100)) {
+                assertEquals(expected, stream.map(Block::getIndex).collect(Collectors.toList()));
+            }
+        }
+    }
+
+    @Test
+    public void testStorePayloadQueries() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            store.createSchema();
+            List<Block> blocks = buildBlocks(1, 2000, "0");
+            String longPayload = "audit:7/" + repeat('y', 100);
+            Block tip = blocks.get(blocks.size() - 1);
+            Block exact = new Block(2001, "2022-01-02T00:00:00", longPayload, tip.getHash());
+            Block longer = new Block(2002, "2022-01-02T00:00:00", longPayload + "z", exact.getHash());
+            Block emoji = new Block(2003, "2022-01-02T00:00:00", "audit:\uD83D\uDE00", longer.getHash());
+            Block privateUse = new Block(2004, "2022-01-02T00:00:00", "audit:\uE000", emoji.getHash());
+            blocks.add(exact);
+            blocks.add(longer);
+            blocks.add(emoji);
+            blocks.add(privateUse);
+            store.insertAll(blocks);
+
+            assertEquals(2001, store.find(BlockQuery.payloadEquals(longPayload), null, 10).get(0).getIndex());
+            assertEquals(1, store.find(BlockQuery.payloadEquals(longPayload), null, 10).size());
+            assertEquals(2, store.find(BlockQuery.payloadStartsWith(longPayload), null, 10).size());
+            assertTrue(store.find(BlockQuery.payloadEquals("audit:"), null, 10).isEmpty());
+
+            BlockQuery prefix = BlockQuery.payloadStartsWith("audit:");
+            List<Integer> expected = blocks.stream()
+                    .filter(prefix::matches)
+                    .map(Block::getIndex)
+                    .sorted()
+                    .collect(Collectors.toList());
+            List<Integer> paged = readPages(store, prefix, 33);
+            assertEquals(expected, paged.stream().sorted().collect(Collectors.toList()));
+            assertEquals(2003, (int) paged.get(paged.size() - 1));
+            assertEquals(2004, (int) paged.get(paged.size() - 2));
+            try (Stream<Block> stream = store.stream(prefix, 100)) {
+                assertEquals(paged, stream.map(Block::getIndex).collect(Collectors.toList()));
+            }
+        }
+    }
+
+    @Test
+    public void testMemoryWindowMergesHistory() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory();
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.setBlockLogging(false);
+            blockChain.createTableIfNotExists();
+            List<Block> blocks = buildBlocks(1, 3000, "0");
+            store.insertAll(blocks.subList(0, 2500));
+            blockChain.setMemoryWindow(200);
+            blockChain.loadFromDatabase();
+            for (Block block : blocks.subList(2500, 3000)) {
+                blockChain.addBlock(block);
+            }
+            assertTrue(blockChain.snapshot().size() < 3000);
+
+            BlockQuery range = BlockQuery.between(START.plusSeconds(250), START.plusSeconds(260));
+            assertEquals(expected(blocks, range), readPages(blockChain, range, 5));
+            try (Stream<Block> stream = blockChain.streamBlocks(range)) {
+                assertEquals(expected(blocks, range), stream.map(Block::getIndex).collect(Collectors.toList()));
+            }
+
+            BlockQuery payload = BlockQuery.payloadStartsWith("audit:3");
+            List<Integer> paged = readPages(blockChain, payload, 9);
+            assertEquals(blocks.stream().filter(payload::matches).count(), paged.size());
+            try (Stream<Block> stream = blockChain.streamBlocks(payload)) {
+                assertEquals(paged, stream.map(Block::getIndex).collect(Collectors.toList()));
+            }
+        }
+    }
+
+    @Test
+    public void testSegmentLogStoreTimeRange() throws Exception {
+        List<Block> blocks = buildBlocks(1, 500, "0");
+        BlockQuery query = BlockQuery.between(START.plusSeconds(10), START.plusSeconds(90));
+        try (SegmentLogStore store = new SegmentLogStore(folder.getRoot().toPath())) {
+            store.insertAll(blocks);
+            assertEquals(expected(blocks, query), readPages(store, query, 4));
+        }
+        try (SegmentLogStore store = new SegmentLogStore(folder.getRoot().toPath())) {
+            try (Stream<Block> stream = store.stream(query, 0)) {
+                assertEquals(expected(blocks, query), stream.map(Block::getIndex).collect(Collectors.toList()));
+            }
+            assertEquals(1, store.find(BlockQuery.payloadEquals(blocks.get(41).getData()), null, 10).size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsInvertedRange() {
+        BlockQuery.between(START, START.minusSeconds(1));
+    }
+}
@@ -0,0 +1,105 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.BlockSequencer;
+import com.leonard.blockchain.SqliteBlockStore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class BlockSequencerTest {
+    private static final int PRODUCERS = 8;
+    private static final int PAYLOADS_PER_PRODUCER = 500;
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        try (BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory());
+             BlockSequencer sequencer = new BlockSequencer(blockChain, 64, 5).start()) {
+            ExecutorService producers = Executors.newFixedThreadPool(PRODUCERS);
+            List<CompletableFuture<Block>> futures = new ArrayList<>();
+            CountDownLatch done = new CountDownLatch(PRODUCERS);
+            AtomicBoolean readersValid = new AtomicBoolean(true);
+            for (int p = 0; p < PRODUCERS; p++) {
+                int producer = p;
+                producers.execute(() -> {
+                    for (int i = 0; i < PAYLOADS_PER_PRODUCER; i++) {
+                        CompletableFuture<Block> future = sequencer.submit("payload-" + producer + "-" + i);
+                        synchronized (futures) {
+                            futures.add(future);
+                        }
+                    }
+                    done.countDown();
+                });
+            }
+
+            while (!done.await(1, TimeUnit.MILLISECONDS)) {
+                if (!blockChain.isChainValid()) {
+                    readersValid.set(false);
+                }
+            }
+            producers.shutdown();
+
+            Set<String> payloads = new HashSet<>();
+            for (CompletableFuture<Block> future : futures) {
+                Block block = future.get(10, TimeUnit.SECONDS);
+                assertSame(block, blockChain.getBlockByIndex(block.getIndex()));
+                payloads.addAll(block.getTransactions());
+            }
+
+            assertTrue(readersValid.get());
+            assertEquals(PRODUCERS * PAYLOADS_PER_PRODUCER, payloads.size());
+            assertTrue(blockChain.size() <= PRODUCERS * PAYLOADS_PER_PRODUCER);
+            assertTrue(blockChain.isChainValid());
+        }
+    }
+
+    @Test
+    public void testLatencyThresholdCutsPartialBlock() throws Exception {
+        try (BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory());
+             BlockSequencer sequencer = new BlockSequencer(blockChain, 1000, 20).start()) {
+            Block block = sequencer.submit("only payload").get(5, TimeUnit.SECONDS);
+            assertEquals(1, block.getIndex());
+            assertEquals("0", block.getPreviousHash());
+            assertEquals(Arrays.asList("only payload"), block.getTransactions());
+
+            Block next = sequencer.submit("second").get(5, TimeUnit.SECONDS);
+            assertEquals(2, next.getIndex());
+            assertEquals(block.getHash(), next.getPreviousHash());
+        }
+    }
+
+    @Test
+    public void testPayloadCountThresholdCutsBlocks() throws Exception {
+        try (BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory())) {
+            BlockSequencer sequencer = new BlockSequencer(blockChain, 3, 60_000);
+            List<CompletableFuture<Block>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(sequencer.submit("payload " + i));
+            }
+            sequencer.start();
+            sequencer.close();
+
+            assertEquals(2, blockChain.size());
+            assertEquals(Arrays.asList("payload 0", "payload 1", "payload 2"), futures.get(0).get().getTransactions());
+            assertEquals(2, futures.get(5).get().getIndex());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSubmitAfterClose() {
+        BlockSequencer sequencer = new BlockSequencer(new BlockChain(SqliteBlockStore.inMemory()), 10, 10).start();
+        sequencer.close();
+        sequencer.submit("late");
+    }
+}
@@ -1,4 +1,9 @@
 import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockHash;
+import com.leonard.blockchain.HashScheme;
+import com.leonard.blockchain.HexCodec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -59,4 +64,64 @@ public class BlockTest {
         }
     }
 
+    @Test
+    public void testLegacySchemeMatchesStringPreimage() throws Exception {
+        String[] timestamps = {"2022-01-01T12:00:00", "2022-01-01T12:00:05", "2022-01-01T00:00:00.5",
+                "2022-01-01T00:00:00.000123", "2022-01-01T00:00:00.000000007", "0999-12-31T23:59:59"};
+        String[] payloads = {"Transaction", "", "caf\u00e9 \u20ac \ud83d\ude00", "unpaired \ud83d"};
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (String timestamp : timestamps) {
+            for (String payload : payloads) {
+                Block block = new Block(42, timestamp, payload, "0");
+                String preimage = 42 + LocalDateTime.parse(timestamp).toString() + payload + "0";
+                String expected = HexCodec.encode(digest.digest(preimage.getBytes(StandardCharsets.UTF_8)));
+                assertEquals(expected, block.getHash());
+            }
+        }
+    }
+
+    @Test
+    public void testBinarySchemeHash() {
+        Block legacy = new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0");
+        Block binary = new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0", HashScheme.BINARY);
+        assertEquals(HashScheme.BINARY, binary.getHashScheme());
+        assertNotEquals(legacy.getHash(), binary.getHash());
+        assertTrue(binary.hasValidHash());
+
+        Block loaded = new Block(1, "2022-01-01T12:00", "Transaction 1", "0", binary.getHash(), HashScheme.BINARY);
+        assertTrue(loaded.hasValidHash());
+        assertEquals(binary.getBlockHash(), loaded.getBlockHash());
+    }
+
+    @Test
+    public void testBinarySchemeSeparatesFields() {
+        Block first = new Block(1, "2022-01-01T12:00:00", "ab", "c", HashScheme.BINARY);
+        Block second = new Block(1, "2022-01-01T12:00:00", "a", "bc", HashScheme.BINARY);
+        assertNotEquals(first.getHash(), second.getHash());
+    }
+
+    @Test
+    public void testStoredHashIsNotRecomputed() {
+        Block block = new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0", "not a hash");
+        assertEquals("not a hash", block.getHash());
+        assertNull(block.getBlockHash());
+        assertFalse(block.hasValidHash());
+    }
+
+    @Test
+    public void testHexCodecRoundTrip() {
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        String hex = HexCodec.encode(bytes);
+        assertArrayEquals(bytes, HexCodec.decode(hex));
+        assertTrue(HexCodec.isHex(hex, 256));
+        assertFalse(HexCodec.isHex(hex.toUpperCase(), 256));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBlockHashRejectsInvalidHex() {
+        BlockHash.fromHex("xyz");
+    }
 }
@@ -0,0 +1,96 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.ChainMetrics;
+import com.leonard.blockchain.LatencyHistogram;
+import com.leonard.blockchain.SqliteBlockStore;
+import com.leonard.blockchain.VerificationReport;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class ChainMetricsTest {
+    private static void expectRejected(BlockChain blockChain, Block block) {
+        try {
+            blockChain.addBlock(block);
+            fail("Expected block " + block.getIndex() + " to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCountsAppendsRejectionsAndLoads() {
+        ChainMetrics metrics = new ChainMetrics();
+        try (BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory())) {
+            blockChain.setMetricsListener(metrics);
+            blockChain.setBlockLogging(false);
+            blockChain.createTableIfNotExists();
+
+            Block block1 = new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0");
+            Block block2 = new Block(2, "2022-01-02T14:30:00", "Transaction 2", block1.getHash());
+            blockChain.addBlock(block1);
+            blockChain.addBlock(block2);
+            expectRejected(blockChain, new Block(4, "2022-01-03T09:00:00", "Transaction 4", block2.getHash()));
+            expectRejected(blockChain, new Block(3, "2022-01-03T09:00:00", "Transaction 3", "0"));
+            expectRejected(blockChain, new Block(3, "2022-01-03T09:00:00", "Transaction 3", block2.getHash(), "forged"));
+            assertTrue(blockChain.isChainValid());
+
+            blockChain.saveAll(blockChain.snapshot());
+            blockChain.loadFromDatabase();
+
+            assertEquals(2, metrics.getBlocksAppended());
+            assertEquals(3, metrics.getBlocksRejected());
+            assertEquals(1, metrics.getRejections(VerificationReport.Reason.INDEX_MISMATCH));
+            assertEquals(1, metrics.getRejections(VerificationReport.Reason.PREVIOUS_HASH_MISMATCH));
+            assertEquals(1, metrics.getRejections(VerificationReport.Reason.HASH_MISMATCH));
+            assertEquals(0, metrics.getRejections(VerificationReport.Reason.MERKLE_ROOT_MISMATCH));
+            assertEquals(1, metrics.getChainVerifications());
+            assertEquals(2, metrics.getBlocksLoaded());
+            assertEquals(2, metrics.getAppendLatency().getCount());
+            assertEquals(1, metrics.getConnectionLatency().getCount());
+            assertTrue(metrics.getStatementLatency().getCount() >= 2);
+            assertTrue(metrics.getHashesComputed() > 0);
+        }
+    }
+
+    @Test
+    public void testPublishedAsMXBean() throws Exception {
+        ChainMetrics metrics = new ChainMetrics();
+        ObjectName name = metrics.register("metrics-test");
+        try {
+            metrics.onBlockAppended(null, 1500);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "BlocksAppended"));
+            CompositeData latency = (CompositeData) server.getAttribute(name, "AppendLatency");
+            assertEquals(1L, latency.get("count"));
+            assertEquals(1500L, latency.get("maxNanos"));
+            assertNotNull(server.getAttribute(name, "RejectionsByReason"));
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getMedianNanos());
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100_000, histogram.getMaxNanos());
+        assertEquals(50_500, histogram.getMeanNanos(), 0.001);
+        long median = histogram.getMedianNanos();
+        assertTrue(median >= 50_000 && median < 100_000);
+        long p99 = histogram.getP99Nanos();
+        assertTrue(p99 >= 99_000 && p99 <= 100_000);
+        assertEquals(100_000, histogram.getPercentileNanos(100));
+    }
+}
@@ -0,0 +1,124 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.ChainVerifier;
+import com.leonard.blockchain.SqliteBlockStore;
+import com.leonard.blockchain.VerificationReport;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ChainVerifierTest {
+    private static List<Block> buildBlocks(int count) {
+        List<Block> blocks = new ArrayList<>(count);
+        String previousHash = "0";
+        for (int i = 1; i <= count; i++) {
+            Block block = new Block(i, "2022-01-01T12:00:00", "Transaction " + i, previousHash);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    private static Block tamper(Block block) {
+        return new Block(block.getIndex(), block.getTimestamp().toString(), "Tampered",
+                block.getPreviousHash(), block.getHash());
+    }
+
+    @Test
+    public void testValidChainInParallel() {
+        VerificationReport report = new ChainVerifier(4, 64).verify(buildBlocks(1000));
+        assertTrue(report.isValid());
+        assertEquals(1000, report.getBlocksVerified());
+        assertEquals(-1, report.getFirstInvalidIndex());
+        assertNull(report.getReason());
+    }
+
+    /**
+     * Gets the names of the pools that have live worker threads, e.g. "ForkJoinPool-3".
+     */
+    private static Set<String> livePools() {
+        Set<String> pools = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            String name = thread.getName();
+            int worker = name.indexOf("-worker-");
+            if (name.startsWith("ForkJoinPool-") && worker > 0) {
+                pools.add(name.substring(0, worker));
+            }
+        }
+        return pools;
+    }
+
+    @Test
+    public void testVerificationsShareOnePool() {
+        List<Block> blocks = buildBlocks(1000);
+        ChainVerifier verifier = new ChainVerifier(ForkJoinPool.getCommonPoolParallelism() + 1, 64);
+        assertTrue(verifier.verify(blocks).isValid());
+        Set<String> pools = livePools();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(verifier.verify(blocks).isValid());
+        }
+        Set<String> created = livePools();
+        created.removeAll(pools);
+        assertEquals(new HashSet<String>(), created);
+    }
+
+    @Test
+    public void testReportsFirstTamperedBlock() {
+        List<Block> blocks = buildBlocks(1000);
+        blocks.set(700, tamper(blocks.get(700)));
+        blocks.set(300, tamper(blocks.get(300)));
+
+        VerificationReport report = new ChainVerifier(4, 64).verify(blocks);
+        assertFalse(report.isValid());
+        assertEquals(301, report.getFirstInvalidIndex());
+        assertEquals(VerificationReport.Reason.HASH_MISMATCH, report.getReason());
+    }
+
+    @Test
+    public void testReportsBrokenLink() {
+        List<Block> blocks = buildBlocks(200);
+        Block original = blocks.get(150);
+        blocks.set(150, new Block(original.getIndex(), "2022-01-01T12:00:00", original.getData(), "0"));
+
+        VerificationReport report = new ChainVerifier(2, 16).verify(blocks);
+        assertEquals(151, report.getFirstInvalidIndex());
+        assertEquals(VerificationReport.Reason.PREVIOUS_HASH_MISMATCH, report.getReason());
+    }
+
+    @Test
+    public void testReportsIndexGap() {
+        List<Block> blocks = buildBlocks(10);
+        blocks.remove(5);
+
+        VerificationReport report = new ChainVerifier().verify(blocks);
+        assertEquals(7, report.getFirstInvalidIndex());
+        assertEquals(VerificationReport.Reason.INDEX_MISMATCH, report.getReason());
+    }
+
+    @Test
+    public void testTamperedBlockLoadedFromDatabaseIsDetected() {
+        try (BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory())) {
+            blockChain.createTableIfNotExists();
+            List<Block> blocks = buildBlocks(5);
+            blocks.set(2, tamper(blocks.get(2)));
+            blockChain.saveAll(blocks);
+            blockChain.loadFromDatabase();
+
+            VerificationReport report = blockChain.verifyChain();
+            assertFalse(blockChain.isChainValid());
+            assertEquals(3, report.getFirstInvalidIndex());
+            assertEquals(VerificationReport.Reason.HASH_MISMATCH, report.getReason());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new ChainVerifier(0, 16);
+    }
+}
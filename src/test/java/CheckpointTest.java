@@ -0,0 +1,152 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.BlockStore;
+import com.leonard.blockchain.Checkpoint;
+import com.leonard.blockchain.SegmentLogStore;
+import com.leonard.blockchain.SqliteBlockStore;
+import com.leonard.blockchain.VerificationReport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CheckpointTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static List<Block> buildBlocks(int from, int to, String previousHash) {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            Block block = new Block(i, "2022-01-01T12:00:00", "Transaction " + i, previousHash);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    private static void addAndSave(BlockChain blockChain, List<Block> blocks) {
+        for (Block block : blocks) {
+            blockChain.addBlock(block);
+        }
+        blockChain.saveAll(blocks);
+    }
+
+    private void checkRestartFromCheckpoint(BlockStore store) {
+        List<Block> blocks = buildBlocks(1, 300, "0");
+        try (BlockChain blockChain = new BlockChain(store)) {
+            blockChain.setBlockLogging(false);
+            blockChain.createTableIfNotExists();
+            addAndSave(blockChain, blocks.subList(0, 100));
+            Checkpoint first = blockChain.checkpoint();
+            assertEquals(100, first.getTipIndex());
+            assertEquals(100, first.getBlockCount());
+
+            addAndSave(blockChain, blocks.subList(100, 250));
+            Checkpoint second = blockChain.checkpoint();
+            assertEquals(250, second.getTipIndex());
+            assertEquals(250, second.getBlockCount());
+            assertTrue(second.isSealValid());
+        }
+        store.insertAll(blocks.subList(250, 300));
+
+        try (BlockChain blockChain = new BlockChain(store)) {
+            VerificationReport report = blockChain.loadFromCheckpoint();
+            assertTrue(report.isValid());
+            assertEquals(51, blockChain.snapshot().size());
+            assertEquals(300, blockChain.size());
+            assertEquals(blocks.get(299).getHash(), blockChain.getLatestBlock().getHash());
+
+            assertEquals(blocks.get(9).getHash(), blockChain.getBlockByIndex(10).getHash());
+            assertEquals(42, blockChain.getBlockByHash(blocks.get(41).getHash()).getIndex());
+            assertNull(blockChain.getBlockByIndex(301));
+
+            Checkpoint third = blockChain.checkpoint();
+            assertEquals(300, third.getBlockCount());
+        }
+
+        try (BlockChain blockChain = new BlockChain(store)) {
+            blockChain.loadFromDatabase();
+            assertEquals(300, blockChain.size());
+            assertEquals(blockChain.checkpoint().getPrefixDigest(), store.loadLatestCheckpoint().getPrefixDigest());
+        }
+    }
+
+    @Test
+    public void testRestartFromCheckpointWithSqlite() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            checkRestartFromCheckpoint(store);
+        }
+    }
+
+    @Test
+    public void testRestartFromCheckpointWithSegmentLog() throws Exception {
+        try (SegmentLogStore store = new SegmentLogStore(temporaryFolder.newFolder().toPath())) {
+            checkRestartFromCheckpoint(store);
+        }
+    }
+
+    @Test
+    public void testWithoutCheckpointLoadsWholeChain() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory();
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.createTableIfNotExists();
+            store.insertAll(buildBlocks(1, 20, "0"));
+
+            assertNull(store.loadLatestCheckpoint());
+            assertTrue(blockChain.loadFromCheckpoint().isValid());
+            assertEquals(20, blockChain.snapshot().size());
+        }
+    }
+
+    @Test
+    public void testTamperedCheckpointFallsBackToFullLoad() throws Exception {
+        String url = "jdbc:sqlite:" + temporaryFolder.newFile("chain.db").getAbsolutePath();
+        try (BlockChain blockChain = new BlockChain(url)) {
+            blockChain.setBlockLogging(false);
+            blockChain.createTableIfNotExists();
+            addAndSave(blockChain, buildBlocks(1, 50, "0"));
+            blockChain.checkpoint();
+        }
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("UPDATE checkpoints SET block_count = 5");
+        }
+
+        try (BlockChain blockChain = new BlockChain(url)) {
+            assertTrue(blockChain.loadFromCheckpoint().isValid());
+            assertEquals(50, blockChain.snapshot().size());
+            assertEquals(50, blockChain.size());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRejectsUnsavedTip() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory();
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.createTableIfNotExists();
+            for (Block block : buildBlocks(1, 5, "0")) {
+                blockChain.addBlock(block);
+            }
+            blockChain.checkpoint();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRejectsInvalidChain() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory();
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.createTableIfNotExists();
+            List<Block> blocks = buildBlocks(1, 5, "0");
+            blockChain.addBlock(new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0", blocks.get(1).getHash()));
+            blockChain.saveAll(blocks);
+            blockChain.checkpoint();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.HashScheme;
+import com.leonard.blockchain.SqliteBlockStore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ColumnarStorageTest {
+    private static List<Block> buildBlocks(int from, int to, String previousHash) {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            Block block = new Block(i, "2022-01-01T12:00:00." + (100000000 + i), "Transaction " + i, previousHash,
+                    i % 2 == 0 ? HashScheme.BINARY : HashScheme.LEGACY);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    private static void assertSameBlock(Block expected, Block actual) {
+        assertEquals(expected.getIndex(), actual.getIndex());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getData(), actual.getData());
+        assertEquals(expected.getPreviousHash(), actual.getPreviousHash());
+        assertEquals(expected.getHash(), actual.getHash());
+        assertEquals(expected.getHashScheme(), actual.getHashScheme());
+        assertEquals(expected.getNonce(), actual.getNonce());
+        assertEquals(expected.getDifficulty(), actual.getDifficulty());
+        assertEquals(expected.getTransactionCount(), actual.getTransactionCount());
+        assertEquals(expected.isBodyLoaded(), actual.isBodyLoaded());
+        assertEquals(expected.getTransactions(), actual.getTransactions());
+    }
+
+    @Test
+    public void testBlocksRoundTrip() {
+        BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory());
+        blockChain.setBlockLogging(false);
+        blockChain.setColumnarStorage(true);
+
+        List<Block> blocks = buildBlocks(1, 5000, "0");
+        Block transactions = new Block(5001, "2022-01-03T09:15:00", Arrays.asList("alice->bob", "bob->carol"),
+                blocks.get(4999).getHash(), HashScheme.BINARY);
+        Block withoutData = new Block(5002, "2022-01-03T09:16:00", null, transactions.getHash(), HashScheme.BINARY, 42, 0);
+        blocks.add(transactions);
+        blocks.add(withoutData);
+        for (Block block : blocks) {
+            blockChain.addBlock(block);
+        }
+
+        assertEquals(5002, blockChain.size());
+        List<Block> snapshot = blockChain.snapshot();
+        for (int i = 0; i < blocks.size(); i++) {
+            assertSameBlock(blocks.get(i), snapshot.get(i));
+        }
+        assertSameBlock(transactions, blockChain.getBlockByHash(transactions.getHash()));
+        assertSameBlock(blocks.get(1233), blockChain.getBlockByIndex(1234));
+        assertSameBlock(withoutData, blockChain.getLatestBlock());
+        assertTrue(blockChain.isChainValid());
+    }
+
+    @Test
+    public void testLargePayloadsSpanChunks() {
+        BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory());
+        blockChain.setBlockLogging(false);
+        blockChain.setColumnarStorage(true);
+
+        char[] text = new char[300 * 1024];
+        Arrays.fill(text, 'x');
+        String small = new String(text);
+        String large = small + small + small + small;
+        String previousHash = "0";
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            Block block = new Block(i, "2022-01-01T12:00:00", i == 5 ? large : small, previousHash);
+            blocks.add(block);
+            blockChain.addBlock(block);
+            previousHash = block.getHash();
+        }
+
+        for (Block block : blocks) {
+            assertEquals(block.getData(), blockChain.getBlockByHash(block.getHash()).getData());
+        }
+        assertTrue(blockChain.isChainValid());
+    }
+
+    @Test
+    public void testSwitchingStorageKeepsBlocks() {
+        BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory());
+        blockChain.setBlockLogging(false);
+        List<Block> blocks = buildBlocks(1, 100, "0");
+        for (Block block : blocks.subList(0, 50)) {
+            blockChain.addBlock(block);
+        }
+
+        blockChain.setColumnarStorage(true);
+        assertTrue(blockChain.isColumnarStorage());
+        for (Block block : blocks.subList(50, 100)) {
+            blockChain.addBlock(block);
+        }
+        assertEquals(100, blockChain.size());
+        assertSameBlock(blocks.get(24), blockChain.getBlockByHash(blocks.get(24).getHash()));
+
+        blockChain.setColumnarStorage(false);
+        assertFalse(blockChain.isColumnarStorage());
+        assertEquals(100, blockChain.size());
+        assertSameBlock(blocks.get(74), blockChain.getBlockByIndex(75));
+        assertTrue(blockChain.isChainValid());
+    }
+
+    @Test
+    public void testKeepsMalformedHashes() {
+        BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory());
+        blockChain.setColumnarStorage(true);
+        Block block1 = new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0", "not a hash");
+        blockChain.addBlock(block1);
+
+        assertEquals("not a hash", blockChain.getLatestBlock().getHash());
+        assertEquals("not a hash", blockChain.snapshot().get(0).getHash());
+        assertNull(blockChain.getBlockByHash("not a hash"));
+        assertFalse(blockChain.isChainValid());
+    }
+
+    @Test
+    public void testLoadFromDatabase() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory();
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.setColumnarStorage(true);
+            blockChain.createTableIfNotExists();
+            List<Block> blocks = buildBlocks(1, 2500, "0");
+            store.insertAll(blocks);
+
+            blockChain.loadFromDatabase();
+            assertEquals(2500, blockChain.size());
+            assertTrue(blockChain.isChainValid());
+            assertSameBlock(blocks.get(1999), blockChain.getBlockByHash(blocks.get(1999).getHash()));
+        }
+    }
+
+    @Test
+    public void testLookupByIndexAcrossGaps() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory();
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.setColumnarStorage(true);
+            blockChain.createTableIfNotExists();
+            List<Block> blocks = buildBlocks(1, 3000, "0");
+            store.insertAll(blocks.subList(0, 1000));
+            store.insertAll(blocks.subList(1500, 3000));
+
+            blockChain.loadFromDatabase();
+            assertEquals(2500, blockChain.size());
+            assertSameBlock(blocks.get(499), blockChain.getBlockByIndex(500));
+            assertSameBlock(blocks.get(1500), blockChain.getBlockByIndex(1501));
+            assertSameBlock(blocks.get(2999), blockChain.getBlockByIndex(3000));
+            assertNull(blockChain.getBlockByIndex(1200));
+            assertNull(blockChain.getBlockByIndex(3001));
+        }
+    }
+}
@@ -0,0 +1,298 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.BlockStore;
+import com.leonard.blockchain.BlockStoreException;
+import com.leonard.blockchain.ChainMetricsListener;
+import com.leonard.blockchain.GroupCommitWriter;
+import com.leonard.blockchain.SqliteBlockStore;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class GroupCommitWriterTest {
+    private static List<Block> buildBlocks(int from, int to, String previousHash) {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            Block block = new Block(i, "2022-01-01T12:00:00", "Transaction " + i, previousHash);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    @Test
+    public void testBlocksAreCommittedInGroups() throws Exception {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            store.createSchema();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            try (GroupCommitWriter writer = new GroupCommitWriter(store, 256, 100, 50, TimeUnit.MILLISECONDS)) {
+                for (Block block : buildBlocks(1, 1000, "0")) {
+                    futures.add(writer.submit(block));
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+                assertEquals(1000, writer.getBlocksWritten());
+                assertTrue(writer.getBatchesWritten() >= 10);
+                assertTrue(writer.getBatchesWritten() < 1000);
+            }
+            assertEquals(1000, store.loadAll().size());
+        }
+    }
+
+    @Test
+    public void testFlushDoesNotWaitForDelay() throws Exception {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory();
+             GroupCommitWriter writer = new GroupCommitWriter(store, 16, 100, 10, TimeUnit.MINUTES)) {
+            store.createSchema();
+            List<Block> blocks = buildBlocks(1, 3, "0");
+            CompletableFuture<Void> first = writer.submit(blocks.get(0));
+            writer.submit(blocks.get(1));
+            writer.submit(blocks.get(2));
+            assertFalse(first.isDone());
+
+            writer.flush().get(5, TimeUnit.SECONDS);
+            assertTrue(first.isDone());
+            assertEquals(1, writer.getBatchesWritten());
+            assertTrue(store.contains(3));
+        }
+    }
+
+    @Test
+    public void testSubmitBlocksWhenQueueIsFull() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            store.createSchema();
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch writing = new CountDownLatch(1);
+            store.setMetricsListener(new ChainMetricsListener() {
+                @Override
+                public void onStatementExecuted(long elapsedNanos) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+
+            List<Block> blocks = buildBlocks(1, 4, "0");
+            try (GroupCommitWriter writer = new GroupCommitWriter(store, 2, 1, 0, TimeUnit.MILLISECONDS)) {
+                CompletableFuture<Void> first = writer.submit(blocks.get(0));
+                assertTrue(writing.await(5, TimeUnit.SECONDS));
+                writer.submit(blocks.get(1));
+                writer.submit(blocks.get(2));
+
+                Future<CompletableFuture<Void>> blocked = executor.submit(() -> writer.submit(blocks.get(3)));
+                try {
+                    blocked.get(200, TimeUnit.MILLISECONDS);
+                    fail("Submitting to a full queue should block");
+                } catch (TimeoutException expected) {
+                    assertEquals(2, writer.getQueueSize());
+                }
+
+                release.countDown();
+                blocked.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+                assertTrue(first.isDone());
+                assertEquals(4, writer.getBlocksWritten());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCloseWritesQueuedBlocks() throws Exception {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            store.createSchema();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            GroupCommitWriter writer = new GroupCommitWriter(store, 16, 100, 10, TimeUnit.MINUTES);
+            for (Block block : buildBlocks(1, 5, "0")) {
+                futures.add(writer.submit(block));
+            }
+            writer.close();
+
+            for (CompletableFuture<Void> future : futures) {
+                assertTrue(future.isDone());
+            }
+            assertEquals(5, store.loadAll().size());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedWriterRejectsBlocks() throws Exception {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            GroupCommitWriter writer = new GroupCommitWriter(store, 16, 100, 10, TimeUnit.MILLISECONDS);
+            writer.close();
+            writer.submit(buildBlocks(1, 1, "0").get(0));
+        }
+    }
+
+    @Test
+    public void testRejectedBlockIsNotAwaited() throws Exception {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            store.createSchema();
+            List<Block> blocks = buildBlocks(1, 3, "0");
+            GroupCommitWriter writer = new GroupCommitWriter(store, 16, 100, 10, TimeUnit.MILLISECONDS);
+            writer.submit(blocks.get(0));
+            writer.submit(blocks.get(1));
+            writer.close();
+            try {
+                writer.submit(blocks.get(2));
+                fail("A closed writer should reject blocks");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            assertTrue(writer.isPersistedThrough(2));
+            assertTrue(writer.isPersistedThrough(3));
+        }
+    }
+
+    @Test
+    public void testFailedWriteCompletesExceptionally() throws Exception {
+        SqliteBlockStore store = SqliteBlockStore.inMemory();
+        store.close();
+        try (GroupCommitWriter writer = new GroupCommitWriter(store, 16, 100, 10, TimeUnit.MILLISECONDS)) {
+            writer.submit(buildBlocks(1, 1, "0").get(0)).get(5, TimeUnit.SECONDS);
+            fail("Writing to a closed store should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BlockStoreException);
+        }
+    }
+
+    /**
+     * Wraps a store so that its batch inserts fail while the switch is on.
+     */
+    private static BlockStore failingStore(BlockStore store, AtomicBoolean failing) {
+        return (BlockStore) Proxy.newProxyInstance(BlockStore.class.getClassLoader(), new Class<?>[]{BlockStore.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("insertAll") && failing.get()) {
+                        throw new BlockStoreException("Disk full");
+                    }
+                    try {
+                        return method.invoke(store, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    @Test
+    public void testFailureRejectsLaterWritesUntilRetried() throws Exception {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            store.createSchema();
+            AtomicBoolean failing = new AtomicBoolean();
+            List<Block> blocks = buildBlocks(1, 9, "0");
+            try (GroupCommitWriter writer = new GroupCommitWriter(failingStore(store, failing), 16, 3, 10, TimeUnit.MINUTES)) {
+                for (Block block : blocks.subList(0, 3)) {
+                    writer.submit(block);
+                }
+                writer.flush().get(5, TimeUnit.SECONDS);
+                assertEquals(3, writer.getPersistedIndex());
+
+                failing.set(true);
+                CompletableFuture<Void> failed = writer.submit(blocks.get(3));
+                writer.flush().handle((ignored, e) -> null).get(5, TimeUnit.SECONDS);
+                failing.set(false);
+                List<CompletableFuture<Void>> rejected = new ArrayList<>();
+                for (Block block : blocks.subList(4, 9)) {
+                    rejected.add(writer.submit(block));
+                }
+                try {
+                    writer.flush().get(5, TimeUnit.SECONDS);
+                    fail("Flushing after a failed group should fail");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof BlockStoreException);
+                }
+                assertTrue(failed.isCompletedExceptionally());
+                for (CompletableFuture<Void> future : rejected) {
+                    assertTrue(future.isCompletedExceptionally());
+                }
+                assertTrue(writer.isFailed());
+                assertFalse(writer.isPersistedThrough(3));
+                assertEquals(3, writer.getPersistedIndex());
+                assertFalse(store.contains(9));
+
+                assertEquals(6, writer.retry());
+                assertFalse(writer.isFailed());
+                assertTrue(writer.isPersistedThrough(9));
+                assertEquals(9, writer.getPersistedIndex());
+                writer.flush().get(5, TimeUnit.SECONDS);
+            }
+            assertEquals(9, store.loadAll().size());
+        }
+    }
+
+    @Test
+    public void testMemoryWindowKeepsBlocksThatFailedToBeWritten() throws Exception {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            AtomicBoolean failing = new AtomicBoolean();
+            List<Block> blocks = buildBlocks(1, 100, "0");
+            try (BlockChain blockChain = new BlockChain(failingStore(store, failing))) {
+                blockChain.setBlockLogging(false);
+                blockChain.createTableIfNotExists();
+                blockChain.setMemoryWindow(10);
+                blockChain.enableWriteBehind(64, 5, 10, TimeUnit.MINUTES);
+                for (Block block : blocks.subList(0, 10)) {
+                    blockChain.addAndSave(block);
+                }
+                failing.set(true);
+                blockChain.addAndSave(blocks.get(10));
+                blockChain.flush().handle((ignored, e) -> null).get(5, TimeUnit.SECONDS);
+                failing.set(false);
+                for (Block block : blocks.subList(11, 30)) {
+                    blockChain.addAndSave(block);
+                }
+                blockChain.saveRange(12, 31);
+                blockChain.flush().handle((ignored, e) -> null).get(5, TimeUnit.SECONDS);
+                assertEquals(30, blockChain.snapshot().size());
+
+                blockChain.getWriteBehindWriter().retry();
+                for (Block block : blocks.subList(30, 40)) {
+                    blockChain.addAndSave(block);
+                }
+                blockChain.flush().get(5, TimeUnit.SECONDS);
+                assertEquals(40, blockChain.size());
+                assertTrue(blockChain.snapshot().size() < 40);
+                assertEquals(blocks.get(10).getHash(), blockChain.getBlockByIndex(11).getHash());
+            }
+            assertEquals(40, store.loadAll().size());
+        }
+    }
+
+    @Test
+    public void testBlockChainWriteBehind() throws Exception {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            List<Block> blocks = buildBlocks(1, 200, "0");
+            CompletableFuture<Void> last = null;
+            try (BlockChain blockChain = new BlockChain(store)) {
+                blockChain.setBlockLogging(false);
+                blockChain.createTableIfNotExists();
+                assertTrue(blockChain.addAndSave(blocks.get(0)).isDone());
+                assertTrue(store.contains(1));
+
+                blockChain.enableWriteBehind(64, 32, 5, TimeUnit.MILLISECONDS);
+                for (Block block : blocks.subList(1, 200)) {
+                    last = blockChain.addAndSave(block);
+                }
+                assertEquals(200, blockChain.size());
+            }
+            assertTrue(last.isDone());
+            assertEquals(200, store.loadAll().size());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockCache;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.ChainMetrics;
+import com.leonard.blockchain.Checkpoint;
+import com.leonard.blockchain.SqliteBlockStore;
+import com.leonard.blockchain.VerificationReport;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class MemoryWindowTest {
+    private static List<Block> buildBlocks(int from, int to, String previousHash) {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            Block block = new Block(i, "2022-01-01T12:00:00", "Transaction " + i, previousHash);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    @Test
+    public void testWindowKeepsMemoryFlat() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory();
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.setBlockLogging(false);
+            blockChain.createTableIfNotExists();
+            blockChain.setMemoryWindow(100);
+            List<Block> blocks = buildBlocks(1, 1000, "0");
+            for (Block block : blocks) {
+                blockChain.addBlock(block);
+                blockChain.saveToDatabase(block);
+                assertTrue(blockChain.snapshot().size() < 200);
+            }
+
+            assertEquals(1000, blockChain.size());
+            assertEquals(1000, blockChain.getLatestBlock().getIndex());
+            assertEquals(blocks.get(4).getHash(), blockChain.getBlockByIndex(5).getHash());
+            assertEquals(blocks.get(999).getHash(), blockChain.getBlockByIndex(1000).getHash());
+            assertEquals(7, blockChain.getBlockByHash(blocks.get(6).getHash()).getIndex());
+
+            VerificationReport report = blockChain.verifyChain();
+            assertTrue(report.isValid());
+            assertEquals(1000, report.getBlocksVerified());
+        }
+    }
+
+    @Test
+    public void testReadersSeeConsistentSizeWhileTrimming() throws Exception {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory();
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.setBlockLogging(false);
+            blockChain.createTableIfNotExists();
+            blockChain.setMemoryWindow(5);
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<String> inconsistency = new AtomicReference<>();
+            Thread reader = new Thread(() -> {
+                int lastSize = 0;
+                while (!done.get() && inconsistency.get() == null) {
+                    int size = blockChain.size();
+                    Block tip = blockChain.getLatestBlock();
+                    if (size < lastSize || tip != null && tip.getIndex() < size) {
+                        inconsistency.set("Size " + size + " after " + lastSize + " with tip " + tip);
+                    }
+                    lastSize = size;
+                }
+            });
+            reader.start();
+            for (Block block : buildBlocks(1, 3000, "0")) {
+                blockChain.addBlock(block);
+                blockChain.saveToDatabase(block);
+            }
+            done.set(true);
+            reader.join();
+            assertNull(inconsistency.get());
+            assertEquals(3000, blockChain.size());
+        }
+    }
+
+    @Test
+    public void testUnsavedBlocksStayInMemory() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory();
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.createTableIfNotExists();
+            blockChain.setBlockLogging(false);
+            blockChain.setMemoryWindow(10);
+            for (Block block : buildBlocks(1, 50, "0")) {
+                blockChain.addBlock(block);
+            }
+            assertEquals(50, blockChain.snapshot().size());
+
+            blockChain.saveRange(1, 50);
+            blockChain.setMemoryWindow(10);
+            assertEquals(10, blockChain.snapshot().size());
+            assertEquals(50, blockChain.size());
+            assertTrue(blockChain.isChainValid());
+        }
+    }
+
+    @Test
+    public void testCacheStatistics() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory();
+             BlockChain blockChain = new BlockChain(store)) {
+            ChainMetrics metrics = new ChainMetrics();
+            blockChain.setMetricsListener(metrics);
+            blockChain.createTableIfNotExists();
+            List<Block> blocks = buildBlocks(1, 100, "0");
+            store.insertAll(blocks);
+            blockChain.setMemoryWindow(10);
+            blockChain.setBlockCacheCapacity(2);
+            blockChain.loadFromDatabase();
+            assertTrue(blockChain.snapshot().size() < 20);
+
+            blockChain.getBlockByIndex(1);
+            blockChain.getBlockByIndex(1);
+            blockChain.getBlockByHash(blocks.get(0).getHash());
+            blockChain.getBlockByIndex(2);
+            blockChain.getBlockByIndex(3);
+            blockChain.getBlockByIndex(2);
+
+            BlockCache cache = blockChain.getBlockCache();
+            assertEquals(3, cache.getHitCount());
+            assertEquals(3, cache.getMissCount());
+            assertEquals(1, cache.getEvictionCount());
+            assertEquals(2, cache.size());
+            assertEquals(0.5, cache.getHitRate(), 1e-9);
+            assertEquals(3, metrics.getBlockCacheHits());
+            assertEquals(3, metrics.getBlockCacheMisses());
+        }
+    }
+
+    @Test
+    public void testVerificationFindsInvalidBlockOutsideWindow() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory();
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.createTableIfNotExists();
+            List<Block> blocks = buildBlocks(1, 20000, "0");
+            Block forged = new Block(42, "2022-01-01T12:00:00", "Forged", blocks.get(40).getHash(), blocks.get(41).getHash());
+            blocks.set(41, forged);
+            store.insertAll(blocks);
+
+            blockChain.setMemoryWindow(500);
+            blockChain.loadFromDatabase();
+            VerificationReport report = blockChain.verifyChain();
+            assertFalse(report.isValid());
+            assertEquals(42, report.getFirstInvalidIndex());
+            assertEquals(VerificationReport.Reason.HASH_MISMATCH, report.getReason());
+        }
+    }
+
+    @Test
+    public void testCheckpointWithWindow() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            List<Block> blocks = buildBlocks(1, 3000, "0");
+            try (BlockChain blockChain = new BlockChain(store)) {
+                blockChain.createTableIfNotExists();
+                store.insertAll(blocks.subList(0, 1000));
+                blockChain.setMemoryWindow(100);
+                blockChain.loadFromDatabase();
+                Checkpoint first = blockChain.checkpoint();
+                assertEquals(1000, first.getBlockCount());
+
+                store.insertAll(blocks.subList(1000, 3000));
+                assertEquals(2000, blockChain.syncFromDatabase());
+                Checkpoint second = blockChain.checkpoint();
+                assertEquals(3000, second.getBlockCount());
+            }
+
+            try (BlockChain blockChain = new BlockChain(store)) {
+                blockChain.loadFromDatabase();
+                assertEquals(store.loadLatestCheckpoint().getPrefixDigest(), blockChain.checkpoint().getPrefixDigest());
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.HashScheme;
+import com.leonard.blockchain.MerkleProof;
+import com.leonard.blockchain.MerkleTree;
+import com.leonard.blockchain.SqliteBlockStore;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MerkleTreeTest {
+    private static List<String> transactions(int count) {
+        List<String> transactions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            transactions.add("{\"id\":" + i + "}");
+        }
+        return transactions;
+    }
+
+    @Test
+    public void testProofsForEveryPosition() {
+        for (int count = 1; count <= 17; count++) {
+            List<String> transactions = transactions(count);
+            MerkleTree tree = new MerkleTree(transactions);
+            for (int i = 0; i < count; i++) {
+                MerkleProof proof = tree.getProof(i);
+                assertTrue(proof.verify(transactions.get(i), tree.getRoot()));
+                assertFalse(proof.verify("forged", tree.getRoot()));
+                assertTrue(proof.getSiblings().size() <= 32 - Integer.numberOfLeadingZeros(count));
+            }
+        }
+    }
+
+    @Test
+    public void testRootDependsOnOrderAndContent() {
+        List<String> transactions = transactions(4);
+        List<String> reordered = new ArrayList<>(transactions);
+        Collections.swap(reordered, 0, 1);
+        assertNotEquals(MerkleTree.computeRoot(transactions), MerkleTree.computeRoot(reordered));
+        assertNotEquals(MerkleTree.computeRoot(transactions(3)), MerkleTree.computeRoot(transactions(4)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyTree() {
+        new MerkleTree(Collections.<String>emptyList());
+    }
+
+    @Test
+    public void testTransactionBlock() {
+        List<String> transactions = transactions(5);
+        Block block = new Block(1, "2022-01-01T12:00:00", transactions, "0", HashScheme.BINARY);
+        assertTrue(block.isTransactionBlock());
+        assertEquals(5, block.getTransactionCount());
+        assertEquals(transactions, block.getTransactions());
+        assertEquals(MerkleTree.computeRoot(transactions).toHex(), block.getData());
+        assertTrue(block.hasValidHash());
+        assertTrue(block.hasValidMerkleRoot());
+
+        Block plain = new Block(2, "2022-01-01T12:00:00", "Transaction", block.getHash());
+        assertFalse(plain.isTransactionBlock());
+        assertNull(plain.getMerkleRoot());
+    }
+
+    @Test
+    public void testInclusionProofAgainstStoredHeader() throws Exception {
+        try (SqliteBlockStore store = new SqliteBlockStore("jdbc:sqlite:file:merkle?mode=memory&cache=shared", 0);
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.createTableIfNotExists();
+            List<String> transactions = transactions(9);
+            Block block1 = new Block(1, "2022-01-01T12:00:00", "Genesis", "0");
+            Block block2 = new Block(2, "2022-01-02T12:00:00", transactions, block1.getHash(), HashScheme.LEGACY);
+            blockChain.addBlock(block1);
+            blockChain.addBlock(block2);
+            blockChain.saveAll(Arrays.asList(block1, block2));
+
+            blockChain.loadFromDatabase();
+            Block header = blockChain.getBlockByIndex(2);
+            assertFalse(header.isBodyLoaded());
+            assertEquals(9, header.getTransactionCount());
+            assertTrue(blockChain.isChainValid());
+            assertEquals(transactions, blockChain.getTransactions(2));
+
+            MerkleProof proof = blockChain.getInclusionProof(2, 6);
+            assertTrue(proof.verify(transactions.get(6), header));
+            assertFalse(proof.verify(transactions.get(5), header));
+            assertFalse(proof.verify(transactions.get(6), block1));
+
+            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:file:merkle?mode=memory&cache=shared");
+                 Statement statement = connection.createStatement()) {
+                statement.executeUpdate("UPDATE transactions SET payload = 'forged' WHERE block_index = 2 AND tx_index = 6");
+            }
+            assertFalse(blockChain.getInclusionProof(2, 6).verify("forged", header));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInclusionProofForPlainBlock() {
+        BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory());
+        blockChain.createTableIfNotExists();
+        blockChain.addBlock(new Block(1, "2022-01-01T12:00:00", "Genesis", "0"));
+        blockChain.getInclusionProof(1, 0);
+    }
+}
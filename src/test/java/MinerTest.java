@@ -0,0 +1,125 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.ChainVerifier;
+import com.leonard.blockchain.HashScheme;
+import com.leonard.blockchain.Miner;
+import com.leonard.blockchain.MiningResult;
+import com.leonard.blockchain.SqliteBlockStore;
+import com.leonard.blockchain.VerificationReport;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MinerTest {
+    private static final String TIMESTAMP = "2022-01-01T12:00:00";
+
+    private static int leadingZeroBits(Block block) {
+        int bits = 0;
+        for (byte b : block.getBlockHash().toBytes()) {
+            if (b != 0) {
+                return bits + Integer.numberOfLeadingZeros(b & 0xff) - 24;
+            }
+            bits += 8;
+        }
+        return bits;
+    }
+
+    @Test
+    public void testMinedBlockMeetsDifficulty() throws InterruptedException {
+        try (Miner miner = new Miner(4)) {
+            MiningResult result = miner.mine(1, TIMESTAMP, "Transaction 1", "0", HashScheme.BINARY, 12);
+            Block block = result.getBlock();
+
+            assertEquals(12, block.getDifficulty());
+            assertTrue(block.hasValidHash());
+            assertTrue(block.meetsDifficulty());
+            assertTrue(leadingZeroBits(block) >= 12);
+            assertTrue(result.getHashesComputed() > 0);
+            assertTrue(result.getHashRate() > 0);
+            assertEquals(4, result.getThreads());
+        }
+    }
+
+    @Test
+    public void testBlockWithoutWorkKeepsLegacyHash() {
+        Block plain = new Block(1, TIMESTAMP, "Transaction 1", "0");
+        Block zeroDifficulty = new Block(1, TIMESTAMP, "Transaction 1", "0", HashScheme.LEGACY, 42, 0);
+        assertEquals(plain.getHash(), zeroDifficulty.getHash());
+        assertTrue(zeroDifficulty.meetsDifficulty());
+    }
+
+    @Test
+    public void testNonceAndDifficultyAreHashed() throws InterruptedException {
+        try (Miner miner = new Miner(2)) {
+            Block mined = miner.mine(1, TIMESTAMP, "Transaction 1", "0", HashScheme.LEGACY, 8).getBlock();
+            Block otherNonce = new Block(1, TIMESTAMP, "Transaction 1", "0", HashScheme.LEGACY, mined.getNonce() + 1, 8);
+            Block otherDifficulty = new Block(1, TIMESTAMP, "Transaction 1", "0", HashScheme.LEGACY, mined.getNonce(), 9);
+
+            assertNotEquals(mined.getHash(), otherNonce.getHash());
+            assertNotEquals(mined.getHash(), otherDifficulty.getHash());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsDifficultyOutOfRange() throws InterruptedException {
+        try (Miner miner = new Miner(1)) {
+            miner.mine(1, TIMESTAMP, "Transaction 1", "0", HashScheme.BINARY, 257);
+        }
+    }
+
+    @Test
+    public void testChainRequiresDifficulty() throws InterruptedException {
+        try (BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory());
+             Miner miner = new Miner(2)) {
+            blockChain.setDifficulty(8);
+            blockChain.addBlock(miner.mineNext(blockChain, "Genesis", HashScheme.BINARY).getBlock());
+            Block mined = miner.mineNext(blockChain, "Transaction 2", HashScheme.BINARY).getBlock();
+
+            Block unmined = new Block(2, TIMESTAMP, "Transaction 2", blockChain.getLatestBlock().getHash());
+            assertFalse(blockChain.isValidHash(unmined));
+            try {
+                blockChain.addBlock(unmined);
+                fail("Expected a block without proof of work to be rejected");
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+
+            blockChain.addBlock(mined);
+            assertEquals(2, blockChain.size());
+            assertTrue(blockChain.isChainValid());
+        }
+    }
+
+    @Test
+    public void testVerifierReportsInsufficientWork() {
+        Block genesis = new Block(1, TIMESTAMP, "Genesis", "0");
+        Block forged = new Block(2, TIMESTAMP, "Transaction 2", genesis.getHash(), HashScheme.BINARY, 0, 24);
+        assertTrue(forged.hasValidHash());
+        assertFalse(forged.meetsDifficulty());
+
+        VerificationReport report = new ChainVerifier().verify(Arrays.asList(genesis, forged));
+        assertFalse(report.isValid());
+        assertEquals(2, report.getFirstInvalidIndex());
+        assertEquals(VerificationReport.Reason.INSUFFICIENT_WORK, report.getReason());
+    }
+
+    @Test
+    public void testNonceAndDifficultyArePersisted() throws Exception {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory();
+             Miner miner = new Miner(2)) {
+            store.createSchema();
+            Block mined = miner.mine(1, TIMESTAMP, "Transaction 1", "0", HashScheme.BINARY, 8).getBlock();
+            store.insert(mined);
+
+            List<Block> loaded = store.loadAll();
+            assertEquals(1, loaded.size());
+            assertEquals(mined.getNonce(), loaded.get(0).getNonce());
+            assertEquals(8, loaded.get(0).getDifficulty());
+            assertTrue(loaded.get(0).hasValidHash());
+            assertTrue(loaded.get(0).meetsDifficulty());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.BlockQuery;
+import com.leonard.blockchain.PayloadCodec;
+import com.leonard.blockchain.SqliteBlockStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PayloadCompressionTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String transfer(int i) {
+        return "{\"type\":\"transfer\",\"from\":\"account-" + (i % 97) + "\",\"to\":\"account-" + (i % 89) +
+                "\",\"amount\":" + (i * 31 % 1000) + ",\"currency\":\"EUR\",\"status\":\"settled\"}";
+    }
+
+    private static String batch(int i, int transfers) {
+        StringBuilder payload = new StringBuilder("[");
+        for (int j = 0; j < transfers; j++) {
+            if (j > 0) {
+                payload.append(',');
+            }
+            payload.append(transfer(i * transfers + j));
+        }
+        return payload.append(']').toString();
+    }
+
+    private static List<Block> buildBlocks(int from, int to, int transfers, String previousHash) {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            Block block = new Block(i, "2022-01-01T12:00:00", batch(i, transfers), previousHash);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    @Test
+    public void testPayloadsDecompressLazily() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            List<Block> blocks = buildBlocks(1, 200, 50, "0");
+            PayloadCodec codec = new PayloadCodec(256);
+            try (BlockChain blockChain = new BlockChain(store)) {
+                blockChain.setBlockLogging(false);
+                blockChain.createTableIfNotExists();
+                blockChain.setPayloadCompression(codec);
+                blockChain.saveAll(blocks);
+            }
+            assertEquals(200, codec.getCompressedCount());
+            assertTrue(codec.getCompressionRatio() > 5);
+            assertTrue(codec.getStoredBytes() * 5 < codec.getPayloadBytes());
+
+            try (BlockChain blockChain = new BlockChain(store)) {
+                blockChain.loadFromDatabase();
+                List<Block> loaded = blockChain.snapshot();
+                assertEquals(200, loaded.size());
+                for (Block block : loaded) {
+                    assertTrue(block.isDataCompressed());
+                }
+
+                assertTrue(blockChain.isChainValid());
+                for (int i = 0; i < blocks.size(); i++) {
+                    assertFalse(loaded.get(i).isDataCompressed());
+                    assertEquals(blocks.get(i).getData(), loaded.get(i).getData());
+                    assertEquals(blocks.get(i).getHash(), loaded.get(i).calculateHash());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSmallPayloadsAreNotCompressed() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            store.createSchema();
+            PayloadCodec codec = new PayloadCodec(1024);
+            store.setPayloadCodec(codec);
+            List<Block> blocks = buildBlocks(1, 3, 1, "0");
+            blocks.addAll(buildBlocks(4, 4, 50, blocks.get(2).getHash()));
+            store.insertAll(blocks);
+
+            assertEquals(3, codec.getUncompressedCount());
+            assertEquals(1, codec.getCompressedCount());
+            assertFalse(store.findByIndex(1).isDataCompressed());
+            assertTrue(store.findByIndex(4).isDataCompressed());
+            assertEquals(blocks.get(3).getData(), store.findByIndex(4).getData());
+        }
+    }
+
+    @Test
+    public void testDictionaryIsStoredWithBlocks() throws Exception {
+        String databaseUrl = "jdbc:sqlite:" + folder.newFile("blocks.db").getAbsolutePath();
+        List<Block> blocks = buildBlocks(1, 500, 1, "0");
+        List<String> samples = new ArrayList<>();
+        for (Block block : blocks.subList(0, 100)) {
+            samples.add(block.getData());
+        }
+        byte[] dictionary = PayloadCodec.trainDictionary(samples, 4096);
+        assertNotNull(dictionary);
+
+        PayloadCodec plain = new PayloadCodec(64);
+        PayloadCodec primed = new PayloadCodec(64, dictionary);
+        try (SqliteBlockStore store = new SqliteBlockStore(databaseUrl)) {
+            store.createSchema();
+            store.setPayloadCodec(plain);
+            store.insertAll(blocks.subList(0, 250));
+            store.setPayloadCodec(primed);
+            store.insertAll(blocks.subList(250, 500));
+        }
+        assertTrue(primed.getCompressionRatio() > plain.getCompressionRatio());
+        assertEquals(250, primed.getCompressedCount());
+
+        try (SqliteBlockStore store = new SqliteBlockStore(databaseUrl);
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.createTableIfNotExists();
+            blockChain.loadFromDatabase();
+            assertEquals(500, blockChain.size());
+            assertTrue(blockChain.isChainValid());
+            assertEquals(blocks.get(499).getData(), blockChain.getLatestBlock().getData());
+        }
+    }
+
+    @Test
+    public void testQueriesMatchCompressedPayloads() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            store.createSchema();
+            store.setPayloadCodec(new PayloadCodec(0));
+            List<Block> blocks = buildBlocks(1, 100, 3, "0");
+            store.insertAll(blocks);
+
+            String payload = blocks.get(41).getData();
+            List<Block> exact = store.find(BlockQuery.payloadEquals(payload), null, 10);
+            assertEquals(1, exact.size());
+            assertEquals(42, exact.get(0).getIndex());
+
+            String prefix = payload.substring(0, 100);
+            List<Block> matches = store.find(BlockQuery.payloadStartsWith(prefix), null, 10);
+            assertEquals(1, matches.size());
+            assertEquals(42, matches.get(0).getIndex());
+
+            BlockQuery shortPrefix = BlockQuery.payloadStartsWith("[{\"type\":\"transfer\"");
+            int count = 0;
+            Block after = null;
+            List<Block> page;
+            while (!(page = store.find(shortPrefix, after, 7)).isEmpty()) {
+                count += page.size();
+                after = page.get(page.size() - 1);
+            }
+            assertEquals(100, count);
+        }
+    }
+
+    @Test
+    public void testCopyKeepsCompressedPayloads() {
+        try (SqliteBlockStore source = SqliteBlockStore.inMemory();
+             SqliteBlockStore target = SqliteBlockStore.inMemory()) {
+            PayloadCodec codec = new PayloadCodec(256);
+            source.createSchema();
+            source.setPayloadCodec(codec);
+            target.createSchema();
+            target.setPayloadCodec(codec);
+            source.insertAll(buildBlocks(1, 20, 20, "0"));
+
+            List<Block> loaded = source.loadAll();
+            target.insertAll(loaded);
+            for (Block block : loaded) {
+                assertTrue(block.isDataCompressed());
+            }
+            assertEquals(20, codec.getCompressedCount());
+            assertEquals(loaded.get(7).getData(), target.findByIndex(8).getData());
+        }
+    }
+}
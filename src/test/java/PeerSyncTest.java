@@ -0,0 +1,246 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.ChainMetrics;
+import com.leonard.blockchain.HashScheme;
+import com.leonard.blockchain.PeerServer;
+import com.leonard.blockchain.PeerSync;
+import com.leonard.blockchain.SqliteBlockStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PeerSyncTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+    /**
+     * Builds a chain in which every seventh block is a transaction block.
+     */
+    private static List<Block> buildBlocks(int from, int to, String previousHash) {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            Block block = i % 7 == 0
+                    ? new Block(i, "2022-01-01T12:00:00", Arrays.asList("tx-" + i + "-a", "tx-" + i + "-b"), previousHash, HashScheme.BINARY)
+                    : new Block(i, "2022-01-01T12:00:00", "Block " + i, previousHash);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    private static BlockChain newChain(SqliteBlockStore store) {
+        BlockChain blockChain = new BlockChain(store);
+        blockChain.setBlockLogging(false);
+        blockChain.createTableIfNotExists();
+        return blockChain;
+    }
+
+    @Test
+    public void testReplicaCatchesUp() throws IOException {
+        List<Block> blocks = buildBlocks(1, 5000, "0");
+        try (SqliteBlockStore sourceStore = SqliteBlockStore.inMemory();
+             SqliteBlockStore replicaStore = SqliteBlockStore.inMemory();
+             BlockChain source = newChain(sourceStore);
+             BlockChain replica = newChain(replicaStore)) {
+            sourceStore.insertAll(blocks);
+            source.setMemoryWindow(300);
+            source.loadFromDatabase();
+            assertTrue(source.snapshot().size() < 5000);
+
+            ChainMetrics metrics = new ChainMetrics();
+            replica.setMetricsListener(metrics);
+            PeerSync sync = new PeerSync(replica, 3, 100, 3);
+            try (PeerServer server = new PeerServer(source, LOOPBACK)) {
+                assertEquals(5000, sync.sync(server.getAddress()));
+                assertEquals(0, sync.sync(server.getAddress()));
+            }
+
+            assertEquals(5000, replica.size());
+            assertEquals(blocks.get(4999).getHash(), replica.getLatestBlock().getHash());
+            assertEquals(blocks.get(6).getTransactions(), replica.getTransactions(7));
+            assertTrue(replica.isChainValid());
+            assertEquals(5000, replicaStore.loadAll().size());
+            assertEquals(blocks.get(69).getTransactions(), replicaStore.loadTransactions(70));
+
+            assertEquals(0, sync.getLag());
+            assertEquals(5000, sync.getBlocksSynced());
+            assertTrue(sync.getBytesReceived() > 0);
+            assertEquals(5000, metrics.getBlocksSynced());
+            assertEquals(5000, metrics.getBlocksAppended());
+            assertEquals(50, metrics.getSyncLatency().getCount());
+            assertEquals(0, metrics.getSyncLag());
+        }
+    }
+
+    @Test
+    public void testIncrementalSync() throws IOException {
+        List<Block> blocks = buildBlocks(1, 1200, "0");
+        try (BlockChain source = newChain(SqliteBlockStore.inMemory());
+             BlockChain replica = newChain(SqliteBlockStore.inMemory());
+             PeerServer server = new PeerServer(source, LOOPBACK)) {
+            for (Block block : blocks.subList(0, 1000)) {
+                source.addBlock(block);
+            }
+            PeerSync sync = new PeerSync(replica);
+            assertEquals(1000, sync.sync(server.getAddress()));
+
+            for (Block block : blocks.subList(1000, 1200)) {
+                source.addBlock(block);
+            }
+            assertEquals(200, sync.sync(server.getAddress()));
+            assertEquals(blocks.get(1199).getHash(), replica.getLatestBlock().getHash());
+            assertEquals(1200, sync.getBlocksSynced());
+        }
+    }
+
+    @Test
+    public void testSyncSavesThroughWriteBehind() throws IOException {
+        List<Block> blocks = buildBlocks(1, 700, "0");
+        try (SqliteBlockStore replicaStore = SqliteBlockStore.inMemory();
+             BlockChain source = newChain(SqliteBlockStore.inMemory());
+             BlockChain replica = newChain(replicaStore);
+             PeerServer server = new PeerServer(source, LOOPBACK)) {
+            for (Block block : blocks) {
+                source.addBlock(block);
+            }
+            replica.enableWriteBehind(256, 64, 1, TimeUnit.SECONDS);
+
+            assertEquals(700, new PeerSync(replica, 2, 100, 2).sync(server.getAddress()));
+            assertEquals(700, replica.getWriteBehindWriter().getBlocksWritten());
+            assertEquals(700, replicaStore.loadAll().size());
+        }
+    }
+
+    @Test
+    public void testDivergedChainIsRejected() throws IOException {
+        try (BlockChain source = newChain(SqliteBlockStore.inMemory());
+             BlockChain replica = newChain(SqliteBlockStore.inMemory());
+             PeerServer server = new PeerServer(source, LOOPBACK)) {
+            for (Block block : buildBlocks(1, 50, "0")) {
+                source.addBlock(block);
+            }
+            for (Block block : buildBlocks(1, 10, "fork")) {
+                replica.addBlock(block);
+            }
+            try {
+                new PeerSync(replica).sync(server.getAddress());
+                fail("Expected the diverged chain to be detected");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("diverged"));
+            }
+            assertEquals(10, replica.size());
+        }
+    }
+
+    @Test
+    public void testInvalidFirstBlockIsRejected() throws IOException {
+        List<Block> blocks = buildBlocks(1, 100, "0");
+        Block original = blocks.get(0);
+        blocks.set(0, new Block(original.getIndex(), original.getTimestamp().toString(), "Forged genesis",
+                original.getPreviousHash(), original.getHash()));
+        try (SqliteBlockStore sourceStore = SqliteBlockStore.inMemory();
+             BlockChain source = newChain(sourceStore);
+             BlockChain replica = newChain(SqliteBlockStore.inMemory());
+             PeerServer server = new PeerServer(source, LOOPBACK)) {
+            sourceStore.insertAll(blocks);
+            source.loadFromDatabase();
+            try {
+                new PeerSync(replica).sync(server.getAddress());
+                fail("Expected the forged first block to be rejected");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("rejected"));
+            }
+            assertEquals(0, replica.size());
+        }
+    }
+
+    @Test
+    public void testGenesisHashIsRequired() throws IOException {
+        List<Block> blocks = buildBlocks(1, 100, "0");
+        try (BlockChain source = newChain(SqliteBlockStore.inMemory());
+             BlockChain replica = newChain(SqliteBlockStore.inMemory());
+             PeerServer server = new PeerServer(source, LOOPBACK)) {
+            for (Block block : blocks) {
+                source.addBlock(block);
+            }
+            PeerSync sync = new PeerSync(replica);
+            sync.setGenesisHash(buildBlocks(1, 1, "other").get(0).getHash());
+            try {
+                sync.sync(server.getAddress());
+                fail("Expected a chain with another genesis block to be rejected");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("genesis"));
+            }
+            assertEquals(0, replica.size());
+
+            sync.setGenesisHash(blocks.get(0).getHash());
+            assertEquals(100, sync.sync(server.getAddress()));
+        }
+    }
+
+    @Test
+    public void testInvalidPeerBlockIsRejected() throws IOException {
+        List<Block> blocks = buildBlocks(1, 400, "0");
+        Block original = blocks.get(249);
+        blocks.set(249, new Block(original.getIndex(), original.getTimestamp().toString(), "Tampered",
+                original.getPreviousHash(), original.getHash()));
+        try (SqliteBlockStore sourceStore = SqliteBlockStore.inMemory();
+             SqliteBlockStore replicaStore = SqliteBlockStore.inMemory();
+             BlockChain source = newChain(sourceStore);
+             BlockChain replica = newChain(replicaStore);
+             PeerServer server = new PeerServer(source, LOOPBACK)) {
+            sourceStore.insertAll(blocks);
+            source.loadFromDatabase();
+            try {
+                new PeerSync(replica, 2, 50, 2).sync(server.getAddress());
+                fail("Expected the tampered block to be rejected");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("rejected"));
+            }
+            assertEquals(200, replica.size());
+            assertEquals(200, replicaStore.loadAll().size());
+            assertTrue(replica.isChainValid());
+        }
+    }
+
+    @Test
+    public void testMissingTransactionsFailTheSync() throws IOException, SQLException {
+        String url = "jdbc:sqlite:" + temporaryFolder.newFile("source.db").getAbsolutePath();
+        try (SqliteBlockStore sourceStore = new SqliteBlockStore(url);
+             BlockChain source = newChain(sourceStore);
+             BlockChain replica = newChain(SqliteBlockStore.inMemory());
+             PeerServer server = new PeerServer(source, LOOPBACK)) {
+            sourceStore.insertAll(buildBlocks(1, 400, "0"));
+            source.setMemoryWindow(50);
+            source.loadFromDatabase();
+            try (Connection connection = DriverManager.getConnection(url);
+                 Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM transactions WHERE block_index = 70 AND tx_index = 1");
+            }
+
+            try {
+                new PeerSync(replica, 2, 50, 2).sync(server.getAddress());
+                fail("Expected the incomplete block to fail the sync");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("transactions"));
+            }
+            assertTrue(replica.size() < 70);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.HashScheme;
+import com.leonard.blockchain.QueryServer;
+import com.leonard.blockchain.SqliteBlockStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class QueryServerTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+    private static List<Block> buildBlocks(int count) {
+        List<Block> blocks = new ArrayList<>();
+        String previousHash = "0";
+        for (int i = 1; i <= count; i++) {
+            String timestamp = "2022-01-01T12:" + String.format("%02d:%02d", i / 60 % 60, i % 60);
+            Block block = i % 5 == 0
+                    ? new Block(i, timestamp, Arrays.asList("tx-" + i, "tx \"quoted\"\n" + i), previousHash, HashScheme.BINARY)
+                    : new Block(i, timestamp, "Block " + i, previousHash);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    private static BlockChain newChain(List<Block> blocks) {
+        BlockChain blockChain = new BlockChain(SqliteBlockStore.inMemory());
+        blockChain.setBlockLogging(false);
+        blockChain.createTableIfNotExists();
+        for (Block block : blocks) {
+            blockChain.addBlock(block);
+        }
+        return blockChain;
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private static Response request(QueryServer server, String method, String path) throws IOException {
+        URL url = new URL("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        int status = connection.getResponseCode();
+        InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (input != null) {
+            try (InputStream stream = input) {
+                byte[] buffer = new byte[4096];
+                int length;
+                while ((length = stream.read(buffer)) > 0) {
+                    body.write(buffer, 0, length);
+                }
+            }
+        }
+        return new Response(status, new String(body.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static Response get(QueryServer server, String path) throws IOException {
+        return request(server, "GET", path);
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testServesBlocks() throws IOException {
+        List<Block> blocks = buildBlocks(300);
+        try (BlockChain blockChain = newChain(blocks);
+             QueryServer server = new QueryServer(blockChain, LOOPBACK)) {
+            Response tip = get(server, "/tip");
+            assertEquals(200, tip.status);
+            assertTrue(tip.body.startsWith("{\"index\":300,"));
+            assertTrue(tip.body.contains("\"hash\":\"" + blocks.get(299).getHash() + "\""));
+
+            Response byIndex = get(server, "/blocks/42");
+            assertEquals(200, byIndex.status);
+            assertTrue(byIndex.body.contains("\"data\":\"Block 42\""));
+            assertTrue(byIndex.body.contains("\"previousHash\":\"" + blocks.get(40).getHash() + "\""));
+
+            Response byHash = get(server, "/blocks/hash/" + blocks.get(9).getHash());
+            assertEquals(200, byHash.status);
+            assertTrue(byHash.body.contains("\"transactions\":[\"tx-10\",\"tx \\\"quoted\\\"\\n10\"]"));
+
+            Response range = get(server, "/blocks?from=100&limit=25");
+            assertEquals(200, range.status);
+            assertEquals(25, count(range.body, "\"index\":"));
+            assertTrue(range.body.startsWith("[{\"index\":100,"));
+
+            Response timeRange = get(server, "/blocks?start=2022-01-01T12:01:00&end=2022-01-01T12:02:00&limit=1000");
+            assertEquals(60, count(timeRange.body, "\"index\":"));
+            Response page = get(server, "/blocks?start=2022-01-01T12:01:00&end=2022-01-01T12:02:00&limit=50&after=109");
+            assertEquals(10, count(page.body, "\"index\":"));
+            assertTrue(page.body.startsWith("[{\"index\":110,"));
+
+            assertEquals("[]", get(server, "/blocks?from=1000").body);
+            assertEquals(404, get(server, "/blocks/1000").status);
+            assertEquals(404, get(server, "/unknown").status);
+            assertEquals(400, get(server, "/blocks/hash/not-a-hash").status);
+            assertEquals(400, get(server, "/blocks?limit=0").status);
+            assertEquals(400, get(server, "/blocks?start=yesterday&end=today").status);
+            assertEquals(405, request(server, "POST", "/tip").status);
+            assertEquals(200, request(server, "HEAD", "/tip").status);
+        }
+    }
+
+    @Test
+    public void testServesRepeatedBlocksFromCache() throws IOException {
+        try (BlockChain blockChain = newChain(buildBlocks(50));
+             QueryServer server = new QueryServer(blockChain, LOOPBACK, 20)) {
+            String first = get(server, "/blocks?from=1&limit=10").body;
+            assertEquals(10, server.getCacheMissCount());
+            assertEquals(first, get(server, "/blocks?from=1&limit=10").body);
+            assertEquals(10, server.getCacheHitCount());
+            assertEquals(10, server.getCacheMissCount());
+
+            get(server, "/blocks?from=11&limit=40");
+            assertEquals(50, server.getCacheMissCount());
+            assertEquals(200, get(server, "/blocks/1").status);
+        }
+    }
+
+    @Test
+    public void testIncompleteTransactionsAreNotCached() throws Exception {
+        String url = "jdbc:sqlite:" + temporaryFolder.newFile("chain.db").getAbsolutePath();
+        List<Block> blocks = buildBlocks(20);
+        try (SqliteBlockStore store = new SqliteBlockStore(url);
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.setBlockLogging(false);
+            blockChain.createTableIfNotExists();
+            store.insertAll(blocks);
+            blockChain.loadFromDatabase();
+            try (Connection connection = DriverManager.getConnection(url);
+                 Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM transactions WHERE block_index = 10");
+            }
+
+            try (QueryServer server = new QueryServer(blockChain, LOOPBACK)) {
+                assertEquals(500, get(server, "/blocks/10").status);
+                assertEquals(500, get(server, "/blocks/hash/" + blocks.get(9).getHash()).status);
+
+                store.insertAll(Collections.singletonList(blocks.get(9)));
+                Response repaired = get(server, "/blocks/10");
+                assertEquals(200, repaired.status);
+                assertTrue(repaired.body.contains("\"transactions\":[\"tx-10\","));
+                assertEquals(0, server.getCacheHitCount());
+            }
+        }
+    }
+
+    @Test
+    public void testStatusFollowsTip() throws IOException {
+        List<Block> blocks = buildBlocks(101);
+        try (BlockChain blockChain = newChain(blocks.subList(0, 100));
+             QueryServer server = new QueryServer(blockChain, LOOPBACK)) {
+            Response status = get(server, "/status");
+            assertEquals(200, status.status);
+            assertTrue(status.body.contains("\"height\":100"));
+            assertTrue(status.body.contains("\"valid\":true"));
+            assertTrue(status.body.contains("\"blocksVerified\":100"));
+
+            blockChain.addBlock(blocks.get(100));
+            status = get(server, "/status");
+            assertTrue(status.body.contains("\"height\":101"));
+            assertTrue(status.body.contains("\"tipHash\":\"" + blocks.get(100).getHash() + "\""));
+        }
+    }
+
+    @Test
+    public void testStatusVerifiesOnlyNewBlocks() throws Exception {
+        String url = "jdbc:sqlite:" + temporaryFolder.newFile("status.db").getAbsolutePath();
+        List<Block> blocks = buildBlocks(301);
+        try (SqliteBlockStore store = new SqliteBlockStore(url);
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.setBlockLogging(false);
+            blockChain.createTableIfNotExists();
+            store.insertAll(blocks.subList(0, 300));
+            blockChain.setMemoryWindow(50);
+            blockChain.loadFromDatabase();
+
+            try (QueryServer server = new QueryServer(blockChain, LOOPBACK)) {
+                assertTrue(get(server, "/status").body.contains("\"blocksVerified\":300"));
+                try (Connection connection = DriverManager.getConnection(url);
+                     Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("DELETE FROM blocks WHERE block_index BETWEEN 100 AND 110");
+                }
+
+                blockChain.addBlock(blocks.get(300));
+                String status = get(server, "/status").body;
+                assertTrue(status.contains("\"height\":301"));
+                assertTrue(status.contains("\"valid\":true"));
+                assertTrue(status.contains("\"blocksVerified\":301"));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentClients() throws Exception {
+        List<Block> blocks = buildBlocks(500);
+        try (BlockChain blockChain = newChain(blocks);
+             QueryServer server = new QueryServer(blockChain, LOOPBACK)) {
+            ExecutorService clients = Executors.newFixedThreadPool(32);
+            try {
+                List<Future<Integer>> results = new ArrayList<>();
+                for (int client = 0; client < 32; client++) {
+                    int offset = client;
+                    results.add(clients.submit(() -> {
+                        int ok = 0;
+                        for (int i = 0; i < 40; i++) {
+                            int index = 1 + (offset * 40 + i) % 500;
+                            Response response = get(server, "/blocks/" + index);
+                            if (response.status == 200 && response.body.contains("\"index\":" + index + ",")) {
+                                ok++;
+                            }
+                        }
+                        return ok;
+                    }));
+                }
+                for (Future<Integer> result : results) {
+                    assertEquals(40, (int) result.get());
+                }
+            } finally {
+                clients.shutdown();
+            }
+            assertEquals(1280, server.getCacheHitCount() + server.getCacheMissCount());
+            assertTrue(server.getCacheMissCount() >= 500);
+        }
+    }
+}
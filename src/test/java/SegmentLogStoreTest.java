@@ -0,0 +1,254 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.BlockStoreException;
+import com.leonard.blockchain.HashScheme;
+import com.leonard.blockchain.SegmentLogStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SegmentLogStoreTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static List<Block> buildBlocks(int from, int to, String previousHash) {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            Block block = new Block(i, "2022-01-01T12:00:00", "Transaction " + i, previousHash);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    @Test
+    public void testInsertAndLoad() throws Exception {
+        try (SegmentLogStore store = new SegmentLogStore(temporaryFolder.newFolder().toPath())) {
+            Block block1 = new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0");
+            Block block2 = new Block(2, "2022-01-02T14:30:00.123456789", null, block1.getHash(), HashScheme.BINARY, 7, 0);
+
+            assertTrue(store.insert(block1));
+            assertFalse(store.insert(block1));
+            assertEquals(1, store.insertAll(Arrays.asList(block1, block2)));
+
+            assertTrue(store.contains(2));
+            assertFalse(store.contains(3));
+            Block loaded = store.findByIndex(2);
+            assertEquals(block2.getHash(), loaded.getHash());
+            assertEquals(block2.getTimestamp(), loaded.getTimestamp());
+            assertNull(loaded.getData());
+            assertEquals(HashScheme.BINARY, loaded.getHashScheme());
+            assertEquals(7, loaded.getNonce());
+            assertTrue(loaded.hasValidHash());
+            assertEquals(1, store.findByHash(block1.getHash()).getIndex());
+            assertNull(store.findByHash("0"));
+            assertEquals(2, store.loadAll().size());
+        }
+    }
+
+    @Test
+    public void testTransactionsAreLoadedSeparately() throws Exception {
+        try (SegmentLogStore store = new SegmentLogStore(temporaryFolder.newFolder().toPath())) {
+            List<String> transactions = Arrays.asList("alice->bob", "bob->carol", "carol->dave");
+            Block block = new Block(1, "2022-01-01T12:00:00", transactions, "0", HashScheme.BINARY);
+            store.insert(block);
+
+            Block header = store.findByIndex(1);
+            assertFalse(header.isBodyLoaded());
+            assertEquals(3, header.getTransactionCount());
+            assertEquals(block.getMerkleRoot(), header.getMerkleRoot());
+            assertEquals(transactions, store.loadTransactions(1));
+            assertTrue(store.loadTransactions(2).isEmpty());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsOutOfOrderBlocks() throws Exception {
+        try (SegmentLogStore store = new SegmentLogStore(temporaryFolder.newFolder().toPath())) {
+            List<Block> blocks = buildBlocks(1, 3, "0");
+            store.insert(blocks.get(2));
+            store.insert(blocks.get(0));
+        }
+    }
+
+    @Test
+    public void testLookupsAcrossSegmentsAfterReopen() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+        List<Block> blocks = buildBlocks(1, 2000, "0");
+        try (SegmentLogStore store = new SegmentLogStore(directory, 16 * 1024, 8)) {
+            assertEquals(1000, store.insertAll(blocks.subList(0, 1000)));
+            for (Block block : blocks.subList(1000, 2000)) {
+                store.insert(block);
+            }
+            assertTrue(store.getSegmentCount() > 1);
+        }
+
+        try (SegmentLogStore store = new SegmentLogStore(directory, 16 * 1024, 8)) {
+            for (int i = 1; i <= 2000; i += 37) {
+                assertEquals(blocks.get(i - 1).getHash(), store.findByIndex(i).getHash());
+            }
+            assertEquals(1500, store.findByHash(blocks.get(1499).getHash()).getIndex());
+            assertNull(store.findByIndex(2001));
+
+            try (Stream<Block> stream = store.stream(1234, 100)) {
+                List<Integer> indexes = stream.map(Block::getIndex).collect(Collectors.toList());
+                assertEquals(767, indexes.size());
+                assertEquals(1234, (int) indexes.get(0));
+                assertEquals(2000, (int) indexes.get(indexes.size() - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testFailedBatchIsRolledBack() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+        List<Block> blocks = buildBlocks(1, 300, "0");
+        Path blocker;
+        try (SegmentLogStore store = new SegmentLogStore(directory, 4096, 4)) {
+            assertEquals(10, store.insertAll(blocks.subList(0, 10)));
+            Path segment;
+            try (Stream<Path> files = Files.list(directory)) {
+                segment = files.filter(path -> path.toString().endsWith(".segment")).findFirst().get();
+            }
+            int sequence = Integer.parseInt(segment.getFileName().toString().replace(".segment", ""));
+            blocker = Files.createDirectory(directory.resolve(String.format("%010d.segment", sequence + 1)));
+
+            try {
+                store.insertAll(blocks.subList(10, 300));
+                fail("Expected the batch to fail when its next segment cannot be created");
+            } catch (BlockStoreException e) {
+                // Expected
+            }
+            assertEquals(10, store.loadAll().size());
+            assertNull(store.findByIndex(11));
+            assertNull(store.findByHash(blocks.get(10).getHash()));
+            assertEquals(1, store.getSegmentCount());
+
+            Files.delete(blocker);
+            assertEquals(290, store.insertAll(blocks.subList(10, 300)));
+        }
+
+        try (SegmentLogStore store = new SegmentLogStore(directory, 4096, 4)) {
+            assertEquals(300, store.loadAll().size());
+            assertEquals(blocks.get(299).getHash(), store.findByIndex(300).getHash());
+        }
+    }
+
+    @Test
+    public void testBlockLargerThanSegment() throws Exception {
+        try (SegmentLogStore store = new SegmentLogStore(temporaryFolder.newFolder().toPath(), 4096, 4)) {
+            StringBuilder data = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                data.append("payload ");
+            }
+            Block block1 = new Block(1, "2022-01-01T12:00:00", data.toString(), "0");
+            Block block2 = new Block(2, "2022-01-01T12:00:00", "Transaction 2", block1.getHash());
+            assertEquals(2, store.insertAll(Arrays.asList(block1, block2)));
+
+            assertEquals(data.toString(), store.findByIndex(1).getData());
+            assertEquals(2, store.loadAll().size());
+        }
+    }
+
+    @Test
+    public void testRecoversFromTornTail() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+        List<Block> blocks = buildBlocks(1, 10, "0");
+        try (SegmentLogStore store = new SegmentLogStore(directory, 16 * 1024, 4)) {
+            store.insertAll(blocks);
+        }
+
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow(AssertionError::new);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            byte[] content = new byte[(int) file.length()];
+            file.readFully(content);
+            int end = content.length;
+            while (content[end - 1] == 0) {
+                end--;
+            }
+            file.seek(end - 5);
+            file.write(new byte[]{1, 2, 3, 4, 5});
+        }
+
+        try (SegmentLogStore store = new SegmentLogStore(directory, 16 * 1024, 4)) {
+            assertEquals(9, store.loadAll().size());
+            assertFalse(store.contains(10));
+            assertTrue(store.insert(blocks.get(9)));
+        }
+        try (SegmentLogStore store = new SegmentLogStore(directory, 16 * 1024, 4)) {
+            assertEquals(10, store.loadAll().size());
+            assertEquals(blocks.get(9).getHash(), store.findByIndex(10).getHash());
+        }
+    }
+
+    @Test
+    public void testRecoversFromSegmentCutShortWhileBeingCreated() throws Exception {
+        for (int size : new int[]{0, 4}) {
+            Path directory = temporaryFolder.newFolder().toPath();
+            List<Block> blocks = buildBlocks(1, 600, "0");
+            int segmentCount;
+            try (SegmentLogStore store = new SegmentLogStore(directory, 16 * 1024, 4)) {
+                store.insertAll(blocks.subList(0, 500));
+                segmentCount = store.getSegmentCount();
+            }
+            Path trailing = directory.resolve(String.format("%010d.segment", segmentCount));
+            try (RandomAccessFile file = new RandomAccessFile(trailing.toFile(), "rw")) {
+                file.setLength(size);
+            }
+
+            try (SegmentLogStore store = new SegmentLogStore(directory, 16 * 1024, 4)) {
+                assertEquals(500, store.loadAll().size());
+                assertEquals(100, store.insertAll(blocks.subList(500, 600)));
+            }
+            try (SegmentLogStore store = new SegmentLogStore(directory, 16 * 1024, 4)) {
+                assertEquals(600, store.loadAll().size());
+                assertEquals(blocks.get(599).getHash(), store.findByIndex(600).getHash());
+            }
+        }
+    }
+
+    @Test
+    public void testBlockChainOnSegmentLog() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+        List<Block> blocks = buildBlocks(1, 500, "0");
+        try (SegmentLogStore store = new SegmentLogStore(directory);
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.createTableIfNotExists();
+            assertEquals(500, blockChain.saveAll(blocks));
+        }
+
+        try (SegmentLogStore store = new SegmentLogStore(directory);
+             BlockChain blockChain = new BlockChain(store)) {
+            blockChain.loadFromDatabase();
+            assertEquals(500, blockChain.size());
+            assertTrue(blockChain.isChainValid());
+            assertTrue(blockChain.blockExistsInDatabase(250));
+
+            Block next = new Block(501, "2022-01-01T12:00:00", "Transaction 501", blockChain.getLatestBlock().getHash());
+            store.insert(next);
+            assertEquals(1, blockChain.syncFromDatabase());
+            assertEquals(next.getHash(), blockChain.getBlockByIndex(501).getHash());
+        }
+    }
+
+    @Test(expected = BlockStoreException.class)
+    public void testClosedStoreRejectsOperations() throws Exception {
+        SegmentLogStore store = new SegmentLogStore(temporaryFolder.newFolder().toPath());
+        store.close();
+        store.contains(1);
+    }
+}
@@ -0,0 +1,196 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.BlockStoreException;
+import com.leonard.blockchain.ChainSnapshot;
+import com.leonard.blockchain.ChainVerifier;
+import com.leonard.blockchain.HashScheme;
+import com.leonard.blockchain.SegmentLogStore;
+import com.leonard.blockchain.SqliteBlockStore;
+import com.leonard.blockchain.VerificationReport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Builds a chain in which every tenth block is a transaction block.
+     */
+    private static List<Block> buildBlocks(int count) {
+        List<Block> blocks = new ArrayList<>();
+        String previousHash = "0";
+        for (int i = 1; i <= count; i++) {
+            Block block = i % 10 == 0
+                    ? new Block(i, "2022-01-01T12:00:00", Arrays.asList("tx-" + i + "-a", "tx-" + i + "-b", "tx-" + i + "-c"), previousHash, HashScheme.BINARY)
+                    : new Block(i, "2022-01-01T12:00:00", "Block " + i, previousHash);
+            blocks.add(block);
+            previousHash = block.getHash();
+        }
+        return blocks;
+    }
+
+    private static byte[] export(ChainSnapshot snapshot, SqliteBlockStore store) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(store.loadAll().size(), snapshot.export(store, Channels.newChannel(output)));
+        return output.toByteArray();
+    }
+
+    private static SqliteBlockStore storeOf(List<Block> blocks) {
+        SqliteBlockStore store = SqliteBlockStore.inMemory();
+        store.createSchema();
+        store.insertAll(blocks);
+        return store;
+    }
+
+    @Test
+    public void testRoundTripThroughFile() throws Exception {
+        List<Block> blocks = buildBlocks(3000);
+        ChainSnapshot snapshot = new ChainSnapshot(4096, 500, new ChainVerifier(4, 64));
+        Path file = folder.getRoot().toPath().resolve("chain.snapshot");
+        try (SqliteBlockStore source = storeOf(blocks);
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            assertEquals(3000, snapshot.export(source, channel));
+        }
+
+        try (SegmentLogStore target = new SegmentLogStore(folder.newFolder("segments").toPath());
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            VerificationReport report = snapshot.importInto(channel, target);
+            assertTrue(report.isValid());
+            assertEquals(3000, report.getBlocksVerified());
+
+            List<Block> loaded = target.loadAll();
+            assertEquals(3000, loaded.size());
+            for (int i = 0; i < blocks.size(); i++) {
+                assertEquals(blocks.get(i).getHash(), loaded.get(i).getHash());
+                assertEquals(blocks.get(i).getData(), loaded.get(i).getData());
+            }
+            assertEquals(blocks.get(29).getTransactions(), target.loadTransactions(30));
+        }
+    }
+
+    @Test
+    public void testEmptySnapshot() {
+        try (SqliteBlockStore source = storeOf(new ArrayList<Block>());
+             SqliteBlockStore target = SqliteBlockStore.inMemory()) {
+            target.createSchema();
+            byte[] bytes = export(new ChainSnapshot(), source);
+            VerificationReport report = new ChainSnapshot().importInto(Channels.newChannel(new ByteArrayInputStream(bytes)), target);
+            assertTrue(report.isValid());
+            assertEquals(0, report.getBlocksVerified());
+        }
+    }
+
+    @Test
+    public void testCorruptChunkIsRejected() {
+        ChainSnapshot snapshot = new ChainSnapshot(1024, 100, new ChainVerifier());
+        try (SqliteBlockStore source = storeOf(buildBlocks(500));
+             SqliteBlockStore target = SqliteBlockStore.inMemory()) {
+            target.createSchema();
+            byte[] bytes = export(snapshot, source);
+            bytes[bytes.length / 2] ^= 1;
+            try {
+                snapshot.importInto(Channels.newChannel(new ByteArrayInputStream(bytes)), target);
+                fail("Expected the corrupt chunk to be detected");
+            } catch (BlockStoreException e) {
+                assertTrue(e.getMessage().contains("corrupt"));
+            }
+            assertTrue(target.loadAll().size() < 500);
+        }
+    }
+
+    @Test
+    public void testTruncatedSnapshotIsRejected() {
+        ChainSnapshot snapshot = new ChainSnapshot(1024, 100, new ChainVerifier());
+        try (SqliteBlockStore source = storeOf(buildBlocks(500));
+             SqliteBlockStore target = SqliteBlockStore.inMemory()) {
+            target.createSchema();
+            byte[] bytes = export(snapshot, source);
+            try {
+                snapshot.importInto(Channels.newChannel(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 20))), target);
+                fail("Expected the truncated snapshot to be detected");
+            } catch (BlockStoreException e) {
+                assertTrue(e.getMessage().contains("truncated"));
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupportedVersionIsRejected() {
+        try (SqliteBlockStore source = storeOf(buildBlocks(10));
+             SqliteBlockStore target = SqliteBlockStore.inMemory()) {
+            target.createSchema();
+            byte[] bytes = export(new ChainSnapshot(), source);
+            ByteBuffer.wrap(bytes).putInt(4, ChainSnapshot.FORMAT_VERSION + 1);
+            try {
+                new ChainSnapshot().importInto(Channels.newChannel(new ByteArrayInputStream(bytes)), target);
+                fail("Expected the version to be rejected");
+            } catch (BlockStoreException e) {
+                assertTrue(e.getMessage().contains("version"));
+            }
+            assertTrue(target.loadAll().isEmpty());
+        }
+    }
+
+    @Test
+    public void testTamperedBlockStopsImport() {
+        List<Block> blocks = buildBlocks(1000);
+        Block original = blocks.get(649);
+        blocks.set(649, new Block(original.getIndex(), original.getTimestamp().toString(), "Tampered",
+                original.getPreviousHash(), original.getHash()));
+        ChainSnapshot snapshot = new ChainSnapshot(2048, 200, new ChainVerifier(2, 50));
+        try (SqliteBlockStore source = storeOf(blocks);
+             SqliteBlockStore target = SqliteBlockStore.inMemory()) {
+            target.createSchema();
+            byte[] bytes = export(snapshot, source);
+            VerificationReport report = snapshot.importInto(Channels.newChannel(new ByteArrayInputStream(bytes)), target);
+            assertFalse(report.isValid());
+            assertEquals(650, report.getFirstInvalidIndex());
+            assertEquals(VerificationReport.Reason.HASH_MISMATCH, report.getReason());
+            int written = target.loadAll().size();
+            assertTrue(written > 0 && written < 650);
+        }
+    }
+
+    @Test
+    public void testBootstrapBlockChain() {
+        List<Block> blocks = buildBlocks(2000);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (SqliteBlockStore source = storeOf(blocks.subList(0, 1500));
+             BlockChain blockChain = new BlockChain(source)) {
+            blockChain.setBlockLogging(false);
+            blockChain.setMemoryWindow(100);
+            blockChain.loadFromDatabase();
+            for (Block block : blocks.subList(1500, 2000)) {
+                blockChain.addBlock(block);
+            }
+            assertTrue(blockChain.snapshot().size() < 2000);
+            assertEquals(2000, blockChain.exportSnapshot(Channels.newChannel(output)));
+        }
+
+        try (SqliteBlockStore target = SqliteBlockStore.inMemory();
+             BlockChain blockChain = new BlockChain(target)) {
+            blockChain.createTableIfNotExists();
+            VerificationReport report = blockChain.importSnapshot(Channels.newChannel(new ByteArrayInputStream(output.toByteArray())));
+            assertTrue(report.isValid());
+            assertEquals(2000, blockChain.size());
+            assertEquals(blocks.get(1999).getHash(), blockChain.getLatestBlock().getHash());
+            assertEquals(blocks.get(1989).getTransactions(), blockChain.getTransactions(1990));
+            assertTrue(blockChain.isChainValid());
+        }
+    }
+}
@@ -0,0 +1,199 @@
+import com.leonard.blockchain.Block;
+import com.leonard.blockchain.BlockChain;
+import com.leonard.blockchain.BlockStoreException;
+import com.leonard.blockchain.HashScheme;
+import com.leonard.blockchain.JournalMode;
+import com.leonard.blockchain.SqliteBlockStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SqliteBlockStoreTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testInsertAndLoadInMemory() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            store.createSchema();
+            Block block1 = new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0");
+            Block block2 = new Block(2, "2022-01-02T14:30:00", "Transaction 2", block1.getHash());
+
+            assertTrue(store.insert(block1));
+            assertFalse(store.insert(block1));
+            assertEquals(1, store.insertAll(Arrays.asList(block1, block2)));
+
+            assertTrue(store.contains(2));
+            assertFalse(store.contains(3));
+            assertEquals(block2.getHash(), store.findByIndex(2).getHash());
+            assertEquals(1, store.findByHash(block1.getHash()).getIndex());
+            assertNull(store.findByHash("0"));
+            List<Block> blocks = store.loadAll();
+            assertEquals(2, blocks.size());
+            assertEquals(block2.getHash(), blocks.get(1).getHash());
+        }
+    }
+
+    @Test
+    public void testBlockChainsUseSeparateStores() {
+        try (BlockChain first = new BlockChain(SqliteBlockStore.inMemory());
+             BlockChain second = new BlockChain("jdbc:sqlite::memory:")) {
+            first.createTableIfNotExists();
+            second.createTableIfNotExists();
+            Block block = new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0");
+            first.saveToDatabase(block);
+
+            assertTrue(first.blockExistsInDatabase(1));
+            assertFalse(second.blockExistsInDatabase(1));
+        }
+    }
+
+    @Test
+    public void testConcurrentReadersAndWriter() throws Exception {
+        String url = "jdbc:sqlite:" + temporaryFolder.newFile("store.db").getAbsolutePath();
+        try (SqliteBlockStore store = new SqliteBlockStore(url, 3)) {
+            store.setJournalMode(JournalMode.WAL);
+            store.createSchema();
+
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                futures.add(executor.submit(() -> {
+                    String previousHash = "0";
+                    for (int i = 1; i <= 200; i++) {
+                        Block block = new Block(i, "2022-01-01T12:00:00", "Transaction " + i, previousHash);
+                        store.insert(block);
+                        previousHash = block.getHash();
+                    }
+                    return null;
+                }));
+                for (int reader = 0; reader < 3; reader++) {
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < 50; i++) {
+                            store.contains(i);
+                            store.loadAll();
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            assertEquals(200, store.loadAll().size());
+        }
+    }
+
+    @Test
+    public void testMigratesTableFromEarlierSchema() throws Exception {
+        String url = "jdbc:sqlite:" + temporaryFolder.newFile("legacy.db").getAbsolutePath();
+        Block block1 = new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0");
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE blocks (id INTEGER PRIMARY KEY AUTOINCREMENT, block_index INT NOT NULL, " +
+                    "timestamp TEXT NOT NULL, data TEXT NOT NULL, previous_hash TEXT NOT NULL, hash TEXT NOT NULL)");
+            statement.execute("INSERT INTO blocks (block_index, timestamp, data, previous_hash, hash) VALUES " +
+                    "(1, '2022-01-01T12:00', 'Transaction 1', '0', '" + block1.getHash() + "')");
+        }
+
+        try (SqliteBlockStore store = new SqliteBlockStore(url)) {
+            store.createSchema();
+            store.createSchema();
+            Block block2 = new Block(2, "2022-01-02T14:30:00", "Transaction 2", block1.getHash(), HashScheme.BINARY);
+            assertTrue(store.insert(block2));
+
+            List<Block> blocks = store.loadAll();
+            assertEquals(HashScheme.LEGACY, blocks.get(0).getHashScheme());
+            assertEquals(HashScheme.BINARY, blocks.get(1).getHashScheme());
+            assertTrue(blocks.get(0).hasValidHash());
+            assertTrue(blocks.get(1).hasValidHash());
+        }
+    }
+
+    @Test
+    public void testStreamIsOrderedFromIndex() throws Exception {
+        String url = "jdbc:sqlite:" + temporaryFolder.newFile("stream.db").getAbsolutePath();
+        try (SqliteBlockStore store = new SqliteBlockStore(url, 1)) {
+            store.createSchema();
+            List<Block> blocks = new ArrayList<>();
+            String previousHash = "0";
+            for (int i = 1; i <= 50; i++) {
+                Block block = new Block(i, "2022-01-01T12:00:00", "Transaction " + i, previousHash);
+                blocks.add(block);
+                previousHash = block.getHash();
+            }
+            List<Block> reversed = new ArrayList<>(blocks);
+            Collections.reverse(reversed);
+            store.insertAll(reversed);
+
+            try (Stream<Block> stream = store.stream(41, 4)) {
+                assertEquals(Arrays.asList(41, 42, 43, 44, 45, 46, 47, 48, 49, 50),
+                        stream.map(Block::getIndex).collect(Collectors.toList()));
+            }
+            // The single reader connection must have been returned when the stream was closed.
+            assertEquals(50, store.loadAll().size());
+            assertEquals(1, store.loadAll().get(0).getIndex());
+        }
+    }
+
+    @Test
+    public void testStreamOnSharedWriterAllowsInterleavedWrites() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            store.createSchema();
+            store.insert(new Block(1, "2022-01-01T12:00:00", "Transaction 1", "0"));
+            try (Stream<Block> stream = store.stream(0, 10)) {
+                store.insert(new Block(2, "2022-01-01T12:00:00", "Transaction 2", "0"));
+                assertTrue(stream.count() >= 1);
+            }
+        }
+    }
+
+    @Test
+    public void testConflictingBlockDoesNotExtendStoredTransactions() {
+        try (SqliteBlockStore store = SqliteBlockStore.inMemory()) {
+            store.createSchema();
+            Block stored = new Block(1, "2022-01-01T12:00:00", Arrays.asList("tx-a", "tx-b"), "0", HashScheme.BINARY);
+            Block conflicting = new Block(1, "2022-01-01T12:00:00", Arrays.asList("tx-x", "tx-y", "tx-z", "tx-w"),
+                    "0", HashScheme.BINARY);
+            assertEquals(1, store.insertAll(Collections.singletonList(stored)));
+            assertEquals(0, store.insertAll(Arrays.asList(conflicting, stored)));
+            assertFalse(store.insert(conflicting));
+
+            assertEquals(Arrays.asList("tx-a", "tx-b"), store.loadTransactions(1));
+            Block loaded = store.findByIndex(1);
+            assertEquals(stored.getHash(), loaded.getHash());
+            assertTrue(loaded.hasValidMerkleRoot());
+        }
+    }
+
+    @Test(expected = BlockStoreException.class)
+    public void testClosedStoreRejectsOperations() {
+        SqliteBlockStore store = SqliteBlockStore.inMemory();
+        store.createSchema();
+        store.close();
+        store.contains(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeReaderConnections() {
+        new SqliteBlockStore("jdbc:sqlite::memory:", -1);
+    }
+}